@@ -1,49 +1,280 @@
 package com.github.michaelsteven.archetype.springboot.items.aspect;
 
-import java.util.concurrent.CompletableFuture;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.function.Consumer;
 
-import org.aspectj.lang.JoinPoint;
-import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.AuditorAware;
 
+import com.github.michaelsteven.archetype.springboot.items.model.ConfirmationDto;
+import com.github.michaelsteven.archetype.springboot.items.model.CursorPageDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportResultDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemVersion;
+import com.github.michaelsteven.archetype.springboot.items.model.SerializedPage;
 import com.github.michaelsteven.archetype.springboot.items.model.event.Compliance;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
 import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+import com.github.michaelsteven.archetype.springboot.items.service.ComplianceEventPipeline;
+import com.github.michaelsteven.archetype.springboot.items.service.ComplianceReadAggregator;
+import com.github.michaelsteven.archetype.springboot.items.service.ItemOutbox;
 
 /**
  * The Class ComplianceEventAspect.
+ *
+ * Ordered ahead of the caching advice, so reads served from a cache are
+ * recorded too.
+ *
+ * The events are built on the calling thread, one per item affected, with
+ * the current auditor as the actor. The write events are handed over to the
+ * compliance event pipeline as is, the read events through the read
+ * aggregator, which may sample or roll them up.
+ *
+ * The write events are captured by the item outbox, one per item of each
+ * change the call publishes, and recorded as each transaction of the call
+ * commits, written in the transaction itself when the outbox is enabled. A
+ * call saving items chunk by chunk so records the chunks committed even when
+ * a later one fails, and holds no event past its chunk. The aspect only
+ * publishes the write events of a call that published no change, such as a
+ * create queued for later insertion, once the call returned.
  */
 @Aspect
+@Order(Ordered.LOWEST_PRECEDENCE - 2)
 public class ComplianceEventAspect {
-	
+
+	private ComplianceEventPipeline complianceEventPipeline;
+	private ComplianceReadAggregator complianceReadAggregator;
+	private AuditorAware<String> auditorAware;
+	private ItemOutbox itemOutbox;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param complianceEventPipeline the compliance event pipeline
+	 * @param complianceReadAggregator the compliance read aggregator
+	 * @param auditorAware the auditor aware, giving the actor
+	 * @param itemOutbox the item outbox, capturing the write events
+	 */
+	public ComplianceEventAspect(ComplianceEventPipeline complianceEventPipeline,
+			ComplianceReadAggregator complianceReadAggregator, AuditorAware<String> auditorAware, ItemOutbox itemOutbox) {
+		this.complianceEventPipeline = complianceEventPipeline;
+		this.complianceReadAggregator = complianceReadAggregator;
+		this.auditorAware = auditorAware;
+		this.itemOutbox = itemOutbox;
+	}
+
 	/**
 	 * Log compliance event.
 	 *
+	 * Runs around the annotated method, capturing the write events of the
+	 * changes it publishes, then records one event per item of its result,
+	 * the reads whether it completed or not, the writes only when it
+	 * completed without a change captured. The items handed to a consumer
+	 * argument, such as those of an export, are recorded as they are consumed.
+	 *
 	 * @param joinPoint the join point
 	 * @param compliance the compliance
+	 * @return the result of the annotated method
+	 * @throws Throwable the throwable thrown by the annotated method
 	 */
-	@After("@annotation(compliance)")
-	public void logComplianceEvent(JoinPoint joinPoint, Compliance compliance) {
-		CompletableFuture.runAsync(() -> {
-			ComplianceEvent complianceEvent = buildComplianceEvent(joinPoint, compliance);
-			// TODO: go do something to record the compliance event
-		});
+	@Around("@annotation(compliance)")
+	public Object logComplianceEvent(ProceedingJoinPoint joinPoint, Compliance compliance) throws Throwable {
+		Recorder recorder = new Recorder(joinPoint, compliance.action());
+		Object result = null;
+		boolean completed = false;
+		try(ItemOutbox.Capture capture = recorder.capture()) {
+			result = joinPoint.proceed(recorder.wrapConsumers(joinPoint.getArgs()));
+			completed = true;
+			return result;
+		}
+		finally {
+			recorder.recordResult(result, completed);
+		}
 	}
-	
+
 	/**
-	 * Builds the compliance event.
+	 * Gets the id of an item, from what the annotated methods return or consume.
 	 *
-	 * @param joinPoint the join point
-	 * @param compliance the compliance
-	 * @return the compliance event
+	 * @param value the value
+	 * @return the item id, null when the value is not an item
 	 */
-	private ComplianceEvent buildComplianceEvent(JoinPoint joinPoint, Compliance compliance) {
-		String className = joinPoint.getSignature().getDeclaringTypeName();
-		String methodName = joinPoint.getSignature().getName();
-		
-		ComplianceEvent complianceEvent = new ComplianceEvent();
-		complianceEvent.setAction(compliance.action());
-		complianceEvent.setResource(className);
-		complianceEvent.setEventSource(className + "." + methodName);
-		return complianceEvent;
+	private static Long itemId(Object value) {
+		if(value instanceof Long) {
+			return (Long) value;
+		}
+		if(value instanceof ItemDto) {
+			return ((ItemDto) value).getId();
+		}
+		if(value instanceof ConfirmationDto) {
+			return ((ConfirmationDto) value).getId();
+		}
+		if(value instanceof ItemImportResultDto) {
+			return ((ItemImportResultDto) value).getId();
+		}
+		if(value instanceof ItemVersion) {
+			return ((ItemVersion) value).getId();
+		}
+		return null;
+	}
+
+	/**
+	 * Records the events of one call of an annotated method.
+	 */
+	private final class Recorder {
+
+		private final String resource;
+		private final String eventSource;
+		private final ComplianceAction action;
+		private final String actor;
+		private final Object[] args;
+		private ItemOutbox.Capture capture;
+		private int recorded;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param joinPoint the join point
+		 * @param action the action
+		 */
+		private Recorder(ProceedingJoinPoint joinPoint, ComplianceAction action) {
+			this.resource = joinPoint.getSignature().getDeclaringTypeName();
+			this.eventSource = resource + "." + joinPoint.getSignature().getName();
+			this.action = action;
+			this.actor = auditorAware.getCurrentAuditor().orElse(null);
+			this.args = joinPoint.getArgs();
+		}
+
+		/**
+		 * Starts capturing the write events of the changes published, which
+		 * the outbox records per change from then on.
+		 *
+		 * @return the capture, null for a read
+		 */
+		private ItemOutbox.Capture capture() {
+			if(ComplianceAction.read != action) {
+				capture = itemOutbox.capture(event(null));
+			}
+			return capture;
+		}
+
+		/**
+		 * Wraps the consumer arguments of a read, to record the items they
+		 * are given. Those of a write are recorded through its changes.
+		 *
+		 * @param args the arguments
+		 * @return the arguments to proceed with
+		 */
+		@SuppressWarnings("unchecked")
+		private Object[] wrapConsumers(Object[] args) {
+			if(ComplianceAction.read != action) {
+				return args;
+			}
+			Object[] wrapped = args.clone();
+			for(int i = 0; i < wrapped.length; i++) {
+				if(wrapped[i] instanceof Consumer) {
+					Consumer<Object> consumer = (Consumer<Object>) wrapped[i];
+					wrapped[i] = (Consumer<Object>) value -> {
+						consumer.accept(value);
+						recordItem(itemId(value));
+					};
+				}
+			}
+			return wrapped;
+		}
+
+		/**
+		 * Records the items of the result of the annotated method. For a
+		 * read, otherwise the single item id argument, and a single event
+		 * without an item id when no item was recorded at all. For a write,
+		 * only the items of the result, nothing for a write that changed no
+		 * item, failed, or whose changes the outbox captured.
+		 *
+		 * @param result the result, null when the method failed
+		 * @param completed whether the method completed
+		 */
+		private void recordResult(Object result, boolean completed) {
+			if(ComplianceAction.read != action && (!completed || capture.isCaptured())) {
+				return;
+			}
+			Object value = result instanceof Optional ? ((Optional<?>) result).orElse(null) : result;
+			if(value instanceof CursorPageDto) {
+				value = ((CursorPageDto<?>) value).getContent();
+			}
+			if(value instanceof SerializedPage) {
+				long[] itemIds = ((SerializedPage) value).getItemIds();
+				if(null != itemIds) {
+					for(long itemId : itemIds) {
+						recordItem(itemId);
+					}
+				}
+			}
+			else if(value instanceof Iterable) {
+				for(Object element : (Iterable<?>) value) {
+					recordItem(itemId(element));
+				}
+			}
+			else {
+				recordItem(itemId(value));
+			}
+			if(ComplianceAction.read != action) {
+				return;
+			}
+			if(0 == recorded && null != args && args.length == 1) {
+				recordItem(itemId(args[0]));
+			}
+			if(0 == recorded) {
+				record(null);
+			}
+		}
+
+		/**
+		 * Records the event of an item.
+		 *
+		 * @param itemId the item id, nothing recorded when null
+		 */
+		private void recordItem(Long itemId) {
+			if(null != itemId) {
+				record(itemId);
+			}
+		}
+
+		/**
+		 * Records an event, through the read aggregator for a read, straight
+		 * to the pipeline for a write.
+		 *
+		 * @param itemId the item id, may be null
+		 */
+		private void record(Long itemId) {
+			ComplianceEvent complianceEvent = event(itemId);
+			if(ComplianceAction.read == action) {
+				complianceReadAggregator.record(complianceEvent);
+			}
+			else {
+				complianceEventPipeline.publish(complianceEvent);
+			}
+			recorded++;
+		}
+
+		/**
+		 * Creates the event of an item.
+		 *
+		 * @param itemId the item id, may be null
+		 * @return the event
+		 */
+		private ComplianceEvent event(Long itemId) {
+			ComplianceEvent complianceEvent = new ComplianceEvent();
+			complianceEvent.setAction(action);
+			complianceEvent.setResource(resource);
+			complianceEvent.setEventSource(eventSource);
+			complianceEvent.setItemId(itemId);
+			complianceEvent.setActor(actor);
+			complianceEvent.setTimestamp(Instant.now());
+			return complianceEvent;
+		}
 	}
 }
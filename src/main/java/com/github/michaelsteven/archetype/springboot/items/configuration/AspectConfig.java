@@ -5,11 +5,15 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.core.env.Environment;
+import org.springframework.data.domain.AuditorAware;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.michaelsteven.archetype.springboot.items.aspect.ComplianceEventAspect;
 import com.github.michaelsteven.archetype.springboot.items.aspect.LoggerAspect;
 import com.github.michaelsteven.archetype.springboot.items.aspect.RepositoryAspect;
+import com.github.michaelsteven.archetype.springboot.items.service.ComplianceEventPipeline;
+import com.github.michaelsteven.archetype.springboot.items.service.ComplianceReadAggregator;
+import com.github.michaelsteven.archetype.springboot.items.service.ItemOutbox;
 
 /**
  * The Class AspectConfig.
@@ -58,10 +62,15 @@ public class AspectConfig {
 	 * Compliance event.
 	 *
 	 * @param environment the environment
+	 * @param complianceEventPipeline the compliance event pipeline
+	 * @param complianceReadAggregator the compliance read aggregator
+	 * @param auditorAware the auditor aware
+	 * @param itemOutbox the item outbox
 	 * @return the compliance event aspect
 	 */
 	@Bean
-	public ComplianceEventAspect complianceEvent(Environment environment) {
-		return new ComplianceEventAspect();
+	public ComplianceEventAspect complianceEvent(Environment environment, ComplianceEventPipeline complianceEventPipeline,
+			ComplianceReadAggregator complianceReadAggregator, AuditorAware<String> auditorAware, ItemOutbox itemOutbox) {
+		return new ComplianceEventAspect(complianceEventPipeline, complianceReadAggregator, auditorAware, itemOutbox);
 	}
 }
\ No newline at end of file
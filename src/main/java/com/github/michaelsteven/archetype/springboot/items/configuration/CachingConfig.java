@@ -0,0 +1,24 @@
+package com.github.michaelsteven.archetype.springboot.items.configuration;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * The Class CachingConfig.
+ * 
+ * Enables the caching annotations. The cache provider, the caches and their
+ * size and expiry are configured under spring.cache, setting spring.cache.type
+ * to none turns caching off.
+ */
+@Configuration
+@EnableCaching(order = CachingConfig.CACHING_ORDER)
+public class CachingConfig {
+
+	/**
+	 * The order of the caching advice: outside the transaction advice, so a
+	 * cache hit does not open a transaction, and inside the compliance aspect,
+	 * so a cache hit is still recorded.
+	 */
+	public static final int CACHING_ORDER = Ordered.LOWEST_PRECEDENCE - 1;
+}
@@ -0,0 +1,106 @@
+package com.github.michaelsteven.archetype.springboot.items.configuration;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * The Class ReadYourWritesFilter.
+ *
+ * Keeps the reads of a client on the primary for a while after it wrote, so
+ * that it does not read from a replica which has not caught up with its own
+ * writes yet. Any request other than a GET, HEAD or OPTIONS is taken as a
+ * write: it runs against the primary, and the response sets a cookie with the
+ * time of the write. Requests bringing the cookie back within the stickiness
+ * window read from the primary too.
+ *
+ * The cookie is held by the client rather than by this instance, so the
+ * reads stick to the primary whichever instance serves them.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+	/** The name of the cookie holding the time of the last write of the client. */
+	public static final String LAST_WRITE_COOKIE = "items-last-write";
+
+	private long stickinessMillis;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param stickinessMillis how long the reads of a client stay on the primary after it wrote
+	 */
+	public ReadYourWritesFilter(long stickinessMillis) {
+		this.stickinessMillis = stickinessMillis;
+	}
+
+	/**
+	 * Do filter internal.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @param filterChain the filter chain
+	 * @throws ServletException the servlet exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		long now = System.currentTimeMillis();
+		boolean write = isWrite(request);
+		if(write) {
+			// set before the chain runs, the response may be committed by the time it returns
+			Cookie cookie = new Cookie(LAST_WRITE_COOKIE, String.valueOf(now));
+			cookie.setPath("/");
+			cookie.setHttpOnly(true);
+			cookie.setMaxAge((int) Math.max(1L, (stickinessMillis + 999L) / 1000L));
+			response.addCookie(cookie);
+		}
+		ReplicaRoutingDataSource.setPrimaryRequired(write || wroteRecently(request, now));
+		try {
+			filterChain.doFilter(request, response);
+		}
+		finally {
+			ReplicaRoutingDataSource.setPrimaryRequired(false);
+		}
+	}
+
+	/**
+	 * Whether a request is a write.
+	 *
+	 * @param request the request
+	 * @return true unless the method is safe
+	 */
+	private static boolean isWrite(HttpServletRequest request) {
+		String method = request.getMethod();
+		return !(HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method) || HttpMethod.OPTIONS.matches(method));
+	}
+
+	/**
+	 * Whether the client of a request wrote within the stickiness window.
+	 *
+	 * @param request the request
+	 * @param now the current time, in milliseconds
+	 * @return true when the last write cookie is recent
+	 */
+	private boolean wroteRecently(HttpServletRequest request, long now) {
+		Cookie cookie = WebUtils.getCookie(request, LAST_WRITE_COOKIE);
+		if(null == cookie) {
+			return false;
+		}
+		try {
+			long lastWrite = Long.parseLong(cookie.getValue());
+			return lastWrite <= now && now - lastWrite < stickinessMillis;
+		}
+		catch(NumberFormatException e) {
+			return false;
+		}
+	}
+}
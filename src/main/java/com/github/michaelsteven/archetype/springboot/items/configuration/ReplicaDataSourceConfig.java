@@ -0,0 +1,111 @@
+package com.github.michaelsteven.archetype.springboot.items.configuration;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The Class ReplicaDataSourceConfig.
+ *
+ * Sets up the read replica when api.datasource.replica.url is set, otherwise
+ * the single data source of spring.datasource is used for everything. The
+ * primary is configured under spring.datasource, the replica under
+ * api.datasource.replica, and each gets its own connection pool.
+ *
+ * The data source routes the read-only transactions to the replica, see
+ * ReplicaRoutingDataSource, and the ReadYourWritesFilter keeps a client on the
+ * primary after it wrote. The query cache is turned off, a query run on the
+ * replica would otherwise cache rows the primary has already changed.
+ */
+@Configuration
+@ConditionalOnProperty(name = "api.datasource.replica.url")
+public class ReplicaDataSourceConfig {
+
+	/** The name of the gauge of the replica lag. */
+	static final String REPLICA_LAG_METRIC = "items.datasource.replica.lag";
+
+	/**
+	 * The data source used by JPA, routing the read-only transactions to the
+	 * replica and everything else to the primary.
+	 *
+	 * The connection pools are not beans of their own, as Spring Boot sets up
+	 * the database through the DataSource bean and there must be only one.
+	 *
+	 * @param dataSourceProperties the spring.datasource properties, of the primary
+	 * @param meterRegistry the meter registry, for the pool metrics and the lag gauge
+	 * @param url the url of the replica
+	 * @param username the username on the replica, by default the one on the primary
+	 * @param password the password on the replica, by default the one on the primary
+	 * @param driverClassName the driver class name of the replica, derived from the url when blank
+	 * @param lagQuery the query giving the replica lag in milliseconds, blank to assume the replica is in sync
+	 * @param maxLagMillis the lag tolerated before reads fall back to the primary
+	 * @return the replica routing data source
+	 */
+	@Bean
+	@Primary
+	public ReplicaRoutingDataSource dataSource(DataSourceProperties dataSourceProperties, MeterRegistry meterRegistry,
+			@Value("${api.datasource.replica.url}") String url,
+			@Value("${api.datasource.replica.username:${spring.datasource.username:}}") String username,
+			@Value("${api.datasource.replica.password:${spring.datasource.password:}}") String password,
+			@Value("${api.datasource.replica.driver-class-name:}") String driverClassName,
+			@Value("${api.datasource.replica.lag-query:}") String lagQuery,
+			@Value("${api.datasource.replica.max-lag-ms:5000}") long maxLagMillis) {
+		HikariDataSource primaryDataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+		DataSourceBuilder<HikariDataSource> replicaBuilder = DataSourceBuilder.create().type(HikariDataSource.class)
+				.url(url).username(username).password(password);
+		if(!driverClassName.isEmpty()) {
+			replicaBuilder.driverClassName(driverClassName);
+		}
+		HikariDataSource replicaDataSource = replicaBuilder.build();
+		replicaDataSource.setReadOnly(true);
+		MicrometerMetricsTrackerFactory metricsTrackerFactory = new MicrometerMetricsTrackerFactory(meterRegistry);
+		primaryDataSource.setPoolName("primary");
+		primaryDataSource.setMetricsTrackerFactory(metricsTrackerFactory);
+		replicaDataSource.setPoolName("replica");
+		replicaDataSource.setMetricsTrackerFactory(metricsTrackerFactory);
+
+		ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource,
+				lagQuery, maxLagMillis);
+		Gauge.builder(REPLICA_LAG_METRIC, routingDataSource, ReplicaRoutingDataSource::getLagMillis)
+				.description("Lag of the read replica as last measured, negative when unknown")
+				.baseUnit("milliseconds")
+				.register(meterRegistry);
+		return routingDataSource;
+	}
+
+	/**
+	 * The filter keeping the reads of a client on the primary after it wrote.
+	 *
+	 * @param stickinessMillis how long the reads stay on the primary, by default the lag tolerated
+	 * @return the read your writes filter
+	 */
+	@Bean
+	public ReadYourWritesFilter readYourWritesFilter(
+			@Value("${api.datasource.replica.read-your-writes-ms:${api.datasource.replica.max-lag-ms:5000}}") long stickinessMillis) {
+		return new ReadYourWritesFilter(stickinessMillis);
+	}
+
+	/**
+	 * Turns the query cache off: a cached result is only invalidated by the
+	 * writes committed after it was cached, so a result read from a replica
+	 * still behind would be served without the writes it had not applied yet.
+	 *
+	 * @return the hibernate properties customizer
+	 */
+	@Bean
+	public HibernatePropertiesCustomizer replicaQueryCacheCustomizer() {
+		return hibernateProperties -> hibernateProperties.put(AvailableSettings.USE_QUERY_CACHE, Boolean.FALSE.toString());
+	}
+}
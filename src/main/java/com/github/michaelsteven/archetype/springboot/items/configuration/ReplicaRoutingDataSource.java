@@ -0,0 +1,228 @@
+package com.github.michaelsteven.archetype.springboot.items.configuration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+/**
+ * The Class ReplicaRoutingDataSource.
+ *
+ * Routes the connections of read-only transactions to the read replica and
+ * every other connection, of read-write transactions or taken outside of any
+ * transaction, to the primary. Connections are lazy, the physical one is only
+ * taken on the first statement, once the transaction has started and its
+ * read-only flag is known.
+ *
+ * Reads fall back to the primary while the replica lags behind it by more
+ * than the tolerance, as measured by the lag query, or when the lag cannot be
+ * measured. They also go to the primary when the current request requires
+ * it, so that a client reads its own writes (see ReadYourWritesFilter).
+ *
+ * A read that fills a cache must not go to the replica: after a write
+ * evicts an entry, a replica still behind would load the old item again, and
+ * the cache would then serve it to every client, those within their read your
+ * writes window included, until the entry expires or the item is written
+ * again. The cache misses are therefore read from the primary (see
+ * readFromPrimary), the query cache is turned off while a replica is set (see
+ * ReplicaDataSourceConfig), and the entities, which fill the second-level
+ * cache, are only loaded by the read-write transactions.
+ */
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+	/** Whether the current thread must read from the primary. */
+	private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+	/** The lag of a replica which could not be measured. */
+	static final long UNKNOWN_LAG = -1L;
+
+	/**
+	 * The data sources routed to.
+	 */
+	public enum Target {
+		PRIMARY, REPLICA
+	}
+
+	private DataSource primaryDataSource;
+	private DataSource replicaDataSource;
+	private String lagQuery;
+	private long maxLagMillis;
+	private volatile long lagMillis = UNKNOWN_LAG;
+	private volatile boolean replicaUsable;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param primaryDataSource the primary data source
+	 * @param replicaDataSource the replica data source
+	 * @param lagQuery the query run on the replica to get its lag in milliseconds, blank to assume it is in sync
+	 * @param maxLagMillis the lag tolerated before reads fall back to the primary
+	 */
+	public ReplicaRoutingDataSource(DataSource primaryDataSource, DataSource replicaDataSource, String lagQuery, long maxLagMillis) {
+		this.primaryDataSource = primaryDataSource;
+		this.replicaDataSource = replicaDataSource;
+		this.lagQuery = lagQuery;
+		this.maxLagMillis = maxLagMillis;
+		this.replicaUsable = !StringUtils.hasText(lagQuery);
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(Target.PRIMARY, primaryDataSource);
+		targets.put(Target.REPLICA, replicaDataSource);
+		AbstractRoutingDataSource router = new AbstractRoutingDataSource() {
+			@Override
+			protected Object determineCurrentLookupKey() {
+				return currentTarget();
+			}
+		};
+		router.setTargetDataSources(targets);
+		router.setDefaultTargetDataSource(primaryDataSource);
+		router.setLenientFallback(false);
+		router.afterPropertiesSet();
+		setTargetDataSource(router);
+		afterPropertiesSet();
+	}
+
+	/**
+	 * Requires the reads of the current thread to go to the primary, or lifts
+	 * the requirement.
+	 *
+	 * @param primaryRequired whether reads must go to the primary
+	 */
+	public static void setPrimaryRequired(boolean primaryRequired) {
+		if(primaryRequired) {
+			PRIMARY_REQUIRED.set(Boolean.TRUE);
+		}
+		else {
+			PRIMARY_REQUIRED.remove();
+		}
+	}
+
+	/**
+	 * Runs reads on the primary, whether or not the current request requires
+	 * it, e.g. the loading of a cache miss. The reads must take their
+	 * connection within the call, in a transaction started in it or in one
+	 * that has not run any statement yet.
+	 *
+	 * @param <T> the type of the result
+	 * @param reads the reads
+	 * @return the result of the reads
+	 */
+	public static <T> T readFromPrimary(Supplier<T> reads) {
+		Boolean primaryRequired = PRIMARY_REQUIRED.get();
+		PRIMARY_REQUIRED.set(Boolean.TRUE);
+		try {
+			return reads.get();
+		}
+		finally {
+			if(null == primaryRequired) {
+				PRIMARY_REQUIRED.remove();
+			}
+		}
+	}
+
+	/**
+	 * Gets the target a connection taken now would be routed to.
+	 *
+	 * @return the target
+	 */
+	public Target currentTarget() {
+		if(TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+				&& replicaUsable && null == PRIMARY_REQUIRED.get()) {
+			return Target.REPLICA;
+		}
+		return Target.PRIMARY;
+	}
+
+	/**
+	 * Measures the lag of the replica, and decides whether reads can go to it.
+	 */
+	@Scheduled(fixedDelayString = "${api.datasource.replica.lag-check-interval-ms:1000}")
+	public void checkReplicaLag() {
+		if(!StringUtils.hasText(lagQuery)) {
+			return;
+		}
+		long lag = measureLag();
+		boolean usable = UNKNOWN_LAG != lag && lag <= maxLagMillis;
+		if(usable != replicaUsable) {
+			if(usable) {
+				logger.info("Read replica is {} ms behind, routing reads to it again", lag);
+			}
+			else {
+				logger.warn("Read replica is {} behind, over the {} ms tolerated, routing reads to the primary",
+						UNKNOWN_LAG == lag ? "an unknown time" : lag + " ms", maxLagMillis);
+			}
+		}
+		lagMillis = lag;
+		replicaUsable = usable;
+	}
+
+	/**
+	 * Gets the lag of the replica, as last measured.
+	 *
+	 * @return the lag in milliseconds, negative when unknown
+	 */
+	public long getLagMillis() {
+		return lagMillis;
+	}
+
+	/**
+	 * Whether reads are routed to the replica, unless a request requires the primary.
+	 *
+	 * @return true when the replica is in sync within the tolerance
+	 */
+	public boolean isReplicaUsable() {
+		return replicaUsable;
+	}
+
+	/**
+	 * Closes the connection pools.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void destroy() throws IOException {
+		for(DataSource dataSource : new DataSource[] { replicaDataSource, primaryDataSource }) {
+			if(dataSource instanceof Closeable) {
+				((Closeable) dataSource).close();
+			}
+		}
+	}
+
+	/**
+	 * Runs the lag query on the replica.
+	 *
+	 * @return the lag in milliseconds, UNKNOWN_LAG when it could not be measured
+	 */
+	private long measureLag() {
+		try(Connection connection = replicaDataSource.getConnection();
+				Statement statement = connection.createStatement();
+				ResultSet resultSet = statement.executeQuery(lagQuery)) {
+			if(resultSet.next()) {
+				long lag = resultSet.getLong(1);
+				return resultSet.wasNull() ? UNKNOWN_LAG : Math.max(0L, lag);
+			}
+			return UNKNOWN_LAG;
+		}
+		catch(SQLException e) {
+			logger.debug("Unable to measure the lag of the read replica: {}", e.getMessage());
+			return UNKNOWN_LAG;
+		}
+	}
+}
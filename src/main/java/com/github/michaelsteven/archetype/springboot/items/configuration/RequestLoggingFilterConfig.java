@@ -1,5 +1,7 @@
 package com.github.michaelsteven.archetype.springboot.items.configuration;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.filter.CommonsRequestLoggingFilter;
@@ -9,15 +11,26 @@ import org.springframework.web.filter.CommonsRequestLoggingFilter;
  */
 @Configuration
 public class RequestLoggingFilterConfig {
-	
+
+	/** The suffix of the paths of bulk uploads, streamed by the controller and not logged. */
+	static final String IMPORT_PATH_SUFFIX = ":import";
+
 	/**
 	 * Log filter.
 	 *
+	 * Bulk uploads are left out, as logging their payload means wrapping the
+	 * request in a caching wrapper that copies the body as it is read.
+	 *
 	 * @return the commons request logging filter
 	 */
 	@Bean
 	public CommonsRequestLoggingFilter logFilter() {
-		CommonsRequestLoggingFilter loggingFilter = new CommonsRequestLoggingFilter();
+		CommonsRequestLoggingFilter loggingFilter = new CommonsRequestLoggingFilter() {
+			@Override
+			protected boolean shouldNotFilter(HttpServletRequest request) {
+				return request.getRequestURI().endsWith(IMPORT_PATH_SUFFIX);
+			}
+		};
 		loggingFilter.setIncludeQueryString(true);
 		loggingFilter.setIncludePayload(true);
 		loggingFilter.setMaxPayloadLength(10000);
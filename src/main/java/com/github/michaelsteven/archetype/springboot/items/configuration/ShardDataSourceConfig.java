@@ -0,0 +1,85 @@
+package com.github.michaelsteven.archetype.springboot.items.configuration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The Class ShardDataSourceConfig.
+ *
+ * Spreads the items over several databases when api.shards.urls is set,
+ * otherwise the single data source of spring.datasource holds them all. The
+ * shards share the credentials and driver of spring.datasource, and each
+ * gets its own connection pool. Cannot be combined with a read replica.
+ *
+ * The Hibernate query cache keys results by query and parameters, not by
+ * shard, so it must be turned off for the shards not to serve each other's
+ * results.
+ *
+ * The schema is generated on every shard, see ShardSchemaIntegrator.
+ */
+@Configuration
+@ConditionalOnProperty(name = "api.shards.urls")
+public class ShardDataSourceConfig {
+
+	/**
+	 * The data source used by JPA, routing the connections to the current shard.
+	 *
+	 * @param dataSourceProperties the spring.datasource properties, for the credentials and driver
+	 * @param meterRegistry the meter registry, for the pool metrics
+	 * @param urls the urls of the shards, in shard order
+	 * @param useQueryCache whether the Hibernate query cache is on
+	 * @return the shard routing data source
+	 * @throws IllegalStateException when the query cache is on
+	 */
+	@Bean
+	@Primary
+	public ShardRoutingDataSource dataSource(DataSourceProperties dataSourceProperties, MeterRegistry meterRegistry,
+			@Value("${api.shards.urls}") List<String> urls,
+			@Value("${spring.jpa.properties.hibernate.cache.use_query_cache:false}") boolean useQueryCache) {
+		if(useQueryCache) {
+			throw new IllegalStateException("The Hibernate query cache cannot be used with api.shards.urls, "
+					+ "set spring.jpa.properties.hibernate.cache.use_query_cache to false");
+		}
+		MicrometerMetricsTrackerFactory metricsTrackerFactory = new MicrometerMetricsTrackerFactory(meterRegistry);
+		List<DataSource> shards = new ArrayList<>(urls.size());
+		for(String url : urls) {
+			HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class)
+					.url(url.trim()).build();
+			dataSource.setPoolName("shard-" + shards.size());
+			dataSource.setMetricsTrackerFactory(metricsTrackerFactory);
+			shards.add(dataSource);
+		}
+		return new ShardRoutingDataSource(shards);
+	}
+
+	/**
+	 * Has Hibernate run its schema action on every shard, not only the first.
+	 *
+	 * @param urls the urls of the shards
+	 * @return the hibernate properties customizer
+	 */
+	@Bean
+	public HibernatePropertiesCustomizer shardSchemaCustomizer(@Value("${api.shards.urls}") List<String> urls) {
+		ShardSchemaIntegrator shardSchemaIntegrator = new ShardSchemaIntegrator(urls.size());
+		return hibernateProperties -> hibernateProperties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER,
+				(IntegratorProvider) () -> Collections.singletonList(shardSchemaIntegrator));
+	}
+}
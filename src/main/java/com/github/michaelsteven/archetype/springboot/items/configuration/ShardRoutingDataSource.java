@@ -0,0 +1,116 @@
+package com.github.michaelsteven.archetype.springboot.items.configuration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * The Class ShardRoutingDataSource.
+ *
+ * Routes the connections to the shard the current thread is working on, see
+ * ItemShardRouter, or to the first shard when it is working on none, which
+ * is where the ids are drawn from.
+ *
+ * Connections are lazy, the physical one is only taken on the first
+ * statement, so a transaction started before the shard is chosen still runs
+ * on that shard. A transaction runs on a single shard: once its connection is
+ * taken, changing the current shard does not move it.
+ */
+public class ShardRoutingDataSource extends LazyConnectionDataSourceProxy implements DisposableBean {
+
+	/** The shard the current thread is working on. */
+	private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+	private List<DataSource> shards;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param shards the data sources of the shards, in shard order
+	 */
+	public ShardRoutingDataSource(List<DataSource> shards) {
+		this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+		Map<Object, Object> targets = new HashMap<>();
+		for(int shard = 0; shard < shards.size(); shard++) {
+			targets.put(shard, shards.get(shard));
+		}
+		AbstractRoutingDataSource router = new AbstractRoutingDataSource() {
+			@Override
+			protected Object determineCurrentLookupKey() {
+				return CURRENT_SHARD.get();
+			}
+		};
+		router.setTargetDataSources(targets);
+		router.setDefaultTargetDataSource(shards.get(0));
+		router.setLenientFallback(false);
+		router.afterPropertiesSet();
+		setTargetDataSource(router);
+		afterPropertiesSet();
+	}
+
+	/**
+	 * Sets the shard the current thread is working on.
+	 *
+	 * @param shard the shard, null for none
+	 */
+	public static void setCurrentShard(Integer shard) {
+		if(null == shard) {
+			CURRENT_SHARD.remove();
+		}
+		else {
+			CURRENT_SHARD.set(shard);
+		}
+	}
+
+	/**
+	 * Gets the shard the current thread is working on.
+	 *
+	 * @return the shard, null for none
+	 */
+	public static Integer getCurrentShard() {
+		return CURRENT_SHARD.get();
+	}
+
+	/**
+	 * Gets the number of shards.
+	 *
+	 * @return the shard count
+	 */
+	public int getShardCount() {
+		return shards.size();
+	}
+
+	/**
+	 * Gets the data source of a shard, bypassing the routing.
+	 *
+	 * @param shard the shard
+	 * @return the data source
+	 */
+	public DataSource getShard(int shard) {
+		return shards.get(shard);
+	}
+
+	/**
+	 * Closes the connection pools.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void destroy() throws IOException {
+		for(DataSource dataSource : shards) {
+			if(dataSource instanceof Closeable) {
+				((Closeable) dataSource).close();
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.github.michaelsteven.archetype.springboot.items.configuration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.spi.DelayedDropAction;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class ShardSchemaIntegrator.
+ *
+ * Hibernate runs its schema action, as set by spring.jpa.hibernate.ddl-auto,
+ * on the connection of the thread building the session factory, which goes
+ * to the first shard. The integrator runs the same action on each of the
+ * other shards while the session factory is built, and, when the action is
+ * create-drop, drops their schema once it is closed.
+ */
+class ShardSchemaIntegrator implements Integrator {
+
+	private static final Logger logger = LoggerFactory.getLogger(ShardSchemaIntegrator.class);
+
+	private int shardCount;
+	private final List<ShardDropAction> dropActions = new ArrayList<>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param shardCount the number of shards
+	 */
+	ShardSchemaIntegrator(int shardCount) {
+		this.shardCount = shardCount;
+	}
+
+	/**
+	 * Runs the schema action on every shard but the first.
+	 *
+	 * @param metadata the metadata of the mappings
+	 * @param sessionFactory the session factory being built
+	 * @param serviceRegistry the service registry
+	 */
+	@Override
+	public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+		Map<String, Object> settings = new HashMap<>(serviceRegistry.getService(ConfigurationService.class).getSettings());
+		for(int shard = 1; shard < shardCount; shard++) {
+			int currentShard = shard;
+			onShard(shard, () -> SchemaManagementToolCoordinator.process(metadata, serviceRegistry, settings,
+					dropAction -> dropActions.add(new ShardDropAction(currentShard, dropAction))));
+		}
+	}
+
+	/**
+	 * Drops the schema of the shards created with create-drop.
+	 *
+	 * @param sessionFactory the session factory being closed
+	 * @param serviceRegistry the service registry
+	 */
+	@Override
+	public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+		for(ShardDropAction shardDropAction : dropActions) {
+			try {
+				onShard(shardDropAction.shard, () -> shardDropAction.dropAction.perform(serviceRegistry));
+			}
+			catch(RuntimeException e) {
+				logger.warn("Unable to drop the schema of shard {}: {}", shardDropAction.shard, e.getMessage());
+			}
+		}
+		dropActions.clear();
+	}
+
+	/**
+	 * Runs an action on a shard.
+	 *
+	 * @param shard the shard
+	 * @param action the action
+	 */
+	private static void onShard(int shard, Runnable action) {
+		ShardRoutingDataSource.setCurrentShard(shard);
+		try {
+			action.run();
+		}
+		finally {
+			ShardRoutingDataSource.setCurrentShard(null);
+		}
+	}
+
+	/**
+	 * The drop of the schema of a shard.
+	 */
+	private static class ShardDropAction {
+		private final int shard;
+		private final DelayedDropAction dropAction;
+
+		ShardDropAction(int shard, DelayedDropAction dropAction) {
+			this.shard = shard;
+			this.dropAction = dropAction;
+		}
+	}
+}
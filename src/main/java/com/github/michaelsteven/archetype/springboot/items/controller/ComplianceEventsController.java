@@ -0,0 +1,83 @@
+package com.github.michaelsteven.archetype.springboot.items.controller;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+import org.springdoc.api.annotations.ParameterObject;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ApiError;
+import com.github.michaelsteven.archetype.springboot.items.model.CursorPageDto;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEventFilter;
+import com.github.michaelsteven.archetype.springboot.items.service.ComplianceEventQueryService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+/**
+ * The Class ComplianceEventsController.
+ *
+ * The internal api of the auditors over the compliance events recorded, only
+ * there when they are recorded to the file sink.
+ */
+@RestController
+@ConditionalOnProperty(name = "api.compliance.sink", havingValue = "file")
+@Tag(name = "Compliance events", description = "The internal compliance events api can be used to query who did what to which items, and when")
+@Validated
+public class ComplianceEventsController {
+
+	/** The Constant API_PATH. */
+	private static final String API_PATH = "${api.compliance.path:/api/v1/compliance-events}";
+
+	/** The Constant MAX_PAGE_SIZE. */
+	private static final int MAX_PAGE_SIZE = 2000;
+
+	/** The compliance event query service. */
+	private ComplianceEventQueryService complianceEventQueryService;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param complianceEventQueryService the compliance event query service
+	 */
+	public ComplianceEventsController(ComplianceEventQueryService complianceEventQueryService) {
+		this.complianceEventQueryService = complianceEventQueryService;
+	}
+
+	/**
+	 * Gets the compliance events.
+	 *
+	 * @param filter the filter
+	 * @param after the cursor from the previous page, empty for the first page
+	 * @param size the page size
+	 * @return the events
+	 */
+	@Operation(summary = "Retrieve compliance events", description = "Use this API to find the compliance events recorded, "
+			+ "in the order they were recorded. The events can be filtered by resource, action, item id and time, all the filters given must match. "
+			+ "Leave out the 'after' parameter for the first page, then pass the 'nextCursor' of each page to get the following one.")
+	@ApiResponses(value = {
+			@ApiResponse(responseCode = "200", description = "Ok", content = @Content(schema = @Schema(implementation = CursorPageDto.class))),
+			@ApiResponse(responseCode = "400", description = "Invalid input", content = @Content(schema = @Schema(implementation = ApiError.class))),
+			@ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
+	@SecurityRequirement(name = "jwt", scopes = {})
+	@GetMapping(value = API_PATH, produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<CursorPageDto<ComplianceEvent>> getComplianceEvents(@ParameterObject ComplianceEventFilter filter,
+			@RequestParam(required = false) @Parameter(description = "The cursor returned with the previous page, empty for the first page") String after,
+			@RequestParam(defaultValue = "100") @Min(1) @Max(MAX_PAGE_SIZE) int size) {
+		CursorPageDto<ComplianceEvent> page = complianceEventQueryService.getEventsAfter(filter, after, size);
+		return ResponseEntity.ok().body(page);
+	}
+}
@@ -0,0 +1,100 @@
+package com.github.michaelsteven.archetype.springboot.items.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.util.DigestUtils;
+
+
+/**
+ * The Class ItemETags.
+ * 
+ * Builds and parses the entity tags of items. The tag of an item is
+ * derived from its id and version, so it changes on every update and
+ * can be checked without computing a hash of the representation. The
+ * tag of a page is a digest of the total and of the tags of its items.
+ */
+final class ItemETags {
+
+	/** The If-Match value matching any current version. */
+	static final String ANY = "*";
+	
+	private ItemETags() {
+	}
+	
+	/**
+	 * Builds the entity tag of an item.
+	 *
+	 * @param id the id
+	 * @param version the version
+	 * @return the quoted entity tag
+	 */
+	static String of(long id, long version) {
+		return "\"" + id + "-" + version + "\"";
+	}
+	
+	/**
+	 * Builds the entity tag of a page of items.
+	 * 
+	 * Any page holding the same items at the same versions, with the same
+	 * total, gets the same tag, whether it was built from the items or
+	 * from their versions alone.
+	 *
+	 * @param <T> the content type
+	 * @param page the page
+	 * @param id the function giving the id of an element
+	 * @param version the function giving the version of an element
+	 * @return the quoted entity tag
+	 */
+	static <T> String ofPage(Page<T> page, Function<T, Long> id, Function<T, Long> version) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(page.getTotalElements());
+		for(T element : page.getContent()) {
+			builder.append(',').append(id.apply(element)).append('-').append(version.apply(element));
+		}
+		return "\"" + DigestUtils.md5DigestAsHex(builder.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+	}
+	
+	/**
+	 * Tells whether an If-Match header matches any current version, which
+	 * fails, with 412, when the item does not exist.
+	 *
+	 * @param ifMatch the If-Match header value, may be null
+	 * @return true, if the header is *
+	 */
+	static boolean isAny(String ifMatch) {
+		return null != ifMatch && ANY.equals(ifMatch.trim());
+	}
+	
+	/**
+	 * Parses the version an If-Match header expects the item to be at.
+	 * 
+	 * Weak tags are never matched, as If-Match requires a strong comparison.
+	 * An If-Match of * matches any version, but only of an existing item, see
+	 * isAny.
+	 *
+	 * @param id the id of the item being modified
+	 * @param ifMatch the If-Match header value, may be null
+	 * @param mismatchMessage the message of the exception thrown when the tag cannot match
+	 * @return the expected version, null when the header is absent or matches any version
+	 * @throws OptimisticLockingFailureException when the tag is weak, malformed or for another item
+	 */
+	static Long parseIfMatch(long id, String ifMatch, String mismatchMessage) {
+		if(null == ifMatch || ifMatch.trim().isEmpty() || isAny(ifMatch)) {
+			return null;
+		}
+		String tag = ifMatch.trim();
+		String prefix = "\"" + id + "-";
+		if(!tag.startsWith(prefix) || !tag.endsWith("\"") || tag.length() <= prefix.length() + 1) {
+			throw new OptimisticLockingFailureException(mismatchMessage);
+		}
+		try {
+			return Long.valueOf(tag.substring(prefix.length(), tag.length() - 1));
+		}
+		catch(NumberFormatException e) {
+			throw new OptimisticLockingFailureException(mismatchMessage, e);
+		}
+	}
+}
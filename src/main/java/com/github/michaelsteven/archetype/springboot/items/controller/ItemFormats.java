@@ -0,0 +1,228 @@
+package com.github.michaelsteven.archetype.springboot.items.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.michaelsteven.archetype.springboot.items.model.ExportFormat;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportLine;
+
+
+/**
+ * The Class ItemFormats.
+ *
+ * Opens the writers of an items export and the readers of an items import,
+ * as NDJSON or CSV. Items are serialized straight to the output, and parsed
+ * straight from the input, one at a time. Nothing but the buffers of the
+ * serializer or parser is kept, whatever the number of items.
+ */
+final class ItemFormats {
+
+	/** The text/csv media type. */
+	static final MediaType TEXT_CSV = new MediaType("text", "csv");
+
+	/** The CSV mapper, handling dates the same way as the JSON one, and empty cells as nulls. */
+	private static final CsvMapper CSV_MAPPER = csvMapper();
+
+	/** The CSV schema, with a header line and the columns in the order of the JSON properties. */
+	private static final CsvSchema CSV_SCHEMA = CsvSchema.builder()
+			.addColumn("id")
+			.addColumn("name")
+			.addColumn("description")
+			.addColumn("dateSubmitted")
+			.addColumn("version")
+			.addColumn("dateModified")
+			.addColumn("status")
+			.build()
+			.withHeader();
+
+	private ItemFormats() {
+	}
+
+	/**
+	 * Gets the media type of an export format.
+	 *
+	 * @param format the format
+	 * @return the media type
+	 */
+	static MediaType mediaTypeOf(ExportFormat format) {
+		return ExportFormat.csv == format ? TEXT_CSV : MediaType.APPLICATION_NDJSON;
+	}
+
+	/**
+	 * Opens a writer of items in the given format.
+	 *
+	 * Closing the writer closes the output stream.
+	 *
+	 * @param format the format
+	 * @param outputStream the output stream
+	 * @param objectMapper the object mapper used for NDJSON
+	 * @return the sequence writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static SequenceWriter open(ExportFormat format, OutputStream outputStream, ObjectMapper objectMapper) throws IOException {
+		if(ExportFormat.csv == format) {
+			return CSV_MAPPER.writer(CSV_SCHEMA)
+					.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+					.writeValues(outputStream);
+		}
+		return openNdjson(ItemDto.class, outputStream, objectMapper);
+	}
+
+	/**
+	 * Opens an NDJSON writer of values of the given type.
+	 *
+	 * Closing the writer closes the output stream.
+	 *
+	 * @param type the type of the values
+	 * @param outputStream the output stream
+	 * @param objectMapper the object mapper
+	 * @return the sequence writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static SequenceWriter openNdjson(Class<?> type, OutputStream outputStream, ObjectMapper objectMapper) throws IOException {
+		return objectMapper.writerFor(type)
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+				.withRootValueSeparator("\n")
+				.writeValues(outputStream);
+	}
+
+	/**
+	 * Opens a reader of the items of an upload.
+	 *
+	 * CSV uploads are matched to the item properties by their header line,
+	 * any other content type is read as NDJSON. A record that cannot be
+	 * bound to an item is returned with its error and reading goes on with
+	 * the next record. Input that is not well formed ends the reading, as the
+	 * records that follow cannot be told apart.
+	 *
+	 * @param contentType the content type of the upload
+	 * @param inputStream the input stream
+	 * @param objectMapper the object mapper used for NDJSON
+	 * @return the lines of the upload, read as they are iterated
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static Iterator<ItemImportLine> openImport(MediaType contentType, InputStream inputStream, ObjectMapper objectMapper) throws IOException {
+		if(TEXT_CSV.isCompatibleWith(contentType)) {
+			return new ItemImportIterator(CSV_MAPPER.readerFor(ItemDto.class)
+					.with(CsvSchema.emptySchema().withHeader())
+					.readValues(inputStream));
+		}
+		return new ItemImportIterator(objectMapper.readerFor(ItemDto.class).readValues(inputStream));
+	}
+
+	/**
+	 * Builds the CSV mapper.
+	 *
+	 * @return the CSV mapper
+	 */
+	private static CsvMapper csvMapper() {
+		CsvMapper csvMapper = new CsvMapper();
+		csvMapper.registerModule(new JavaTimeModule());
+		csvMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+		csvMapper.enable(CsvParser.Feature.EMPTY_STRING_AS_NULL);
+		csvMapper.enable(CsvParser.Feature.SKIP_EMPTY_LINES);
+		return csvMapper;
+	}
+
+
+	/**
+	 * The Class ItemImportIterator.
+	 *
+	 * Reads one record ahead of the caller, so that a record failing to
+	 * parse is returned as a line of its own.
+	 */
+	private static final class ItemImportIterator implements Iterator<ItemImportLine> {
+
+		/** The items. */
+		private final MappingIterator<ItemDto> items;
+
+		/** The next line, null when not read yet. */
+		private ItemImportLine next;
+
+		/** Whether the end of the upload, or malformed input, was reached. */
+		private boolean done;
+
+		/**
+		 * Instantiates a new item import iterator.
+		 *
+		 * @param items the items
+		 */
+		ItemImportIterator(MappingIterator<ItemDto> items) {
+			this.items = items;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(null == next && !done) {
+				next = read();
+			}
+			return null != next;
+		}
+
+		@Override
+		public ItemImportLine next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ItemImportLine line = next;
+			next = null;
+			return line;
+		}
+
+		/**
+		 * Reads the next line.
+		 *
+		 * @return the line, null at the end of the upload
+		 */
+		private ItemImportLine read() {
+			try {
+				if(!items.hasNextValue()) {
+					done = true;
+					return null;
+				}
+				// the parser stands just past the start of the record, the CSV token location lags a row behind
+				long lineNumber = items.getParser().getCurrentLocation().getLineNr();
+				return new ItemImportLine(lineNumber, items.nextValue(), null);
+			}
+			catch(JsonProcessingException e) {
+				// a well formed record that cannot be bound is skipped on the next read,
+				// past malformed input there is no record boundary left to resume from
+				done = !(e instanceof JsonMappingException) || e.getCause() instanceof JsonParseException;
+				return new ItemImportLine(lineOf(e), null, e.getOriginalMessage());
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Gets the line an exception occurred on.
+		 *
+		 * @param e the exception
+		 * @return the line number, -1 when not known
+		 */
+		private static long lineOf(JsonProcessingException e) {
+			JsonLocation location = e.getLocation();
+			return null == location ? -1 : location.getLineNr();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.github.michaelsteven.archetype.springboot.items.controller;
+
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemShardRebalancer;
+
+/**
+ * The Class ItemShardsEndpoint.
+ *
+ * The shards actuator endpoint, on the management port: a GET gives the item
+ * count of each shard, a POST moves the items to the shard of their id after
+ * shards were added.
+ */
+@Component
+@ConditionalOnProperty(name = "api.shards.urls")
+@Endpoint(id = "shards")
+public class ItemShardsEndpoint {
+
+	private ItemShardRebalancer itemShardRebalancer;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param itemShardRebalancer the item shard rebalancer
+	 */
+	public ItemShardsEndpoint(ItemShardRebalancer itemShardRebalancer) {
+		this.itemShardRebalancer = itemShardRebalancer;
+	}
+
+	/**
+	 * Counts the items of each shard.
+	 *
+	 * @return the item count of each shard
+	 */
+	@ReadOperation
+	public Map<Integer, Long> counts() {
+		return itemShardRebalancer.countByShard();
+	}
+
+	/**
+	 * Rebalances the shards.
+	 *
+	 * @return the number of items moved off each shard
+	 */
+	@WriteOperation
+	public Map<Integer, Long> rebalance() {
+		return itemShardRebalancer.rebalance();
+	}
+}
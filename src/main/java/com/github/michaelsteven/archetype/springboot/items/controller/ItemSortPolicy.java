@@ -0,0 +1,187 @@
+package com.github.michaelsteven.archetype.springboot.items.controller;
+
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.persistence.Column;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.validation.ValidationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The Class ItemSortPolicy.
+ *
+ * Restricts the sorts of the item listings to those an index can serve, so
+ * that no request makes the database sort the whole table. The sort keys
+ * allowed are configured, and each one must be the leading column of an
+ * index declared on the ItemEntity, which is checked on startup.
+ *
+ * A listing is sorted by a single key, followed by the id in the same
+ * direction, as secondary indexes hold the primary key and the order is
+ * then both index-backed and stable. Unsorted listings are sorted by id.
+ *
+ * The sorts used are counted in the items.sort metric, tagged with the key,
+ * the direction and whether the sort was accepted. Keys outside the allowed
+ * ones are tagged as "other", so that clients cannot grow the number of
+ * series.
+ */
+@Component
+public class ItemSortPolicy {
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemSortPolicy.class);
+
+	/** The name of the sort metric. */
+	static final String SORT_METRIC = "items.sort";
+
+	/** The id property, backed by the primary key and the tiebreaker of every sort. */
+	private static final String ID = "id";
+
+	private MessageSource messageSource;
+	private MeterRegistry meterRegistry;
+	private Map<String, String> indexesByKey;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param messageSource the message source
+	 * @param meterRegistry the meter registry
+	 * @param keys the sort keys allowed besides the id, properties of the ItemEntity
+	 * @throws IllegalStateException when a key has no supporting index
+	 */
+	public ItemSortPolicy(MessageSource messageSource, MeterRegistry meterRegistry,
+			@Value("${api.sort.keys:name,createdTimestamp,updatedTimestamp}") List<String> keys) {
+		this.messageSource = messageSource;
+		this.meterRegistry = meterRegistry;
+		this.indexesByKey = new LinkedHashMap<>();
+		this.indexesByKey.put(ID, "primary key");
+		for(String key : keys) {
+			indexesByKey.put(key, supportingIndex(key));
+		}
+		logger.info("Item listings can be sorted by {}", indexesByKey);
+	}
+
+	/**
+	 * Applies the policy to a pageable.
+	 *
+	 * @param pageable the pageable requested
+	 * @return the pageable, sorted by an allowed key then by id
+	 * @throws ValidationException when the sort is not allowed
+	 */
+	public Pageable apply(Pageable pageable) {
+		List<Order> orders = pageable.getSort().toList();
+		if(orders.isEmpty()) {
+			count(ID, Sort.Direction.ASC, true);
+			return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), Sort.by(ID));
+		}
+		Order first = orders.get(0);
+		for(Order order : orders) {
+			if(!indexesByKey.containsKey(order.getProperty())) {
+				count(order.getProperty(), order.getDirection(), false);
+				throw new ValidationException(message("itemscontroller.validationexception.sortnotallowed",
+						order.getProperty(), indexesByKey.keySet()));
+			}
+		}
+		if(!isIndexBacked(orders)) {
+			count(first.getProperty(), first.getDirection(), false);
+			throw new ValidationException(message("itemscontroller.validationexception.sortnotindexed",
+					pageable.getSort()));
+		}
+		count(first.getProperty(), first.getDirection(), true);
+		Sort sort = Sort.by(new Order(first.getDirection(), first.getProperty()));
+		if(!ID.equals(first.getProperty())) {
+			sort = sort.and(Sort.by(first.getDirection(), ID));
+		}
+		return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort);
+	}
+
+	/**
+	 * Whether an index can serve sorted orders: a single key, possibly
+	 * followed by the id in the same direction, compared as is.
+	 *
+	 * @param orders the orders, all of allowed keys
+	 * @return true when the orders are index-backed
+	 */
+	private static boolean isIndexBacked(List<Order> orders) {
+		for(Order order : orders) {
+			if(order.isIgnoreCase() || Sort.NullHandling.NATIVE != order.getNullHandling()) {
+				return false;
+			}
+		}
+		if(1 == orders.size()) {
+			return true;
+		}
+		Order first = orders.get(0);
+		Order second = orders.get(1);
+		return 2 == orders.size() && !ID.equals(first.getProperty()) && ID.equals(second.getProperty())
+				&& first.getDirection() == second.getDirection();
+	}
+
+	/**
+	 * Counts a sort.
+	 *
+	 * @param key the sort key
+	 * @param direction the direction
+	 * @param accepted whether the sort was accepted
+	 */
+	private void count(String key, Sort.Direction direction, boolean accepted) {
+		meterRegistry.counter(SORT_METRIC,
+				"key", indexesByKey.containsKey(key) ? key : "other",
+				"direction", direction.name().toLowerCase(Locale.ROOT),
+				"outcome", accepted ? "accepted" : "rejected").increment();
+	}
+
+	/**
+	 * Gets a message.
+	 *
+	 * @param code the code
+	 * @param args the args
+	 * @return the message
+	 */
+	private String message(String code, Object... args) {
+		return messageSource.getMessage(code, args, LocaleContextHolder.getLocale());
+	}
+
+	/**
+	 * Finds the index of the ItemEntity table whose leading column is the
+	 * column of a property.
+	 *
+	 * @param key the property
+	 * @return the index name
+	 * @throws IllegalStateException when the property is unknown or not indexed
+	 */
+	static String supportingIndex(String key) {
+		Field field = ReflectionUtils.findField(ItemEntity.class, key);
+		if(null == field) {
+			throw new IllegalStateException("Sort key " + key + " is not a property of the items");
+		}
+		Column column = field.getAnnotation(Column.class);
+		String columnName = null == column || column.name().isEmpty() ? key : column.name();
+		for(Index index : ItemEntity.class.getAnnotation(Table.class).indexes()) {
+			String leadingColumn = index.columnList().split(",")[0].trim().split("\\s+")[0];
+			if(leadingColumn.equalsIgnoreCase(columnName)) {
+				return index.name();
+			}
+		}
+		throw new IllegalStateException("Sort key " + key + " has no index on column " + columnName
+				+ ", declare one on the ItemEntity table or remove it from api.sort.keys");
+	}
+}
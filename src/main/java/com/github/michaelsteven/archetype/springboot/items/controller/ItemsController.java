@@ -1,16 +1,31 @@
 package com.github.michaelsteven.archetype.springboot.items.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 
+import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.ValidationException;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 
 import org.springdoc.api.annotations.ParameterObject;
 import org.springframework.context.MessageSource;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
@@ -20,11 +35,23 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.github.michaelsteven.archetype.springboot.items.model.ApiError;
 import com.github.michaelsteven.archetype.springboot.items.model.ConfirmationDto;
+import com.github.michaelsteven.archetype.springboot.items.model.CursorPageDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ExportFormat;
 import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemFilter;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportLine;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportResultDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemVersion;
+import com.github.michaelsteven.archetype.springboot.items.model.SerializedPage;
 import com.github.michaelsteven.archetype.springboot.items.service.ItemsService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -35,6 +62,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.security.SecurityScheme;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 
@@ -47,13 +75,31 @@ import io.swagger.v3.oas.annotations.media.Schema;
 @Validated
 public class ItemsController {
 	
-	public ItemsController(ItemsService itemsService, MessageSource messageSource) {
+	public ItemsController(ItemsService itemsService, MessageSource messageSource, ObjectMapper objectMapper,
+			ItemSortPolicy itemSortPolicy) {
 		this.itemsService = itemsService;
 		this.messageSource = messageSource;
+		this.objectMapper = objectMapper;
+		this.itemSortPolicy = itemSortPolicy;
 	}
 	
 	/** The Constant API_PATH. */
 	private static final String API_PATH = "${api.path:/api/v1/items}";
+	
+	/** The Constant APPROXIMATE_TOTAL_COUNT_HEADER. */
+	static final String APPROXIMATE_TOTAL_COUNT_HEADER = "X-Approximate-Total-Count";
+	
+	/** The Constant MAX_PAGE_SIZE, matching spring.data.web.pageable.max-page-size. */
+	private static final int MAX_PAGE_SIZE = 2000;
+	
+	/** The Constant MAX_QUERY_LENGTH, of search queries. */
+	private static final int MAX_QUERY_LENGTH = 200;
+	
+	/** The Constant MAX_PREFIX_LENGTH, matching the maximum length of an item name. */
+	private static final int MAX_PREFIX_LENGTH = 25;
+	
+	/** The Constant MAX_SUGGESTIONS, of one suggestion request. */
+	private static final int MAX_SUGGESTIONS = 100;
 
 	/** The items service. */
 	private ItemsService itemsService;
@@ -61,26 +107,200 @@ public class ItemsController {
 	/** The message source. */
 	private MessageSource messageSource;
 	
+	/** The object mapper. */
+	private ObjectMapper objectMapper;
+	
+	/** The sort policy of the listings. */
+	private ItemSortPolicy itemSortPolicy;
+	
 	
     /**
      * Gets the items.
+     * 
+     * The first pages are served as JSON already serialized by the service,
+     * along with the ETag of those bytes.
+     * 
+     * Other pages carry an ETag derived from their items. When the request sends
+     * it back in If-None-Match, only the versions of the page's items are queried
+     * and 304 is returned if none changed.
+     * 
+     * Filtered pages are always queried, the ETag only saves sending them again.
+     * 
+     * Only the sorts an index can serve are accepted, see ItemSortPolicy.
      *
-     * @param pageable the pageable
-     * @return the items
+     * @param filter the filter
+     * @param requestedPageable the pageable requested
+     * @param webRequest the web request
+     * @return the items, either a page or its JSON bytes
      */
-    @Operation(summary = "Retrieve items", description = "Use this API to retrieve a paginated collection of items.")
+    @Operation(summary = "Retrieve items", description = "Use this API to retrieve a paginated collection of items. "
+            + "The items can be filtered by creation or update time and by name, all the filters given must match. "
+            + "They can be sorted by id, name, createdTimestamp or updatedTimestamp, ties being broken by id. "
+            + "Send the ETag of a previous response in an If-None-Match header to get 304 Not Modified when the page did not change.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Ok", content = @Content(schema = @Schema(implementation = Page.class))),
+            @ApiResponse(responseCode = "304", description = "Not Modified", content = @Content(schema = @Schema(implementation = Void.class))),
             @ApiResponse(responseCode = "400", description = "Invalid input", content = @Content(schema = @Schema(implementation = ApiError.class))),
             @ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
     @SecurityRequirement(name = "jwt", scopes = {})
     @GetMapping(value = API_PATH, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Page<ItemDto>> getItems(@ParameterObject Pageable pageable){
-	   Page<ItemDto> page = itemsService.getItems(pageable);
-	   return ResponseEntity.ok().body(page);
+    public ResponseEntity<?> getItems(@ParameterObject ItemFilter filter, @ParameterObject Pageable requestedPageable, WebRequest webRequest){
+    	Pageable pageable = itemSortPolicy.apply(requestedPageable);
+    	if(filter.hasCriteria()) {
+    		Page<ItemDto> page = itemsService.getItems(filter, pageable);
+    		String eTag = ItemETags.ofPage(page, ItemDto::getId, ItemDto::getVersion);
+    		if(webRequest.checkNotModified(eTag)) {
+    			return null;
+    		}
+    		return ResponseEntity.ok().eTag(eTag).body(page);
+    	}
+    	if(itemsService.isSerializedPage(pageable)) {
+    		SerializedPage serializedPage = itemsService.getSerializedItems(pageable);
+    		if(webRequest.checkNotModified(serializedPage.getETag())) {
+    			return null;
+    		}
+    		return ResponseEntity.ok()
+    				.contentType(MediaType.APPLICATION_JSON)
+    				.body(serializedPage.getJson());
+    	}
+    	if(null != webRequest.getHeader(HttpHeaders.IF_NONE_MATCH)) {
+    		Page<ItemVersion> versions = itemsService.getItemVersions(pageable);
+    		if(webRequest.checkNotModified(ItemETags.ofPage(versions, ItemVersion::getId, ItemVersion::getVersion))) {
+    			return null;
+    		}
+    	}
+    	Page<ItemDto> page = itemsService.getItems(pageable);
+    	return ResponseEntity.ok()
+    			.eTag(ItemETags.ofPage(page, ItemDto::getId, ItemDto::getVersion))
+    			.body(page);
 	}
     
     
+    /**
+     * Gets a slice of the items.
+     *
+     * @param pageable the pageable
+     * @return the slice of items
+     */
+    @Operation(summary = "Retrieve items without a total", description = "Use this API with 'slice=true' to retrieve a page of items "
+            + "without counting the whole collection. The response only tells whether a next page exists. "
+            + "An approximate total, refreshed in the background, is returned in the " + APPROXIMATE_TOTAL_COUNT_HEADER + " header when known.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = @Content(schema = @Schema(implementation = Slice.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid input", content = @Content(schema = @Schema(implementation = ApiError.class))),
+            @ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
+    @SecurityRequirement(name = "jwt", scopes = {})
+    @GetMapping(value = API_PATH, params = "slice=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Slice<ItemDto>> getItemsSlice(@ParameterObject Pageable pageable){
+    	Slice<ItemDto> slice = itemsService.getItemsSlice(itemSortPolicy.apply(pageable));
+    	ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+    	itemsService.getApproximateItemCount()
+    		.ifPresent(count -> builder.header(APPROXIMATE_TOTAL_COUNT_HEADER, String.valueOf(count)));
+    	return builder.body(slice);
+    }
+    
+    
+    /**
+     * Gets the items following a cursor.
+     *
+     * @param after the cursor from the previous page, empty for the first page
+     * @param size the page size
+     * @return the items
+     */
+    @Operation(summary = "Retrieve items by cursor", description = "Use this API to walk the collection of items in id order. "
+            + "Pass an empty 'after' parameter for the first page, then the 'nextCursor' of each page to get the following one. "
+            + "Unlike page numbers, the cost of a page does not grow with how deep into the collection it is.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = @Content(schema = @Schema(implementation = CursorPageDto.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid input", content = @Content(schema = @Schema(implementation = ApiError.class))),
+            @ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
+    @SecurityRequirement(name = "jwt", scopes = {})
+    @GetMapping(value = API_PATH, params = "after", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CursorPageDto<ItemDto>> getItemsAfter(
+    		@RequestParam @Parameter(description = "The cursor returned with the previous page, empty for the first page") String after,
+    		@RequestParam(defaultValue = "10") @Min(1) @Max(MAX_PAGE_SIZE) int size){
+    	CursorPageDto<ItemDto> page = itemsService.getItemsAfter(after, size);
+    	return ResponseEntity.ok().body(page);
+    }
+    
+    
+    /**
+     * Searches the items.
+     *
+     * @param q the words to search for
+     * @param pageable the pageable
+     * @return the page of matching items
+     */
+    @Operation(summary = "Search items", description = "Use this API to find the items whose name or description hold all the given words. "
+            + "Items are returned most relevant first, a match in the name counting more than one in the description. "
+            + "Only the first " + ItemsService.MAX_SEARCH_RESULTS + " results can be paged through.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = @Content(schema = @Schema(implementation = Page.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid input", content = @Content(schema = @Schema(implementation = ApiError.class))),
+            @ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
+    @SecurityRequirement(name = "jwt", scopes = {})
+    @GetMapping(value = API_PATH + ":search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Page<ItemDto>> searchItems(
+    		@RequestParam @NotBlank @Size(max = MAX_QUERY_LENGTH) @Parameter(description = "The words to search for") String q,
+    		@ParameterObject Pageable pageable){
+    	Page<ItemDto> page = itemsService.searchItems(q, pageable);
+    	return ResponseEntity.ok().body(page);
+    }    
+    
+    /**
+     * Suggests item names.
+     *
+     * @param prefix the start of the name
+     * @param limit the maximum number of names
+     * @return the names
+     */
+    @Operation(summary = "Suggest item names", description = "Use this API to autocomplete an item name. "
+            + "The distinct names starting with the prefix, whatever the case, are returned in alphabetical order.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = @Content(array = @ArraySchema(schema = @Schema(implementation = String.class)))),
+            @ApiResponse(responseCode = "400", description = "Invalid input", content = @Content(schema = @Schema(implementation = ApiError.class))),
+            @ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
+    @SecurityRequirement(name = "jwt", scopes = {})
+    @GetMapping(value = API_PATH + ":suggest", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<String>> suggestItemNames(
+    		@RequestParam @NotBlank @Size(max = MAX_PREFIX_LENGTH) @Parameter(description = "The start of the name") String prefix,
+    		@RequestParam(defaultValue = "10") @Min(1) @Max(MAX_SUGGESTIONS) @Parameter(description = "The maximum number of names") int limit){
+    	List<String> names = itemsService.suggestItemNames(prefix, limit);
+    	return ResponseEntity.ok().body(names);
+    }
+    
+    /**
+     * Exports all the items.
+     * 
+     * The items are written to the response as they are read from the
+     * database, one per line, so the memory used does not depend on how
+     * many items are exported.
+     *
+     * @param format the format
+     * @param response the response
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Operation(summary = "Export all items", description = "Use this API to download every item in id order, "
+            + "streamed as newline delimited JSON, or as CSV with 'format=csv'.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = {
+            		@Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = ItemDto.class)),
+            		@Content(mediaType = "text/csv", schema = @Schema(implementation = String.class)) }),
+            @ApiResponse(responseCode = "400", description = "Invalid input", content = @Content(schema = @Schema(implementation = ApiError.class))),
+            @ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
+    @SecurityRequirement(name = "jwt", scopes = {})
+    @GetMapping(API_PATH + ":export")
+    public void exportItems(@RequestParam(defaultValue = "ndjson") @Parameter(description = "The format, ndjson or csv") ExportFormat format, 
+    		HttpServletResponse response) throws IOException {
+    	response.setContentType(ItemFormats.mediaTypeOf(format).toString());
+    	response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    	response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"items." + format + "\"");
+    	try(SequenceWriter writer = ItemFormats.open(format, response.getOutputStream(), objectMapper)) {
+    		itemsService.exportItems(itemDto -> write(writer, itemDto));
+    	}
+    }
+    
+    
     /**
      * Save item.
      *
@@ -102,45 +322,143 @@ public class ItemsController {
     }
     
     
+    /**
+     * Save items.
+     *
+     * @param itemDtos the item dtos
+     * @return the response entity
+     */
+    @Operation(summary = "Submit a batch of new items", description = "Use this API to generate many items in one call. "
+            + "The whole batch is validated before anything is saved, then the items are inserted in chunks. "
+            + "The response holds one confirmation per item, in the order the items were submitted.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "accepted", content = @Content(array = @ArraySchema(schema = @Schema(implementation = ConfirmationDto.class)))),
+            @ApiResponse(responseCode = "400", description = "Invalid input", content = @Content(schema = @Schema(implementation = ApiError.class))),
+            @ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
+    @PostMapping(API_PATH + ":batch")
+    public ResponseEntity<List<ConfirmationDto>> saveItems(@RequestBody @Parameter(description = "The new items", required = true) List<@NotNull @Valid ItemDto> itemDtos){
+    	List<ConfirmationDto> confirmationDtos = itemsService.saveItems(itemDtos);
+    	return ResponseEntity.accepted().body(confirmationDtos);
+    }
+    
+    
+    /**
+     * Import items.
+     * 
+     * The upload is parsed as it is read and the items are saved in chunks,
+     * so neither the upload nor the report is ever held in memory as a whole.
+     * The report is written as the chunks are saved, one line per record.
+     *
+     * @param request the request
+     * @param response the response
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Operation(summary = "Import items", description = "Use this API to load a large number of items from newline delimited JSON, "
+            + "or from CSV with a header line naming the columns. Each record is validated on its own, valid records are saved "
+            + "and invalid ones skipped. The response is a stream of newline delimited results, one per record, giving its line, "
+            + "whether it was accepted along with the new ID, or why it was rejected.")
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "The items to import", required = true, content = {
+            @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = ItemDto.class)),
+            @Content(mediaType = "text/csv", schema = @Schema(implementation = String.class)) })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, 
+            		schema = @Schema(implementation = ItemImportResultDto.class))),
+            @ApiResponse(responseCode = "415", description = "Unsupported media type", content = @Content(schema = @Schema(implementation = ApiError.class))),
+            @ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
+    @PostMapping(value = API_PATH + ":import", consumes = { MediaType.APPLICATION_NDJSON_VALUE, "text/csv" })
+    public void importItems(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    	MediaType contentType = MediaType.parseMediaType(request.getContentType());
+    	Iterator<ItemImportLine> lines = ItemFormats.openImport(contentType, request.getInputStream(), objectMapper);
+    	response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+    	response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    	try(SequenceWriter writer = ItemFormats.openNdjson(ItemImportResultDto.class, response.getOutputStream(), objectMapper)) {
+    		itemsService.importItems(lines, result -> write(writer, result));
+    	}
+    }
+    
+    
     /**
      * Gets the item by id.
+     * 
+     * The response carries an ETag and a Last-Modified header. When the request
+     * is conditional, only the item's version is queried and 304 is returned
+     * if it did not change.
      *
      * @param id the id
+     * @param webRequest the web request
      * @return the item by id
      */
-    @Operation(summary = "Gets an item", description = "Use this API to retrieve an existing item.")
+    @Operation(summary = "Gets an item", description = "Use this API to retrieve an existing item. "
+            + "Send the ETag of a previous response in an If-None-Match header, or its Last-Modified date in an If-Modified-Since header, "
+            + "to get 304 Not Modified when the item did not change.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = ItemDto.class))),
+            @ApiResponse(responseCode = "304", description = "Not Modified", content = @Content(schema = @Schema(implementation = Void.class))),
             @ApiResponse(responseCode = "400", description = "Invalid input", content = @Content(schema = @Schema(implementation = ApiError.class))),
             @ApiResponse(responseCode = "404", description = "Not Found", content = @Content(schema = @Schema(implementation = Void.class))),
             @ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
     @SecurityRequirement(name = "jwt", scopes = {})
     @GetMapping(API_PATH + "/{id}")
-    public ResponseEntity<ItemDto> getItemById(@PathVariable long id){
+    public ResponseEntity<ItemDto> getItemById(@PathVariable long id, WebRequest webRequest){
+    	if(null != webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) || null != webRequest.getHeader(HttpHeaders.IF_MODIFIED_SINCE)) {
+    		Optional<ItemVersion> version = itemsService.getItemVersion(id);
+    		if(!version.isPresent()) {
+    			return ResponseEntity.notFound().build();
+    		}
+    		String eTag = (null == version.get().getVersion()) ? null : ItemETags.of(id, version.get().getVersion());
+    		long lastModified = (null == version.get().getUpdatedTimestamp()) ? -1 : version.get().getUpdatedTimestamp().toEpochMilli();
+    		if(webRequest.checkNotModified(eTag, lastModified)) {
+    			return null;
+    		}
+    		// the validators are already set on the response by checkNotModified
+    		return itemsService.getItemById(id)
+    				.map(response -> ResponseEntity.ok().body(response))
+    				.orElse(ResponseEntity.notFound().build());
+    	}
     	return itemsService.getItemById(id)
-    			.map(response -> ResponseEntity.ok().body(response))
+    			.map(response -> {
+    				ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+    				if(null != response.getVersion()) {
+    					builder.eTag(ItemETags.of(id, response.getVersion()));
+    				}
+    				if(null != response.getDateModified()) {
+    					builder.lastModified(response.getDateModified());
+    				}
+    				return builder.body(response);
+    			})
     			.orElse(ResponseEntity.notFound().build());
     }
     
     
     /**
      * Edits the item.
+     * 
+     * When an If-Match header carrying the item's entity tag is sent, the item
+     * is only modified if it is still at that version, otherwise 412 is returned.
+     * An If-Match of * only requires the item to exist, 412 being returned
+     * rather than 404 when it does not.
      *
      * @param id the id
+     * @param ifMatch the If-Match header, optional
      * @param itemDto the item dto
      * @return the response entity
      */
     @Operation(summary = "Modifies an item", description = "Use this API to modify an item. "
             + "In some cases this PUT method may return a 202 ACCEPTED response code, "
             + "in which case the data returned will contain a status code, and an identifier. "
-            + "The identifier can then be used in subsequent GET calls to obtain the item at a later time.")
+            + "The identifier can then be used in subsequent GET calls to obtain the item at a later time. "
+            + "Send the item's ETag in an If-Match header to only modify it if nobody else did in the meantime.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "202", description = "accepted", content = @Content(schema = @Schema(implementation = ConfirmationDto.class))),
             @ApiResponse(responseCode = "400", description = "Invalid input", content = @Content(schema = @Schema(implementation = ApiError.class))),
+            @ApiResponse(responseCode = "404", description = "Not Found", content = @Content(schema = @Schema(implementation = ApiError.class))),
+            @ApiResponse(responseCode = "412", description = "Precondition Failed", content = @Content(schema = @Schema(implementation = ApiError.class))),
             @ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
     @SecurityRequirement(name = "jwt", scopes = {})
     @PutMapping(API_PATH + "/{id}")
-    public ResponseEntity<ConfirmationDto> editItem(@PathVariable long id, @Valid @RequestBody @Parameter(description = "A modified item", required = true) ItemDto itemDto){
+    public ResponseEntity<ConfirmationDto> editItem(@PathVariable long id, 
+    		@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) @Parameter(description = "The ETag of the item being modified") String ifMatch,
+    		@Valid @RequestBody @Parameter(description = "A modified item", required = true) ItemDto itemDto){
     	if(id != itemDto.getId()) {
     		String message = messageSource.getMessage("itemscontroller.validationexception.pathiddoesntmatchobject", 
     				new Object[] { String.valueOf(id), String.valueOf(itemDto.getId())},
@@ -148,8 +466,26 @@ public class ItemsController {
     		throw new ValidationException(message);
     	}
     	
-    	ConfirmationDto confirmationDto = itemsService.editItem(itemDto);
-    	return ResponseEntity.accepted().body(confirmationDto);
+    	String mismatchMessage = messageSource.getMessage("itemscontroller.optimisticlockingfailureexception.ifmatchmismatch", 
+    			new Object[] { String.valueOf(id), ifMatch },
+    			LocaleContextHolder.getLocale());
+    	Long expectedVersion = ItemETags.parseIfMatch(id, ifMatch, mismatchMessage);
+    	ConfirmationDto confirmationDto;
+    	try {
+    		confirmationDto = itemsService.editItem(itemDto, expectedVersion);
+    	}
+    	catch(EntityNotFoundException e) {
+    		if(ItemETags.isAny(ifMatch)) {
+    			throw new OptimisticLockingFailureException(mismatchMessage, e);
+    		}
+    		throw e;
+    	}
+    	if(null == expectedVersion) {
+    		return ResponseEntity.accepted().body(confirmationDto);
+    	}
+    	return ResponseEntity.accepted()
+    			.eTag(ItemETags.of(id, expectedVersion + 1))
+    			.body(confirmationDto);
     }
     
    
@@ -169,4 +505,39 @@ public class ItemsController {
     	itemsService.deleteItemById(id);
     	response.setStatus(HttpServletResponse.SC_NO_CONTENT);
     }
+    
+    
+    /**
+     * Delete by ids.
+     *
+     * @param ids the ids
+     * @param response the response
+     */
+    @Operation(summary = "Deletes items", description = "Use this API to delete several items at once, "
+            + "for example DELETE /api/v1/items?ids=1,2,3. Ids of items that do not exist are ignored.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "No Content", content = @Content(schema = @Schema(implementation = Void.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid input", content = @Content(schema = @Schema(implementation = ApiError.class))),
+            @ApiResponse(responseCode = "503", description = "Service unavailable", content = @Content(schema = @Schema(implementation = ApiError.class))) })
+    @DeleteMapping(value = API_PATH, params = "ids")
+    public void deleteByIds(@RequestParam @Size(min = 1, max = ItemsService.MAX_BATCH_SIZE) List<@NotNull Long> ids, HttpServletResponse response) {
+    	itemsService.deleteItemsByIds(ids);
+    	response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+    
+    
+    /**
+     * Writes a value of a streamed response.
+     *
+     * @param writer the writer
+     * @param value the value
+     */
+    private static void write(SequenceWriter writer, Object value) {
+    	try {
+    		writer.write(value);
+    	}
+    	catch(IOException e) {
+    		throw new UncheckedIOException(e);
+    	}
+    }
 }
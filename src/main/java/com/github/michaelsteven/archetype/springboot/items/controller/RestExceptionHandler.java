@@ -3,15 +3,18 @@ package com.github.michaelsteven.archetype.springboot.items.controller;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.persistence.EntityNotFoundException;
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import javax.validation.ValidationException;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.stereotype.Component;
+import org.springframework.validation.BindException;
 import org.springframework.validation.FieldError;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.HttpMediaTypeNotSupportedException;
@@ -27,6 +30,7 @@ import org.springframework.web.method.annotation.MethodArgumentTypeMismatchExcep
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
 import com.github.michaelsteven.archetype.springboot.items.model.ApiError;
+import com.github.michaelsteven.archetype.springboot.items.service.ItemIngestQueueFullException;
 
 
 /**
@@ -70,6 +74,30 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler
         return handleExceptionInternal(exception, apiError, headers, apiError.getStatus(), request);
     }
 
+    /**
+     * Handle bind exception, raised when query parameters bound to an object,
+     * such as the item filter, cannot be converted.
+     *
+     * @param exception the exception
+     * @param headers   the headers
+     * @param status    the status
+     * @param request   the request
+     * @return the response entity
+     */
+    @Override
+    protected ResponseEntity<Object> handleBindException(BindException exception, HttpHeaders headers,
+            HttpStatus status, WebRequest request)
+    {
+        List<String> errors = new ArrayList<>();
+        for (FieldError error : exception.getFieldErrors())
+        {
+            errors.add(error.getField() + " should be of type " + exception.getFieldType(error.getField()).getName());
+        }
+
+        ApiError apiError = new ApiError(HttpStatus.BAD_REQUEST, "Invalid query parameters", errors);
+        return handleExceptionInternal(exception, apiError, headers, apiError.getStatus(), request);
+    }
+
     /**
      * Handle missing servlet request parameter.
      *
@@ -126,6 +154,58 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler
         return new ResponseEntity<>(apiError, new HttpHeaders(), apiError.getStatus());
     }
 
+    /**
+     * Handle entity not found exception.
+     *
+     * @param exception the exception
+     * @param request   the request
+     * @return the response entity
+     */
+    @ExceptionHandler({ EntityNotFoundException.class })
+    public ResponseEntity<Object> handleEntityNotFoundException(EntityNotFoundException exception, WebRequest request)
+    {
+        ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, exception.getLocalizedMessage(), exception.getLocalizedMessage());
+        return new ResponseEntity<>(apiError, new HttpHeaders(), apiError.getStatus());
+    }
+
+    /**
+     * Handle optimistic locking failure exception.
+     * 
+     * Raised when a conditional modification found the resource at another
+     * version than the one the client expected.
+     *
+     * @param exception the exception
+     * @param request   the request
+     * @return the response entity
+     */
+    @ExceptionHandler({ OptimisticLockingFailureException.class })
+    public ResponseEntity<Object> handleOptimisticLockingFailureException(OptimisticLockingFailureException exception,
+            WebRequest request)
+    {
+        ApiError apiError = new ApiError(HttpStatus.PRECONDITION_FAILED, exception.getLocalizedMessage(), exception.getLocalizedMessage());
+        return new ResponseEntity<>(apiError, new HttpHeaders(), apiError.getStatus());
+    }
+
+    /**
+     * Handle item ingest queue full exception.
+     * 
+     * Raised when new items arrive faster than they are inserted, the client
+     * is told when to retry.
+     *
+     * @param exception the exception
+     * @param request   the request
+     * @return the response entity
+     */
+    @ExceptionHandler({ ItemIngestQueueFullException.class })
+    public ResponseEntity<Object> handleItemIngestQueueFullException(ItemIngestQueueFullException exception,
+            WebRequest request)
+    {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfterSeconds()));
+        ApiError apiError = new ApiError(HttpStatus.SERVICE_UNAVAILABLE, exception.getLocalizedMessage(), exception.getLocalizedMessage());
+        return new ResponseEntity<>(apiError, headers, apiError.getStatus());
+    }
+
     /**
      * Handle method argument type mismatch.
      *
@@ -0,0 +1,40 @@
+package com.github.michaelsteven.archetype.springboot.items.model;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+
+/**
+ * Instantiates a new cursor page dto.
+ *
+ * A page of results addressed by an opaque cursor rather than a page number,
+ * so that fetching the next page does not depend on how deep into the
+ * collection the client already is.
+ *
+ * @param <T> the content type
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(name="CursorPage")
+public class CursorPageDto<T> {
+
+	/** The content. */
+	private List<T> content;
+
+	/** The requested page size. */
+	@Schema(name = "size", description="The maximum number of elements in the page", example = "10")
+	private int size;
+
+	/** Whether another page follows this one. */
+	@Schema(name = "hasNext", description="True when more elements follow this page")
+	private boolean hasNext;
+
+	/** The cursor for the next page. */
+	@Schema(name = "nextCursor", description="Opaque cursor to pass as the 'after' parameter to fetch the next page. Null on the last page.")
+	private String nextCursor;
+}
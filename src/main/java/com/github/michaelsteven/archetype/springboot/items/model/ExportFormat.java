@@ -0,0 +1,9 @@
+package com.github.michaelsteven.archetype.springboot.items.model;
+
+/**
+ * The Enum ExportFormat.
+ */
+public enum ExportFormat {
+	ndjson,
+	csv;
+}
@@ -20,6 +20,9 @@ import lombok.NoArgsConstructor;
  * @param name the name
  * @param description the description
  * @param dateSubmitted the date submitted
+ * @param version the version
+ * @param dateModified the date modified
+ * @param status the status
  */
 @Data
 @NoArgsConstructor
@@ -47,4 +50,16 @@ public class ItemDto {
 	@Schema(hidden = true)
 	private ZonedDateTime dateSubmitted;
 	
+	/** The version, incremented on every modification. */
+	@Schema(name = "version", description="The version of the item, incremented on every modification", example = "0", accessMode = Schema.AccessMode.READ_ONLY)
+	private Long version;
+	
+	/** The date modified. */
+	@Schema(hidden = true)
+	private ZonedDateTime dateModified;
+	
+	/** The status, ignored when the item is created or edited. */
+	@Schema(name = "status", description="Whether the item was processed yet", example = "SUBMITTED", accessMode = Schema.AccessMode.READ_ONLY)
+	private ItemStatus status;
+	
 }
@@ -1,11 +1,28 @@
 package com.github.michaelsteven.archetype.springboot.items.model;
 
+import java.time.Instant;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
 import javax.persistence.Table;
+import javax.persistence.Transient;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemIdGenerator;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -13,17 +30,40 @@ import lombok.NoArgsConstructor;
 
 /**
  * Instantiates a new item entity.
+ * 
+ * Loaded entities are kept in the second-level cache region named after
+ * this class, sized in ehcache.xml.
+ * 
+ * The columns a listing can be filtered by are indexed, see ItemSpecifications.
+ * The status is indexed with the created timestamp, for the ItemProcessor to
+ * claim the oldest submitted items.
  */
 @Data
 @EqualsAndHashCode(callSuper=false)
 @NoArgsConstructor
 @Entity
-@Table(name = "items")
+@Table(name = "items", indexes = {
+		@Index(name = "items_created_ts_idx", columnList = "createdTs"),
+		@Index(name = "items_updated_ts_idx", columnList = "updatedTs"),
+		@Index(name = "items_name_idx", columnList = "name"),
+		@Index(name = "items_status_created_ts_idx", columnList = "status,createdTs") })
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class ItemEntity extends Auditable {
 
-	/** The id. */
+	/** 
+	 * The id.
+	 * 
+	 * Drawn from a pooled sequence rather than an identity column, so ids are
+	 * known before the insert and Hibernate can batch the inserts. An id
+	 * already set is kept, see ItemIdGenerator.
+	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ItemIdGenerator.SEQUENCE_NAME)
+	@GenericGenerator(name = ItemIdGenerator.SEQUENCE_NAME, strategy = "com.github.michaelsteven.archetype.springboot.items.repository.ItemIdGenerator",
+			parameters = {
+					@Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = ItemIdGenerator.SEQUENCE_NAME),
+					@Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = ItemIdGenerator.INCREMENT_SIZE) })
 	@Column(name = "id", unique = true, nullable = false)
 	private Long id;
 	
@@ -32,4 +72,35 @@ public class ItemEntity extends Auditable {
 	
 	/** The description. */
 	private String description;
+	
+	/** 
+	 * The status, submitted until the ItemProcessor processed the item. Rows
+	 * written before the column existed must be set to SUBMITTED to be processed.
+	 */
+	@Enumerated(EnumType.STRING)
+	@Column(name = "status", length = 16)
+	private ItemStatus status = ItemStatus.SUBMITTED;
+	
+	/** The version, incremented on every update and used for optimistic locking. */
+	@Version
+	private Long version;
+	
+	/** 
+	 * The time the item was accepted, when it is inserted later, such as a
+	 * queued item. Kept as its created timestamp instead of the time of the
+	 * insert the auditing stamps.
+	 */
+	@Transient
+	private Instant acceptedTimestamp;
+	
+	/**
+	 * Keeps the accepted timestamp as the created timestamp. Runs after the
+	 * auditing listener, as the callbacks of the entity follow its listeners.
+	 */
+	@PrePersist
+	void keepAcceptedTimestamp() {
+		if(null != acceptedTimestamp) {
+			setCreatedTimestamp(acceptedTimestamp);
+		}
+	}
 }
@@ -0,0 +1,52 @@
+package com.github.michaelsteven.archetype.springboot.items.model;
+
+import java.time.Instant;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+import io.swagger.v3.oas.annotations.Parameter;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+
+/**
+ * Instantiates a new item filter.
+ *
+ * The criteria an item listing can be narrowed by, bound from the query
+ * parameters. Criteria left out do not restrict the listing, the others must
+ * all match.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItemFilter {
+
+	/** The instant the items were created after, exclusive. */
+	@Parameter(description = "Only the items created after this instant, as ISO-8601", example = "2020-11-20T10:15:30Z")
+	@DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+	private Instant createdAfter;
+
+	/** The instant the items were created before, exclusive. */
+	@Parameter(description = "Only the items created before this instant, as ISO-8601", example = "2020-11-21T10:15:30Z")
+	@DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+	private Instant createdBefore;
+
+	/** The instant the items were last updated after, exclusive. */
+	@Parameter(description = "Only the items last updated after this instant, as ISO-8601", example = "2020-11-20T10:15:30Z")
+	@DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+	private Instant updatedAfter;
+
+	/** The name the items have, exactly. */
+	@Parameter(description = "Only the items with exactly this name")
+	private String name;
+
+	/**
+	 * Whether any criteria is set.
+	 *
+	 * @return true when the filter narrows the listing
+	 */
+	public boolean hasCriteria() {
+		return null != createdAfter || null != createdBefore || null != updatedAfter || null != name;
+	}
+}
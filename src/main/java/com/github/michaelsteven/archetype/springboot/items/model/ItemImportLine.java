@@ -0,0 +1,28 @@
+package com.github.michaelsteven.archetype.springboot.items.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+
+/**
+ * Instantiates a new item import line.
+ * 
+ * A record read from an import upload, or the reason it could not be read.
+ *
+ * @param lineNumber the line number the record starts on
+ * @param itemDto the item dto, null when the record could not be read
+ * @param error the reason the record could not be read, null when it was read
+ */
+@Data
+@AllArgsConstructor
+public class ItemImportLine {
+
+	/** The line number. */
+	private long lineNumber;
+	
+	/** The item dto. */
+	private ItemDto itemDto;
+	
+	/** The error. */
+	private String error;
+}
@@ -0,0 +1,40 @@
+package com.github.michaelsteven.archetype.springboot.items.model;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+
+/**
+ * Instantiates a new item import result dto.
+ *
+ * @param line the line number of the record
+ * @param status the status
+ * @param id the id of the saved item, null when rejected
+ * @param errors the reasons the record was rejected, null when accepted
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(name="ItemImportResult")
+public class ItemImportResultDto {
+
+	/** The line number. */
+	@Schema(name = "line", description="The line of the upload the record starts on", example = "2")
+	private long line;
+	
+	/** The status. */
+	@Schema(name = "status", description="Whether the record was saved or rejected")
+	private ItemImportStatus status;
+	
+	/** The id. */
+	@Schema(name = "id", description="The ID of the saved item", example ="1234567890")
+	private Long id;
+	
+	/** The errors. */
+	@Schema(name = "errors", description="The reasons the record was rejected")
+	private List<String> errors;
+}
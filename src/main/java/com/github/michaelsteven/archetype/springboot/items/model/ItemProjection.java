@@ -0,0 +1,62 @@
+package com.github.michaelsteven.archetype.springboot.items.model;
+
+import java.time.Instant;
+
+/**
+ * The Interface ItemProjection.
+ * 
+ * A closed projection of the items table holding only the columns an item
+ * response needs. Repository queries returning it select just these columns
+ * and the rows are never attached to the persistence context.
+ */
+public interface ItemProjection {
+
+	/**
+	 * Gets the id.
+	 *
+	 * @return the id
+	 */
+	Long getId();
+	
+	/**
+	 * Gets the name.
+	 *
+	 * @return the name
+	 */
+	String getName();
+	
+	/**
+	 * Gets the description.
+	 *
+	 * @return the description
+	 */
+	String getDescription();
+	
+	/**
+	 * Gets the created timestamp.
+	 *
+	 * @return the created timestamp
+	 */
+	Instant getCreatedTimestamp();
+	
+	/**
+	 * Gets the version.
+	 *
+	 * @return the version
+	 */
+	Long getVersion();
+	
+	/**
+	 * Gets the updated timestamp.
+	 *
+	 * @return the updated timestamp
+	 */
+	Instant getUpdatedTimestamp();
+	
+	/**
+	 * Gets the status.
+	 *
+	 * @return the status
+	 */
+	ItemStatus getStatus();
+}
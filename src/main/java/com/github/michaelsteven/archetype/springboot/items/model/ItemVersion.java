@@ -0,0 +1,34 @@
+package com.github.michaelsteven.archetype.springboot.items.model;
+
+import java.time.Instant;
+
+/**
+ * The Interface ItemVersion.
+ * 
+ * A closed projection of the items table holding only what is needed to
+ * tell whether a client's copy of an item is still current, so conditional
+ * requests can be answered without loading the item itself.
+ */
+public interface ItemVersion {
+
+	/**
+	 * Gets the id.
+	 *
+	 * @return the id
+	 */
+	Long getId();
+	
+	/**
+	 * Gets the version.
+	 *
+	 * @return the version
+	 */
+	Long getVersion();
+	
+	/**
+	 * Gets the updated timestamp.
+	 *
+	 * @return the updated timestamp
+	 */
+	Instant getUpdatedTimestamp();
+}
@@ -0,0 +1,65 @@
+package com.github.michaelsteven.archetype.springboot.items.model;
+
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Instantiates a new outbox event entity.
+ * 
+ * An event waiting in the outbox to be relayed, written in the transaction
+ * of the change it reports and deleted once relayed. Rows are relayed in id
+ * order, so the primary key is all the table needs.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "outbox_events")
+public class OutboxEventEntity {
+
+	/** The id, drawn from a pooled sequence so the inserts of a change can be batched. */
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_events_seq")
+	@SequenceGenerator(name = "outbox_events_seq", sequenceName = "outbox_events_seq", allocationSize = 50)
+	@Column(name = "id", unique = true, nullable = false)
+	private Long id;
+	
+	/** The type of the event, telling what the payload holds. */
+	@Enumerated(EnumType.STRING)
+	@Column(name = "type", length = 16, nullable = false)
+	private OutboxEventType type;
+	
+	/** The event, as JSON. */
+	@Lob
+	@Column(name = "payload", nullable = false)
+	private String payload;
+	
+	/** The time the event was written. */
+	@Column(name = "createdTs", nullable = false)
+	private Instant createdTimestamp;
+	
+	/**
+	 * Constructor.
+	 *
+	 * @param type the type
+	 * @param payload the payload
+	 * @param createdTimestamp the created timestamp
+	 */
+	public OutboxEventEntity(OutboxEventType type, String payload, Instant createdTimestamp) {
+		this.type = type;
+		this.payload = payload;
+		this.createdTimestamp = createdTimestamp;
+	}
+}
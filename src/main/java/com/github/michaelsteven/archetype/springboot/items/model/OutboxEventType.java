@@ -0,0 +1,9 @@
+package com.github.michaelsteven.archetype.springboot.items.model;
+
+/**
+ * The Enum OutboxEventType.
+ */
+public enum OutboxEventType {
+	compliance,
+	change;
+}
@@ -0,0 +1,24 @@
+package com.github.michaelsteven.archetype.springboot.items.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Instantiates a new serialized page.
+ * 
+ * A page of items already written as JSON, along with the entity tag of
+ * those bytes, so it can be sent as is.
+ */
+@Data
+@AllArgsConstructor
+public class SerializedPage {
+	
+	/** The JSON bytes of the page. */
+	private byte[] json;
+	
+	/** The quoted entity tag of the JSON bytes. */
+	private String eTag;
+	
+	/** The ids of the items of the page, for the compliance events. */
+	private long[] itemIds;
+}
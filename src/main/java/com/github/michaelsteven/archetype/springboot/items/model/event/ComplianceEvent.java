@@ -1,5 +1,7 @@
 package com.github.michaelsteven.archetype.springboot.items.model.event;
 
+import java.time.Instant;
+
 import lombok.Data;
 
 /**
@@ -16,4 +18,16 @@ public class ComplianceEvent {
 	
 	/** The event source. */
 	private String eventSource;
+	
+	/** The id of the item affected, when known. */
+	private Long itemId;
+	
+	/** The time the event was recorded. */
+	private Instant timestamp;
+	
+	/** The auditor the event was recorded for. */
+	private String actor;
+	
+	/** The number of events this one stands for, more than one when reads are sampled or rolled up. */
+	private long count = 1L;
 }
@@ -0,0 +1,61 @@
+package com.github.michaelsteven.archetype.springboot.items.model.event;
+
+import java.time.Instant;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+import io.swagger.v3.oas.annotations.Parameter;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+
+/**
+ * Instantiates a new compliance event filter.
+ *
+ * The criteria the recorded compliance events can be queried by, bound from
+ * the query parameters. Criteria left out do not restrict the events, the
+ * others must all match.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ComplianceEventFilter {
+
+	/** The resource of the events, exactly. */
+	@Parameter(description = "Only the events of this resource, the fully qualified name of the service",
+			example = "com.github.michaelsteven.archetype.springboot.items.service.ItemsServiceImpl")
+	private String resource;
+
+	/** The action of the events. */
+	@Parameter(description = "Only the events of this action")
+	private ComplianceAction action;
+
+	/** The item the events are about. */
+	@Parameter(description = "Only the events of the item with this id")
+	private Long itemId;
+
+	/** The time of the first events, inclusive. */
+	@Parameter(description = "Only the events recorded at or after this instant, as ISO-8601", example = "2020-11-20T10:15:30Z")
+	@DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+	private Instant from;
+
+	/** The time past the last events, exclusive. */
+	@Parameter(description = "Only the events recorded before this instant, as ISO-8601", example = "2020-11-21T10:15:30Z")
+	@DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+	private Instant to;
+
+	/**
+	 * Checks if an event matches the criteria.
+	 *
+	 * @param complianceEvent the event
+	 * @return true, if it matches
+	 */
+	public boolean matches(ComplianceEvent complianceEvent) {
+		return (null == resource || resource.equals(complianceEvent.getResource()))
+				&& (null == action || action == complianceEvent.getAction())
+				&& (null == itemId || itemId.equals(complianceEvent.getItemId()))
+				&& (null == from || !complianceEvent.getTimestamp().isBefore(from))
+				&& (null == to || complianceEvent.getTimestamp().isBefore(to));
+	}
+}
@@ -0,0 +1,24 @@
+package com.github.michaelsteven.archetype.springboot.items.model.event;
+
+import java.util.Collection;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Item Change Event
+ * 
+ * Published by the items service whenever items were created, modified or
+ * deleted. Listeners bound to the transaction phase only see it once the
+ * change is committed.
+ */
+@Data
+@AllArgsConstructor
+public class ItemChangeEvent {
+	
+	/** The action. */
+	private ComplianceAction action;
+	
+	/** The ids of the items changed. */
+	private Collection<Long> itemIds;
+}
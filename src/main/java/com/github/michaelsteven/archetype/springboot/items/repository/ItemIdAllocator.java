@@ -0,0 +1,58 @@
+package com.github.michaelsteven.archetype.springboot.items.repository;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.github.michaelsteven.archetype.springboot.items.configuration.ShardRoutingDataSource;
+
+/**
+ * The Class ItemIdAllocator.
+ *
+ * Hands out item ids ahead of the insert, for the sharded items whose id
+ * decides their shard, and for the items queued by the ingest queue. Ids are
+ * reserved a block at a time from the items sequence, on the first shard when
+ * sharded, then handed out from memory. A block is read the way the pooled
+ * sequence generator of Hibernate reads it, the value of the sequence being
+ * the last id of the block, so both can draw from the same sequence.
+ */
+@Component
+public class ItemIdAllocator {
+
+	private JdbcTemplate jdbcTemplate;
+	private String nextValueSql;
+	private long blockSize;
+	private long nextId;
+	private long lastId;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param dataSource the data source
+	 * @param entityManagerFactory the entity manager factory, for the SQL dialect
+	 */
+	public ItemIdAllocator(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource instanceof ShardRoutingDataSource
+				? ((ShardRoutingDataSource) dataSource).getShard(0)
+				: dataSource);
+		this.nextValueSql = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect()
+				.getSequenceNextValString(ItemIdGenerator.SEQUENCE_NAME);
+		this.blockSize = Long.parseLong(ItemIdGenerator.INCREMENT_SIZE);
+	}
+
+	/**
+	 * Allocates an id.
+	 *
+	 * @return the id
+	 */
+	public synchronized long next() {
+		if(nextId == 0 || nextId > lastId) {
+			lastId = jdbcTemplate.queryForObject(nextValueSql, Long.class);
+			nextId = Math.max(1L, lastId - blockSize + 1);
+		}
+		return nextId++;
+	}
+}
@@ -0,0 +1,36 @@
+package com.github.michaelsteven.archetype.springboot.items.repository;
+
+import java.io.Serializable;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+/**
+ * The Class ItemIdGenerator.
+ *
+ * Draws the item ids from the pooled items sequence, like a plain sequence
+ * generator, unless the item already has an id. The ids of sharded items are
+ * assigned before they are saved, as the id decides the shard, see
+ * ItemIdAllocator.
+ */
+public class ItemIdGenerator extends SequenceStyleGenerator {
+
+	/** The name of the sequence. */
+	public static final String SEQUENCE_NAME = "items_seq";
+
+	/** The number of ids reserved from the sequence at a time. */
+	public static final String INCREMENT_SIZE = "50";
+
+	/**
+	 * Generate.
+	 *
+	 * @param session the session
+	 * @param object the item
+	 * @return the id the item has, or the next one of the sequence
+	 */
+	@Override
+	public Serializable generate(SharedSessionContractImplementor session, Object object) {
+		Serializable id = session.getEntityPersister(null, object).getIdentifier(object, session);
+		return null != id ? id : super.generate(session, object);
+	}
+}
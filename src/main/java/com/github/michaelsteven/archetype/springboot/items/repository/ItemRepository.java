@@ -1,15 +1,239 @@
 package com.github.michaelsteven.archetype.springboot.items.repository;
 
+import static org.hibernate.cfg.AvailableSettings.JPA_LOCK_TIMEOUT;
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemProjection;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemStatus;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemVersion;
 
 
 /**
  * The Interface ItemRepository.
+ * 
+ * The read queries return the ItemProjection, selecting only the columns
+ * needed to build a response instead of hydrating managed entities.
+ * 
+ * The collection queries, and the count queries of pages, go through the
+ * Hibernate query cache. Any write to the items table invalidates them.
+ * 
+ * Filtered listings are queried with the ItemSpecifications.
  */
 @Repository
-public interface ItemRepository extends JpaRepository<ItemEntity, Long> {
+public interface ItemRepository extends JpaRepository<ItemEntity, Long>, JpaSpecificationExecutor<ItemEntity> {
+
+	/** The lock timeout hint asking Hibernate to skip the rows locked by others, LockOptions.SKIP_LOCKED. */
+	String SKIP_LOCKED = "-2";
+
+	/**
+	 * Finds a page of the items.
+	 *
+	 * @param pageable the pageable
+	 * @return the page of items
+	 */
+	@QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+	Page<ItemProjection> findAllProjectedBy(Pageable pageable);
+	
+	/**
+	 * Finds a slice of the items.
+	 * 
+	 * Unlike a page, no count query is issued, one extra row is
+	 * fetched instead to tell whether a next slice exists.
+	 *
+	 * @param pageable the pageable
+	 * @return the slice of items
+	 */
+	@QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+	Slice<ItemProjection> findAllBy(Pageable pageable);
 
+	/**
+	 * Seeks to the items following the given id, in id order.
+	 *
+	 * Only the page size of the pageable is meant to be used, the offset should
+	 * always be zero. The position in the collection is expressed by the id
+	 * predicate instead, so the primary key index is used to seek straight to
+	 * the first row and deep pages cost the same as the first one.
+	 *
+	 * @param id the id to seek past
+	 * @param pageable the pageable, offset zero
+	 * @return the slice of items
+	 */
+	@QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+	Slice<ItemProjection> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+	
+	/**
+	 * Streams all the items, in id order.
+	 * 
+	 * Rows are read from a forward only cursor, a fetch size at a time, and as
+	 * projections they are never attached to the persistence context, so the
+	 * memory used does not grow with the number of items. The stream must be
+	 * consumed and closed within a transaction.
+	 *
+	 * @return the stream of items
+	 */
+	@QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+	Stream<ItemProjection> streamAllByOrderByIdAsc();
+	
+	/**
+	 * Finds an item by id.
+	 *
+	 * @param id the id
+	 * @return the item
+	 */
+	Optional<ItemProjection> findProjectedById(long id);
+	
+	/**
+	 * Finds the items with the given ids, in no particular order.
+	 *
+	 * @param ids the ids
+	 * @return the items that exist
+	 */
+	List<ItemProjection> findProjectedByIdIn(Collection<Long> ids);
+	
+	/**
+	 * Finds the version of an item by id.
+	 *
+	 * @param id the id
+	 * @return the item version
+	 */
+	Optional<ItemVersion> findVersionById(long id);
+	
+	/**
+	 * Finds a page of the item versions.
+	 *
+	 * @param pageable the pageable
+	 * @return the page of item versions
+	 */
+	@QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+	Page<ItemVersion> findAllVersionsBy(Pageable pageable);
+	
+	/**
+	 * Finds which of the given ids exist.
+	 *
+	 * @param ids the ids
+	 * @return the existing ids
+	 */
+	@Query("select i.id from ItemEntity i where i.id in :ids")
+	List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+	
+	/**
+	 * Finds the oldest items of a status and locks them until the transaction
+	 * of the caller ends. The items locked by another transaction are skipped,
+	 * so concurrent callers, on any instance, each get items of their own. The
+	 * databases without SKIP LOCKED, such as H2 or MySQL before 8, wait for
+	 * the locked items instead.
+	 *
+	 * @param status the status
+	 * @param pageable the pageable, giving the number of items to lock
+	 * @return the items locked
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@QueryHints(@QueryHint(name = JPA_LOCK_TIMEOUT, value = SKIP_LOCKED))
+	List<ItemEntity> findAndLockByStatusOrderByCreatedTimestampAsc(ItemStatus status, Pageable pageable);
+	
+	/**
+	 * Counts the items of a status.
+	 *
+	 * @param status the status
+	 * @return the item count
+	 */
+	long countByStatus(ItemStatus status);
+	
+	/**
+	 * Finds when the oldest item of a status was created.
+	 *
+	 * @param status the status
+	 * @return the created timestamp, empty when no item has the status
+	 */
+	@Query("select min(i.createdTimestamp) from ItemEntity i where i.status = :status")
+	Optional<Instant> findOldestCreatedTimestampByStatus(@Param("status") ItemStatus status);
+	
+	/**
+	 * Deletes an item with a single statement, without loading it first.
+	 *
+	 * @param id the id
+	 * @return the number of rows deleted
+	 */
+	@Transactional
+	@Modifying
+	@Query("delete from ItemEntity i where i.id = :id")
+	int deleteItemById(@Param("id") long id);
+	
+	/**
+	 * Deletes the items with the given ids with a single set based statement.
+	 *
+	 * @param ids the ids
+	 * @return the number of rows deleted
+	 */
+	@Transactional
+	@Modifying
+	@Query("delete from ItemEntity i where i.id in :ids")
+	int deleteItemsByIds(@Param("ids") Collection<Long> ids);
+	
+	/**
+	 * Updates an item with a single statement, without loading it first.
+	 * 
+	 * As the statement bypasses the entity listeners, the audit columns are
+	 * set by the caller.
+	 *
+	 * @param id the id
+	 * @param name the name
+	 * @param description the description
+	 * @param updatedTimestamp the updated timestamp
+	 * @param updatedBy the updated by
+	 * @return the number of rows updated
+	 */
+	@Transactional
+	@Modifying
+	@Query("update ItemEntity i set i.name = :name, i.description = :description, i.version = i.version + 1, "
+			+ "i.updatedTimestamp = :updatedTimestamp, i.updatedBy = :updatedBy where i.id = :id")
+	int updateItem(@Param("id") long id, @Param("name") String name, @Param("description") String description,
+			@Param("updatedTimestamp") Instant updatedTimestamp, @Param("updatedBy") String updatedBy);
+	
+	/**
+	 * Updates an item with a single statement, only if it is still at the expected version.
+	 * 
+	 * As the statement bypasses the entity listeners, the audit columns are
+	 * set by the caller.
+	 *
+	 * @param id the id
+	 * @param version the expected version
+	 * @param name the name
+	 * @param description the description
+	 * @param updatedTimestamp the updated timestamp
+	 * @param updatedBy the updated by
+	 * @return the number of rows updated, zero when the item does not exist or is at another version
+	 */
+	@Transactional
+	@Modifying
+	@Query("update ItemEntity i set i.name = :name, i.description = :description, i.version = i.version + 1, "
+			+ "i.updatedTimestamp = :updatedTimestamp, i.updatedBy = :updatedBy where i.id = :id and i.version = :version")
+	int updateItemIfVersion(@Param("id") long id, @Param("version") long version, @Param("name") String name, 
+			@Param("description") String description, @Param("updatedTimestamp") Instant updatedTimestamp, 
+			@Param("updatedBy") String updatedBy);
 }
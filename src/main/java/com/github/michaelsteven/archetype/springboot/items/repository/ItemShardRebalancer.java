@@ -0,0 +1,158 @@
+package com.github.michaelsteven.archetype.springboot.items.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.michaelsteven.archetype.springboot.items.configuration.ShardRoutingDataSource;
+
+/**
+ * The Class ItemShardRebalancer.
+ *
+ * Moves the items which are not on the shard of their id, as happens to most
+ * of them when shards are added to api.shards.urls. Each shard is scanned in
+ * id order a chunk at a time; the misplaced items of a chunk are copied to
+ * their shard, replacing any copy left by an interrupted run, then deleted
+ * from the shard they were on. Running it again after a failure resumes the
+ * move.
+ *
+ * Until an item is moved, the calls on its id alone go to its new shard and
+ * do not find it, while the listings still do. Rebalance right after changing
+ * the shards, before taking traffic.
+ */
+@Component
+@ConditionalOnProperty(name = "api.shards.urls")
+public class ItemShardRebalancer {
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemShardRebalancer.class);
+
+	/** The number of items scanned at a time. */
+	static final int CHUNK_SIZE = 500;
+
+	private ShardRoutingDataSource shardRoutingDataSource;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param shardRoutingDataSource the shard routing data source
+	 */
+	public ItemShardRebalancer(ShardRoutingDataSource shardRoutingDataSource) {
+		this.shardRoutingDataSource = shardRoutingDataSource;
+	}
+
+	/**
+	 * Counts the items of each shard.
+	 *
+	 * @return the item count of each shard, in shard order
+	 */
+	public Map<Integer, Long> countByShard() {
+		Map<Integer, Long> counts = new LinkedHashMap<>();
+		for(int shard = 0; shard < shardRoutingDataSource.getShardCount(); shard++) {
+			counts.put(shard, new JdbcTemplate(shardRoutingDataSource.getShard(shard))
+					.queryForObject("select count(*) from items", Long.class));
+		}
+		return counts;
+	}
+
+	/**
+	 * Moves every misplaced item to its shard.
+	 *
+	 * @return the number of items moved off each shard, in shard order
+	 */
+	public synchronized Map<Integer, Long> rebalance() {
+		Map<Integer, Long> moved = new LinkedHashMap<>();
+		for(int shard = 0; shard < shardRoutingDataSource.getShardCount(); shard++) {
+			moved.put(shard, rebalance(shard));
+		}
+		return moved;
+	}
+
+	/**
+	 * Moves the misplaced items of a shard.
+	 *
+	 * @param shard the shard
+	 * @return the number of items moved
+	 */
+	private long rebalance(int shard) {
+		int shardCount = shardRoutingDataSource.getShardCount();
+		JdbcTemplate source = new JdbcTemplate(shardRoutingDataSource.getShard(shard));
+		source.setMaxRows(CHUNK_SIZE);
+		long afterId = 0L;
+		long moved = 0L;
+		List<Map<String, Object>> rows;
+		do {
+			rows = source.queryForList("select * from items where id > ? order by id", afterId);
+			Map<Integer, List<Map<String, Object>>> misplaced = rows.stream()
+					.filter(row -> ItemShardRouter.shardOf(id(row), shardCount) != shard)
+					.collect(Collectors.groupingBy(row -> ItemShardRouter.shardOf(id(row), shardCount)));
+			for(Map.Entry<Integer, List<Map<String, Object>>> target : misplaced.entrySet()) {
+				copy(target.getValue(), shardRoutingDataSource.getShard(target.getKey()));
+				delete(target.getValue(), shardRoutingDataSource.getShard(shard));
+				moved += target.getValue().size();
+			}
+			if(!rows.isEmpty()) {
+				afterId = id(rows.get(rows.size() - 1));
+			}
+		}
+		while(rows.size() == CHUNK_SIZE);
+		if(moved > 0) {
+			logger.info("Moved {} items off shard {}", moved, shard);
+		}
+		return moved;
+	}
+
+	/**
+	 * Copies rows to a shard, in one transaction, replacing them if they are there already.
+	 *
+	 * @param rows the rows
+	 * @param dataSource the data source of the shard
+	 */
+	private static void copy(List<Map<String, Object>> rows, DataSource dataSource) {
+		List<String> columns = new ArrayList<>(rows.get(0).keySet());
+		String sql = "insert into items (" + String.join(", ", columns) + ") values ("
+				+ String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+		List<Object[]> values = rows.stream()
+				.map(row -> columns.stream().map(row::get).toArray())
+				.collect(Collectors.toList());
+		new TransactionTemplate(new DataSourceTransactionManager(dataSource)).executeWithoutResult(status -> {
+			delete(rows, dataSource);
+			new JdbcTemplate(dataSource).batchUpdate(sql, values);
+		});
+	}
+
+	/**
+	 * Deletes rows from a shard.
+	 *
+	 * @param rows the rows
+	 * @param dataSource the data source of the shard
+	 */
+	private static void delete(List<Map<String, Object>> rows, DataSource dataSource) {
+		List<Long> ids = rows.stream().map(ItemShardRebalancer::id).collect(Collectors.toList());
+		new NamedParameterJdbcTemplate(dataSource).update("delete from items where id in (:ids)",
+				Collections.singletonMap("ids", ids));
+	}
+
+	/**
+	 * Gets the id of a row.
+	 *
+	 * @param row the row
+	 * @return the id
+	 */
+	private static long id(Map<String, Object> row) {
+		return ((Number) row.get("id")).longValue();
+	}
+}
@@ -0,0 +1,291 @@
+package com.github.michaelsteven.archetype.springboot.items.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.michaelsteven.archetype.springboot.items.configuration.ShardRoutingDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The Class ItemShardRouter.
+ *
+ * Tells which shard an item lives on, from a hash of its id, and runs work
+ * against the shards: on the current thread for a single shard, joining the
+ * transaction of the caller, or in parallel over several shards, each in a
+ * transaction of its own on a thread of the shard pool.
+ *
+ * Every call is timed in the items.shard.calls metric, tagged with the shard,
+ * the operation and whether it succeeded.
+ */
+@Component
+@ConditionalOnProperty(name = "api.shards.urls")
+public class ItemShardRouter implements DisposableBean {
+
+	/** The name of the shard call metric. */
+	static final String SHARD_METRIC = "items.shard.calls";
+
+	private int shardCount;
+	private MeterRegistry meterRegistry;
+	private TransactionTemplate readOnlyTransaction;
+	private TransactionTemplate readWriteTransaction;
+	private ExecutorService executorService;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param shardRoutingDataSource the shard routing data source
+	 * @param transactionManager the transaction manager
+	 * @param meterRegistry the meter registry
+	 * @param threads the number of threads running work on the shards in parallel
+	 */
+	public ItemShardRouter(ShardRoutingDataSource shardRoutingDataSource, PlatformTransactionManager transactionManager,
+			MeterRegistry meterRegistry, @Value("${api.shards.threads:16}") int threads) {
+		this.shardCount = shardRoutingDataSource.getShardCount();
+		this.meterRegistry = meterRegistry;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+		this.readWriteTransaction = new TransactionTemplate(transactionManager);
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("item-shard-");
+		threadFactory.setDaemon(true);
+		this.executorService = Executors.newFixedThreadPool(threads, threadFactory);
+	}
+
+	/**
+	 * Gets the number of shards.
+	 *
+	 * @return the shard count
+	 */
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	/**
+	 * Gets the shard an item lives on.
+	 *
+	 * @param id the id of the item
+	 * @return the shard
+	 */
+	public int shardOf(long id) {
+		return shardOf(id, shardCount);
+	}
+
+	/**
+	 * Gets the shard an item lives on among a number of shards.
+	 *
+	 * The id is mixed first, so that ids drawn in blocks still spread evenly.
+	 *
+	 * @param id the id of the item
+	 * @param shardCount the shard count
+	 * @return the shard
+	 */
+	public static int shardOf(long id, int shardCount) {
+		long hash = id;
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return (int) Long.remainderUnsigned(hash, shardCount);
+	}
+
+	/**
+	 * Groups items by the shard they live on.
+	 *
+	 * @param <T> the type of the items
+	 * @param items the items
+	 * @param id the id of an item
+	 * @return the items of each shard holding any, in shard order
+	 */
+	public <T> Map<Integer, List<T>> groupByShard(Iterable<T> items, ToLongFunction<T> id) {
+		Map<Integer, List<T>> groups = new TreeMap<>();
+		for(T item : items) {
+			groups.computeIfAbsent(shardOf(id.applyAsLong(item)), shard -> new ArrayList<>()).add(item);
+		}
+		return groups;
+	}
+
+	/**
+	 * Runs work against a shard on the current thread. The work joins the
+	 * transaction of the caller, which must not have run any statement on
+	 * another shard.
+	 *
+	 * @param <T> the type of the result
+	 * @param shard the shard
+	 * @param operation the name of the operation, for the metric
+	 * @param work the work
+	 * @return the result of the work
+	 */
+	public <T> T onShard(int shard, String operation, Supplier<T> work) {
+		Integer previousShard = ShardRoutingDataSource.getCurrentShard();
+		ShardRoutingDataSource.setCurrentShard(shard);
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			T result = work.get();
+			success = true;
+			return result;
+		}
+		finally {
+			ShardRoutingDataSource.setCurrentShard(previousShard);
+			meterRegistry.timer(SHARD_METRIC, "shard", String.valueOf(shard), "operation", operation,
+					"outcome", success ? "success" : "failure").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Runs work against every shard in parallel, each in a read-only transaction.
+	 *
+	 * @param <T> the type of the results
+	 * @param operation the name of the operation, for the metric
+	 * @param work the work, given the shard
+	 * @return the results, in shard order
+	 */
+	public <T> List<T> onEachShard(String operation, IntFunction<T> work) {
+		return onShards(IntStream.range(0, shardCount).boxed().collect(Collectors.toList()), operation, true, work);
+	}
+
+	/**
+	 * Runs work against shards in parallel, each in a transaction of its own.
+	 * The transactions commit independently, a failure on a shard does not
+	 * roll back the others.
+	 *
+	 * @param <T> the type of the results
+	 * @param shards the shards
+	 * @param operation the name of the operation, for the metric
+	 * @param readOnly whether the transactions are read-only
+	 * @param work the work, given the shard
+	 * @return the results, in the order of the shards
+	 * @throws RuntimeException the first failure of the work, once every shard is done
+	 */
+	public <T> List<T> onShards(Collection<Integer> shards, String operation, boolean readOnly, IntFunction<T> work) {
+		List<Future<T>> futures = submit(shards, operation, readOnly ? readOnlyTransaction : readWriteTransaction, work);
+		List<T> results = new ArrayList<>(futures.size());
+		RuntimeException failure = null;
+		for(Future<T> future : futures) {
+			try {
+				results.add(await(future, futures));
+			}
+			catch(ExecutionException e) {
+				if(null == failure) {
+					failure = cause(e);
+				}
+			}
+		}
+		if(null != failure) {
+			throw failure;
+		}
+		return results;
+	}
+
+	/**
+	 * Runs work against shards in parallel, each in a read-write transaction
+	 * of its own, like onShards, but hands the failure of every shard to the
+	 * caller rather than throwing the first one, so that it can tell the
+	 * shards which committed from those which rolled back.
+	 *
+	 * @param <T> the type of the results
+	 * @param shards the shards
+	 * @param operation the name of the operation, for the metric
+	 * @param work the work, given the shard
+	 * @param failed the consumer of the failure of each shard, called on the current thread once every shard is done
+	 * @return the results of the shards which committed, by shard
+	 */
+	public <T> Map<Integer, T> writeOnShards(Collection<Integer> shards, String operation, IntFunction<T> work,
+			BiConsumer<Integer, RuntimeException> failed) {
+		List<Integer> shardList = new ArrayList<>(shards);
+		List<Future<T>> futures = submit(shardList, operation, readWriteTransaction, work);
+		Map<Integer, T> results = new TreeMap<>();
+		Map<Integer, RuntimeException> failures = new TreeMap<>();
+		for(int i = 0; i < futures.size(); i++) {
+			try {
+				results.put(shardList.get(i), await(futures.get(i), futures));
+			}
+			catch(ExecutionException e) {
+				failures.put(shardList.get(i), cause(e));
+			}
+		}
+		failures.forEach(failed);
+		return results;
+	}
+
+	/**
+	 * Submits work against shards to the shard pool, each in a transaction of its own.
+	 *
+	 * @param <T> the type of the results
+	 * @param shards the shards
+	 * @param operation the name of the operation, for the metric
+	 * @param transaction the transaction template
+	 * @param work the work, given the shard
+	 * @return the futures of the results, in the order of the shards
+	 */
+	private <T> List<Future<T>> submit(Collection<Integer> shards, String operation, TransactionTemplate transaction, IntFunction<T> work) {
+		List<Future<T>> futures = new ArrayList<>(shards.size());
+		for(int shard : shards) {
+			futures.add(executorService.submit(() -> onShard(shard, operation, () -> transaction.execute(status -> work.apply(shard)))));
+		}
+		return futures;
+	}
+
+	/**
+	 * Waits for the result of a shard, cancelling all the work when interrupted.
+	 *
+	 * @param <T> the type of the result
+	 * @param future the future of the result
+	 * @param futures the futures of all the shards
+	 * @return the result
+	 * @throws ExecutionException the failure of the work
+	 */
+	private static <T> T await(Future<T> future, List<Future<T>> futures) throws ExecutionException {
+		try {
+			return future.get();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			futures.forEach(pending -> pending.cancel(true));
+			throw new IllegalStateException("Interrupted while waiting for the shards", e);
+		}
+	}
+
+	/**
+	 * Gets the failure of the work of a shard.
+	 *
+	 * @param e the execution exception
+	 * @return the failure, as thrown by the work
+	 */
+	private static RuntimeException cause(ExecutionException e) {
+		return e.getCause() instanceof RuntimeException
+				? (RuntimeException) e.getCause()
+				: new IllegalStateException(e.getCause());
+	}
+
+	/**
+	 * Stops the threads of the shard pool.
+	 */
+	@Override
+	public void destroy() {
+		executorService.shutdownNow();
+	}
+}
@@ -0,0 +1,76 @@
+package com.github.michaelsteven.archetype.springboot.items.repository;
+
+import java.time.Instant;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemFilter;
+
+
+/**
+ * The Class ItemSpecifications.
+ *
+ * Builds the where clause of a filtered item listing out of the criteria
+ * actually set, so each one is a plain comparison on an indexed column
+ * rather than an "is null or" test that keeps the index from being used.
+ * The indexes are declared on the ItemEntity.
+ */
+public final class ItemSpecifications {
+
+	private ItemSpecifications() {
+	}
+
+	/**
+	 * Matches the items meeting all the criteria of a filter.
+	 *
+	 * @param filter the filter
+	 * @return the specification, matching every item when no criteria is set
+	 */
+	public static Specification<ItemEntity> matching(ItemFilter filter) {
+		return Specification.where(createdAfter(filter.getCreatedAfter()))
+				.and(createdBefore(filter.getCreatedBefore()))
+				.and(updatedAfter(filter.getUpdatedAfter()))
+				.and(named(filter.getName()));
+	}
+
+	/**
+	 * Matches the items created after an instant.
+	 *
+	 * @param instant the instant, exclusive
+	 * @return the specification, null when the instant is null
+	 */
+	public static Specification<ItemEntity> createdAfter(Instant instant) {
+		return null == instant ? null : (root, query, builder) -> builder.greaterThan(root.<Instant>get("createdTimestamp"), instant);
+	}
+
+	/**
+	 * Matches the items created before an instant.
+	 *
+	 * @param instant the instant, exclusive
+	 * @return the specification, null when the instant is null
+	 */
+	public static Specification<ItemEntity> createdBefore(Instant instant) {
+		return null == instant ? null : (root, query, builder) -> builder.lessThan(root.<Instant>get("createdTimestamp"), instant);
+	}
+
+	/**
+	 * Matches the items last updated after an instant.
+	 *
+	 * @param instant the instant, exclusive
+	 * @return the specification, null when the instant is null
+	 */
+	public static Specification<ItemEntity> updatedAfter(Instant instant) {
+		return null == instant ? null : (root, query, builder) -> builder.greaterThan(root.<Instant>get("updatedTimestamp"), instant);
+	}
+
+	/**
+	 * Matches the items with a name.
+	 *
+	 * @param name the name, exactly
+	 * @return the specification, null when the name is null
+	 */
+	public static Specification<ItemEntity> named(String name) {
+		return null == name ? null : (root, query, builder) -> builder.equal(root.get("name"), name);
+	}
+}
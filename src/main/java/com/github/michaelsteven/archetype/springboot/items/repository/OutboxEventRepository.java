@@ -0,0 +1,53 @@
+package com.github.michaelsteven.archetype.springboot.items.repository;
+
+import static org.hibernate.cfg.AvailableSettings.JPA_LOCK_TIMEOUT;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventEntity;
+
+/**
+ * The Interface OutboxEventRepository.
+ *
+ * Not sharded: when the items are, the work is run on a shard with the
+ * ItemShardRouter, each shard holding the outbox of its own changes.
+ */
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEventEntity, Long> {
+
+	/**
+	 * Finds the oldest events and locks them for the rest of the transaction,
+	 * skipping those locked by the relay of another instance.
+	 *
+	 * @param pageable the pageable, limiting the number of events
+	 * @return the events, in id order
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@QueryHints(@QueryHint(name = JPA_LOCK_TIMEOUT, value = ItemRepository.SKIP_LOCKED))
+	List<OutboxEventEntity> findAndLockByOrderByIdAsc(Pageable pageable);
+
+	/**
+	 * Deletes events by their ids, in one statement.
+	 *
+	 * @param ids the ids
+	 * @return the number of events deleted
+	 */
+	@Transactional
+	@Modifying
+	@Query("delete from OutboxEventEntity e where e.id in :ids")
+	int deleteByIds(@Param("ids") Collection<Long> ids);
+}
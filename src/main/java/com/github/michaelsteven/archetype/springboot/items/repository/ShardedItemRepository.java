@@ -0,0 +1,770 @@
+package com.github.michaelsteven.archetype.springboot.items.repository;
+
+import java.beans.PropertyDescriptor;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.ReflectionUtils;
+
+import com.github.michaelsteven.archetype.springboot.items.configuration.ShardRoutingDataSource;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemProjection;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemStatus;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemVersion;
+
+/**
+ * The Class ShardedItemRepository.
+ *
+ * Fronts the item repository when the items are sharded, so that the services
+ * keep using the ItemRepository as they would against a single database.
+ *
+ * Calls on a single item go to the shard of its id, on the current thread and
+ * within the transaction of the caller. Their writes are flushed before
+ * leaving the shard, as a statement deferred to the commit of the caller
+ * would otherwise run wherever its connection is routed then. Calls on several ids are split by
+ * shard, and listings are scattered to every shard in parallel then gathered:
+ * a page of offset o and size s reads the first o + s rows of each shard, in
+ * the order requested, and merges them. Deep pages therefore cost more than
+ * on a single database. The merge compares the sort properties in Java, in
+ * the natural order of their values with nulls first, which for strings is
+ * the order of a binary collation.
+ *
+ * New items are given their id before they are saved, see ItemIdAllocator.
+ * Writes spanning several shards commit shard by shard. Calls on several ids
+ * made while working on a shard, see ItemShardRouter.onShard, whose ids all
+ * live on that shard, run within the transaction of the caller instead, so
+ * that a service can write the items of a shard along with their change in
+ * one transaction.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "api.shards.urls")
+public class ShardedItemRepository implements ItemRepository {
+
+	/** The number of items read from the shards at a time when streaming all the items. */
+	static final int STREAM_CHUNK_SIZE = 500;
+
+	/** The id property, the order of the unsorted listings. */
+	private static final String ID = "id";
+
+	private ItemRepository itemRepository;
+	private ItemShardRouter itemShardRouter;
+	private ItemIdAllocator itemIdAllocator;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param itemRepository the item repository of Spring Data, run against the current shard
+	 * @param itemShardRouter the item shard router
+	 * @param itemIdAllocator the item id allocator
+	 */
+	public ShardedItemRepository(@Qualifier("itemRepository") ItemRepository itemRepository, ItemShardRouter itemShardRouter,
+			ItemIdAllocator itemIdAllocator) {
+		this.itemRepository = itemRepository;
+		this.itemShardRouter = itemShardRouter;
+		this.itemIdAllocator = itemIdAllocator;
+	}
+
+	@Override
+	public Page<ItemProjection> findAllProjectedBy(Pageable pageable) {
+		return gatherPage("findAllProjectedBy", pageable, itemRepository::findAllProjectedBy);
+	}
+
+	@Override
+	public Slice<ItemProjection> findAllBy(Pageable pageable) {
+		return gatherSlice("findAllBy", pageable, itemRepository::findAllBy);
+	}
+
+	@Override
+	public Slice<ItemProjection> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable) {
+		return gatherSlice("findByIdGreaterThanOrderByIdAsc", PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), Sort.by(ID)),
+				shardPageable -> itemRepository.findByIdGreaterThanOrderByIdAsc(id, PageRequest.of(0, shardPageable.getPageSize())));
+	}
+
+	/**
+	 * Streams all the items, in id order.
+	 *
+	 * The items are sought by id from every shard a chunk at a time, each chunk
+	 * in transactions of its own, so the stream does not need the transaction
+	 * of the caller and may run for long.
+	 *
+	 * @return the stream of items
+	 */
+	@Override
+	public Stream<ItemProjection> streamAllByOrderByIdAsc() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new ChunkIterator(),
+				Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	@Override
+	public Optional<ItemProjection> findProjectedById(long id) {
+		return itemShardRouter.onShard(itemShardRouter.shardOf(id), "findProjectedById", () -> itemRepository.findProjectedById(id));
+	}
+
+	@Override
+	public List<ItemProjection> findProjectedByIdIn(Collection<Long> ids) {
+		return scatterIds("findProjectedByIdIn", ids, true, itemRepository::findProjectedByIdIn);
+	}
+
+	@Override
+	public Optional<ItemVersion> findVersionById(long id) {
+		return itemShardRouter.onShard(itemShardRouter.shardOf(id), "findVersionById", () -> itemRepository.findVersionById(id));
+	}
+
+	/**
+	 * Finds a page of the item versions.
+	 *
+	 * The versions are read from the full items, as the listing may be sorted
+	 * by properties the versions do not hold and the shards are merged on them.
+	 *
+	 * @param pageable the pageable
+	 * @return the page of item versions
+	 */
+	@Override
+	public Page<ItemVersion> findAllVersionsBy(Pageable pageable) {
+		return gatherPage("findAllVersionsBy", pageable, itemRepository::findAllProjectedBy).map(ProjectedVersion::new);
+	}
+
+	@Override
+	public List<Long> findExistingIds(Collection<Long> ids) {
+		return scatterIds("findExistingIds", ids, true, itemRepository::findExistingIds);
+	}
+
+	/**
+	 * Finds the oldest items of a status on the shard the caller runs against,
+	 * see ItemShardRouter.onShard, and locks them in its transaction. The
+	 * shards cannot be locked in a single transaction, so they are claimed
+	 * from one at a time.
+	 *
+	 * @param status the status
+	 * @param pageable the pageable, giving the number of items to lock
+	 * @return the items locked
+	 */
+	@Override
+	public List<ItemEntity> findAndLockByStatusOrderByCreatedTimestampAsc(ItemStatus status, Pageable pageable) {
+		Integer shard = ShardRoutingDataSource.getCurrentShard();
+		if(null == shard) {
+			throw unsupported("findAndLockByStatusOrderByCreatedTimestampAsc outside of ItemShardRouter.onShard");
+		}
+		return itemShardRouter.onShard(shard, "findAndLockByStatusOrderByCreatedTimestampAsc",
+				() -> itemRepository.findAndLockByStatusOrderByCreatedTimestampAsc(status, pageable));
+	}
+
+	@Override
+	public long countByStatus(ItemStatus status) {
+		return itemShardRouter.onEachShard("countByStatus", shard -> itemRepository.countByStatus(status)).stream()
+				.mapToLong(Long::longValue)
+				.sum();
+	}
+
+	@Override
+	public Optional<Instant> findOldestCreatedTimestampByStatus(ItemStatus status) {
+		return itemShardRouter.onEachShard("findOldestCreatedTimestampByStatus",
+				shard -> itemRepository.findOldestCreatedTimestampByStatus(status)).stream()
+				.filter(Optional::isPresent)
+				.map(Optional::get)
+				.min(Comparator.naturalOrder());
+	}
+
+	@Override
+	public int deleteItemById(long id) {
+		return itemShardRouter.onShard(itemShardRouter.shardOf(id), "deleteItemById", () -> itemRepository.deleteItemById(id));
+	}
+
+	/**
+	 * Delete items by ids.
+	 *
+	 * The ids of each shard are deleted in a transaction of their own, in
+	 * parallel, unless they all live on the shard the caller works on. When a
+	 * shard fails, the others stay committed and the first failure is thrown
+	 * once they are all done.
+	 *
+	 * @param ids the ids
+	 * @return the number of items deleted
+	 */
+	@Override
+	public int deleteItemsByIds(Collection<Long> ids) {
+		Map<Integer, List<Long>> groups = groupIds(ids);
+		if(onCurrentShard(groups)) {
+			return itemShardRouter.onShard(ShardRoutingDataSource.getCurrentShard(), "deleteItemsByIds",
+					() -> itemRepository.deleteItemsByIds(ids));
+		}
+		return itemShardRouter.onShards(groups.keySet(), "deleteItemsByIds", false,
+				shard -> itemRepository.deleteItemsByIds(groups.get(shard))).stream()
+				.mapToInt(Integer::intValue)
+				.sum();
+	}
+
+	@Override
+	public int updateItem(long id, String name, String description, Instant updatedTimestamp, String updatedBy) {
+		return itemShardRouter.onShard(itemShardRouter.shardOf(id), "updateItem",
+				() -> itemRepository.updateItem(id, name, description, updatedTimestamp, updatedBy));
+	}
+
+	@Override
+	public int updateItemIfVersion(long id, long version, String name, String description, Instant updatedTimestamp,
+			String updatedBy) {
+		return itemShardRouter.onShard(itemShardRouter.shardOf(id), "updateItemIfVersion",
+				() -> itemRepository.updateItemIfVersion(id, version, name, description, updatedTimestamp, updatedBy));
+	}
+
+	/**
+	 * Save, flushing the insert or update on the shard of the item.
+	 *
+	 * @param <S> the type of the entity
+	 * @param entity the entity
+	 * @return the saved entity
+	 */
+	@Override
+	public <S extends ItemEntity> S save(S entity) {
+		assignId(entity);
+		return itemShardRouter.onShard(itemShardRouter.shardOf(entity.getId()), "save", () -> itemRepository.saveAndFlush(entity));
+	}
+
+	@Override
+	public <S extends ItemEntity> S saveAndFlush(S entity) {
+		assignId(entity);
+		return itemShardRouter.onShard(itemShardRouter.shardOf(entity.getId()), "saveAndFlush", () -> itemRepository.saveAndFlush(entity));
+	}
+
+	/**
+	 * Save all.
+	 *
+	 * The entities of each shard are saved in a transaction of their own, in
+	 * parallel, and returned in the order given. When a shard fails, the
+	 * others stay committed and the first failure is thrown once they are all
+	 * done; a caller needing to know which entities were saved groups them by
+	 * shard itself, see ItemShardRouter.writeOnShards. When they all live on
+	 * the shard the caller works on, they are saved, and flushed, within its
+	 * transaction.
+	 *
+	 * @param <S> the type of the entities
+	 * @param entities the entities
+	 * @return the saved entities
+	 */
+	@Override
+	public <S extends ItemEntity> List<S> saveAll(Iterable<S> entities) {
+		List<S> toSave = new ArrayList<>();
+		for(S entity : entities) {
+			assignId(entity);
+			toSave.add(entity);
+		}
+		Map<Integer, List<S>> groups = itemShardRouter.groupByShard(toSave, ItemEntity::getId);
+		if(onCurrentShard(groups)) {
+			return itemShardRouter.onShard(ShardRoutingDataSource.getCurrentShard(), "saveAll", () -> {
+				List<S> saved = itemRepository.saveAll(toSave);
+				itemRepository.flush();
+				return saved;
+			});
+		}
+		Map<S, S> saved = new IdentityHashMap<>();
+		List<Integer> shards = new ArrayList<>(groups.keySet());
+		List<List<S>> results = itemShardRouter.onShards(shards, "saveAll", false, shard -> itemRepository.saveAll(groups.get(shard)));
+		for(int i = 0; i < shards.size(); i++) {
+			List<S> group = groups.get(shards.get(i));
+			for(int j = 0; j < group.size(); j++) {
+				saved.put(group.get(j), results.get(i).get(j));
+			}
+		}
+		return toSave.stream().map(saved::get).collect(Collectors.toList());
+	}
+
+	@Override
+	public Optional<ItemEntity> findById(Long id) {
+		return itemShardRouter.onShard(itemShardRouter.shardOf(id), "findById", () -> itemRepository.findById(id));
+	}
+
+	@Override
+	public ItemEntity getOne(Long id) {
+		return itemShardRouter.onShard(itemShardRouter.shardOf(id), "getOne", () -> itemRepository.getOne(id));
+	}
+
+	@Override
+	public boolean existsById(Long id) {
+		return itemShardRouter.onShard(itemShardRouter.shardOf(id), "existsById", () -> itemRepository.existsById(id));
+	}
+
+	@Override
+	public List<ItemEntity> findAllById(Iterable<Long> ids) {
+		List<Long> idList = new ArrayList<>();
+		ids.forEach(idList::add);
+		return scatterIds("findAllById", idList, true, itemRepository::findAllById);
+	}
+
+	@Override
+	public List<ItemEntity> findAll() {
+		return findAll(Sort.by(ID));
+	}
+
+	@Override
+	public List<ItemEntity> findAll(Sort sort) {
+		return merge(itemShardRouter.onEachShard("findAll", shard -> itemRepository.findAll(sort)), comparator(sort), Integer.MAX_VALUE);
+	}
+
+	@Override
+	public Page<ItemEntity> findAll(Pageable pageable) {
+		return gatherPage("findAll", pageable, itemRepository::findAll);
+	}
+
+	@Override
+	public long count() {
+		return itemShardRouter.onEachShard("count", shard -> itemRepository.count()).stream()
+				.mapToLong(Long::longValue)
+				.sum();
+	}
+
+	@Override
+	public void deleteById(Long id) {
+		itemShardRouter.onShard(itemShardRouter.shardOf(id), "deleteById", () -> {
+			itemRepository.deleteById(id);
+			itemRepository.flush();
+			return null;
+		});
+	}
+
+	@Override
+	public void delete(ItemEntity entity) {
+		itemShardRouter.onShard(itemShardRouter.shardOf(entity.getId()), "delete", () -> {
+			itemRepository.delete(entity);
+			itemRepository.flush();
+			return null;
+		});
+	}
+
+	/**
+	 * Delete all the entities given, those of each shard in a transaction of
+	 * their own, like saveAll.
+	 *
+	 * @param entities the entities
+	 */
+	@Override
+	public void deleteAll(Iterable<? extends ItemEntity> entities) {
+		List<ItemEntity> toDelete = new ArrayList<>();
+		entities.forEach(toDelete::add);
+		Map<Integer, List<ItemEntity>> groups = itemShardRouter.groupByShard(toDelete, ItemEntity::getId);
+		if(onCurrentShard(groups)) {
+			itemShardRouter.onShard(ShardRoutingDataSource.getCurrentShard(), "deleteAll", () -> {
+				itemRepository.deleteAll(toDelete);
+				itemRepository.flush();
+				return null;
+			});
+			return;
+		}
+		itemShardRouter.onShards(groups.keySet(), "deleteAll", false, shard -> {
+			itemRepository.deleteAll(groups.get(shard));
+			return null;
+		});
+	}
+
+	/**
+	 * Delete all the items, those of each shard in a transaction of their
+	 * own. When a shard fails, the others stay emptied and the first failure
+	 * is thrown once they are all done.
+	 */
+	@Override
+	public void deleteAll() {
+		itemShardRouter.onShards(allShards(), "deleteAll", false, shard -> {
+			itemRepository.deleteAll();
+			return null;
+		});
+	}
+
+	@Override
+	public Optional<ItemEntity> findOne(Specification<ItemEntity> spec) {
+		List<ItemEntity> found = itemShardRouter.onEachShard("findOne", shard -> itemRepository.findOne(spec)).stream()
+				.filter(Optional::isPresent)
+				.map(Optional::get)
+				.collect(Collectors.toList());
+		if(found.size() > 1) {
+			throw new IncorrectResultSizeDataAccessException(1, found.size());
+		}
+		return found.stream().findFirst();
+	}
+
+	@Override
+	public List<ItemEntity> findAll(Specification<ItemEntity> spec) {
+		return findAll(spec, Sort.by(ID));
+	}
+
+	@Override
+	public Page<ItemEntity> findAll(Specification<ItemEntity> spec, Pageable pageable) {
+		return gatherPage("findAllBySpecification", pageable, shardPageable -> itemRepository.findAll(spec, shardPageable));
+	}
+
+	@Override
+	public List<ItemEntity> findAll(Specification<ItemEntity> spec, Sort sort) {
+		return merge(itemShardRouter.onEachShard("findAllBySpecification", shard -> itemRepository.findAll(spec, sort)),
+				comparator(sort), Integer.MAX_VALUE);
+	}
+
+	@Override
+	public long count(Specification<ItemEntity> spec) {
+		return itemShardRouter.onEachShard("countBySpecification", shard -> itemRepository.count(spec)).stream()
+				.mapToLong(Long::longValue)
+				.sum();
+	}
+
+	@Override
+	public void flush() {
+		throw unsupported("flush");
+	}
+
+	@Override
+	public void deleteInBatch(Iterable<ItemEntity> entities) {
+		throw unsupported("deleteInBatch");
+	}
+
+	@Override
+	public void deleteAllInBatch() {
+		throw unsupported("deleteAllInBatch");
+	}
+
+	@Override
+	public <S extends ItemEntity> Optional<S> findOne(Example<S> example) {
+		throw unsupported("findOne by example");
+	}
+
+	@Override
+	public <S extends ItemEntity> List<S> findAll(Example<S> example) {
+		throw unsupported("findAll by example");
+	}
+
+	@Override
+	public <S extends ItemEntity> List<S> findAll(Example<S> example, Sort sort) {
+		throw unsupported("findAll by example");
+	}
+
+	@Override
+	public <S extends ItemEntity> Page<S> findAll(Example<S> example, Pageable pageable) {
+		throw unsupported("findAll by example");
+	}
+
+	@Override
+	public <S extends ItemEntity> long count(Example<S> example) {
+		throw unsupported("count by example");
+	}
+
+	@Override
+	public <S extends ItemEntity> boolean exists(Example<S> example) {
+		throw unsupported("exists by example");
+	}
+
+	/**
+	 * Gives a new entity the next id, its id deciding its shard.
+	 *
+	 * @param entity the entity
+	 */
+	private void assignId(ItemEntity entity) {
+		if(null == entity.getId()) {
+			entity.setId(itemIdAllocator.next());
+		}
+	}
+
+	/**
+	 * Groups ids by shard.
+	 *
+	 * @param ids the ids
+	 * @return the ids of each shard holding any
+	 */
+	private Map<Integer, List<Long>> groupIds(Collection<Long> ids) {
+		return itemShardRouter.groupByShard(ids, Long::longValue);
+	}
+
+	/**
+	 * Checks whether the items grouped all live on the shard the caller works
+	 * on, see ItemShardRouter.onShard, so that a call on them joins its
+	 * transaction rather than running on the shard pool.
+	 *
+	 * @param groups the items of each shard holding any
+	 * @return true, if the items only live on the current shard
+	 */
+	private static boolean onCurrentShard(Map<Integer, ?> groups) {
+		Integer shard = ShardRoutingDataSource.getCurrentShard();
+		return null != shard && groups.size() == 1 && groups.containsKey(shard);
+	}
+
+	/**
+	 * Gets all the shards.
+	 *
+	 * @return the shards, in order
+	 */
+	private List<Integer> allShards() {
+		List<Integer> shards = new ArrayList<>(itemShardRouter.getShardCount());
+		for(int shard = 0; shard < itemShardRouter.getShardCount(); shard++) {
+			shards.add(shard);
+		}
+		return shards;
+	}
+
+	/**
+	 * Runs a query on ids against the shards holding them, in parallel, or
+	 * within the transaction of the caller when they all live on its shard.
+	 *
+	 * @param <T> the type of the results
+	 * @param operation the name of the operation
+	 * @param ids the ids
+	 * @param readOnly whether the query only reads
+	 * @param query the query, given the ids of a shard
+	 * @return the results of all the shards, in no particular order
+	 */
+	private <T> List<T> scatterIds(String operation, Collection<Long> ids, boolean readOnly, Function<List<Long>, List<T>> query) {
+		Map<Integer, List<Long>> groups = groupIds(ids);
+		if(groups.isEmpty()) {
+			return new ArrayList<>();
+		}
+		if(onCurrentShard(groups)) {
+			return new ArrayList<>(itemShardRouter.onShard(ShardRoutingDataSource.getCurrentShard(), operation,
+					() -> query.apply(new ArrayList<>(ids))));
+		}
+		return itemShardRouter.onShards(groups.keySet(), operation, readOnly, shard -> query.apply(groups.get(shard))).stream()
+				.flatMap(List::stream)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Scatters a page query to every shard and gathers the page.
+	 *
+	 * @param <T> the type of the content
+	 * @param operation the name of the operation
+	 * @param pageable the pageable
+	 * @param query the query, given the pageable of the shards
+	 * @return the page
+	 */
+	private <T> Page<T> gatherPage(String operation, Pageable pageable, Function<Pageable, Page<T>> query) {
+		if(pageable.isUnpaged()) {
+			List<Page<T>> pages = itemShardRouter.onEachShard(operation, shard -> query.apply(pageable));
+			List<T> content = pages.stream().flatMap(page -> page.getContent().stream()).collect(Collectors.toList());
+			content.sort(comparator(pageable.getSort()));
+			return new PageImpl<>(content);
+		}
+		Sort sort = sortThenById(pageable.getSort());
+		int end = Math.toIntExact(pageable.getOffset() + pageable.getPageSize());
+		List<Page<T>> pages = itemShardRouter.onEachShard(operation, shard -> query.apply(PageRequest.of(0, end, sort)));
+		List<T> merged = merge(pages.stream().map(Page::getContent).collect(Collectors.toList()), comparator(sort), end);
+		long total = pages.stream().mapToLong(Page::getTotalElements).sum();
+		return new PageImpl<>(window(merged, pageable), pageable, total);
+	}
+
+	/**
+	 * Scatters a slice query to every shard and gathers the slice.
+	 *
+	 * @param <T> the type of the content
+	 * @param operation the name of the operation
+	 * @param pageable the pageable
+	 * @param query the query, given the pageable of the shards
+	 * @return the slice
+	 */
+	private <T> Slice<T> gatherSlice(String operation, Pageable pageable, Function<Pageable, Slice<T>> query) {
+		Sort sort = sortThenById(pageable.getSort());
+		int end = Math.toIntExact(pageable.getOffset() + pageable.getPageSize());
+		List<Slice<T>> slices = itemShardRouter.onEachShard(operation, shard -> query.apply(PageRequest.of(0, end, sort)));
+		List<T> merged = merge(slices.stream().map(Slice::getContent).collect(Collectors.toList()), comparator(sort), end + 1);
+		boolean hasNext = merged.size() > end || slices.stream().anyMatch(Slice::hasNext);
+		return new SliceImpl<>(window(merged, pageable), pageable, hasNext);
+	}
+
+	/**
+	 * Gets the part of merged rows a pageable is after.
+	 *
+	 * @param <T> the type of the rows
+	 * @param merged the merged rows, from the first one
+	 * @param pageable the pageable
+	 * @return the rows of the page
+	 */
+	private static <T> List<T> window(List<T> merged, Pageable pageable) {
+		int from = (int) Math.min(pageable.getOffset(), merged.size());
+		int to = Math.min(from + pageable.getPageSize(), merged.size());
+		return new ArrayList<>(merged.subList(from, to));
+	}
+
+	/**
+	 * Gets a sort ending with the id, so the shards are merged on a stable order.
+	 *
+	 * @param sort the sort
+	 * @return the sort to query the shards with
+	 */
+	private static Sort sortThenById(Sort sort) {
+		return null != sort.getOrderFor(ID) ? sort : sort.and(Sort.by(ID));
+	}
+
+	/**
+	 * Merges lists which are each sorted.
+	 *
+	 * @param <T> the type of the elements
+	 * @param lists the lists
+	 * @param comparator the order of the lists
+	 * @param limit the number of elements to merge at most
+	 * @return the first elements of all the lists, in order
+	 */
+	static <T> List<T> merge(List<? extends List<T>> lists, Comparator<? super T> comparator, int limit) {
+		PriorityQueue<Cursor<T>> heads = new PriorityQueue<>((a, b) -> comparator.compare(a.head, b.head));
+		for(List<T> list : lists) {
+			Iterator<T> iterator = list.iterator();
+			if(iterator.hasNext()) {
+				heads.add(new Cursor<>(iterator));
+			}
+		}
+		List<T> merged = new ArrayList<>();
+		while(!heads.isEmpty() && merged.size() < limit) {
+			Cursor<T> cursor = heads.poll();
+			merged.add(cursor.head);
+			if(cursor.iterator.hasNext()) {
+				cursor.head = cursor.iterator.next();
+				heads.add(cursor);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Gets the comparator of a sort, reading the sort properties through their getters.
+	 *
+	 * @param sort the sort
+	 * @return the comparator, keeping the order of unsorted elements
+	 */
+	static Comparator<Object> comparator(Sort sort) {
+		Comparator<Object> comparator = (a, b) -> 0;
+		for(Sort.Order order : sort) {
+			Comparator<Object> byProperty = Comparator.comparing(element -> property(element, order.getProperty()),
+					Comparator.nullsFirst(Comparator.naturalOrder()));
+			comparator = comparator.thenComparing(order.isAscending() ? byProperty : byProperty.reversed());
+		}
+		return comparator;
+	}
+
+	/**
+	 * Reads a property.
+	 *
+	 * @param element the element
+	 * @param property the property
+	 * @return the value of the property
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Comparable property(Object element, String property) {
+		PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(element.getClass(), property);
+		if(null == descriptor || null == descriptor.getReadMethod()) {
+			throw new IllegalArgumentException("Cannot merge the shards on " + property + ", not a property of " + element.getClass());
+		}
+		return (Comparable) ReflectionUtils.invokeMethod(descriptor.getReadMethod(), element);
+	}
+
+	/**
+	 * Gets the exception of an operation the shards do not support.
+	 *
+	 * @param operation the operation
+	 * @return the exception
+	 */
+	private static UnsupportedOperationException unsupported(String operation) {
+		return new UnsupportedOperationException(operation + " is not supported on sharded items");
+	}
+
+	/**
+	 * A position in a sorted list being merged.
+	 *
+	 * @param <T> the type of the elements
+	 */
+	private static final class Cursor<T> {
+
+		private final Iterator<T> iterator;
+		private T head;
+
+		private Cursor(Iterator<T> iterator) {
+			this.iterator = iterator;
+			this.head = iterator.next();
+		}
+	}
+
+	/**
+	 * Iterates over all the items in id order, a chunk at a time.
+	 */
+	private final class ChunkIterator implements Iterator<ItemProjection> {
+
+		private long afterId;
+		private boolean last;
+		private Iterator<ItemProjection> chunk = Collections.emptyIterator();
+
+		@Override
+		public boolean hasNext() {
+			while(!chunk.hasNext() && !last) {
+				Slice<ItemProjection> slice = findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, STREAM_CHUNK_SIZE));
+				List<ItemProjection> content = slice.getContent();
+				if(!content.isEmpty()) {
+					afterId = content.get(content.size() - 1).getId();
+				}
+				last = !slice.hasNext();
+				chunk = content.iterator();
+			}
+			return chunk.hasNext();
+		}
+
+		@Override
+		public ItemProjection next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return chunk.next();
+		}
+	}
+
+	/**
+	 * The version of an item read from the item.
+	 */
+	private static final class ProjectedVersion implements ItemVersion {
+
+		private final Long id;
+		private final Long version;
+		private final Instant updatedTimestamp;
+
+		private ProjectedVersion(ItemProjection itemProjection) {
+			this.id = itemProjection.getId();
+			this.version = itemProjection.getVersion();
+			this.updatedTimestamp = itemProjection.getUpdatedTimestamp();
+		}
+
+		@Override
+		public Long getId() {
+			return id;
+		}
+
+		@Override
+		public Long getVersion() {
+			return version;
+		}
+
+		@Override
+		public Instant getUpdatedTimestamp() {
+			return updatedTimestamp;
+		}
+	}
+}
@@ -0,0 +1,582 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEventFilter;
+
+/**
+ * The Class ComplianceEventIndex.
+ *
+ * The secondary indexes of one segment of a ComplianceEventLog, an event
+ * being known by its offset in the segment. The time index splits time into
+ * buckets and keeps the first and last offset of the events of each bucket,
+ * so the events of a time window lie between the first offset of its first
+ * bucket and the last offset of its last one. The term indexes keep the
+ * offsets of the events of each item, each action and each resource, in
+ * order, so an event costs 4 bytes in each index it has a term in.
+ *
+ * The index of the segment appended to is held in memory and added to as the
+ * events are appended, then written to a file next to the segment once it is
+ * rolled over. The index of the other segments is only ever read from that
+ * file, mapped by the query reading the segment, so the heap holds the index
+ * of one segment whatever the size of the log.
+ *
+ * The file holds the length of the time buckets and the number of buckets,
+ * items, actions and resources, then the buckets and the items as entries of
+ * a fixed size sorted by key, searched in place, then the actions and the
+ * resources, then the offsets of all the postings.
+ */
+abstract class ComplianceEventIndex {
+
+	private static final int MAGIC = 0x43454931;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 4 + 4 + 8 + 4 * 4;
+	private static final int BUCKET_BYTES = 8 + 4 + 4;
+	private static final int ITEM_BYTES = 8 + 4 + 4;
+	private static final int ACTION_BYTES = 4 + 4 + 4;
+	private static final int INITIAL_POSTINGS = 4;
+	private static final ComplianceAction[] ACTIONS = ComplianceAction.values();
+
+	/**
+	 * Gets the position of an event in the log.
+	 *
+	 * @param segmentNumber the number of its segment
+	 * @param offset its offset in the segment
+	 * @return the position, growing in the order the events were appended
+	 */
+	static long position(long segmentNumber, int offset) {
+		return (segmentNumber << 32) | offset;
+	}
+
+	/**
+	 * Gets the number of the segment of a position.
+	 *
+	 * @param position the position
+	 * @return the segment number
+	 */
+	static long segmentNumber(long position) {
+		return position >>> 32;
+	}
+
+	/**
+	 * Gets the offset in its segment of a position.
+	 *
+	 * @param position the position
+	 * @return the offset
+	 */
+	static int offset(long position) {
+		return (int) position;
+	}
+
+	/**
+	 * Creates the index of the segment appended to.
+	 *
+	 * @param bucketMillis the length of the time buckets
+	 * @return the index, empty
+	 */
+	static Appending appending(long bucketMillis) {
+		return new Appending(bucketMillis);
+	}
+
+	/**
+	 * Maps the index file of a segment.
+	 *
+	 * @param path the path of the index file
+	 * @return the index, null when the file is missing or not a complete index
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static ComplianceEventIndex read(Path path) throws IOException {
+		if(!Files.exists(path)) {
+			return null;
+		}
+		ByteBuffer file;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+				return null;
+			}
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		return Mapped.of(file);
+	}
+
+	/**
+	 * Gets the offsets the events of a time window lie between.
+	 *
+	 * @param from the time of the first events, inclusive, null for no bound
+	 * @param to the time past the last events, exclusive, null for no bound
+	 * @return the first and last offset, null when no event falls in the window
+	 */
+	abstract int[] range(Instant from, Instant to);
+
+	/**
+	 * Gets the offsets of the events of an item.
+	 *
+	 * @param itemId the item id
+	 * @return the offsets, empty when the item has no event
+	 */
+	abstract Postings itemPostings(long itemId);
+
+	/**
+	 * Gets the offsets of the events of an action.
+	 *
+	 * @param action the action
+	 * @return the offsets, empty when the action has no event
+	 */
+	abstract Postings actionPostings(ComplianceAction action);
+
+	/**
+	 * Gets the offsets of the events of a resource.
+	 *
+	 * @param resource the resource
+	 * @return the offsets, empty when the resource has no event
+	 */
+	abstract Postings resourcePostings(String resource);
+
+	/**
+	 * Gets the shortest postings of the terms of a filter, the events matching
+	 * the filter being among them.
+	 *
+	 * @param filter the filter
+	 * @return the offsets, null when the filter has no term
+	 */
+	Postings postings(ComplianceEventFilter filter) {
+		Postings postings = null;
+		if(null != filter.getItemId()) {
+			postings = itemPostings(filter.getItemId());
+		}
+		if(null != filter.getAction()) {
+			postings = shortest(postings, actionPostings(filter.getAction()));
+		}
+		if(null != filter.getResource()) {
+			postings = shortest(postings, resourcePostings(filter.getResource()));
+		}
+		return postings;
+	}
+
+	/**
+	 * Gets the shortest of two postings.
+	 *
+	 * @param postings the postings, may be null
+	 * @param other the other postings
+	 * @return the shortest
+	 */
+	private static Postings shortest(Postings postings, Postings other) {
+		return null == postings || other.size() < postings.size() ? other : postings;
+	}
+
+	/**
+	 * The index of the segment appended to, held in memory.
+	 *
+	 * Not thread safe, the log guards it. The postings handed out stay valid
+	 * once the lock is released, as an array is only ever appended to past
+	 * the size they were given, or replaced by a larger copy.
+	 */
+	static final class Appending extends ComplianceEventIndex {
+
+		private final long bucketMillis;
+		private final NavigableMap<Long, int[]> buckets = new TreeMap<>();
+		private final Map<Long, PostingsList> items = new HashMap<>();
+		private final Map<ComplianceAction, PostingsList> actions = new EnumMap<>(ComplianceAction.class);
+		private final Map<String, PostingsList> resources = new HashMap<>();
+
+		private Appending(long bucketMillis) {
+			if(bucketMillis <= 0) {
+				throw new IllegalArgumentException("Invalid compliance event index bucket length " + bucketMillis);
+			}
+			this.bucketMillis = bucketMillis;
+		}
+
+		/**
+		 * Adds an event, appended after those already added.
+		 *
+		 * @param offset the offset of the event
+		 * @param timestamp the timestamp of the event
+		 * @param complianceEvent the event
+		 */
+		void add(int offset, Instant timestamp, ComplianceEvent complianceEvent) {
+			int[] bucket = buckets.computeIfAbsent(Math.floorDiv(timestamp.toEpochMilli(), bucketMillis),
+					key -> new int[] { offset, offset });
+			bucket[1] = offset;
+			if(null != complianceEvent.getItemId()) {
+				items.computeIfAbsent(complianceEvent.getItemId(), key -> new PostingsList()).add(offset);
+			}
+			if(null != complianceEvent.getAction()) {
+				actions.computeIfAbsent(complianceEvent.getAction(), key -> new PostingsList()).add(offset);
+			}
+			if(null != complianceEvent.getResource()) {
+				resources.computeIfAbsent(complianceEvent.getResource(), key -> new PostingsList()).add(offset);
+			}
+		}
+
+		@Override
+		int[] range(Instant from, Instant to) {
+			NavigableMap<Long, int[]> window = buckets;
+			if(null != from) {
+				window = window.tailMap(Math.floorDiv(from.toEpochMilli(), bucketMillis), true);
+			}
+			if(null != to) {
+				window = window.headMap(Math.floorDiv(to.toEpochMilli(), bucketMillis), true);
+			}
+			int[] range = null;
+			for(int[] bucket : window.values()) {
+				if(null == range) {
+					range = bucket.clone();
+				}
+				else {
+					range[0] = Math.min(range[0], bucket[0]);
+					range[1] = Math.max(range[1], bucket[1]);
+				}
+			}
+			return range;
+		}
+
+		@Override
+		Postings itemPostings(long itemId) {
+			return snapshot(items.get(itemId));
+		}
+
+		@Override
+		Postings actionPostings(ComplianceAction action) {
+			return snapshot(actions.get(action));
+		}
+
+		@Override
+		Postings resourcePostings(String resource) {
+			return snapshot(resources.get(resource));
+		}
+
+		/**
+		 * Writes the index to its file, through a temporary file moved in
+		 * place once forced to disk.
+		 *
+		 * @param path the path of the index file
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void write(Path path) throws IOException {
+			Map<String, byte[]> resourceNames = new TreeMap<>();
+			int length = HEADER_BYTES + BUCKET_BYTES * buckets.size() + ITEM_BYTES * items.size() + ACTION_BYTES * actions.size();
+			long postingsCount = 0;
+			for(Map.Entry<String, PostingsList> resource : resources.entrySet()) {
+				byte[] name = resource.getKey().getBytes(StandardCharsets.UTF_8);
+				resourceNames.put(resource.getKey(), name);
+				length += 2 + name.length + 4 + 4;
+			}
+			for(PostingsList postingsList : items.values()) {
+				postingsCount += postingsList.size;
+			}
+			for(PostingsList postingsList : actions.values()) {
+				postingsCount += postingsList.size;
+			}
+			for(PostingsList postingsList : resources.values()) {
+				postingsCount += postingsList.size;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(length + 4 * postingsCount));
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(bucketMillis);
+			buffer.putInt(buckets.size());
+			buffer.putInt(items.size());
+			buffer.putInt(actions.size());
+			buffer.putInt(resources.size());
+			for(Map.Entry<Long, int[]> bucket : buckets.entrySet()) {
+				buffer.putLong(bucket.getKey());
+				buffer.putInt(bucket.getValue()[0]);
+				buffer.putInt(bucket.getValue()[1]);
+			}
+			IntBuffer postings = ((ByteBuffer) buffer.duplicate().position(length)).asIntBuffer();
+			for(Map.Entry<Long, PostingsList> item : new TreeMap<>(items).entrySet()) {
+				buffer.putLong(item.getKey());
+				putPostings(buffer, postings, item.getValue());
+			}
+			for(Map.Entry<ComplianceAction, PostingsList> action : actions.entrySet()) {
+				buffer.putInt(action.getKey().ordinal());
+				putPostings(buffer, postings, action.getValue());
+			}
+			for(Map.Entry<String, byte[]> resourceName : resourceNames.entrySet()) {
+				buffer.putShort((short) resourceName.getValue().length);
+				buffer.put(resourceName.getValue());
+				putPostings(buffer, postings, resources.get(resourceName.getKey()));
+			}
+			buffer.clear();
+
+			Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+			try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				while(buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		/**
+		 * Puts where the postings of a term start and their size, then the
+		 * postings themselves.
+		 *
+		 * @param buffer the buffer, positioned on the entry of the term
+		 * @param postings the postings of the file, positioned past those already put
+		 * @param postingsList the postings of the term
+		 */
+		private static void putPostings(ByteBuffer buffer, IntBuffer postings, PostingsList postingsList) {
+			buffer.putInt(postings.position());
+			buffer.putInt(postingsList.size);
+			postings.put(postingsList.offsets, 0, postingsList.size);
+		}
+
+		/**
+		 * Gets the postings as of now.
+		 *
+		 * @param postingsList the postings being appended to, may be null
+		 * @return the postings, empty when null
+		 */
+		private static Postings snapshot(PostingsList postingsList) {
+			return null == postingsList ? Postings.EMPTY : new Postings(IntBuffer.wrap(postingsList.offsets, 0, postingsList.size).slice());
+		}
+	}
+
+	/**
+	 * The index of a segment rolled over, mapped from its file.
+	 */
+	private static final class Mapped extends ComplianceEventIndex {
+
+		private final ByteBuffer file;
+		private final long bucketMillis;
+		private final int bucketCount;
+		private final int itemCount;
+		private final int itemsStart;
+		private final Map<ComplianceAction, int[]> actions = new EnumMap<>(ComplianceAction.class);
+		private final Map<String, int[]> resources = new HashMap<>();
+		private final IntBuffer postings;
+
+		private Mapped(ByteBuffer file) {
+			this.file = file;
+			this.bucketMillis = file.getLong(8);
+			this.bucketCount = file.getInt(16);
+			this.itemCount = file.getInt(20);
+			int actionCount = file.getInt(24);
+			int resourceCount = file.getInt(28);
+			this.itemsStart = HEADER_BYTES + BUCKET_BYTES * bucketCount;
+			file.position(itemsStart + ITEM_BYTES * itemCount);
+			for(int i = 0; i < actionCount; i++) {
+				actions.put(ACTIONS[file.getInt()], new int[] { file.getInt(), file.getInt() });
+			}
+			for(int i = 0; i < resourceCount; i++) {
+				byte[] name = new byte[file.getShort()];
+				file.get(name);
+				resources.put(new String(name, StandardCharsets.UTF_8), new int[] { file.getInt(), file.getInt() });
+			}
+			this.postings = file.slice().asIntBuffer();
+		}
+
+		/**
+		 * Reads a mapped index file.
+		 *
+		 * @param file the file
+		 * @return the index, null when the file is not a complete index
+		 */
+		private static Mapped of(ByteBuffer file) {
+			if(MAGIC != file.getInt(0) || VERSION != file.getInt(4)) {
+				return null;
+			}
+			try {
+				Mapped mapped = new Mapped(file);
+				for(int[] entry : mapped.actions.values()) {
+					mapped.checkPostings(entry[0], entry[1]);
+				}
+				for(int[] entry : mapped.resources.values()) {
+					mapped.checkPostings(entry[0], entry[1]);
+				}
+				return mapped;
+			}
+			catch(RuntimeException e) {
+				return null;
+			}
+		}
+
+		@Override
+		int[] range(Instant from, Instant to) {
+			long fromKey = null == from ? Long.MIN_VALUE : Math.floorDiv(from.toEpochMilli(), bucketMillis);
+			long toKey = null == to ? Long.MAX_VALUE : Math.floorDiv(to.toEpochMilli(), bucketMillis);
+			int[] range = null;
+			for(int i = lowerBound(HEADER_BYTES, BUCKET_BYTES, bucketCount, fromKey); i < bucketCount; i++) {
+				int entry = HEADER_BYTES + BUCKET_BYTES * i;
+				if(file.getLong(entry) > toKey) {
+					break;
+				}
+				if(null == range) {
+					range = new int[] { file.getInt(entry + 8), file.getInt(entry + 12) };
+				}
+				else {
+					range[0] = Math.min(range[0], file.getInt(entry + 8));
+					range[1] = Math.max(range[1], file.getInt(entry + 12));
+				}
+			}
+			return range;
+		}
+
+		@Override
+		Postings itemPostings(long itemId) {
+			int i = lowerBound(itemsStart, ITEM_BYTES, itemCount, itemId);
+			int entry = itemsStart + ITEM_BYTES * i;
+			if(i == itemCount || file.getLong(entry) != itemId) {
+				return Postings.EMPTY;
+			}
+			return postings(file.getInt(entry + 8), file.getInt(entry + 12));
+		}
+
+		@Override
+		Postings actionPostings(ComplianceAction action) {
+			int[] entry = actions.get(action);
+			return null == entry ? Postings.EMPTY : postings(entry[0], entry[1]);
+		}
+
+		@Override
+		Postings resourcePostings(String resource) {
+			int[] entry = resources.get(resource);
+			return null == entry ? Postings.EMPTY : postings(entry[0], entry[1]);
+		}
+
+		/**
+		 * Gets the index of the first entry whose key is at least a given one.
+		 *
+		 * @param start the offset of the first entry
+		 * @param entryBytes the size of an entry
+		 * @param count the number of entries
+		 * @param key the key
+		 * @return the index, the count when there is none
+		 */
+		private int lowerBound(int start, int entryBytes, int count, long key) {
+			int low = 0;
+			int high = count;
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(file.getLong(start + entryBytes * middle) < key) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Gets postings of the file.
+		 *
+		 * @param start the index of the first offset
+		 * @param size the number of offsets
+		 * @return the postings
+		 */
+		private Postings postings(int start, int size) {
+			IntBuffer slice = postings.duplicate();
+			slice.limit(start + size);
+			slice.position(start);
+			return new Postings(slice.slice());
+		}
+
+		/**
+		 * Checks postings lie within the file.
+		 *
+		 * @param start the index of the first offset
+		 * @param size the number of offsets
+		 */
+		private void checkPostings(int start, int size) {
+			if(start < 0 || size < 0 || start + size > postings.capacity()) {
+				throw new IndexOutOfBoundsException("Compliance event index postings out of bounds");
+			}
+		}
+	}
+
+	/**
+	 * The postings of a term being appended to.
+	 */
+	private static final class PostingsList {
+
+		private int[] offsets = new int[INITIAL_POSTINGS];
+		private int size;
+
+		/**
+		 * Appends an offset, growing the array when full.
+		 *
+		 * @param offset the offset
+		 */
+		private void add(int offset) {
+			if(size == offsets.length) {
+				offsets = Arrays.copyOf(offsets, size * 2);
+			}
+			offsets[size++] = offset;
+		}
+	}
+
+	/**
+	 * The offsets of the events of a term, in ascending order.
+	 */
+	static final class Postings {
+
+		private static final Postings EMPTY = new Postings(IntBuffer.allocate(0));
+
+		private final IntBuffer offsets;
+
+		private Postings(IntBuffer offsets) {
+			this.offsets = offsets;
+		}
+
+		/**
+		 * Gets the number of offsets.
+		 *
+		 * @return the size
+		 */
+		int size() {
+			return offsets.limit();
+		}
+
+		/**
+		 * Gets an offset.
+		 *
+		 * @param index the index, below the size
+		 * @return the offset
+		 */
+		int get(int index) {
+			return offsets.get(index);
+		}
+
+		/**
+		 * Gets the index of the first offset past a given one.
+		 *
+		 * @param offset the offset
+		 * @return the index, the size when there is none
+		 */
+		int indexAfter(int offset) {
+			int low = 0;
+			int high = size();
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(offsets.get(middle) <= offset) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+}
@@ -0,0 +1,847 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEventFilter;
+
+/**
+ * The Class ComplianceEventLog.
+ *
+ * Append-only log of the compliance events, kept in numbered segment files of
+ * a directory. Every segment has the same size and is memory mapped, so an
+ * append only copies the event into memory, and the pages reach the disk when
+ * the log is forced, on a cadence of its own, or when the operating system
+ * writes them back. A segment is rolled over once the next event does not fit
+ * or it has been open for the roll interval. The segments whose last event
+ * is older than the retention are deleted as a segment is rolled over, and
+ * when the log is opened.
+ *
+ * A segment starts with a header holding the times of its first and last
+ * events, so reading a time window skips the segments outside of it. Each
+ * event follows as its length, then the event: the seconds and nanoseconds
+ * of its timestamp, its action, the item id when there is one, the count
+ * when other than one, the resource, the event source and the actor. The
+ * length is written last, and the unused end of a segment is zeros, so the
+ * events are read up to the first zero length, and an event cut short by a
+ * crash is never read.
+ *
+ * The events are indexed by time bucket, item, action and resource as they
+ * are appended, see ComplianceEventIndex, so a query reads only the events of
+ * the shortest postings of its criteria, within its time window. The index of
+ * a segment is held in memory while it is appended to, then written to a
+ * file next to it, and rebuilt by reading the segment when the log is opened
+ * without it.
+ */
+public class ComplianceEventLog implements Closeable {
+
+	private static final String SEGMENT_PREFIX = "compliance-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String INDEX_SUFFIX = ".idx";
+	private static final int MAGIC = 0x43454c31;
+	private static final int VERSION = 1;
+	private static final int FIRST_MILLIS_OFFSET = 8;
+	private static final int LAST_MILLIS_OFFSET = 16;
+	private static final int HEADER_BYTES = 24;
+	private static final int FIXED_EVENT_BYTES = 8 + 4 + 1 + 1 + 2 + 2 + 2;
+	private static final byte NO_ACTION = -1;
+	private static final byte HAS_ITEM_ID = 1;
+	private static final byte HAS_COUNT = 2;
+	private static final ComplianceAction[] ACTIONS = ComplianceAction.values();
+	private static final Logger logger = LoggerFactory.getLogger(ComplianceEventLog.class);
+
+	/** The smallest segment size, so any event of a sensible size fits. */
+	static final int MIN_SEGMENT_BYTES = 64 * 1024;
+
+	private Path directory;
+	private int segmentBytes;
+	private long rollIntervalNanos;
+	private long fsyncIntervalNanos;
+	private long indexBucketMillis;
+	private long retentionMillis;
+	private long nextSegmentNumber;
+	private AppendedSegment current;
+	private boolean dirty;
+	private long lastForcedNanos;
+
+	/**
+	 * Constructor. The events are appended to a new segment, numbered after
+	 * the segments already in the directory.
+	 *
+	 * @param directory the directory of the segments, created when missing
+	 * @param segmentBytes the size of a segment
+	 * @param rollIntervalMillis how long a segment is appended to at most, 0 to roll on size only
+	 * @param fsyncIntervalMillis how often the appended events are forced to disk, 0 after every batch, negative to leave it to the operating system
+	 * @param indexBucketMillis the length of the time buckets of the index
+	 * @param retentionMillis how long the segments are kept past their last event, 0 to keep them
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public ComplianceEventLog(Path directory, int segmentBytes, long rollIntervalMillis, long fsyncIntervalMillis,
+			long indexBucketMillis, long retentionMillis) throws IOException {
+		if(segmentBytes < MIN_SEGMENT_BYTES) {
+			throw new IllegalArgumentException("Invalid compliance event log segment size " + segmentBytes);
+		}
+		if(indexBucketMillis <= 0) {
+			throw new IllegalArgumentException("Invalid compliance event index bucket length " + indexBucketMillis);
+		}
+		this.directory = Files.createDirectories(directory);
+		this.segmentBytes = segmentBytes;
+		this.rollIntervalNanos = TimeUnit.MILLISECONDS.toNanos(rollIntervalMillis);
+		this.fsyncIntervalNanos = fsyncIntervalMillis < 0 ? -1L : TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+		this.indexBucketMillis = indexBucketMillis;
+		this.retentionMillis = retentionMillis;
+		deleteExpiredSegments();
+		for(Path path : listSegments()) {
+			nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber(path) + 1);
+			if(null == ComplianceEventIndex.read(indexPath(directory, segmentNumber(path)))) {
+				indexSegment(path);
+			}
+		}
+		this.lastForcedNanos = System.nanoTime();
+	}
+
+	/**
+	 * Appends a batch of events, forcing them to disk when due. An event
+	 * without a timestamp is given the current time.
+	 *
+	 * @param complianceEvents the events
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void append(List<ComplianceEvent> complianceEvents) throws IOException {
+		for(ComplianceEvent complianceEvent : complianceEvents) {
+			append(complianceEvent);
+		}
+		flush();
+	}
+
+	/**
+	 * Forces the appended events to disk, if due according to the fsync interval.
+	 */
+	public synchronized void flush() {
+		if(dirty && fsyncIntervalNanos >= 0 && System.nanoTime() - lastForcedNanos >= fsyncIntervalNanos) {
+			force();
+		}
+	}
+
+	/**
+	 * Reads the events of a time window back, oldest segment first.
+	 *
+	 * @param from the time of the first events, inclusive, null for no bound
+	 * @param to the time past the last events, exclusive, null for no bound
+	 * @param consumer the consumer of each event
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void replay(Instant from, Instant to, Consumer<ComplianceEvent> consumer) throws IOException {
+		try {
+			iterator(from, to).forEachRemaining(consumer);
+		}
+		catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Iterates over the events of a time window, oldest segment first. The
+	 * events appended to the current segment after the call are not included.
+	 * A segment is only mapped once the iteration reaches it, and failing to
+	 * do so is thrown as an UncheckedIOException.
+	 *
+	 * @param from the time of the first events, inclusive, null for no bound
+	 * @param to the time past the last events, exclusive, null for no bound
+	 * @return the iterator
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public Iterator<ComplianceEvent> iterator(Instant from, Instant to) throws IOException {
+		ByteBuffer currentEvents;
+		Path currentPath;
+		synchronized(this) {
+			currentPath = null == current ? null : current.path;
+			currentEvents = null == current ? null : (ByteBuffer) current.buffer.duplicate().flip();
+		}
+		Deque<Path> paths = new ArrayDeque<>();
+		for(Path path : listSegments()) {
+			if(!path.equals(currentPath)) {
+				paths.add(path);
+			}
+		}
+		return new EventIterator(paths, currentEvents, from, to);
+	}
+
+	/**
+	 * Queries the events through the indexes, segment by segment. The events
+	 * of a segment are read from the shortest postings of the item, action and
+	 * resource of the filter, otherwise by scanning the offsets the time
+	 * window lies between. The events appended after the call are not
+	 * included.
+	 *
+	 * @param filter the filter
+	 * @param after the position of the last event already read, as given by the query, -1 to start with the first
+	 * @return the matching events, in the order they were appended
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public Query query(ComplianceEventFilter filter, long after) throws IOException {
+		long endNumber;
+		Segment currentSegment = null;
+		synchronized(this) {
+			endNumber = nextSegmentNumber;
+			if(null != current) {
+				int[] range = current.index.range(filter.getFrom(), filter.getTo());
+				currentSegment = new Segment(current.number, (ByteBuffer) current.buffer.duplicate().flip(), range,
+						current.index.postings(filter));
+			}
+		}
+		long firstNumber = after < 0 ? 0L : ComplianceEventIndex.segmentNumber(after);
+		Deque<Long> numbers = new ArrayDeque<>();
+		for(Path path : listSegments()) {
+			long number = segmentNumber(path);
+			if(number >= firstNumber && number < endNumber) {
+				numbers.add(number);
+			}
+		}
+		return new Query(directory, filter, after, numbers, currentSegment);
+	}
+
+	/**
+	 * Forces the events to disk and closes the current segment, writing its
+	 * index next to it.
+	 */
+	@Override
+	public synchronized void close() {
+		if(null != current) {
+			if(fsyncIntervalNanos >= 0) {
+				force();
+			}
+			try {
+				current.index.write(indexPath(directory, current.number));
+			}
+			catch(IOException e) {
+				logger.warn("Failed to write the index of the compliance event log segment {}, rebuilt on open", current.path, e);
+			}
+			current = null;
+		}
+	}
+
+	/**
+	 * Appends an event, rolling the segment over when it does not fit or is due.
+	 *
+	 * @param complianceEvent the event
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void append(ComplianceEvent complianceEvent) throws IOException {
+		Instant timestamp = null != complianceEvent.getTimestamp() ? complianceEvent.getTimestamp() : Instant.now();
+		byte[] resource = encode(complianceEvent.getResource());
+		byte[] eventSource = encode(complianceEvent.getEventSource());
+		byte[] actor = encode(complianceEvent.getActor());
+		boolean hasCount = 1L != complianceEvent.getCount();
+		int length = FIXED_EVENT_BYTES + (null != complianceEvent.getItemId() ? 8 : 0) + (hasCount ? 8 : 0)
+				+ length(resource) + length(eventSource) + length(actor);
+		if(4 + length > segmentBytes - HEADER_BYTES) {
+			throw new IllegalArgumentException("Compliance event of " + length + " bytes too large for the log segments");
+		}
+		if(null == current || current.buffer.remaining() < 4 + length
+				|| (rollIntervalNanos > 0 && System.nanoTime() - current.openedNanos >= rollIntervalNanos)) {
+			roll();
+		}
+		MappedByteBuffer buffer = current.buffer;
+		int start = buffer.position();
+		buffer.position(start + 4);
+		buffer.putLong(timestamp.getEpochSecond());
+		buffer.putInt(timestamp.getNano());
+		buffer.put(null != complianceEvent.getAction() ? (byte) complianceEvent.getAction().ordinal() : NO_ACTION);
+		buffer.put((byte) ((null != complianceEvent.getItemId() ? HAS_ITEM_ID : 0) | (hasCount ? HAS_COUNT : 0)));
+		if(null != complianceEvent.getItemId()) {
+			buffer.putLong(complianceEvent.getItemId());
+		}
+		if(hasCount) {
+			buffer.putLong(complianceEvent.getCount());
+		}
+		put(buffer, resource);
+		put(buffer, eventSource);
+		put(buffer, actor);
+		buffer.putInt(start, length);
+		current.index.add(start, timestamp, complianceEvent);
+
+		long millis = timestamp.toEpochMilli();
+		buffer.putLong(FIRST_MILLIS_OFFSET, Math.min(buffer.getLong(FIRST_MILLIS_OFFSET), millis));
+		buffer.putLong(LAST_MILLIS_OFFSET, Math.max(buffer.getLong(LAST_MILLIS_OFFSET), millis));
+		dirty = true;
+	}
+
+	/**
+	 * Closes the current segment and starts the next one.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void roll() throws IOException {
+		close();
+		long number = nextSegmentNumber++;
+		Path path = segmentPath(directory, number);
+		MappedByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+		}
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putLong(Long.MAX_VALUE);
+		buffer.putLong(Long.MIN_VALUE);
+		current = new AppendedSegment(number, path, buffer, ComplianceEventIndex.appending(indexBucketMillis));
+		deleteExpiredSegments();
+	}
+
+	/**
+	 * Deletes the segments, but the current one, whose last event is older
+	 * than the retention, along with their index.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void deleteExpiredSegments() throws IOException {
+		if(retentionMillis <= 0) {
+			return;
+		}
+		long expiredMillis = System.currentTimeMillis() - retentionMillis;
+		for(Path path : listSegments()) {
+			long number = segmentNumber(path);
+			if(null != current && number == current.number) {
+				continue;
+			}
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				while(header.hasRemaining() && channel.read(header) >= 0) {
+					// reads the whole header
+				}
+			}
+			if(!header.hasRemaining() && MAGIC == header.getInt(0) && VERSION == header.getInt(4)
+					&& header.getLong(LAST_MILLIS_OFFSET) < expiredMillis) {
+				try {
+					Files.deleteIfExists(indexPath(directory, number));
+					Files.delete(path);
+				}
+				catch(IOException e) {
+					logger.warn("Failed to delete the expired compliance event log segment {}", path, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forces the current segment to disk.
+	 */
+	private void force() {
+		if(null != current) {
+			current.buffer.force();
+		}
+		dirty = false;
+		lastForcedNanos = System.nanoTime();
+	}
+
+	/**
+	 * Indexes the events of a segment, and writes the index next to it.
+	 *
+	 * @param path the path of the segment
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void indexSegment(Path path) throws IOException {
+		ByteBuffer events = mapEvents(path, null, null);
+		if(null == events) {
+			return;
+		}
+		ComplianceEventIndex.Appending index = ComplianceEventIndex.appending(indexBucketMillis);
+		events.position(HEADER_BYTES);
+		int offset = events.position();
+		ComplianceEvent complianceEvent;
+		while(null != (complianceEvent = readEvent(events))) {
+			index.add(offset, complianceEvent.getTimestamp(), complianceEvent);
+			offset = events.position();
+		}
+		index.write(indexPath(directory, segmentNumber(path)));
+	}
+
+	/**
+	 * Gets the path of a segment.
+	 *
+	 * @param directory the directory of the segments
+	 * @param number the segment number
+	 * @return the path
+	 */
+	private static Path segmentPath(Path directory, long number) {
+		return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * Gets the path of the index of a segment.
+	 *
+	 * @param directory the directory of the segments
+	 * @param number the segment number
+	 * @return the path
+	 */
+	private static Path indexPath(Path directory, long number) {
+		return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, INDEX_SUFFIX));
+	}
+
+	/**
+	 * Lists the segments of the directory, oldest first.
+	 *
+	 * @return the paths of the segments
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private List<Path> listSegments() throws IOException {
+		try(Stream<Path> paths = Files.list(directory)) {
+			return paths.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+							&& path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Maps a segment to read its events, skipped when it is not a segment or
+	 * holds no event of the time window.
+	 *
+	 * @param path the path of the segment
+	 * @param from the time of the first events, null for no bound
+	 * @param to the time past the last events, null for no bound
+	 * @return the events of the segment, null when skipped
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static ByteBuffer mapEvents(Path path, Instant from, Instant to) throws IOException {
+		ByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(channel.size() < HEADER_BYTES) {
+				return null;
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if(MAGIC != buffer.getInt(0) || VERSION != buffer.getInt(4)
+				|| (null != from && buffer.getLong(LAST_MILLIS_OFFSET) < from.toEpochMilli())
+				|| (null != to && buffer.getLong(FIRST_MILLIS_OFFSET) >= to.toEpochMilli())) {
+			return null;
+		}
+		return buffer;
+	}
+
+	/**
+	 * Reads the next event of a segment.
+	 *
+	 * @param buffer the segment, positioned on the length of the event
+	 * @return the event, null past the last one
+	 */
+	private static ComplianceEvent readEvent(ByteBuffer buffer) {
+		if(buffer.remaining() < 4) {
+			return null;
+		}
+		int length = buffer.getInt();
+		if(length < FIXED_EVENT_BYTES || length > buffer.remaining()) {
+			return null;
+		}
+		try {
+			ComplianceEvent complianceEvent = new ComplianceEvent();
+			complianceEvent.setTimestamp(Instant.ofEpochSecond(buffer.getLong(), buffer.getInt()));
+			byte action = buffer.get();
+			complianceEvent.setAction(NO_ACTION != action ? ACTIONS[action] : null);
+			byte flags = buffer.get();
+			if(0 != (flags & HAS_ITEM_ID)) {
+				complianceEvent.setItemId(buffer.getLong());
+			}
+			if(0 != (flags & HAS_COUNT)) {
+				complianceEvent.setCount(buffer.getLong());
+			}
+			complianceEvent.setResource(get(buffer));
+			complianceEvent.setEventSource(get(buffer));
+			complianceEvent.setActor(get(buffer));
+			return complianceEvent;
+		}
+		catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Encodes a string.
+	 *
+	 * @param value the string, may be null
+	 * @return the UTF-8 bytes, null for null
+	 */
+	private static byte[] encode(String value) {
+		if(null == value) {
+			return null;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Compliance event value of " + bytes.length + " bytes too long for the log");
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets the number of bytes taken by an encoded string, besides its length.
+	 *
+	 * @param bytes the encoded string, may be null
+	 * @return the number of bytes
+	 */
+	private static int length(byte[] bytes) {
+		return null == bytes ? 0 : bytes.length;
+	}
+
+	/**
+	 * Puts an encoded string, after its length, -1 for null.
+	 *
+	 * @param buffer the buffer
+	 * @param bytes the encoded string, may be null
+	 */
+	private static void put(ByteBuffer buffer, byte[] bytes) {
+		if(null == bytes) {
+			buffer.putShort((short) -1);
+			return;
+		}
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Gets a string put by {@link #put(ByteBuffer, byte[])}.
+	 *
+	 * @param buffer the buffer
+	 * @return the string, may be null
+	 */
+	private static String get(ByteBuffer buffer) {
+		short length = buffer.getShort();
+		if(length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Gets the number of a segment from its file name.
+	 *
+	 * @param path the path of the segment
+	 * @return the segment number
+	 */
+	private static long segmentNumber(Path path) {
+		String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	/**
+	 * The segment appended to.
+	 */
+	private static final class AppendedSegment {
+
+		private final long number;
+		private final Path path;
+		private final MappedByteBuffer buffer;
+		private final ComplianceEventIndex.Appending index;
+		private final long openedNanos = System.nanoTime();
+
+		private AppendedSegment(long number, Path path, MappedByteBuffer buffer, ComplianceEventIndex.Appending index) {
+			this.number = number;
+			this.path = path;
+			this.buffer = buffer;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * A segment read by a query: its events, the offsets the time window of
+	 * the query lies between, and the postings to read.
+	 */
+	private static final class Segment {
+
+		private final long number;
+		private final ByteBuffer events;
+		private final int[] range;
+		private final ComplianceEventIndex.Postings postings;
+
+		private Segment(long number, ByteBuffer events, int[] range, ComplianceEventIndex.Postings postings) {
+			this.number = number;
+			this.events = events;
+			this.range = range;
+			this.postings = postings;
+		}
+	}
+
+	/**
+	 * Iterates over the events of the closed segments, then of the current one.
+	 */
+	private static final class EventIterator implements Iterator<ComplianceEvent> {
+
+		private final Deque<Path> paths;
+		private ByteBuffer currentEvents;
+		private final Instant from;
+		private final Instant to;
+		private ByteBuffer events;
+		private ComplianceEvent next;
+
+		private EventIterator(Deque<Path> paths, ByteBuffer currentEvents, Instant from, Instant to) {
+			this.paths = paths;
+			this.currentEvents = currentEvents;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while(null == next) {
+				if(null == events && !nextSegment()) {
+					return false;
+				}
+				ComplianceEvent complianceEvent = readEvent(events);
+				if(null == complianceEvent) {
+					events = null;
+				}
+				else if((null == from || !complianceEvent.getTimestamp().isBefore(from))
+						&& (null == to || complianceEvent.getTimestamp().isBefore(to))) {
+					next = complianceEvent;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public ComplianceEvent next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ComplianceEvent complianceEvent = next;
+			next = null;
+			return complianceEvent;
+		}
+
+		/**
+		 * Moves on to the next segment holding events of the time window.
+		 *
+		 * @return true, if there is one
+		 */
+		private boolean nextSegment() {
+			while(!paths.isEmpty()) {
+				try {
+					events = mapEvents(paths.poll(), from, to);
+				}
+				catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				if(null != events) {
+					events.position(HEADER_BYTES);
+					return true;
+				}
+			}
+			if(null != currentEvents) {
+				events = currentEvents;
+				events.position(HEADER_BYTES);
+				currentEvents = null;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The events matching a query, read one segment at a time as the
+	 * iteration reaches them. Failing to map a segment is thrown as an
+	 * UncheckedIOException.
+	 */
+	public static final class Query implements Iterator<ComplianceEvent> {
+
+		private final Path directory;
+		private final ComplianceEventFilter filter;
+		private final long after;
+		private final Deque<Long> numbers;
+		private final Segment currentSegment;
+		private Segment segment;
+		private int postingIndex;
+		private int scanOffset;
+		private ComplianceEvent next;
+		private long nextPosition;
+		private long position;
+
+		private Query(Path directory, ComplianceEventFilter filter, long after, Deque<Long> numbers, Segment currentSegment) {
+			this.directory = directory;
+			this.filter = filter;
+			this.after = after;
+			this.numbers = numbers;
+			this.currentSegment = currentSegment;
+			this.position = after;
+		}
+
+		/**
+		 * Gets the position of the last event returned, to resume the query
+		 * after it.
+		 *
+		 * @return the position, the one the query started after when none was returned
+		 */
+		public long getPosition() {
+			return position;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while(null == next) {
+				if(null == segment && !nextSegment()) {
+					return false;
+				}
+				if(null == segment.postings) {
+					scan();
+				}
+				else {
+					readPostings();
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public ComplianceEvent next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ComplianceEvent complianceEvent = next;
+			position = nextPosition;
+			next = null;
+			return complianceEvent;
+		}
+
+		/**
+		 * Reads the events of the postings of the segment, up to the next
+		 * match, moving past the segment at the end of its range.
+		 */
+		private void readPostings() {
+			ComplianceEventIndex.Postings postings = segment.postings;
+			while(postingIndex < postings.size()) {
+				int offset = postings.get(postingIndex++);
+				if(offset > segment.range[1]) {
+					break;
+				}
+				if(offset < segment.events.limit()) {
+					segment.events.position(offset);
+					if(match(readEvent(segment.events), offset)) {
+						return;
+					}
+				}
+			}
+			segment = null;
+		}
+
+		/**
+		 * Reads the events of the segment from the scan offset, up to the
+		 * next match, moving past the segment at the end of its range.
+		 */
+		private void scan() {
+			while(scanOffset <= segment.range[1] && scanOffset < segment.events.limit()) {
+				segment.events.position(scanOffset);
+				ComplianceEvent complianceEvent = readEvent(segment.events);
+				if(null == complianceEvent) {
+					break;
+				}
+				int offset = scanOffset;
+				scanOffset = segment.events.position();
+				if(ComplianceEventIndex.position(segment.number, offset) > after && match(complianceEvent, offset)) {
+					return;
+				}
+			}
+			segment = null;
+		}
+
+		/**
+		 * Keeps an event as the next one when it matches the filter.
+		 *
+		 * @param complianceEvent the event, may be null
+		 * @param offset the offset of the event in the segment
+		 * @return true, if it matches
+		 */
+		private boolean match(ComplianceEvent complianceEvent, int offset) {
+			if(null == complianceEvent || !filter.matches(complianceEvent)) {
+				return false;
+			}
+			next = complianceEvent;
+			nextPosition = ComplianceEventIndex.position(segment.number, offset);
+			return true;
+		}
+
+		/**
+		 * Moves on to the next segment holding events of the time window, and
+		 * past the position the query started after.
+		 *
+		 * @return true, if there is one
+		 */
+		private boolean nextSegment() {
+			while(!numbers.isEmpty()) {
+				long number = numbers.poll();
+				try {
+					segment = null != currentSegment && number == currentSegment.number ? currentSegment : segment(number);
+				}
+				catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				if(null == segment || null == segment.range) {
+					segment = null;
+					continue;
+				}
+				int skipped = segment.range[0] - 1;
+				scanOffset = segment.range[0];
+				if(after >= 0 && number == ComplianceEventIndex.segmentNumber(after)) {
+					skipped = Math.max(skipped, ComplianceEventIndex.offset(after));
+					scanOffset = Math.max(scanOffset, ComplianceEventIndex.offset(after));
+				}
+				if(null != segment.postings) {
+					postingIndex = segment.postings.indexAfter(skipped);
+				}
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Maps a segment rolled over, along with its index. A segment
+		 * without an index is scanned whole.
+		 *
+		 * @param number the segment number
+		 * @return the segment, null when it is missing, deleted as expired, or holds no event of the time window
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private Segment segment(long number) throws IOException {
+			ByteBuffer events;
+			ComplianceEventIndex index;
+			try {
+				events = mapEvents(segmentPath(directory, number), filter.getFrom(), filter.getTo());
+				index = null == events ? null : ComplianceEventIndex.read(indexPath(directory, number));
+			}
+			catch(NoSuchFileException e) {
+				return null;
+			}
+			if(null == events) {
+				return null;
+			}
+			if(null == index) {
+				return new Segment(number, events, new int[] { HEADER_BYTES, Integer.MAX_VALUE }, null);
+			}
+			return new Segment(number, events, index.range(filter.getFrom(), filter.getTo()), index.postings(filter));
+		}
+	}
+}
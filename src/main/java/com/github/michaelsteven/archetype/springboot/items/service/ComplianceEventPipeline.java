@@ -0,0 +1,227 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The Class ComplianceEventPipeline.
+ *
+ * Carries the compliance events from the threads recording them to the
+ * ComplianceEventSink. An event is added to a bounded ring buffer without
+ * taking a lock, and a single thread writes the buffer to the sink in
+ * batches, so recording an event costs the caller little more than a
+ * compare-and-set and never runs on a shared pool.
+ *
+ * When the buffer is full, the overflow policy decides: block, the default,
+ * waits for room while the writer runs, drop discards the event, and sample
+ * keeps only one event out of sample-one-in once the buffer is half full, and
+ * discards when it is full. Discarding compliance events has to be opted in
+ * to, and the first event discarded is logged as a warning. The writer starts
+ * along with the pipeline, before any bean recording events can use it, so
+ * the events recorded while the application starts are blocked on rather
+ * than discarded. The events
+ * discarded and those the sink failed to write are counted.
+ */
+@Component
+public class ComplianceEventPipeline implements InitializingBean, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ComplianceEventPipeline.class);
+
+	/** The name of the gauge of the events waiting in the buffer. */
+	static final String QUEUED_METRIC = "compliance.events.queued";
+
+	/** The name of the counter of the events written to the sink. */
+	static final String WRITTEN_METRIC = "compliance.events.written";
+
+	/** The name of the counter of the events discarded, tagged with the reason. */
+	static final String DROPPED_METRIC = "compliance.events.dropped";
+
+	private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000L;
+
+	/**
+	 * What to do with an event when the buffer is full.
+	 */
+	public enum OverflowPolicy {
+		block,
+		drop,
+		sample;
+	}
+
+	private ComplianceEventSink complianceEventSink;
+	private ComplianceEventRingBuffer ringBuffer;
+	private OverflowPolicy overflowPolicy;
+	private int sampleOneIn;
+	private int batchSize;
+	private long pollIntervalNanos;
+	private final AtomicLong sampled = new AtomicLong();
+	private final AtomicBoolean droppedOnce = new AtomicBoolean();
+	private volatile boolean running;
+	private Thread writer;
+	private Counter written;
+	private Counter droppedFull;
+	private Counter droppedSampled;
+	private Counter failed;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param complianceEventSink the sink the events are written to
+	 * @param meterRegistry the meter registry
+	 * @param capacity the number of events the buffer holds, rounded up to a power of two
+	 * @param overflowPolicy what to do with an event when the buffer is full
+	 * @param sampleOneIn the one event in how many kept by the sample policy once the buffer is half full
+	 * @param batchSize the number of events written to the sink at a time at most
+	 * @param pollIntervalMillis how long the writer waits once the buffer is empty
+	 */
+	public ComplianceEventPipeline(ComplianceEventSink complianceEventSink, MeterRegistry meterRegistry,
+			@Value("${api.compliance.capacity:8192}") int capacity,
+			@Value("${api.compliance.overflow:block}") OverflowPolicy overflowPolicy,
+			@Value("${api.compliance.sample-one-in:10}") int sampleOneIn,
+			@Value("${api.compliance.batch-size:256}") int batchSize,
+			@Value("${api.compliance.poll-interval-ms:10}") long pollIntervalMillis) {
+		this.complianceEventSink = complianceEventSink;
+		this.ringBuffer = new ComplianceEventRingBuffer(capacity);
+		this.overflowPolicy = overflowPolicy;
+		this.sampleOneIn = Math.max(sampleOneIn, 1);
+		this.batchSize = batchSize;
+		this.pollIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis);
+		this.written = meterRegistry.counter(WRITTEN_METRIC);
+		this.droppedFull = meterRegistry.counter(DROPPED_METRIC, "reason", "full");
+		this.droppedSampled = meterRegistry.counter(DROPPED_METRIC, "reason", "sampled");
+		this.failed = meterRegistry.counter(DROPPED_METRIC, "reason", "failed");
+		meterRegistry.gauge(QUEUED_METRIC, ringBuffer, ComplianceEventRingBuffer::size);
+	}
+
+	/**
+	 * Publishes an event, on the thread recording it.
+	 *
+	 * @param complianceEvent the event
+	 * @return true, if the event was accepted, false when discarded
+	 */
+	public boolean publish(ComplianceEvent complianceEvent) {
+		if(OverflowPolicy.sample == overflowPolicy && ringBuffer.size() > ringBuffer.getCapacity() / 2
+				&& 0 != sampled.incrementAndGet() % sampleOneIn) {
+			return drop(droppedSampled);
+		}
+		while(!ringBuffer.offer(complianceEvent)) {
+			if(OverflowPolicy.block != overflowPolicy || !running) {
+				return drop(droppedFull);
+			}
+			LockSupport.parkNanos(BLOCK_PARK_NANOS);
+		}
+		return true;
+	}
+
+	/**
+	 * Starts the writer, once the pipeline is initialized.
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		start();
+	}
+
+	/**
+	 * Starts the writer. The events published until then wait in the buffer.
+	 */
+	public synchronized void start() {
+		if(null == writer) {
+			running = true;
+			writer = new Thread(this::write, "compliance-events");
+			writer.setDaemon(true);
+			writer.start();
+		}
+	}
+
+	/**
+	 * Stops the writer once it wrote the events left in the buffer.
+	 *
+	 * @throws InterruptedException the interrupted exception
+	 */
+	@Override
+	public void destroy() throws InterruptedException {
+		running = false;
+		Thread writerThread;
+		synchronized(this) {
+			writerThread = writer;
+		}
+		if(null != writerThread) {
+			LockSupport.unpark(writerThread);
+			writerThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+			if(writerThread.isAlive()) {
+				logger.warn("Stopping the compliance event writer with {} events not written", ringBuffer.size());
+				writerThread.interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffer to the sink in batches, until stopped and the buffer is empty.
+	 */
+	private void write() {
+		List<ComplianceEvent> batch = new ArrayList<>(batchSize);
+		while(!Thread.currentThread().isInterrupted()) {
+			if(0 == ringBuffer.drainTo(batch, batchSize)) {
+				flush();
+				if(!running) {
+					return;
+				}
+				LockSupport.parkNanos(this, pollIntervalNanos);
+				continue;
+			}
+			try {
+				complianceEventSink.write(batch);
+				written.increment(batch.size());
+			}
+			catch(RuntimeException e) {
+				logger.error("Failed to write {} compliance events: {}", batch.size(), e.getMessage());
+				failed.increment(batch.size());
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Lets the sink catch up while there is no event to write.
+	 */
+	private void flush() {
+		try {
+			complianceEventSink.flush();
+		}
+		catch(RuntimeException e) {
+			logger.error("Failed to flush the compliance events: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Counts an event discarded, warning of the first one.
+	 *
+	 * @param dropped the counter of the reason it was discarded for
+	 * @return false
+	 */
+	private boolean drop(Counter dropped) {
+		dropped.increment();
+		if(droppedOnce.compareAndSet(false, true)) {
+			logger.warn("Discarding compliance events, the buffer of {} events is {} with the {} overflow policy, "
+					+ "further events discarded are only counted in {}", ringBuffer.getCapacity(),
+					dropped == droppedSampled ? "half full" : "full", overflowPolicy, DROPPED_METRIC);
+		}
+		return false;
+	}
+}
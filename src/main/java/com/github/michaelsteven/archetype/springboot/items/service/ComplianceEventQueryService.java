@@ -0,0 +1,103 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.validation.ValidationException;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.github.michaelsteven.archetype.springboot.items.model.CursorPageDto;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEventFilter;
+
+/**
+ * The Class ComplianceEventQueryService.
+ *
+ * Pages through the compliance events recorded in the log of the file sink,
+ * the only sink the events can be read back from. A page is read straight
+ * from the log through its indexes, and the cursor is the position of the
+ * last event of the page, so neither the matching events nor any state of
+ * the query are held between pages.
+ */
+@Service
+@ConditionalOnProperty(name = "api.compliance.sink", havingValue = "file")
+public class ComplianceEventQueryService {
+
+	private FileComplianceEventSink fileComplianceEventSink;
+	private MessageSource messageSource;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param fileComplianceEventSink the file compliance event sink
+	 * @param messageSource the message source
+	 */
+	public ComplianceEventQueryService(FileComplianceEventSink fileComplianceEventSink, MessageSource messageSource) {
+		this.fileComplianceEventSink = fileComplianceEventSink;
+		this.messageSource = messageSource;
+	}
+
+	/**
+	 * Gets a page of the events matching a filter, in the order they were
+	 * recorded, following a cursor.
+	 *
+	 * @param filter the filter
+	 * @param cursor the cursor of the previous page, blank for the first page
+	 * @param size the page size
+	 * @return the events
+	 */
+	public CursorPageDto<ComplianceEvent> getEventsAfter(ComplianceEventFilter filter, String cursor, int size) {
+		ComplianceEventLog.Query query = fileComplianceEventSink.query(filter, decodeCursor(cursor));
+		List<ComplianceEvent> complianceEvents = new ArrayList<>(size);
+		while(complianceEvents.size() < size && query.hasNext()) {
+			complianceEvents.add(query.next());
+		}
+		boolean hasNext = query.hasNext();
+		String nextCursor = hasNext ? encodeCursor(query.getPosition()) : null;
+		return new CursorPageDto<>(complianceEvents, size, hasNext, nextCursor);
+	}
+
+	/**
+	 * Encodes a position of the log as an opaque cursor.
+	 *
+	 * @param position the position
+	 * @return the cursor
+	 */
+	private String encodeCursor(long position) {
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(String.valueOf(position).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decodes an opaque cursor back into the position it wraps.
+	 *
+	 * @param cursor the cursor, blank for the first page
+	 * @return the position to read past
+	 */
+	private long decodeCursor(String cursor) {
+		if(!StringUtils.hasText(cursor)) {
+			return -1L;
+		}
+		try {
+			long position = Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+			if(position < 0) {
+				throw new IllegalArgumentException(cursor);
+			}
+			return position;
+		}
+		catch(IllegalArgumentException e) {
+			throw new ValidationException(
+					messageSource.getMessage("complianceeventqueryservice.validationexception.invalidcursor",
+						new Object[] { cursor },
+						LocaleContextHolder.getLocale() )
+				);
+		}
+	}
+}
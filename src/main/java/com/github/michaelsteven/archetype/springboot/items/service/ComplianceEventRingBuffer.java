@@ -0,0 +1,126 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+
+/**
+ * The Class ComplianceEventRingBuffer.
+ *
+ * A bounded ring buffer of compliance events, which any number of threads
+ * offer to and a single thread polls from, without locks. Each slot carries
+ * a sequence telling whose turn it is: a producer claims the next position
+ * with a compare-and-set once its slot is free, fills it, then publishes it
+ * by advancing the sequence, which the consumer waits for before reading.
+ * Offering to a full buffer fails right away instead of waiting.
+ */
+public class ComplianceEventRingBuffer {
+
+	private final int capacity;
+	private final int mask;
+	private final ComplianceEvent[] slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity the capacity, rounded up to a power of two
+	 */
+	public ComplianceEventRingBuffer(int capacity) {
+		if(capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Invalid ring buffer capacity " + capacity);
+		}
+		this.capacity = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+		this.mask = this.capacity - 1;
+		this.slots = new ComplianceEvent[this.capacity];
+		this.sequences = new AtomicLongArray(this.capacity);
+		for(int i = 0; i < this.capacity; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Gets the capacity.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the number of events held, exact only when no thread is offering or polling.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return (int) Math.max(0L, Math.min(capacity, tail.get() - head));
+	}
+
+	/**
+	 * Offers an event, from any thread.
+	 *
+	 * @param complianceEvent the event
+	 * @return true, if the event was added, false when the buffer is full
+	 */
+	public boolean offer(ComplianceEvent complianceEvent) {
+		long position = tail.get();
+		while(true) {
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+			if(difference == 0) {
+				if(tail.compareAndSet(position, position + 1)) {
+					slots[index] = complianceEvent;
+					sequences.lazySet(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			}
+			else if(difference < 0) {
+				return false;
+			}
+			else {
+				position = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Polls the oldest event, from the consumer thread only.
+	 *
+	 * @return the event, null when the buffer is empty
+	 */
+	public ComplianceEvent poll() {
+		long position = head;
+		int index = (int) position & mask;
+		if(sequences.get(index) != position + 1) {
+			return null;
+		}
+		ComplianceEvent complianceEvent = slots[index];
+		slots[index] = null;
+		sequences.lazySet(index, position + capacity);
+		head = position + 1;
+		return complianceEvent;
+	}
+
+	/**
+	 * Moves the oldest events to a list, from the consumer thread only.
+	 *
+	 * @param complianceEvents the list the events are added to
+	 * @param maxEvents the number of events moved at most
+	 * @return the number of events moved
+	 */
+	public int drainTo(List<ComplianceEvent> complianceEvents, int maxEvents) {
+		int drained = 0;
+		ComplianceEvent complianceEvent;
+		while(drained < maxEvents && null != (complianceEvent = poll())) {
+			complianceEvents.add(complianceEvent);
+			drained++;
+		}
+		return drained;
+	}
+}
@@ -0,0 +1,29 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.util.List;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+
+/**
+ * The Interface ComplianceEventSink.
+ *
+ * Where the compliance events end up. The ComplianceEventPipeline hands the
+ * events over in batches, always from the same thread, so an implementation
+ * does not need to be thread safe. The sink is picked with api.compliance.sink.
+ */
+public interface ComplianceEventSink {
+
+	/**
+	 * Writes a batch of events.
+	 *
+	 * @param complianceEvents the events, in the order they were recorded
+	 */
+	void write(List<ComplianceEvent> complianceEvents);
+
+	/**
+	 * Called by the pipeline whenever it finds no event to write, for a sink
+	 * buffering what it writes to catch up. Does nothing by default.
+	 */
+	default void flush() {
+	}
+}
@@ -0,0 +1,166 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The Class ComplianceReadAggregator.
+ *
+ * Keeps the volume of the read compliance events in check, as reads far
+ * outnumber writes and every item read is recorded. Depending on the read
+ * policy, the read events are all published, sampled, publishing one in
+ * sample-one-in with that count, or rolled up: counted in memory by resource,
+ * action and item id, and published as one event per counter, timestamped
+ * with the start of the interval and without an actor, every rollup
+ * interval. While the counters are at their limit, reads of an item not yet
+ * counted are published as is.
+ *
+ * Only the read events go through here, the write events are all published.
+ */
+@Component
+public class ComplianceReadAggregator implements DisposableBean {
+
+	/** The name of the gauge of the read counters held. */
+	static final String ROLLUP_KEYS_METRIC = "compliance.reads.rollup.keys";
+
+	/**
+	 * What to do with the read events.
+	 */
+	public enum ReadPolicy {
+		all,
+		sample,
+		rollup;
+	}
+
+	private ComplianceEventPipeline complianceEventPipeline;
+	private ReadPolicy readPolicy;
+	private int sampleOneIn;
+	private int maxKeys;
+	private final Map<RollupKey, Long> counts = new ConcurrentHashMap<>();
+	private volatile Instant intervalStart = Instant.now();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param complianceEventPipeline the compliance event pipeline
+	 * @param meterRegistry the meter registry
+	 * @param readPolicy what to do with the read events
+	 * @param sampleOneIn the one read event in how many published by the sample policy
+	 * @param maxKeys the number of read counters held at most by the rollup policy
+	 */
+	public ComplianceReadAggregator(ComplianceEventPipeline complianceEventPipeline, MeterRegistry meterRegistry,
+			@Value("${api.compliance.reads.policy:all}") ReadPolicy readPolicy,
+			@Value("${api.compliance.reads.sample-one-in:100}") int sampleOneIn,
+			@Value("${api.compliance.reads.rollup-max-keys:100000}") int maxKeys) {
+		this.complianceEventPipeline = complianceEventPipeline;
+		this.readPolicy = readPolicy;
+		this.sampleOneIn = Math.max(sampleOneIn, 1);
+		this.maxKeys = maxKeys;
+		meterRegistry.gauge(ROLLUP_KEYS_METRIC, counts, Map::size);
+	}
+
+	/**
+	 * Records a read event, on the thread recording it.
+	 *
+	 * @param complianceEvent the read event
+	 */
+	public void record(ComplianceEvent complianceEvent) {
+		switch(readPolicy) {
+		case sample:
+			if(0 == ThreadLocalRandom.current().nextInt(sampleOneIn)) {
+				complianceEvent.setCount(sampleOneIn);
+				complianceEventPipeline.publish(complianceEvent);
+			}
+			break;
+		case rollup:
+			RollupKey key = new RollupKey(complianceEvent.getResource(), complianceEvent.getAction(), complianceEvent.getItemId());
+			if(counts.size() >= maxKeys && !counts.containsKey(key)) {
+				complianceEventPipeline.publish(complianceEvent);
+			}
+			else {
+				counts.merge(key, complianceEvent.getCount(), Long::sum);
+			}
+			break;
+		default:
+			complianceEventPipeline.publish(complianceEvent);
+		}
+	}
+
+	/**
+	 * Publishes the read counters of the interval and starts the next one.
+	 * Each counter is taken out as a whole, so no read counted while flushing
+	 * is lost, it only goes to the next interval.
+	 */
+	@Scheduled(fixedDelayString = "${api.compliance.reads.rollup-interval-ms:60000}")
+	public synchronized void flush() {
+		Instant timestamp = intervalStart;
+		intervalStart = Instant.now();
+		for(RollupKey key : counts.keySet()) {
+			Long count = counts.remove(key);
+			if(null != count) {
+				ComplianceEvent complianceEvent = new ComplianceEvent();
+				complianceEvent.setResource(key.resource);
+				complianceEvent.setAction(key.action);
+				complianceEvent.setItemId(key.itemId);
+				complianceEvent.setTimestamp(timestamp);
+				complianceEvent.setCount(count);
+				complianceEventPipeline.publish(complianceEvent);
+			}
+		}
+	}
+
+	/**
+	 * Publishes the read counters left, before the pipeline stops.
+	 */
+	@Override
+	public void destroy() {
+		flush();
+	}
+
+	/**
+	 * What the reads are counted by.
+	 */
+	private static final class RollupKey {
+
+		private final String resource;
+		private final ComplianceAction action;
+		private final Long itemId;
+
+		private RollupKey(String resource, ComplianceAction action, Long itemId) {
+			this.resource = resource;
+			this.action = action;
+			this.itemId = itemId;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(this == other) {
+				return true;
+			}
+			if(!(other instanceof RollupKey)) {
+				return false;
+			}
+			RollupKey rollupKey = (RollupKey) other;
+			return Objects.equals(itemId, rollupKey.itemId) && action == rollupKey.action
+					&& Objects.equals(resource, rollupKey.resource);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(resource, action, itemId);
+		}
+	}
+}
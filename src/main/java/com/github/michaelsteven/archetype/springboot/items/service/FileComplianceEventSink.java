@@ -0,0 +1,110 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEventFilter;
+
+/**
+ * The Class FileComplianceEventSink.
+ *
+ * Writes the events to a ComplianceEventLog, the durable record of the
+ * compliance events, which can be read back for a time window, or queried
+ * through its indexes.
+ */
+@Component
+@ConditionalOnProperty(name = "api.compliance.sink", havingValue = "file")
+public class FileComplianceEventSink implements ComplianceEventSink, DisposableBean {
+
+	private ComplianceEventLog complianceEventLog;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory the directory of the log segments
+	 * @param segmentBytes the size of a segment
+	 * @param rollIntervalMillis how long a segment is appended to at most, 0 to roll on size only
+	 * @param fsyncIntervalMillis how often the events are forced to disk, 0 after every batch, negative never
+	 * @param indexBucketMillis the length of the time buckets of the index
+	 * @param retentionMillis how long the segments are kept past their last event, 0 to keep them
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public FileComplianceEventSink(@Value("${api.compliance.file.directory:compliance-events}") String directory,
+			@Value("${api.compliance.file.segment-bytes:67108864}") int segmentBytes,
+			@Value("${api.compliance.file.roll-interval-ms:3600000}") long rollIntervalMillis,
+			@Value("${api.compliance.file.fsync-interval-ms:1000}") long fsyncIntervalMillis,
+			@Value("${api.compliance.file.index-bucket-ms:60000}") long indexBucketMillis,
+			@Value("${api.compliance.file.retention-ms:0}") long retentionMillis) throws IOException {
+		this.complianceEventLog = new ComplianceEventLog(Paths.get(directory), segmentBytes, rollIntervalMillis, fsyncIntervalMillis,
+				indexBucketMillis, retentionMillis);
+	}
+
+	/**
+	 * Appends a batch of events to the log.
+	 *
+	 * @param complianceEvents the events
+	 */
+	@Override
+	public void write(List<ComplianceEvent> complianceEvents) {
+		try {
+			complianceEventLog.append(complianceEvents);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Forces the events appended to disk, when due.
+	 */
+	@Override
+	public void flush() {
+		complianceEventLog.flush();
+	}
+
+	/**
+	 * Reads the events of a time window back from the log.
+	 *
+	 * @param from the time of the first events, inclusive, null for no bound
+	 * @param to the time past the last events, exclusive, null for no bound
+	 * @param consumer the consumer of each event
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void replay(Instant from, Instant to, Consumer<ComplianceEvent> consumer) throws IOException {
+		complianceEventLog.replay(from, to, consumer);
+	}
+
+	/**
+	 * Queries the events of the log.
+	 *
+	 * @param filter the filter
+	 * @param after the position of the last event already read, -1 to start with the first
+	 * @return the matching events
+	 */
+	public ComplianceEventLog.Query query(ComplianceEventFilter filter, long after) {
+		try {
+			return complianceEventLog.query(filter, after);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Closes the log, once the pipeline wrote the events left.
+	 */
+	@Override
+	public void destroy() {
+		complianceEventLog.close();
+	}
+}
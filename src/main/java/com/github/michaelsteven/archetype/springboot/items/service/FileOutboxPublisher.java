@@ -0,0 +1,89 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventEntity;
+
+/**
+ * The Class FileOutboxPublisher.
+ *
+ * A stand-in for a message broker, appending the events to a file, one JSON
+ * line per event with its id, type, time and payload. A batch is forced to
+ * disk before it counts as published.
+ */
+@Component
+@ConditionalOnProperty(name = "api.outbox.publisher", havingValue = "file")
+public class FileOutboxPublisher implements OutboxPublisher, DisposableBean {
+
+	private ObjectMapper objectMapper;
+	private FileChannel channel;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param objectMapper the object mapper
+	 * @param path the path of the file, created when missing
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public FileOutboxPublisher(ObjectMapper objectMapper,
+			@Value("${api.outbox.file.path:outbox-events.jsonl}") String path) throws IOException {
+		this.objectMapper = objectMapper;
+		Path file = Paths.get(path).toAbsolutePath();
+		Files.createDirectories(file.getParent());
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Appends a batch of events to the file.
+	 *
+	 * @param outboxEvents the events
+	 */
+	@Override
+	public synchronized void publish(List<OutboxEventEntity> outboxEvents) {
+		try {
+			StringBuilder lines = new StringBuilder();
+			for(OutboxEventEntity outboxEvent : outboxEvents) {
+				ObjectNode node = objectMapper.createObjectNode()
+						.put("id", outboxEvent.getId())
+						.put("type", outboxEvent.getType().name())
+						.put("createdTs", outboxEvent.getCreatedTimestamp().toString());
+				node.set("payload", objectMapper.readTree(outboxEvent.getPayload()));
+				lines.append(objectMapper.writeValueAsString(node)).append('\n');
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Closes the file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public synchronized void destroy() throws IOException {
+		channel.close();
+	}
+}
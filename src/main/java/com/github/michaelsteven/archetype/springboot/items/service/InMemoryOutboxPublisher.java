@@ -0,0 +1,41 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventEntity;
+
+/**
+ * The Class InMemoryOutboxPublisher.
+ *
+ * Keeps the events published in memory, without bound, for tests to check
+ * what reached the publisher.
+ */
+@Component
+@ConditionalOnProperty(name = "api.outbox.publisher", havingValue = "memory")
+public class InMemoryOutboxPublisher implements OutboxPublisher {
+
+	private final List<OutboxEventEntity> published = new ArrayList<>();
+
+	/**
+	 * Keeps a batch of events.
+	 *
+	 * @param outboxEvents the events
+	 */
+	@Override
+	public synchronized void publish(List<OutboxEventEntity> outboxEvents) {
+		published.addAll(outboxEvents);
+	}
+
+	/**
+	 * Gets the events published so far.
+	 *
+	 * @return a copy of the events, in the order they were published
+	 */
+	public synchronized List<OutboxEventEntity> getPublished() {
+		return new ArrayList<>(published);
+	}
+}
@@ -0,0 +1,68 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemRepository;
+
+/**
+ * The Class ItemCountCache.
+ * 
+ * Holds an approximate total of the items, refreshed in the background so
+ * that listings which do not need an exact total never run a count query
+ * on the request path.
+ */
+@Component
+public class ItemCountCache {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ItemCountCache.class);
+	private static final long UNKNOWN = -1L;
+	
+	private ItemRepository itemRepository;
+	private boolean enabled;
+	private final AtomicLong count = new AtomicLong(UNKNOWN);
+	
+	/**
+	 * Constructor.
+	 *
+	 * @param itemRepository the item repository
+	 * @param enabled whether the count is refreshed at all
+	 */
+	public ItemCountCache(ItemRepository itemRepository, @Value("${api.count-cache.enabled:true}") boolean enabled) {
+		this.itemRepository = itemRepository;
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * Refreshes the cached count.
+	 */
+	@Scheduled(fixedDelayString = "${api.count-cache.refresh-interval-ms:60000}")
+	public void refresh() {
+		if(!enabled) {
+			return;
+		}
+		try {
+			count.set(itemRepository.count());
+		}
+		catch(RuntimeException e) {
+			// keep serving the last known value, it is approximate anyway
+			logger.warn("Unable to refresh the item count: {}", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Gets the approximate count.
+	 *
+	 * @return the approximate count, empty until the first refresh completed
+	 */
+	public OptionalLong getApproximateCount() {
+		long value = count.get();
+		return value == UNKNOWN ? OptionalLong.empty() : OptionalLong.of(value);
+	}
+}
@@ -0,0 +1,329 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+
+/**
+ * The Class ItemIngestJournal.
+ *
+ * Append-only journal of the items accepted by the ingest queue, one JSON
+ * line per item, kept in numbered segment files of a directory. A segment is
+ * deleted once it is closed, because it is full or the journal is, and every
+ * item appended to it was inserted. The segments left behind by a crash are
+ * read back when the application starts, so no accepted item is lost.
+ *
+ * When every append is forced to disk, the appends are group committed: an
+ * append only writes its line under the lock, then waits for a force which
+ * started after it. The first appender finding no force under way forces the
+ * segment once for all the lines appended so far, outside of the lock, then
+ * wakes the appenders it covered, so concurrent submits share a force
+ * instead of queueing for one each.
+ */
+public class ItemIngestJournal implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemIngestJournal.class);
+	private static final String SEGMENT_PREFIX = "items-";
+	private static final String SEGMENT_SUFFIX = ".journal";
+	private static final String ID = "id";
+	private static final String NAME = "name";
+	private static final String DESCRIPTION = "description";
+	private static final String DATE_SUBMITTED = "dateSubmitted";
+
+	private Path directory;
+	private long segmentBytes;
+	private boolean fsync;
+	private ObjectMapper objectMapper;
+	private long nextSegmentNumber;
+	private Segment current;
+	private long appendedCount;
+	private long forcedCount;
+	private boolean forcing;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory the directory of the segments, created when missing
+	 * @param segmentBytes the size past which a segment is closed and another started
+	 * @param fsync whether every append is forced to disk before it returns, concurrent appends sharing a force
+	 * @param objectMapper the object mapper, to write the items as JSON
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public ItemIngestJournal(Path directory, long segmentBytes, boolean fsync, ObjectMapper objectMapper) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.segmentBytes = segmentBytes;
+		this.fsync = fsync;
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Reads back the items of the segments left behind by a previous run. Each
+	 * item is handed over with its segment, to be reported as inserted like the
+	 * appended ones. A line cut short by the crash is skipped.
+	 *
+	 * @param consumer the consumer of each item and its segment
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void recover(BiConsumer<ItemDto, Segment> consumer) throws IOException {
+		for(Path path : listSegments()) {
+			nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber(path) + 1);
+			Segment segment = new Segment(path, null);
+			try(BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+				String line;
+				while(null != (line = reader.readLine())) {
+					JsonNode node = readLine(line);
+					if(null == node) {
+						logger.warn("Skipping an unreadable line of the ingest journal {}", path);
+						continue;
+					}
+					segment.appended++;
+					String dateSubmitted = text(node, DATE_SUBMITTED);
+					consumer.accept(new ItemDto(node.get(ID).asLong(), text(node, NAME), text(node, DESCRIPTION),
+							null == dateSubmitted ? null : ZonedDateTime.parse(dateSubmitted), null, null, null), segment);
+				}
+			}
+			logger.info("Recovered {} queued items from the ingest journal {}", segment.appended, path);
+			deleteIfDone(segment);
+		}
+	}
+
+	/**
+	 * Appends an item, returning once it is forced to disk when fsync is on.
+	 *
+	 * @param itemDto the item, with the time it was submitted
+	 * @return the segment the item was appended to
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public Segment append(ItemDto itemDto) throws IOException {
+		ObjectNode node = objectMapper.createObjectNode()
+				.put(ID, itemDto.getId())
+				.put(NAME, itemDto.getName())
+				.put(DESCRIPTION, itemDto.getDescription())
+				.put(DATE_SUBMITTED, null == itemDto.getDateSubmitted() ? null : itemDto.getDateSubmitted().toString());
+		byte[] line = (objectMapper.writeValueAsString(node) + "\n").getBytes(StandardCharsets.UTF_8);
+		Segment segment;
+		long count;
+		synchronized(this) {
+			if(null == current || current.size >= segmentBytes) {
+				roll();
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(line);
+			while(buffer.hasRemaining()) {
+				current.channel.write(buffer);
+			}
+			current.size += line.length;
+			current.appended++;
+			segment = current;
+			count = ++appendedCount;
+		}
+		if(fsync) {
+			force(count);
+		}
+		return segment;
+	}
+
+	/**
+	 * Reports items of a segment as inserted, deleting the segment when it is
+	 * closed and all its items were inserted.
+	 *
+	 * @param segment the segment
+	 * @param count the number of items inserted
+	 */
+	public synchronized void inserted(Segment segment, int count) {
+		segment.inserted += count;
+		deleteIfDone(segment);
+	}
+
+	/**
+	 * Closes the current segment, which is deleted if all its items were inserted.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(null != current) {
+			awaitForce();
+			if(fsync && forcedCount < appendedCount) {
+				current.channel.force(false);
+				forcedCount = appendedCount;
+				notifyAll();
+			}
+			current.channel.close();
+			current.channel = null;
+			deleteIfDone(current);
+			current = null;
+		}
+	}
+
+	/**
+	 * Forces the appends to disk, up to a given one, along with those made
+	 * since. Waits for the force under way, if any, then forces the current
+	 * segment unless that force covered the append. The segments before are
+	 * forced when they are closed.
+	 *
+	 * @param count the number of appends to force, the append itself being the last
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void force(long count) throws IOException {
+		FileChannel channel;
+		long target;
+		synchronized(this) {
+			awaitForce();
+			if(forcedCount >= count) {
+				return;
+			}
+			forcing = true;
+			channel = current.channel;
+			target = appendedCount;
+		}
+		boolean forced = false;
+		try {
+			channel.force(false);
+			forced = true;
+		}
+		finally {
+			synchronized(this) {
+				forcing = false;
+				if(forced) {
+					forcedCount = Math.max(forcedCount, target);
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the force under way, if any, to be over. Called holding the lock.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred, or the wait was interrupted.
+	 */
+	private void awaitForce() throws IOException {
+		while(forcing) {
+			try {
+				wait();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for the ingest journal to be forced to disk");
+			}
+		}
+	}
+
+	/**
+	 * Closes the current segment and starts the next one.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void roll() throws IOException {
+		close();
+		Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+		current = new Segment(path, FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+	}
+
+	/**
+	 * Deletes a segment if it is closed and all its items were inserted.
+	 *
+	 * @param segment the segment
+	 */
+	private void deleteIfDone(Segment segment) {
+		if(null == segment.channel && segment.inserted >= segment.appended) {
+			try {
+				Files.deleteIfExists(segment.path);
+			}
+			catch(IOException e) {
+				logger.warn("Unable to delete the ingest journal {}: {}", segment.path, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Lists the segments of the directory, oldest first.
+	 *
+	 * @return the paths of the segments
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private List<Path> listSegments() throws IOException {
+		try(Stream<Path> paths = Files.list(directory)) {
+			return paths.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+							&& path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Reads a journal line.
+	 *
+	 * @param line the line
+	 * @return the item as JSON, null when the line is not a whole item
+	 */
+	private JsonNode readLine(String line) {
+		try {
+			JsonNode node = objectMapper.readTree(line);
+			return node.hasNonNull(ID) ? node : null;
+		}
+		catch(JsonProcessingException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets a text field of a journal line.
+	 *
+	 * @param node the line
+	 * @param field the field
+	 * @return the text, null when the field is null or missing
+	 */
+	private static String text(JsonNode node, String field) {
+		return node.hasNonNull(field) ? node.get(field).asText() : null;
+	}
+
+	/**
+	 * Gets the number of a segment from its file name.
+	 *
+	 * @param path the path of the segment
+	 * @return the segment number
+	 */
+	private static long segmentNumber(Path path) {
+		String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	/**
+	 * A segment file of the journal, and the count of its items appended and inserted.
+	 */
+	public static final class Segment {
+
+		private final Path path;
+		private FileChannel channel;
+		private long size;
+		private int appended;
+		private int inserted;
+
+		private Segment(Path path, FileChannel channel) {
+			this.path = path;
+			this.channel = channel;
+		}
+	}
+}
@@ -0,0 +1,430 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.MessageSource;
+import org.springframework.context.event.EventListener;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemIdAllocator;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemRepository;
+import com.github.michaelsteven.archetype.springboot.items.service.ItemIngestJournal.Segment;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The Class ItemIngestQueue.
+ *
+ * When enabled, a new item is not inserted on the request thread. It is given
+ * its id, appended to the journal and queued, and a single writer thread
+ * inserts the queue in batches, one transaction per batch. The change event
+ * of a batch is published once it is committed, so the item only shows in
+ * the listings, the search and the caches from then on.
+ *
+ * The queue holds a bounded number of items, submitting more is refused
+ * until the writer catches up. While the database fails, the writer retries
+ * the same batch with a growing delay, and the full queue pushes back on the
+ * clients. An item the database refuses, such as a duplicate, is logged and
+ * dropped without holding up the rest of its batch.
+ *
+ * Without a journal directory the queue is only in memory, and the items not
+ * yet inserted are lost if the application stops abruptly.
+ */
+@Component
+public class ItemIngestQueue implements DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemIngestQueue.class);
+
+	/** The name of the gauge of the items queued. */
+	static final String QUEUED_METRIC = "items.ingest.queued";
+
+	/** The name of the summary of the items inserted per batch. */
+	static final String BATCH_METRIC = "items.ingest.batch";
+
+	/** The name of the counter of the items refused as the queue was full. */
+	static final String REJECTED_METRIC = "items.ingest.rejected";
+
+	/** The size past which a journal segment is closed. */
+	private static final long JOURNAL_SEGMENT_BYTES = 16L * 1024 * 1024;
+	private static final long POLL_MILLIS = 100L;
+	private static final long MAX_RETRY_DELAY_MILLIS = 30000L;
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000L;
+
+	private ItemRepository itemRepository;
+	private ItemIdAllocator itemIdAllocator;
+	private TransactionTemplate transactionTemplate;
+	private ApplicationEventPublisher applicationEventPublisher;
+	private MessageSource messageSource;
+	private boolean enabled;
+	private int batchSize;
+	private long lingerMillis;
+	private long retryAfterSeconds;
+	private ItemIngestJournal journal;
+	private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+	private Semaphore permits;
+	private volatile boolean accepting;
+	private Thread writer;
+	private Counter rejected;
+	private DistributionSummary batchSizes;
+
+	/**
+	 * Constructor. Reads back the items left in the journal by a previous run,
+	 * they are inserted first once the writer starts.
+	 *
+	 * @param itemRepository the item repository
+	 * @param itemIdAllocator the item id allocator, ids are given on submit
+	 * @param transactionManager the transaction manager, a batch is inserted in one transaction
+	 * @param applicationEventPublisher the publisher of the item change events
+	 * @param messageSource the message source
+	 * @param meterRegistry the meter registry
+	 * @param objectMapper the object mapper, for the journal
+	 * @param enabled whether new items are queued, instead of inserted right away
+	 * @param capacity the number of items queued at most
+	 * @param batchSize the number of items inserted per transaction at most
+	 * @param lingerMillis how long the writer waits for a batch to fill
+	 * @param retryAfterSeconds the seconds a refused client is told to wait
+	 * @param journalDirectory the directory of the journal, empty for none
+	 * @param fsync whether every journal append is forced to disk
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public ItemIngestQueue(ItemRepository itemRepository, ItemIdAllocator itemIdAllocator,
+			PlatformTransactionManager transactionManager, ApplicationEventPublisher applicationEventPublisher,
+			MessageSource messageSource, MeterRegistry meterRegistry, ObjectMapper objectMapper,
+			@Value("${api.ingest.enabled:false}") boolean enabled,
+			@Value("${api.ingest.capacity:10000}") int capacity,
+			@Value("${api.ingest.batch-size:500}") int batchSize,
+			@Value("${api.ingest.linger-ms:10}") long lingerMillis,
+			@Value("${api.ingest.retry-after-seconds:1}") long retryAfterSeconds,
+			@Value("${api.ingest.journal.directory:}") String journalDirectory,
+			@Value("${api.ingest.journal.fsync:true}") boolean fsync) throws IOException {
+		this.itemRepository = itemRepository;
+		this.itemIdAllocator = itemIdAllocator;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.applicationEventPublisher = applicationEventPublisher;
+		this.messageSource = messageSource;
+		this.enabled = enabled;
+		this.batchSize = batchSize;
+		this.lingerMillis = lingerMillis;
+		this.retryAfterSeconds = retryAfterSeconds;
+		if(enabled && StringUtils.hasText(journalDirectory)) {
+			this.journal = new ItemIngestJournal(Paths.get(journalDirectory), JOURNAL_SEGMENT_BYTES, fsync, objectMapper);
+			this.journal.recover((itemDto, segment) -> queue.add(new Entry(itemDto, segment, true)));
+		}
+		this.permits = new Semaphore(capacity - queue.size());
+		this.accepting = enabled;
+		this.rejected = meterRegistry.counter(REJECTED_METRIC);
+		this.batchSizes = DistributionSummary.builder(BATCH_METRIC).baseUnit("items").register(meterRegistry);
+		if(enabled) {
+			meterRegistry.gauge(QUEUED_METRIC, queue, BlockingQueue::size);
+		}
+	}
+
+	/**
+	 * Checks if new items are queued.
+	 *
+	 * @return true, if enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Submits a new item, returning once it is journaled and queued.
+	 *
+	 * @param itemEntity the item, without id
+	 * @return the item, with its id and the time it was accepted
+	 * @throws ItemIngestQueueFullException when the queue is full or shutting down
+	 */
+	public ItemEntity submit(ItemEntity itemEntity) {
+		if(!accepting || !permits.tryAcquire()) {
+			rejected.increment();
+			throw new ItemIngestQueueFullException(
+					messageSource.getMessage("itemingestqueue.itemingestqueuefullexception.full",
+						new Object[] { String.valueOf(retryAfterSeconds) },
+						LocaleContextHolder.getLocale() ),
+					retryAfterSeconds);
+		}
+		try {
+			itemEntity.setId(itemIdAllocator.next());
+			itemEntity.setCreatedTimestamp(Instant.now());
+			ItemDto itemDto = new ItemDto(itemEntity.getId(), itemEntity.getName(), itemEntity.getDescription(),
+					ZonedDateTime.ofInstant(itemEntity.getCreatedTimestamp(), ZoneOffset.UTC), null, null, null);
+			Segment segment = null == journal ? null : journal.append(itemDto);
+			queue.add(new Entry(itemDto, segment, false));
+			return itemEntity;
+		}
+		catch(IOException e) {
+			permits.release();
+			throw new UncheckedIOException(e);
+		}
+		catch(RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts the writer, once the application is ready.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void start() {
+		if(enabled && null == writer) {
+			writer = new Thread(this::write, "item-ingest");
+			writer.setDaemon(true);
+			writer.start();
+		}
+	}
+
+	/**
+	 * Stops accepting items and waits for the writer to insert the queue. The
+	 * items it could not insert in time stay in the journal.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws InterruptedException the interrupted exception
+	 */
+	@Override
+	public void destroy() throws IOException, InterruptedException {
+		accepting = false;
+		Thread writerThread;
+		synchronized(this) {
+			writerThread = writer;
+		}
+		if(null != writerThread) {
+			writerThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+			if(writerThread.isAlive()) {
+				logger.warn("Stopping the ingest writer with {} items still queued", queue.size());
+				writerThread.interrupt();
+			}
+		}
+		if(null != journal) {
+			journal.close();
+		}
+	}
+
+	/**
+	 * Inserts the queue in batches, until it is stopped and the queue is empty.
+	 */
+	private void write() {
+		List<Entry> batch = new ArrayList<>(batchSize);
+		try {
+			while(accepting || !queue.isEmpty()) {
+				Entry first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if(null != first) {
+					batch.add(first);
+					fill(batch);
+					insert(batch);
+					batch.clear();
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Fills a batch with the queued items, waiting up to the linger time for
+	 * more to arrive while it is not full.
+	 *
+	 * @param batch the batch
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private void fill(List<Entry> batch) throws InterruptedException {
+		queue.drainTo(batch, batchSize - batch.size());
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+		while(batch.size() < batchSize && accepting) {
+			long remaining = deadline - System.nanoTime();
+			Entry entry = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+			if(null == entry) {
+				return;
+			}
+			batch.add(entry);
+			queue.drainTo(batch, batchSize - batch.size());
+		}
+	}
+
+	/**
+	 * Inserts a batch, retrying while the database fails. When the database
+	 * refuses some of the items, the others are inserted one by one.
+	 *
+	 * @param batch the batch
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private void insert(List<Entry> batch) throws InterruptedException {
+		List<Entry> pending = batch;
+		long retryDelayMillis = POLL_MILLIS;
+		while(true) {
+			try {
+				save(pending);
+				return;
+			}
+			catch(RuntimeException e) {
+				if(isRefused(e)) {
+					pending = saveEach(pending);
+					if(pending.isEmpty()) {
+						return;
+					}
+				}
+				if(!accepting) {
+					logger.error("Giving up on {} queued items while stopping, {}: {}", pending.size(),
+							null == journal ? "they are lost" : "they stay in the journal", e.getMessage());
+					return;
+				}
+				logger.warn("Failed to insert {} queued items, retrying in {} ms: {}", pending.size(), retryDelayMillis, e.getMessage());
+				Thread.sleep(retryDelayMillis);
+				retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+			}
+		}
+	}
+
+	/**
+	 * Inserts items one by one, dropping those the database refuses.
+	 *
+	 * @param entries the entries
+	 * @return the entries which failed for another reason
+	 */
+	private List<Entry> saveEach(List<Entry> entries) {
+		List<Entry> failed = new ArrayList<>();
+		for(Entry entry : entries) {
+			try {
+				save(Collections.singletonList(entry));
+			}
+			catch(RuntimeException e) {
+				if(isRefused(e)) {
+					logger.error("Dropping queued item {} named {}, the database refused it: {}", entry.itemDto.getId(),
+							entry.itemDto.getName(), e.getMessage());
+					done(Collections.singletonList(entry));
+				}
+				else {
+					failed.add(entry);
+				}
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Inserts items in one transaction and publishes their change once it is
+	 * committed. The recovered items already inserted before the journal was
+	 * updated are skipped.
+	 *
+	 * @param entries the entries
+	 */
+	private void save(List<Entry> entries) {
+		transactionTemplate.executeWithoutResult(status -> {
+			List<ItemEntity> items = entries.stream().map(entry -> convert(entry.itemDto)).collect(Collectors.toList());
+			if(entries.stream().anyMatch(entry -> entry.recovered)) {
+				Set<Long> existingIds = new HashSet<>(itemRepository.findExistingIds(
+						items.stream().map(ItemEntity::getId).collect(Collectors.toList())));
+				items.removeIf(item -> existingIds.contains(item.getId()));
+			}
+			if(!items.isEmpty()) {
+				itemRepository.saveAll(items);
+				applicationEventPublisher.publishEvent(new ItemChangeEvent(ComplianceAction.create,
+						items.stream().map(ItemEntity::getId).collect(Collectors.toList())));
+			}
+		});
+		batchSizes.record(entries.size());
+		done(entries);
+	}
+
+	/**
+	 * Frees the room of entries in the queue and reports them to the journal.
+	 *
+	 * @param entries the entries
+	 */
+	private void done(List<Entry> entries) {
+		permits.release(entries.size());
+		if(null != journal) {
+			Map<Segment, Integer> counts = new IdentityHashMap<>();
+			entries.forEach(entry -> counts.merge(entry.segment, 1, Integer::sum));
+			counts.forEach(journal::inserted);
+		}
+	}
+
+	/**
+	 * Checks if an insert failed because the database refused the data, as
+	 * opposed to being unavailable.
+	 *
+	 * @param exception the exception
+	 * @return true, if refused
+	 */
+	private static boolean isRefused(Throwable exception) {
+		for(Throwable cause = exception; null != cause; cause = cause.getCause()) {
+			if(cause instanceof DataIntegrityViolationException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Converts a queued item into a new entity, one per attempt, as a failed
+	 * insert leaves its entities in an unknown state. The entity keeps the
+	 * time the item was submitted as its created timestamp.
+	 *
+	 * @param itemDto the item dto
+	 * @return the item entity
+	 */
+	private static ItemEntity convert(ItemDto itemDto) {
+		ItemEntity itemEntity = new ItemEntity();
+		itemEntity.setId(itemDto.getId());
+		itemEntity.setName(itemDto.getName());
+		itemEntity.setDescription(itemDto.getDescription());
+		if(null != itemDto.getDateSubmitted()) {
+			itemEntity.setAcceptedTimestamp(itemDto.getDateSubmitted().toInstant());
+		}
+		return itemEntity;
+	}
+
+	/**
+	 * A queued item, with the journal segment it was appended to.
+	 */
+	private static final class Entry {
+
+		private final ItemDto itemDto;
+		private final Segment segment;
+		private final boolean recovered;
+
+		private Entry(ItemDto itemDto, Segment segment, boolean recovered) {
+			this.itemDto = itemDto;
+			this.segment = segment;
+			this.recovered = recovered;
+		}
+	}
+}
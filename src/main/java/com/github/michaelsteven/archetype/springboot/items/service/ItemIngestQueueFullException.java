@@ -0,0 +1,34 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+/**
+ * The Class ItemIngestQueueFullException.
+ *
+ * Thrown when an item is submitted while the ingest queue is full or shutting
+ * down, telling how long the client should wait before it retries.
+ */
+public class ItemIngestQueueFullException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long retryAfterSeconds;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param message the message
+	 * @param retryAfterSeconds the seconds to wait before retrying
+	 */
+	public ItemIngestQueueFullException(String message, long retryAfterSeconds) {
+		super(message);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * Gets the seconds to wait before retrying.
+	 *
+	 * @return the retry after seconds
+	 */
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
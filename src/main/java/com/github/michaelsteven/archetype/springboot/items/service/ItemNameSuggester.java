@@ -0,0 +1,114 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ItemProjection;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemRepository;
+
+/**
+ * The Class ItemNameSuggester.
+ *
+ * Suggests item names from a prefix, out of an in-memory trie of all the
+ * names, so that no query is issued while typing. The trie is built from all
+ * the items on startup, then every change published by the write methods of
+ * the ItemsService is applied to it once committed, the same way as the
+ * search index.
+ *
+ * Suggestions are read concurrently, changes are applied one at a time.
+ */
+@Component
+public class ItemNameSuggester {
+
+	private ItemRepository itemRepository;
+	private TransactionTemplate readOnlyTransaction;
+	private final ItemNameTrie itemNameTrie = new ItemNameTrie();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param itemRepository the item repository
+	 * @param transactionManager the transaction manager, the trie is built in a read-only transaction
+	 */
+	public ItemNameSuggester(ItemRepository itemRepository, PlatformTransactionManager transactionManager) {
+		this.itemRepository = itemRepository;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+	}
+
+	/**
+	 * Suggests the names starting with a prefix, ignoring case.
+	 *
+	 * @param prefix the prefix
+	 * @param limit the maximum number of names
+	 * @return the distinct names, in alphabetical order
+	 */
+	public List<String> suggest(String prefix, int limit) {
+		lock.readLock().lock();
+		try {
+			return itemNameTrie.suggest(prefix, limit);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Rebuilds the trie from all the items, streamed in id order.
+	 *
+	 * Suggestions made while rebuilding see the items added so far.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuild() {
+		write(itemNameTrie::clear);
+		readOnlyTransaction.executeWithoutResult(status -> {
+			try(Stream<ItemProjection> items = itemRepository.streamAllByOrderByIdAsc()) {
+				items.forEach(item -> write(() -> itemNameTrie.put(item.getId(), item.getName())));
+			}
+		});
+	}
+
+	/**
+	 * Applies a change to the trie once it is committed, or right away when
+	 * it was made outside of a transaction.
+	 *
+	 * @param itemChangeEvent the item change event
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onItemChange(ItemChangeEvent itemChangeEvent) {
+		if(ComplianceAction.delete == itemChangeEvent.getAction()) {
+			write(() -> itemChangeEvent.getItemIds().forEach(itemNameTrie::remove));
+		}
+		else {
+			List<ItemProjection> items = itemRepository.findProjectedByIdIn(itemChangeEvent.getItemIds());
+			write(() -> items.forEach(item -> itemNameTrie.put(item.getId(), item.getName())));
+		}
+	}
+
+	/**
+	 * Changes the trie, holding the write lock.
+	 *
+	 * @param change the change
+	 */
+	private void write(Runnable change) {
+		lock.writeLock().lock();
+		try {
+			change.run();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,427 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The Class ItemNameTrie.
+ *
+ * A radix trie of the item names, answering which names start with a
+ * prefix. Each edge holds a run of characters rather than a single one,
+ * so a name costs a node only where it branches off from the others.
+ * Matching ignores case, so names differing only by case share a node, and
+ * are suggested with the spelling first added. Names sharing a prefix spelt
+ * with another case keep their own spelling.
+ *
+ * Every node counts the items having exactly its name, and the node of
+ * each item is kept by id, so that an edited or deleted item, known by its
+ * id alone, can be taken out of the trie. Nodes left without items are
+ * pruned.
+ *
+ * Not thread safe.
+ */
+final class ItemNameTrie {
+
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private final Node root = new Node(new char[0], null);
+	private final IdMap nodesById = new IdMap();
+
+	/**
+	 * Adds an item, or changes its name.
+	 *
+	 * @param id the id, positive
+	 * @param name the name
+	 */
+	void put(long id, String name) {
+		Node previous = nodesById.get(id);
+		if(null == name || name.isEmpty()) {
+			if(null != previous) {
+				remove(id);
+			}
+			return;
+		}
+		Node node = insert(name);
+		if(node == previous) {
+			return;
+		}
+		if(0 == node.count && !spells(node, name)) {
+			node.name = name;
+		}
+		node.count++;
+		nodesById.put(id, node);
+		if(null != previous) {
+			release(previous);
+		}
+	}
+
+	/**
+	 * Removes an item.
+	 *
+	 * @param id the id
+	 */
+	void remove(long id) {
+		Node node = nodesById.remove(id);
+		if(null != node) {
+			release(node);
+		}
+	}
+
+	/**
+	 * Removes all the items.
+	 */
+	void clear() {
+		root.children = NO_CHILDREN;
+		nodesById.clear();
+	}
+
+	/**
+	 * Gets the number of items.
+	 *
+	 * @return the number of items
+	 */
+	int size() {
+		return nodesById.size();
+	}
+
+	/**
+	 * Suggests the names starting with a prefix, in alphabetical order
+	 * ignoring case, shorter names first.
+	 *
+	 * @param prefix the prefix
+	 * @param limit the maximum number of names
+	 * @return the names
+	 */
+	List<String> suggest(String prefix, int limit) {
+		Node node = root;
+		StringBuilder path = new StringBuilder(32);
+		int i = 0;
+		while(i < prefix.length()) {
+			Node child = node.child(prefix.charAt(i));
+			if(null == child) {
+				return Collections.emptyList();
+			}
+			int common = commonPrefixLength(child.label, prefix, i);
+			if(common < child.label.length && i + common < prefix.length()) {
+				return Collections.emptyList();
+			}
+			path.append(child.label);
+			node = child;
+			i += common;
+		}
+		List<String> names = new ArrayList<>(Math.min(limit, 16));
+		collect(node, path, limit, names);
+		return names;
+	}
+
+	/**
+	 * Finds the node of a name, adding it when missing.
+	 *
+	 * @param name the name
+	 * @return the node
+	 */
+	private Node insert(String name) {
+		Node node = root;
+		int i = 0;
+		while(i < name.length()) {
+			Node child = node.child(name.charAt(i));
+			if(null == child) {
+				Node leaf = new Node(name.substring(i).toCharArray(), node);
+				node.addChild(leaf);
+				return leaf;
+			}
+			int common = commonPrefixLength(child.label, name, i);
+			if(common < child.label.length) {
+				child = split(child, common);
+			}
+			node = child;
+			i += common;
+		}
+		return node;
+	}
+
+	/**
+	 * Splits the label of a node, the node keeping the end of the label under
+	 * a new node holding its start.
+	 *
+	 * @param node the node
+	 * @param length the length of the start of the label
+	 * @return the new node
+	 */
+	private static Node split(Node node, int length) {
+		Node parent = node.parent;
+		Node head = new Node(Arrays.copyOf(node.label, length), parent);
+		parent.children[parent.indexOf(head.label[0])] = head;
+		node.label = Arrays.copyOfRange(node.label, length, node.label.length);
+		node.parent = head;
+		head.children = new Node[] { node };
+		return head;
+	}
+
+	/**
+	 * Releases an item of a node, pruning the nodes left without items.
+	 *
+	 * @param node the node
+	 */
+	private void release(Node node) {
+		node.count--;
+		if(0 == node.count) {
+			node.name = null;
+		}
+		while(node != root && 0 == node.count && 0 == node.children.length) {
+			Node parent = node.parent;
+			parent.removeChild(node);
+			node = parent;
+		}
+		if(node != root && 0 == node.count && 1 == node.children.length) {
+			merge(node);
+		}
+	}
+
+	/**
+	 * Merges a node without items into its only child.
+	 *
+	 * @param node the node
+	 */
+	private static void merge(Node node) {
+		Node child = node.children[0];
+		char[] label = Arrays.copyOf(node.label, node.label.length + child.label.length);
+		System.arraycopy(child.label, 0, label, node.label.length, child.label.length);
+		child.label = label;
+		child.parent = node.parent;
+		node.parent.children[node.parent.indexOf(label[0])] = child;
+	}
+
+	/**
+	 * Collects the names of a subtree, depth first.
+	 *
+	 * @param node the root of the subtree
+	 * @param path the name of the node
+	 * @param limit the maximum number of names
+	 * @param names the names collected
+	 */
+	private static void collect(Node node, StringBuilder path, int limit, List<String> names) {
+		if(node.count > 0) {
+			names.add(null == node.name ? path.toString() : node.name);
+		}
+		for(Node child : node.children) {
+			if(names.size() >= limit) {
+				return;
+			}
+			int length = path.length();
+			path.append(child.label);
+			collect(child, path, limit, names);
+			path.setLength(length);
+		}
+	}
+
+	/**
+	 * Whether the labels on the path to a node spell a name exactly.
+	 *
+	 * @param node the node of the name
+	 * @param name the name
+	 * @return true when the name is spelt the same
+	 */
+	private boolean spells(Node node, String name) {
+		int end = name.length();
+		for(; node != root; node = node.parent) {
+			for(int i = node.label.length - 1; i >= 0; i--) {
+				if(node.label[i] != name.charAt(--end)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the length of the common prefix of a label and of a string from
+	 * an offset, ignoring case.
+	 *
+	 * @param label the label
+	 * @param string the string
+	 * @param offset the offset in the string
+	 * @return the length of the common prefix
+	 */
+	private static int commonPrefixLength(char[] label, String string, int offset) {
+		int length = Math.min(label.length, string.length() - offset);
+		int i = 0;
+		while(i < length && fold(label[i]) == fold(string.charAt(offset + i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Folds the case of a character.
+	 *
+	 * @param c the character
+	 * @return the folded character
+	 */
+	private static char fold(char c) {
+		return Character.toLowerCase(c);
+	}
+
+
+	/**
+	 * A node, reached from its parent through its label. The children are
+	 * sorted by the folded first character of their label. The name is only
+	 * kept when the labels on the path spell it with another case.
+	 */
+	private static final class Node {
+
+		private char[] label;
+		private Node parent;
+		private Node[] children = NO_CHILDREN;
+		private int count;
+		private String name;
+
+		Node(char[] label, Node parent) {
+			this.label = label;
+			this.parent = parent;
+		}
+
+		Node child(char c) {
+			int index = indexOf(c);
+			return index < 0 ? null : children[index];
+		}
+
+		int indexOf(char c) {
+			char folded = fold(c);
+			int low = 0;
+			int high = children.length - 1;
+			while(low <= high) {
+				int middle = (low + high) >>> 1;
+				char first = fold(children[middle].label[0]);
+				if(first < folded) {
+					low = middle + 1;
+				}
+				else if(first > folded) {
+					high = middle - 1;
+				}
+				else {
+					return middle;
+				}
+			}
+			return -(low + 1);
+		}
+
+		void addChild(Node child) {
+			int index = -(indexOf(child.label[0]) + 1);
+			Node[] grown = new Node[children.length + 1];
+			System.arraycopy(children, 0, grown, 0, index);
+			grown[index] = child;
+			System.arraycopy(children, index, grown, index + 1, children.length - index);
+			children = grown;
+		}
+
+		void removeChild(Node child) {
+			int index = indexOf(child.label[0]);
+			if(1 == children.length) {
+				children = NO_CHILDREN;
+				return;
+			}
+			Node[] shrunk = new Node[children.length - 1];
+			System.arraycopy(children, 0, shrunk, 0, index);
+			System.arraycopy(children, index + 1, shrunk, index, children.length - index - 1);
+			children = shrunk;
+		}
+	}
+
+
+	/**
+	 * An open addressing map of positive ids to nodes, with linear probing,
+	 * taking a fraction of the memory of a HashMap of boxed ids.
+	 */
+	private static final class IdMap {
+
+		private static final int INITIAL_CAPACITY = 1024;
+
+		private long[] keys = new long[INITIAL_CAPACITY];
+		private Node[] values = new Node[INITIAL_CAPACITY];
+		private int size;
+
+		Node get(long id) {
+			int mask = keys.length - 1;
+			for(int i = slot(id, mask); 0 != keys[i]; i = (i + 1) & mask) {
+				if(id == keys[i]) {
+					return values[i];
+				}
+			}
+			return null;
+		}
+
+		void put(long id, Node node) {
+			if(2 * (size + 1) > keys.length) {
+				resize(2 * keys.length);
+			}
+			int mask = keys.length - 1;
+			int i = slot(id, mask);
+			while(0 != keys[i] && id != keys[i]) {
+				i = (i + 1) & mask;
+			}
+			if(0 == keys[i]) {
+				keys[i] = id;
+				size++;
+			}
+			values[i] = node;
+		}
+
+		Node remove(long id) {
+			int mask = keys.length - 1;
+			int i = slot(id, mask);
+			while(0 != keys[i] && id != keys[i]) {
+				i = (i + 1) & mask;
+			}
+			if(0 == keys[i]) {
+				return null;
+			}
+			Node node = values[i];
+			// shift back the entries probed past the freed slot
+			int free = i;
+			for(int j = (i + 1) & mask; 0 != keys[j]; j = (j + 1) & mask) {
+				int home = slot(keys[j], mask);
+				if(((j - home) & mask) >= ((j - free) & mask)) {
+					keys[free] = keys[j];
+					values[free] = values[j];
+					free = j;
+				}
+			}
+			keys[free] = 0;
+			values[free] = null;
+			size--;
+			return node;
+		}
+
+		void clear() {
+			keys = new long[INITIAL_CAPACITY];
+			values = new Node[INITIAL_CAPACITY];
+			size = 0;
+		}
+
+		int size() {
+			return size;
+		}
+
+		private void resize(int capacity) {
+			long[] oldKeys = keys;
+			Node[] oldValues = values;
+			keys = new long[capacity];
+			values = new Node[capacity];
+			size = 0;
+			for(int i = 0; i < oldKeys.length; i++) {
+				if(0 != oldKeys[i]) {
+					put(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+
+		private static int slot(long id, int mask) {
+			long hash = id * 0x9E3779B97F4A7C15L;
+			return (int) (hash ^ (hash >>> 32)) & mask;
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventType;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+import com.github.michaelsteven.archetype.springboot.items.repository.OutboxEventRepository;
+
+/**
+ * The Class ItemOutbox.
+ *
+ * When enabled, writes the item changes to the outbox table, in the
+ * transaction making them, for the OutboxRelay to publish once committed. A
+ * change rolled back leaves nothing in the outbox, and a committed one cannot
+ * be lost on the way to the publisher.
+ *
+ * Every change is written as a change event. When it is made within a write
+ * call recording compliance events, which captures the events it would record,
+ * a compliance event per item changed is written along, and the call no longer
+ * records them itself. A change published outside of a transaction is written
+ * in a transaction of its own. When the items are sharded, the change of the
+ * items of a shard is published in the transaction writing them on that
+ * shard, so its events are written to the outbox of the same shard.
+ *
+ * When disabled, the compliance events captured are handed to the compliance
+ * event pipeline once the transaction of the change commits, and never when
+ * it rolls back. A call saving items chunk by chunk so records each chunk as
+ * it commits, without holding the events of the earlier ones.
+ */
+@Component
+public class ItemOutbox {
+
+	private static final ThreadLocal<Capture> CAPTURE = new ThreadLocal<>();
+
+	private OutboxEventRepository outboxEventRepository;
+	private ComplianceEventPipeline complianceEventPipeline;
+	private ObjectMapper objectMapper;
+	private boolean enabled;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param outboxEventRepository the outbox event repository
+	 * @param complianceEventPipeline the compliance event pipeline, the compliance events captured go to when disabled
+	 * @param objectMapper the object mapper, to write the events as JSON
+	 * @param enabled whether the changes are written to the outbox
+	 */
+	public ItemOutbox(OutboxEventRepository outboxEventRepository, ComplianceEventPipeline complianceEventPipeline,
+			ObjectMapper objectMapper, @Value("${api.outbox.enabled:false}") boolean enabled) {
+		this.outboxEventRepository = outboxEventRepository;
+		this.complianceEventPipeline = complianceEventPipeline;
+		this.objectMapper = objectMapper;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Checks if the changes are written to the outbox.
+	 *
+	 * @return true, if enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts capturing the compliance events of the changes made by the
+	 * current thread, until the capture is closed.
+	 *
+	 * @param complianceEvent the compliance event, without item id, the events are copied from
+	 * @return the capture
+	 */
+	public Capture capture(ComplianceEvent complianceEvent) {
+		Capture capture = new Capture(complianceEvent, CAPTURE.get());
+		CAPTURE.set(capture);
+		return capture;
+	}
+
+	/**
+	 * Gets the capture of the current thread, to carry it over to the threads
+	 * the changes are made on, see withCapture.
+	 *
+	 * @return the capture, null when none
+	 */
+	public static Capture currentCapture() {
+		return CAPTURE.get();
+	}
+
+	/**
+	 * Runs work within a capture taken on another thread, e.g. the write of
+	 * the items of a shard run on a thread of the shard pool, restoring the
+	 * capture of the current thread after it.
+	 *
+	 * @param <T> the type of the result
+	 * @param capture the capture, null for none
+	 * @param work the work
+	 * @return the result of the work
+	 */
+	public static <T> T withCapture(Capture capture, Supplier<T> work) {
+		Capture previous = CAPTURE.get();
+		setCapture(capture);
+		try {
+			return work.get();
+		}
+		finally {
+			setCapture(previous);
+		}
+	}
+
+	/**
+	 * Writes a change to the outbox, along with its compliance events when
+	 * captured, in the transaction publishing it. When disabled, publishes
+	 * the compliance events captured once the transaction commits.
+	 *
+	 * @param itemChangeEvent the item change event
+	 */
+	@EventListener
+	public void onItemChange(ItemChangeEvent itemChangeEvent) {
+		Instant now = Instant.now();
+		Capture capture = CAPTURE.get();
+		if(null != capture && capture.complianceEvent.getAction() != itemChangeEvent.getAction()) {
+			capture = null;
+		}
+		if(null != capture) {
+			capture.captured = true;
+		}
+		if(enabled) {
+			List<OutboxEventEntity> outboxEvents = new ArrayList<>(itemChangeEvent.getItemIds().size() + 1);
+			outboxEvents.add(new OutboxEventEntity(OutboxEventType.change, toJson(itemChangeEvent), now));
+			if(null != capture) {
+				for(Long itemId : itemChangeEvent.getItemIds()) {
+					outboxEvents.add(new OutboxEventEntity(OutboxEventType.compliance, toJson(capture.copy(itemId, now)), now));
+				}
+			}
+			outboxEventRepository.saveAll(outboxEvents);
+		}
+		else if(null != capture) {
+			publishAfterCommit(capture, itemChangeEvent.getItemIds(), now);
+		}
+	}
+
+	/**
+	 * Publishes the compliance events of the items changed to the pipeline,
+	 * once the current transaction commits, right away outside of one.
+	 *
+	 * @param capture the capture
+	 * @param itemIds the ids of the items changed
+	 * @param timestamp the time of the change
+	 */
+	private void publishAfterCommit(Capture capture, Collection<Long> itemIds, Instant timestamp) {
+		Runnable publish = () -> itemIds.forEach(itemId -> complianceEventPipeline.publish(capture.copy(itemId, timestamp)));
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			publish.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				publish.run();
+			}
+		});
+	}
+
+	/**
+	 * Sets the capture of the current thread.
+	 *
+	 * @param capture the capture, null for none
+	 */
+	private static void setCapture(Capture capture) {
+		if(null == capture) {
+			CAPTURE.remove();
+		}
+		else {
+			CAPTURE.set(capture);
+		}
+	}
+
+	/**
+	 * Writes an event as JSON.
+	 *
+	 * @param event the event
+	 * @return the JSON
+	 */
+	private String toJson(Object event) {
+		try {
+			return objectMapper.writeValueAsString(event);
+		}
+		catch(JsonProcessingException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The compliance events captured on a thread, restoring the capture it
+	 * replaced once closed.
+	 */
+	public static final class Capture implements AutoCloseable {
+
+		private final ComplianceEvent complianceEvent;
+		private final Capture previous;
+		private volatile boolean captured;
+
+		private Capture(ComplianceEvent complianceEvent, Capture previous) {
+			this.complianceEvent = complianceEvent;
+			this.previous = previous;
+		}
+
+		/**
+		 * Checks if the compliance events were taken over, written to the
+		 * outbox or published once committed.
+		 *
+		 * @return true, if captured
+		 */
+		public boolean isCaptured() {
+			return captured;
+		}
+
+		/**
+		 * Stops capturing.
+		 */
+		@Override
+		public void close() {
+			setCapture(previous);
+		}
+
+		/**
+		 * Copies the compliance event for an item.
+		 *
+		 * @param itemId the item id
+		 * @param timestamp the timestamp
+		 * @return the compliance event
+		 */
+		private ComplianceEvent copy(Long itemId, Instant timestamp) {
+			ComplianceEvent copy = new ComplianceEvent();
+			copy.setAction(complianceEvent.getAction());
+			copy.setResource(complianceEvent.getResource());
+			copy.setEventSource(complianceEvent.getEventSource());
+			copy.setActor(complianceEvent.getActor());
+			copy.setItemId(itemId);
+			copy.setTimestamp(timestamp);
+			return copy;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NoOpCache;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.michaelsteven.archetype.springboot.items.configuration.ReplicaRoutingDataSource;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+import com.github.michaelsteven.archetype.springboot.items.model.SerializedPage;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+
+/**
+ * The Class ItemPageCache.
+ * 
+ * Caches the first pages of the item listing as serialized JSON, keyed by
+ * page number, size and sort, so a hit skips both the queries and Jackson.
+ * 
+ * Every committed change to the items bumps a write version. A page is
+ * stored with the version read before it was loaded, and only served while
+ * that version is current, so a page loaded while a write was committing
+ * is never served after it.
+ * 
+ * Pages are loaded from the primary, as a page loaded from a read replica
+ * still behind could be stored after the write version it misses was bumped.
+ * No page is cached when caching is turned off.
+ */
+@Component
+public class ItemPageCache {
+	
+	/** The name of the cache of serialized item pages. */
+	static final String ITEM_PAGES_CACHE = "itemPages";
+	
+	private Cache cache;
+	private ObjectMapper objectMapper;
+	private TransactionTemplate readOnlyTransaction;
+	private int pages;
+	private final AtomicLong writeVersion = new AtomicLong();
+	
+	/**
+	 * Constructor.
+	 *
+	 * @param cacheManager the cache manager
+	 * @param objectMapper the object mapper, the one the controllers use
+	 * @param transactionManager the transaction manager, pages are loaded in read-only transactions
+	 * @param pages the number of leading pages cached for each size and sort, 0 to cache none
+	 */
+	public ItemPageCache(CacheManager cacheManager, ObjectMapper objectMapper, PlatformTransactionManager transactionManager,
+			@Value("${api.page-cache.pages:2}") int pages) {
+		Cache pagesCache = cacheManager.getCache(ITEM_PAGES_CACHE);
+		this.cache = pagesCache instanceof NoOpCache ? null : pagesCache;
+		this.objectMapper = objectMapper;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+		this.pages = pages;
+	}
+	
+	/**
+	 * Whether the page is one of those cached.
+	 *
+	 * @param pageable the pageable
+	 * @return true when the page is cached
+	 */
+	public boolean isCacheable(Pageable pageable) {
+		return null != cache && pageable.isPaged() && pageable.getPageNumber() < pages;
+	}
+	
+	/**
+	 * Gets a serialized page, loading, serializing and caching it when it is
+	 * not cached or was cached before the last change.
+	 *
+	 * @param pageable the pageable, of a cacheable page
+	 * @param loader the loader of the page, run in a read-only transaction on the primary on a miss
+	 * @return the serialized page
+	 */
+	public SerializedPage get(Pageable pageable, Supplier<Page<ItemDto>> loader) {
+		String key = pageable.getPageNumber() + ":" + pageable.getPageSize() + ":" + pageable.getSort();
+		long version = writeVersion.get();
+		CachedPage cachedPage = cache.get(key, CachedPage.class);
+		if(null != cachedPage && cachedPage.writeVersion == version) {
+			return cachedPage.page;
+		}
+		
+		Page<ItemDto> page = ReplicaRoutingDataSource.readFromPrimary(() -> readOnlyTransaction.execute(status -> loader.get()));
+		SerializedPage serializedPage = serialize(page);
+		cache.put(key, new CachedPage(version, serializedPage));
+		return serializedPage;
+	}
+	
+	/**
+	 * Invalidates the cached pages once a change to the items is committed,
+	 * or right away when it was made outside of a transaction.
+	 *
+	 * @param itemChangeEvent the item change event
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onItemChange(ItemChangeEvent itemChangeEvent) {
+		writeVersion.incrementAndGet();
+	}
+	
+	/**
+	 * Serializes a page.
+	 *
+	 * @param page the page
+	 * @return the serialized page
+	 */
+	private SerializedPage serialize(Page<ItemDto> page) {
+		try {
+			byte[] json = objectMapper.writeValueAsBytes(page);
+			long[] itemIds = page.getContent().stream().map(ItemDto::getId).filter(Objects::nonNull).mapToLong(Long::longValue).toArray();
+			return new SerializedPage(json, "\"" + DigestUtils.md5DigestAsHex(json) + "\"", itemIds);
+		}
+		catch(JsonProcessingException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * A serialized page and the write version it was loaded at.
+	 */
+	private static class CachedPage {
+		private final long writeVersion;
+		private final SerializedPage page;
+		
+		CachedPage(long writeVersion, SerializedPage page) {
+			this.writeVersion = writeVersion;
+			this.page = page;
+		}
+	}
+}
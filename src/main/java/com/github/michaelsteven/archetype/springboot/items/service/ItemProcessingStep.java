@@ -0,0 +1,23 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+
+/**
+ * The Interface ItemProcessingStep.
+ *
+ * The work a submitted item needs before it counts as processed. The
+ * ItemProcessor runs the step, when a bean implements it, on each item it
+ * claimed, within the transaction holding the lock of the item, then marks
+ * the item processed. Without a step, the items are only marked processed.
+ */
+public interface ItemProcessingStep {
+
+	/**
+	 * Processes an item. The changes made to the item are written when the
+	 * transaction of its batch commits.
+	 *
+	 * @param itemEntity the item entity, locked
+	 * @throws RuntimeException when the item could not be processed, which rolls back its whole batch to claim it again
+	 */
+	void process(ItemEntity itemEntity);
+}
@@ -0,0 +1,278 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemStatus;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemRepository;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemShardRouter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * The Class ItemProcessor.
+ *
+ * When enabled, a pool of worker threads moves the submitted items to
+ * PROCESSED. A worker claims the oldest submitted items a batch at a time,
+ * locking them with SELECT ... FOR UPDATE SKIP LOCKED, and processes and
+ * marks them in the transaction holding the locks. The processing itself is
+ * the ItemProcessingStep bean, when there is one; without it, the items are
+ * only marked processed. The workers of every
+ * instance sharing the database so claim distinct items, and the batch of a
+ * worker that fails or dies is rolled back and claimed again. When the items
+ * are sharded, the workers claim from the shards in turn.
+ *
+ * A processed item gets a new version, and its change is published once
+ * committed, so the caches and the search index pick up its status.
+ */
+@Component
+public class ItemProcessor implements DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemProcessor.class);
+
+	/** The name of the counter of the items processed. */
+	static final String PROCESSED_METRIC = "items.processing.processed";
+
+	/** The name of the timer of the time items waited from their creation until processed. */
+	static final String LATENCY_METRIC = "items.processing.latency";
+
+	/** The name of the gauge of the submitted items left to process. */
+	static final String BACKLOG_METRIC = "items.processing.backlog";
+
+	/** The name of the gauge of the age of the oldest submitted item. */
+	static final String OLDEST_METRIC = "items.processing.oldest";
+
+	private static final long NONE = -1L;
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000L;
+
+	private ItemRepository itemRepository;
+	private ItemShardRouter itemShardRouter;
+	private ItemProcessingStep itemProcessingStep;
+	private TransactionTemplate transactionTemplate;
+	private ApplicationEventPublisher applicationEventPublisher;
+	private Cache itemsCache;
+	private boolean enabled;
+	private int workers;
+	private int batchSize;
+	private long pollIntervalMillis;
+	private int shardCount;
+	private final AtomicInteger nextShard = new AtomicInteger();
+	private final AtomicLong backlog = new AtomicLong(NONE);
+	private final AtomicLong oldestSubmittedMillis = new AtomicLong(NONE);
+	private volatile boolean running;
+	private ExecutorService executorService;
+	private Counter processed;
+	private Timer latency;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param itemRepository the item repository
+	 * @param itemShardRouter the item shard router, available when the items are sharded
+	 * @param itemProcessingStep the processing of an item, available when the items need any work before being marked processed
+	 * @param transactionManager the transaction manager, a batch is claimed and processed in one transaction
+	 * @param applicationEventPublisher the publisher of the item change events
+	 * @param cacheManager the cache manager, processed items are evicted from the cache of items by id
+	 * @param meterRegistry the meter registry
+	 * @param enabled whether the submitted items are processed at all
+	 * @param workers the number of worker threads
+	 * @param batchSize the number of items claimed per transaction at most
+	 * @param pollIntervalMillis how long a worker waits once it found no item to claim
+	 */
+	public ItemProcessor(ItemRepository itemRepository, ObjectProvider<ItemShardRouter> itemShardRouter,
+			ObjectProvider<ItemProcessingStep> itemProcessingStep, PlatformTransactionManager transactionManager, ApplicationEventPublisher applicationEventPublisher,
+			CacheManager cacheManager, MeterRegistry meterRegistry,
+			@Value("${api.processing.enabled:false}") boolean enabled,
+			@Value("${api.processing.workers:4}") int workers,
+			@Value("${api.processing.batch-size:100}") int batchSize,
+			@Value("${api.processing.poll-interval-ms:1000}") long pollIntervalMillis) {
+		this.itemRepository = itemRepository;
+		this.itemShardRouter = itemShardRouter.getIfAvailable();
+		this.itemProcessingStep = itemProcessingStep.getIfAvailable();
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.applicationEventPublisher = applicationEventPublisher;
+		this.itemsCache = cacheManager.getCache(ItemsServiceImpl.ITEMS_CACHE);
+		this.enabled = enabled;
+		this.workers = workers;
+		this.batchSize = batchSize;
+		this.pollIntervalMillis = pollIntervalMillis;
+		this.shardCount = null == this.itemShardRouter ? 1 : this.itemShardRouter.getShardCount();
+		this.processed = meterRegistry.counter(PROCESSED_METRIC);
+		this.latency = meterRegistry.timer(LATENCY_METRIC);
+		if(enabled) {
+			meterRegistry.gauge(BACKLOG_METRIC, backlog, value -> Math.max(value.get(), 0L));
+			TimeGauge.builder(OLDEST_METRIC, oldestSubmittedMillis, TimeUnit.MILLISECONDS,
+					value -> NONE == value.get() ? 0L : Math.max(System.currentTimeMillis() - value.get(), 0L))
+					.register(meterRegistry);
+		}
+	}
+
+	/**
+	 * Starts the workers, once the application is ready.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void start() {
+		if(enabled && null == executorService) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("item-processor-");
+			threadFactory.setDaemon(true);
+			executorService = Executors.newFixedThreadPool(workers, threadFactory);
+			running = true;
+			for(int i = 0; i < workers; i++) {
+				executorService.execute(this::work);
+			}
+		}
+	}
+
+	/**
+	 * Stops the workers, letting them finish the batch they are processing.
+	 *
+	 * @throws InterruptedException the interrupted exception
+	 */
+	@Override
+	public synchronized void destroy() throws InterruptedException {
+		running = false;
+		if(null != executorService) {
+			executorService.shutdown();
+			if(!executorService.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				logger.warn("Stopping the item processors with a batch still in progress");
+				executorService.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Refreshes the backlog gauges. The oldest item left is that of the
+	 * shard lagging the most.
+	 */
+	@Scheduled(fixedDelayString = "${api.processing.backlog-refresh-interval-ms:10000}")
+	public void refreshBacklog() {
+		if(!enabled) {
+			return;
+		}
+		try {
+			backlog.set(itemRepository.countByStatus(ItemStatus.SUBMITTED));
+			oldestSubmittedMillis.set(itemRepository.findOldestCreatedTimestampByStatus(ItemStatus.SUBMITTED)
+					.map(Instant::toEpochMilli)
+					.orElse(NONE));
+		}
+		catch(RuntimeException e) {
+			logger.warn("Unable to refresh the backlog of submitted items: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Claims and processes batches until stopped, from the shards in turn.
+	 * Once a whole round of the shards had nothing to claim, or failed, the
+	 * worker waits for the poll interval.
+	 */
+	private void work() {
+		int idle = 0;
+		while(running) {
+			int shard = Math.floorMod(nextShard.getAndIncrement(), shardCount);
+			try {
+				if(processBatch(shard) > 0) {
+					idle = 0;
+					continue;
+				}
+			}
+			catch(RuntimeException e) {
+				logger.warn("Failed to process a batch of submitted items on shard {}: {}", shard, e.getMessage());
+			}
+			if(++idle >= shardCount) {
+				idle = 0;
+				try {
+					Thread.sleep(pollIntervalMillis);
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Claims and processes a batch of a shard in one transaction.
+	 *
+	 * @param shard the shard, ignored when the items are not sharded
+	 * @return the number of items processed
+	 */
+	int processBatch(int shard) {
+		List<ItemEntity> items = null == itemShardRouter
+				? transactionTemplate.execute(status -> claimAndProcess())
+				: itemShardRouter.onShard(shard, "processItems", () -> transactionTemplate.execute(status -> claimAndProcess()));
+		Instant now = Instant.now();
+		for(ItemEntity item : items) {
+			if(null != itemsCache) {
+				itemsCache.evict(item.getId());
+			}
+			if(null != item.getCreatedTimestamp()) {
+				latency.record(Duration.between(item.getCreatedTimestamp(), now));
+			}
+		}
+		processed.increment(items.size());
+		return items.size();
+	}
+
+	/**
+	 * Claims the oldest submitted items and processes them, within the
+	 * transaction of the caller, which holds their locks until it ends.
+	 *
+	 * @return the items processed
+	 */
+	private List<ItemEntity> claimAndProcess() {
+		List<ItemEntity> items = itemRepository.findAndLockByStatusOrderByCreatedTimestampAsc(ItemStatus.SUBMITTED,
+				PageRequest.of(0, batchSize));
+		if(items.isEmpty()) {
+			return Collections.emptyList();
+		}
+		items.forEach(this::process);
+		applicationEventPublisher.publishEvent(new ItemChangeEvent(ComplianceAction.update,
+				items.stream().map(ItemEntity::getId).collect(Collectors.toList())));
+		return items;
+	}
+
+	/**
+	 * Processes an item with the processing step, if any, then marks it
+	 * processed, the changes being written when the transaction commits.
+	 *
+	 * @param itemEntity the item entity, locked
+	 */
+	private void process(ItemEntity itemEntity) {
+		if(null != itemProcessingStep) {
+			itemProcessingStep.process(itemEntity);
+		}
+		itemEntity.setStatus(ItemStatus.PROCESSED);
+	}
+}
@@ -0,0 +1,52 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.util.Collection;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * The Interface ItemSearchIndex.
+ * 
+ * A full-text index over the name and description of the items, kept in
+ * step with the items by the ItemSearchIndexer. An implementation querying
+ * an index maintained by the database itself can leave the update methods
+ * empty.
+ */
+public interface ItemSearchIndex {
+
+	/**
+	 * Adds an item to the index, or replaces it.
+	 *
+	 * @param id the id
+	 * @param name the name
+	 * @param description the description
+	 */
+	public abstract void index(long id, String name, String description);
+	
+	/**
+	 * Removes items from the index.
+	 *
+	 * @param ids the ids
+	 */
+	public abstract void remove(Collection<Long> ids);
+	
+	/**
+	 * Removes all the items from the index.
+	 */
+	public abstract void clear();
+	
+	/**
+	 * Makes the changes made so far visible to searches.
+	 */
+	public abstract void refresh();
+	
+	/**
+	 * Searches the items matching all the words of a query.
+	 *
+	 * @param query the query
+	 * @param pageable the pageable, its sort is ignored
+	 * @return the page of the ids of the matching items, the most relevant first
+	 */
+	public abstract Page<Long> search(String query, Pageable pageable);
+}
@@ -0,0 +1,78 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.util.stream.Stream;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ItemProjection;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemRepository;
+
+/**
+ * The Class ItemSearchIndexer.
+ * 
+ * Keeps the search index in step with the items. The index is rebuilt from
+ * all the items on startup, then every change published by the write methods
+ * of the ItemsService is applied to it once committed, reading back the
+ * committed state of the changed items.
+ */
+@Component
+public class ItemSearchIndexer {
+	
+	private ItemSearchIndex itemSearchIndex;
+	private ItemRepository itemRepository;
+	private TransactionTemplate readOnlyTransaction;
+	
+	/**
+	 * Constructor.
+	 *
+	 * @param itemSearchIndex the item search index
+	 * @param itemRepository the item repository
+	 * @param transactionManager the transaction manager, the index is rebuilt in a read-only transaction
+	 */
+	public ItemSearchIndexer(ItemSearchIndex itemSearchIndex, ItemRepository itemRepository, PlatformTransactionManager transactionManager) {
+		this.itemSearchIndex = itemSearchIndex;
+		this.itemRepository = itemRepository;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+	}
+	
+	/**
+	 * Rebuilds the index from all the items, streamed in id order.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuild() {
+		itemSearchIndex.clear();
+		readOnlyTransaction.executeWithoutResult(status -> {
+			try(Stream<ItemProjection> items = itemRepository.streamAllByOrderByIdAsc()) {
+				items.forEach(item -> itemSearchIndex.index(item.getId(), item.getName(), item.getDescription()));
+			}
+		});
+		itemSearchIndex.refresh();
+	}
+	
+	/**
+	 * Applies a change to the index once it is committed, or right away when
+	 * it was made outside of a transaction.
+	 *
+	 * @param itemChangeEvent the item change event
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onItemChange(ItemChangeEvent itemChangeEvent) {
+		if(ComplianceAction.delete == itemChangeEvent.getAction()) {
+			itemSearchIndex.remove(itemChangeEvent.getItemIds());
+		}
+		else {
+			for(ItemProjection item : itemRepository.findProjectedByIdIn(itemChangeEvent.getItemIds())) {
+				itemSearchIndex.index(item.getId(), item.getName(), item.getDescription());
+			}
+		}
+		itemSearchIndex.refresh();
+	}
+}
@@ -1,21 +1,39 @@
 package com.github.michaelsteven.archetype.springboot.items.service;
 
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import com.github.michaelsteven.archetype.springboot.items.model.ConfirmationDto;
+import com.github.michaelsteven.archetype.springboot.items.model.CursorPageDto;
 import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemFilter;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportLine;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportResultDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemVersion;
+import com.github.michaelsteven.archetype.springboot.items.model.SerializedPage;
 
 /**
  * The Interface ItemsService.
  */
 public interface ItemsService {
 	
+	/** The maximum number of items accepted in one batch. */
+	public static final int MAX_BATCH_SIZE = 10000;
+	
+	/** The maximum number of results reachable by paging through a search. */
+	public static final int MAX_SEARCH_RESULTS = 10000;
+	
 	/**
 	 * Gets the items.
 	 *
@@ -24,6 +42,83 @@ public interface ItemsService {
 	 */
 	public abstract Page<ItemDto> getItems(Pageable pageable);
 	
+	/**
+	 * Gets the items meeting the criteria of a filter.
+	 *
+	 * @param filter the filter
+	 * @param pageable the pageable
+	 * @return the items
+	 */
+	public abstract Page<ItemDto> getItems(ItemFilter filter, Pageable pageable);
+	
+	/**
+	 * Whether a page of the items is served already serialized, by getSerializedItems.
+	 *
+	 * @param pageable the pageable
+	 * @return true when the page is served serialized
+	 */
+	public abstract boolean isSerializedPage(Pageable pageable);
+	
+	/**
+	 * Gets a page of the items, serialized as JSON.
+	 *
+	 * @param pageable the pageable, of a page for which isSerializedPage is true
+	 * @return the serialized page
+	 */
+	public abstract SerializedPage getSerializedItems(Pageable pageable);
+	
+	/**
+	 * Gets a slice of the items, without counting the total.
+	 *
+	 * @param pageable the pageable
+	 * @return the slice of items
+	 */
+	public abstract Slice<ItemDto> getItemsSlice(Pageable pageable);
+	
+	/**
+	 * Gets the approximate number of items, as last counted in the background.
+	 *
+	 * @return the approximate item count, empty when not known
+	 */
+	public abstract OptionalLong getApproximateItemCount();
+	
+	/**
+	 * Gets the items following a cursor, in id order.
+	 *
+	 * @param cursor the cursor returned with the previous page, or blank for the first page
+	 * @param size the page size
+	 * @return the cursor page of items
+	 */
+	public abstract CursorPageDto<ItemDto> getItemsAfter(String cursor, int size);
+	
+	/**
+	 * Exports all the items, in id order.
+	 * 
+	 * The items are read and handed to the consumer one at a time, never
+	 * held in memory all together.
+	 *
+	 * @param consumer the consumer of the items
+	 */
+	public abstract void exportItems(Consumer<ItemDto> consumer);
+	
+	/**
+	 * Searches the items by the words of their name and description.
+	 *
+	 * @param query the words to search for, all of them must match
+	 * @param pageable the pageable, its sort is ignored
+	 * @return the page of matching items, the most relevant first
+	 */
+	public abstract Page<ItemDto> searchItems(String query, Pageable pageable);
+	
+	/**
+	 * Suggests the item names starting with a prefix, ignoring case.
+	 *
+	 * @param prefix the prefix
+	 * @param limit the maximum number of names
+	 * @return the distinct names, in alphabetical order
+	 */
+	public abstract List<String> suggestItemNames(String prefix, int limit);
+	
 	/**
 	 * Gets the item by id.
 	 *
@@ -32,6 +127,22 @@ public interface ItemsService {
 	 */
 	public abstract Optional<ItemDto> getItemById(long id);
 	
+	/**
+	 * Gets the version of an item, without loading the item.
+	 *
+	 * @param id the id
+	 * @return the item version, empty when the item does not exist
+	 */
+	public abstract Optional<ItemVersion> getItemVersion(long id);
+	
+	/**
+	 * Gets the versions of a page of items, without loading the items.
+	 *
+	 * @param pageable the pageable
+	 * @return the page of item versions, holding the same items getItems would
+	 */
+	public abstract Page<ItemVersion> getItemVersions(Pageable pageable);
+	
 	/**
 	 * Save item.
 	 *
@@ -40,13 +151,39 @@ public interface ItemsService {
 	 */
 	public abstract ConfirmationDto saveItem(@NotNull @Valid ItemDto itemDto);
 	
+	/**
+	 * Save items.
+	 * 
+	 * The items are saved in chunks, each chunk, or when the items are
+	 * sharded the part of a chunk on each shard, as a whole or not at all.
+	 * When one fails its failure is thrown, the items saved before it
+	 * staying saved.
+	 *
+	 * @param itemDtos the item dtos
+	 * @return the confirmation dtos, in the order of the items
+	 */
+	public abstract List<ConfirmationDto> saveItems(@NotNull @Size(min = 1, max = MAX_BATCH_SIZE) List<@NotNull @Valid ItemDto> itemDtos);
+	
+	/**
+	 * Imports items, validating and saving them in batches as they are read.
+	 * 
+	 * Each line gets exactly one result. Rejected lines are reported as soon
+	 * as they are read, accepted ones once their batch is saved, so results
+	 * are not necessarily in line order.
+	 *
+	 * @param lines the lines of the upload, read as they are iterated
+	 * @param results the consumer of the result of each line
+	 */
+	public abstract void importItems(Iterator<ItemImportLine> lines, Consumer<ItemImportResultDto> results);
+	
 	/**
 	 * Edits the item.
 	 *
 	 * @param itemDto the item dto
+	 * @param expectedVersion the version the item must still be at, null to update whatever the version
 	 * @return the confirmation dto
 	 */
-	public abstract ConfirmationDto editItem(@NotNull @Valid ItemDto itemDto);
+	public abstract ConfirmationDto editItem(@NotNull @Valid ItemDto itemDto, Long expectedVersion);
 	
 	/**
 	 * Delete item by id.
@@ -54,5 +191,17 @@ public interface ItemsService {
 	 * @param id the id
 	 */
 	public abstract void deleteItemById(long id);
+	
+	/**
+	 * Delete items by ids.
+	 * 
+	 * When the items are sharded, the items of each shard are deleted as a
+	 * whole or not at all; when a shard fails its failure is thrown, the
+	 * items of the other shards staying deleted.
+	 *
+	 * @param ids the ids
+	 * @return the ids of the items that existed and were deleted
+	 */
+	public abstract List<Long> deleteItemsByIds(@NotNull @Size(min = 1, max = MAX_BATCH_SIZE) List<@NotNull Long> ids);
 
 }
@@ -1,52 +1,166 @@
 package com.github.michaelsteven.archetype.springboot.items.service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import javax.transaction.Transactional;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.PersistenceException;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
 import javax.validation.ValidationException;
+import javax.validation.Validator;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.support.NoOpCache;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.MessageSource;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.AuditorAware;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
 import org.springframework.validation.annotation.Validated;
 
+import com.github.michaelsteven.archetype.springboot.items.configuration.ReplicaRoutingDataSource;
 import com.github.michaelsteven.archetype.springboot.items.model.ConfirmationDto;
+import com.github.michaelsteven.archetype.springboot.items.model.CursorPageDto;
 import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
 import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemFilter;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportLine;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportResultDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportStatus;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemProjection;
 import com.github.michaelsteven.archetype.springboot.items.model.ItemStatus;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemVersion;
+import com.github.michaelsteven.archetype.springboot.items.model.SerializedPage;
 import com.github.michaelsteven.archetype.springboot.items.model.event.Compliance;
 import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemIdAllocator;
 import com.github.michaelsteven.archetype.springboot.items.repository.ItemRepository;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemShardRouter;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemSpecifications;
 
 /**
  * The Class ItemsServiceImpl.
+ * 
+ * Reads run in read-only transactions against projections, so no entity is
+ * hydrated, dirty checked or kept in the persistence context for a response.
+ * 
+ * Single items are cached by id. New items are not cached until read, the
+ * cached copy of an item is evicted when it is edited or deleted. An item
+ * missing from the cache is read from the primary, a read replica still
+ * behind could hand back the copy just evicted.
  */
 @Service
+@CacheConfig(cacheNames = ItemsServiceImpl.ITEMS_CACHE)
 @Validated
 public class ItemsServiceImpl implements ItemsService {
+	
+	/** The name of the cache of items by id. */
+	static final String ITEMS_CACHE = "items";
 		
 	public static final Logger logger = LoggerFactory.getLogger(ItemsServiceImpl.class);
 	private ItemRepository itemRepository;
 	private MessageSource messageSource;
+	private ItemCountCache itemCountCache;
+	private AuditorAware<String> auditorAware;
+	private ItemPageCache itemPageCache;
+	private boolean itemsCached;
+	private Cache itemsCache;
+	private ApplicationEventPublisher applicationEventPublisher;
+	private ItemSearchIndex itemSearchIndex;
+	private ItemNameSuggester itemNameSuggester;
+	private ItemIngestQueue itemIngestQueue;
+	private Validator validator;
+	private TransactionTemplate transactionTemplate;
+	private ItemShardRouter itemShardRouter;
+	private ItemIdAllocator itemIdAllocator;
+	private int batchChunkSize;
 	
 	/**
 	 * Constructor.
 	 * 
 	 * @param itemRepository
 	 * @param messageSource
+	 * @param itemCountCache
+	 * @param auditorAware the auditor aware, for the audit columns of single statement updates
+	 * @param itemPageCache the cache of the first listing pages
+	 * @param cacheManager the cache manager, telling whether the items are cached by id
+	 * @param applicationEventPublisher the publisher of the item change events
+	 * @param itemSearchIndex the full-text index of the items
+	 * @param itemNameSuggester the in-memory suggester of item names
+	 * @param itemIngestQueue the queue new items are inserted from when it is enabled
+	 * @param validator the validator of imported items
+	 * @param transactionManager the transaction manager, each chunk of saveItems and importItems is saved in its own transaction
+	 * @param itemShardRouter the item shard router, available when the items are sharded
+	 * @param itemIdAllocator the item id allocator, new sharded items are given their id before they are grouped by shard
+	 * @param batchChunkSize the number of items saved per transaction by saveItems and importItems
 	 */
-	public  ItemsServiceImpl(ItemRepository itemRepository, MessageSource messageSource) {
+	public  ItemsServiceImpl(ItemRepository itemRepository, MessageSource messageSource, ItemCountCache itemCountCache,
+			AuditorAware<String> auditorAware, ItemPageCache itemPageCache, CacheManager cacheManager,
+			ApplicationEventPublisher applicationEventPublisher, ItemSearchIndex itemSearchIndex, ItemNameSuggester itemNameSuggester, ItemIngestQueue itemIngestQueue, Validator validator,
+			PlatformTransactionManager transactionManager, ObjectProvider<ItemShardRouter> itemShardRouter, ItemIdAllocator itemIdAllocator,
+			@Value("${api.batch.chunk-size:500}") int batchChunkSize) {
 		this.itemRepository = itemRepository;
 		this.messageSource = messageSource;
+		this.itemCountCache = itemCountCache;
+		this.auditorAware = auditorAware;
+		this.itemPageCache = itemPageCache;
+		this.itemsCached = !(cacheManager.getCache(ITEMS_CACHE) instanceof NoOpCache);
+		this.itemsCache = cacheManager.getCache(ITEMS_CACHE);
+		this.applicationEventPublisher = applicationEventPublisher;
+		this.itemSearchIndex = itemSearchIndex;
+		this.itemNameSuggester = itemNameSuggester;
+		this.itemIngestQueue = itemIngestQueue;
+		this.validator = validator;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.itemShardRouter = itemShardRouter.getIfAvailable();
+		this.itemIdAllocator = itemIdAllocator;
+		this.batchChunkSize = batchChunkSize;
 	}
 	
 	
@@ -57,13 +171,183 @@ public class ItemsServiceImpl implements ItemsService {
 	 * @return the items
 	 */
 	@Override
+	@Transactional(readOnly = true)
 	@Compliance(action = ComplianceAction.read)
 	public Page<ItemDto> getItems(Pageable pageable){
-		return itemRepository.findAll(pageable)
+		return itemRepository.findAllProjectedBy(pageable)
 				.map(this::convert);
 	}
 	
 	
+	/**
+	 * Gets the items meeting the criteria of a filter.
+	 * 
+	 * Without criteria this is the plain listing. Otherwise only the criteria
+	 * set are turned into predicates, each served by an index of the items
+	 * table. Specifications cannot select a projection, so the entities are
+	 * read, without being tracked as the transaction is read-only.
+	 *
+	 * @param filter the filter
+	 * @param pageable the pageable
+	 * @return the items
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@Compliance(action = ComplianceAction.read)
+	public Page<ItemDto> getItems(ItemFilter filter, Pageable pageable){
+		if(!filter.hasCriteria()) {
+			return getItems(pageable);
+		}
+		return itemRepository.findAll(ItemSpecifications.matching(filter), pageable)
+				.map(this::convert);
+	}
+	
+	
+	/**
+	 * Whether a page of the items is served already serialized.
+	 *
+	 * @param pageable the pageable
+	 * @return true when getSerializedItems serves the page
+	 */
+	@Override
+	public boolean isSerializedPage(Pageable pageable){
+		return itemPageCache.isCacheable(pageable);
+	}
+	
+	
+	/**
+	 * Gets a page of the items as JSON, from the page cache when it is current.
+	 * 
+	 * Not transactional, a cache hit does not touch the database. On a miss the
+	 * page is loaded in a read-only transaction of its own.
+	 *
+	 * @param pageable the pageable, of a page for which isSerializedPage is true
+	 * @return the serialized page
+	 */
+	@Override
+	@Compliance(action = ComplianceAction.read)
+	public SerializedPage getSerializedItems(Pageable pageable){
+		return itemPageCache.get(pageable, () -> itemRepository.findAllProjectedBy(pageable).map(this::convert));
+	}
+	
+	
+	/**
+	 * Gets a slice of the items, without counting the total.
+	 *
+	 * @param pageable the pageable
+	 * @return the slice of items
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@Compliance(action = ComplianceAction.read)
+	public Slice<ItemDto> getItemsSlice(Pageable pageable){
+		return itemRepository.findAllBy(pageable)
+				.map(this::convert);
+	}
+	
+	
+	/**
+	 * Gets the approximate number of items, as last counted in the background.
+	 *
+	 * @return the approximate item count, empty when not known
+	 */
+	@Override
+	public OptionalLong getApproximateItemCount() {
+		return itemCountCache.getApproximateCount();
+	}
+	
+	
+	/**
+	 * Gets the items following a cursor, in id order.
+	 * 
+	 * The cursor wraps the id of the last item of the previous page, so each
+	 * page is a seek on the primary key rather than an offset scan.
+	 *
+	 * @param cursor the cursor returned with the previous page, or blank for the first page
+	 * @param size the page size
+	 * @return the cursor page of items
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@Compliance(action = ComplianceAction.read)
+	public CursorPageDto<ItemDto> getItemsAfter(String cursor, int size){
+		long afterId = decodeCursor(cursor);
+		Slice<ItemProjection> slice = itemRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, size));
+		List<ItemDto> content = slice.getContent().stream()
+				.map(this::convert)
+				.collect(Collectors.toList());
+		String nextCursor = slice.hasNext() && !content.isEmpty()
+				? encodeCursor(content.get(content.size() - 1).getId())
+				: null;
+		return new CursorPageDto<>(content, size, slice.hasNext(), nextCursor);
+	}
+	
+	
+	/**
+	 * Exports all the items, in id order.
+	 *
+	 * @param consumer the consumer of the items
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@Compliance(action = ComplianceAction.read)
+	public void exportItems(Consumer<ItemDto> consumer){
+		try(Stream<ItemProjection> items = itemRepository.streamAllByOrderByIdAsc()) {
+			items.map(this::convert).forEach(consumer);
+		}
+	}
+	
+	
+	/**
+	 * Search items.
+	 * 
+	 * The index gives the ids in order of relevance, the items are then read
+	 * by id in one query. An item deleted since it was found is left out.
+	 *
+	 * @param query the query
+	 * @param pageable the pageable
+	 * @return the page of items
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@Compliance(action = ComplianceAction.read)
+	public Page<ItemDto> searchItems(String query, Pageable pageable) {
+		if(pageable.getOffset() + pageable.getPageSize() > MAX_SEARCH_RESULTS) {
+			String message = messageSource.getMessage("itemsservice.validationexception.searchwindow", 
+					new Object[] { MAX_SEARCH_RESULTS }, LocaleContextHolder.getLocale());
+			throw new ValidationException(message);
+		}
+		Page<Long> ids = itemSearchIndex.search(query, pageable);
+		if(!ids.hasContent()) {
+			return new PageImpl<>(Collections.emptyList(), pageable, ids.getTotalElements());
+		}
+		Map<Long, ItemDto> itemDtos = itemRepository.findProjectedByIdIn(ids.getContent()).stream()
+				.map(this::convert)
+				.collect(Collectors.toMap(ItemDto::getId, Function.identity()));
+		List<ItemDto> content = ids.getContent().stream()
+				.map(itemDtos::get)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+		return new PageImpl<>(content, pageable, ids.getTotalElements());
+	}
+	
+	
+	/**
+	 * Suggest item names.
+	 * 
+	 * Answered from memory, without a transaction nor a query.
+	 *
+	 * @param prefix the prefix
+	 * @param limit the limit
+	 * @return the names
+	 */
+	@Override
+	@Compliance(action = ComplianceAction.read)
+	public List<String> suggestItemNames(String prefix, int limit) {
+		return itemNameSuggester.suggest(prefix, limit);
+	}
+	
+	
 	/**
 	 * Gets the item by id.
 	 *
@@ -71,52 +355,198 @@ public class ItemsServiceImpl implements ItemsService {
 	 * @return the item by id
 	 */
 	@Override
+	@Transactional(readOnly = true)
 	@Compliance(action = ComplianceAction.read)
+	@Cacheable(key = "#id", unless = "#result == null")
 	public Optional<ItemDto> getItemById(long id){
-		return itemRepository.findById(id)
-				.map(entity -> Optional.of(convert(entity)))
-				.orElse(Optional.empty());
+		Supplier<Optional<ItemDto>> read = () -> itemRepository.findProjectedById(id).map(this::convert);
+		return itemsCached ? ReplicaRoutingDataSource.readFromPrimary(read) : read.get();
+	}
+	
+	
+	/**
+	 * Gets the version of an item, without loading the item.
+	 *
+	 * @param id the id
+	 * @return the item version, empty when the item does not exist
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@Compliance(action = ComplianceAction.read)
+	public Optional<ItemVersion> getItemVersion(long id){
+		return itemRepository.findVersionById(id);
+	}
+	
+	
+	/**
+	 * Gets the versions of a page of items, without loading the items.
+	 *
+	 * @param pageable the pageable
+	 * @return the page of item versions
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@Compliance(action = ComplianceAction.read)
+	public Page<ItemVersion> getItemVersions(Pageable pageable){
+		return itemRepository.findAllVersionsBy(pageable);
 	}
 	
 	
 	/**
 	 * Save item.
+	 * 
+	 * When the ingest queue is enabled, the item is only journaled and queued
+	 * here, it is inserted with the next batch of the queue. Otherwise it is
+	 * inserted in a transaction along with its change event, so the outbox
+	 * records the change only once the item is committed.
 	 *
 	 * @param itemDto the item dto
 	 * @return the confirmation dto
+	 * @throws ItemIngestQueueFullException when the ingest queue is full
 	 */
 	@Override
 	@Compliance(action = ComplianceAction.create)
 	public ConfirmationDto saveItem(@NotNull @Valid ItemDto itemDto) {
 		ItemEntity itemEntity = convert(itemDto);
-		ItemEntity savedEntity = itemRepository.save(itemEntity);
+		if(itemIngestQueue.isEnabled()) {
+			return createConfirmationDto(ItemStatus.SUBMITTED, itemIngestQueue.submit(itemEntity));
+		}
+		ItemEntity savedEntity = transactionTemplate.execute(status -> {
+			ItemEntity saved = itemRepository.save(itemEntity);
+			publishItemChange(ComplianceAction.create, Collections.singletonList(saved.getId()));
+			return saved;
+		});
 		return createConfirmationDto(ItemStatus.SUBMITTED, savedEntity);
 	}
 	
 	
+	/**
+	 * Save items.
+	 * 
+	 * The items are saved in chunks, each chunk in its own transaction, so
+	 * a large batch neither holds one long transaction nor grows a single
+	 * persistence context. Within a chunk the inserts are sent as JDBC
+	 * batches (see hibernate.jdbc.batch_size), and the change event of the
+	 * chunk is published in its transaction. When the items are sharded, the
+	 * items of a chunk are split by shard, each part being saved along with
+	 * its change in a transaction on its shard (see writeByShard). A chunk,
+	 * or when sharded a part of a chunk, is therefore saved as a whole or not
+	 * at all, but not the batch: when one fails, its failure is thrown once
+	 * the other parts of its chunk are done, and the chunks before it, along
+	 * with the parts of the other shards, stay committed without being
+	 * confirmed.
+	 *
+	 * @param itemDtos the item dtos
+	 * @return the confirmation dtos, in the order of the items
+	 */
+	@Override
+	@Compliance(action = ComplianceAction.create)
+	public List<ConfirmationDto> saveItems(@NotNull @Size(min = 1, max = MAX_BATCH_SIZE) List<@NotNull @Valid ItemDto> itemDtos) {
+		List<ConfirmationDto> confirmationDtos = new ArrayList<>(itemDtos.size());
+		for(int from = 0; from < itemDtos.size(); from += batchChunkSize) {
+			List<ItemEntity> chunk = itemDtos.subList(from, Math.min(from + batchChunkSize, itemDtos.size())).stream()
+					.map(this::convert)
+					.collect(Collectors.toList());
+			Map<ItemEntity, ItemEntity> savedEntities = new IdentityHashMap<>();
+			writeByShard(chunk, this::assignId, "saveItems", this::saveChunk,
+					(part, saved) -> {
+						for(int i = 0; i < part.size(); i++) {
+							savedEntities.put(part.get(i), saved.get(i));
+						}
+					},
+					(part, e) -> {
+						throw e;
+					});
+			for(ItemEntity itemEntity : chunk) {
+				confirmationDtos.add(createConfirmationDto(ItemStatus.SUBMITTED, savedEntities.get(itemEntity)));
+			}
+		}
+		return confirmationDtos;
+	}
+	
+	
+	/**
+	 * Import items.
+	 * 
+	 * Valid items are saved in chunks of the same size as saveItems, each
+	 * chunk in its own transaction, and only one chunk is held at a time.
+	 * Ids in the upload are ignored, every accepted line creates an item.
+	 * When a chunk fails to save, or to commit, its lines are rejected and
+	 * the import goes on with the next chunk, as the results reported so far
+	 * may already have been sent.
+	 *
+	 * @param lines the lines of the upload
+	 * @param results the consumer of the result of each line
+	 */
+	@Override
+	@Compliance(action = ComplianceAction.create)
+	public void importItems(Iterator<ItemImportLine> lines, Consumer<ItemImportResultDto> results) {
+		List<ItemEntity> chunk = new ArrayList<>(batchChunkSize);
+		List<Long> chunkLineNumbers = new ArrayList<>(batchChunkSize);
+		while(lines.hasNext()) {
+			ItemImportLine line = lines.next();
+			List<String> errors = validate(line);
+			if(!errors.isEmpty()) {
+				results.accept(new ItemImportResultDto(line.getLineNumber(), ItemImportStatus.REJECTED, null, errors));
+				continue;
+			}
+			chunk.add(convert(line.getItemDto()));
+			chunkLineNumbers.add(line.getLineNumber());
+			if(chunk.size() == batchChunkSize) {
+				saveImportChunk(chunk, chunkLineNumbers, results);
+			}
+		}
+		if(!chunk.isEmpty()) {
+			saveImportChunk(chunk, chunkLineNumbers, results);
+		}
+	}
+	
+	
 	/**
 	 * Edits the item.
+	 * 
+	 * The item is updated by a single conditional statement instead of being
+	 * read, modified and saved. Only when no row matched is the item looked
+	 * up, to tell a stale version from a missing item.
 	 *
 	 * @param itemDto the item dto
+	 * @param expectedVersion the version the item must still be at, null to update whatever the version
 	 * @return the confirmation dto
 	 */
 	@Override
 	@Transactional
 	@Compliance(action = ComplianceAction.update)
-	public ConfirmationDto editItem(@NotNull @Valid ItemDto itemDto) {
-		return itemRepository.findById(itemDto.getId())
-				.map( entity -> { 
-						applyToEntity(itemDto, entity); //void method - entity modified byref
-						return entity; 
-					})
-				.map( itemRepository::save )
-				.map( savedItem -> createConfirmationDto(ItemStatus.SUBMITTED, savedItem) )
-				.orElseThrow( () -> new ValidationException (
-						messageSource.getMessage("itemsservice.validationexception.entitynotfoundforid", 
-							new Object[] { String.valueOf(itemDto.getId()) },
+	@CacheEvict(key = "#itemDto.id")
+	public ConfirmationDto editItem(@NotNull @Valid ItemDto itemDto, Long expectedVersion) {
+		long id = itemDto.getId();
+		Instant updatedTimestamp = Instant.now();
+		String updatedBy = auditorAware.getCurrentAuditor().orElse(null);
+		int updated = (null == expectedVersion)
+				? itemRepository.updateItem(id, itemDto.getName(), itemDto.getDescription(), updatedTimestamp, updatedBy)
+				: itemRepository.updateItemIfVersion(id, expectedVersion, itemDto.getName(), itemDto.getDescription(), 
+						updatedTimestamp, updatedBy);
+		
+		if(0 == updated) {
+			if(null != expectedVersion && itemRepository.existsById(id)) {
+				throw new OptimisticLockingFailureException(
+						messageSource.getMessage("itemsservice.optimisticlockingfailureexception.versionmismatch", 
+							new Object[] { String.valueOf(id), String.valueOf(expectedVersion) },
 							LocaleContextHolder.getLocale() )
-					)
+					);
+			}
+			throw new EntityNotFoundException(
+					messageSource.getMessage("itemsservice.entitynotfoundexception.entitynotfoundforid", 
+						new Object[] { String.valueOf(id) },
+						LocaleContextHolder.getLocale() )
 				);
+		}
+		
+		publishItemChange(ComplianceAction.update, Collections.singletonList(id));
+		ConfirmationDto confirmationDto = new ConfirmationDto();
+		confirmationDto.setStatus(ItemStatus.SUBMITTED);
+		confirmationDto.setId(id);
+		confirmationDto.setDateSubmitted(ZonedDateTime.ofInstant(updatedTimestamp, ZoneOffset.UTC));
+		return confirmationDto;
 	}
 	
 	
@@ -126,12 +556,233 @@ public class ItemsServiceImpl implements ItemsService {
 	 * @param id the id
 	 */
 	@Override
+	@Transactional
 	@Compliance(action = ComplianceAction.delete)
+	@CacheEvict(key = "#id")
 	public void deleteItemById(long id){
-		itemRepository.findById(id)
-			.ifPresent(itemRepository::delete);
+		if(itemRepository.deleteItemById(id) > 0) {
+			publishItemChange(ComplianceAction.delete, Collections.singletonList(id));
+		}
+	}
+	
+	
+	/**
+	 * Delete items by ids.
+	 * 
+	 * Runs as two set based statements whatever the number of ids: one to
+	 * find which of the ids exist, so that they can be reported, and one
+	 * to delete them, in one transaction along with the change event. When the
+	 * items are sharded, the ids of each shard are deleted in a transaction on
+	 * their shard (see writeByShard), so that when a shard fails, the deletes
+	 * of the other shards stay committed: the failure is then thrown, rather
+	 * than the ids of a partial delete returned.
+	 *
+	 * The whole item cache is evicted, as an entry per id cannot be
+	 * expressed with the cache annotations. As the annotation only evicts
+	 * once the method returns, the cache is also cleared before a failure is
+	 * thrown, some of the items having possibly been deleted.
+	 *
+	 * @param ids the ids
+	 * @return the ids of the items that existed and were deleted
+	 */
+	@Override
+	@Compliance(action = ComplianceAction.delete)
+	@CacheEvict(allEntries = true)
+	public List<Long> deleteItemsByIds(@NotNull @Size(min = 1, max = MAX_BATCH_SIZE) List<@NotNull Long> ids){
+		List<Long> deletedIds = new ArrayList<>();
+		writeByShard(ids, Long::longValue, "deleteItemsByIds", this::deleteExisting,
+				(part, deleted) -> deletedIds.addAll(deleted),
+				(part, e) -> {
+					if(null != itemsCache) {
+						itemsCache.clear();
+					}
+					throw e;
+				});
+		return deletedIds;
+	}
+	
+	
+	/**
+	 * Encodes an item id as an opaque cursor.
+	 *
+	 * @param id the id
+	 * @return the cursor
+	 */
+	private String encodeCursor(long id) {
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Decodes an opaque cursor back into the item id it wraps.
+	 *
+	 * @param cursor the cursor, blank for the start of the collection
+	 * @return the id to seek past
+	 */
+	private long decodeCursor(String cursor) {
+		if(!StringUtils.hasText(cursor)) {
+			return 0L;
+		}
+		try {
+			return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+		}
+		catch(IllegalArgumentException e) {
+			throw new ValidationException(
+					messageSource.getMessage("itemsservice.validationexception.invalidcursor", 
+						new Object[] { cursor },
+						LocaleContextHolder.getLocale() )
+				);
+		}
+	}
+	
+	/**
+	 * Publishes an item change event, delivered to transactional listeners
+	 * once the current transaction, if any, commits.
+	 *
+	 * @param action the action
+	 * @param itemIds the ids of the items changed
+	 */
+	private void publishItemChange(ComplianceAction action, Collection<Long> itemIds) {
+		applicationEventPublisher.publishEvent(new ItemChangeEvent(action, itemIds));
+	}
+	
+	/**
+	 * Saves new items along with their change event, within the transaction
+	 * of the caller.
+	 *
+	 * @param itemEntities the new items
+	 * @return the items saved, in the same order
+	 */
+	private List<ItemEntity> saveChunk(List<ItemEntity> itemEntities) {
+		List<ItemEntity> saved = itemRepository.saveAll(itemEntities);
+		publishItemChange(ComplianceAction.create, saved.stream().map(ItemEntity::getId).collect(Collectors.toList()));
+		return saved;
+	}
+	
+	/**
+	 * Deletes the items which exist among ids, along with their change event,
+	 * within the transaction of the caller.
+	 *
+	 * @param ids the ids
+	 * @return the ids of the items that existed and were deleted
+	 */
+	private List<Long> deleteExisting(List<Long> ids) {
+		List<Long> existingIds = itemRepository.findExistingIds(ids);
+		if(!existingIds.isEmpty()) {
+			itemRepository.deleteItemsByIds(existingIds);
+			publishItemChange(ComplianceAction.delete, existingIds);
+		}
+		return existingIds;
+	}
+	
+	/**
+	 * Writes items in one transaction, the write publishing the change of the
+	 * items in it. When the items are sharded, they are split by shard
+	 * instead, and the part of each shard is written in a transaction on its
+	 * shard, the shards in parallel: the change of a part is so published,
+	 * and written to the outbox, in the transaction of its shard, which
+	 * commits or rolls back independently of the others. The compliance
+	 * events captured by the caller are carried over to the threads of the
+	 * shards.
+	 *
+	 * @param <T> the type of the items
+	 * @param <R> the type of the result of a write
+	 * @param items the items
+	 * @param id the id of an item, only asked when sharded
+	 * @param operation the name of the operation, for the shard metric
+	 * @param write the write of a part of the items, within a transaction
+	 * @param committed the consumer of the result of each part committed
+	 * @param failed the consumer of the failure of each part rolled back, called once every part is done
+	 */
+	private <T, R> void writeByShard(List<T> items, ToLongFunction<T> id, String operation, Function<List<T>, R> write,
+			BiConsumer<List<T>, R> committed, BiConsumer<List<T>, RuntimeException> failed) {
+		if(null == itemShardRouter) {
+			R result;
+			try {
+				result = transactionTemplate.execute(status -> write.apply(items));
+			}
+			catch(RuntimeException e) {
+				failed.accept(items, e);
+				return;
+			}
+			committed.accept(items, result);
+			return;
+		}
+		Map<Integer, List<T>> parts = itemShardRouter.groupByShard(items, id);
+		ItemOutbox.Capture capture = ItemOutbox.currentCapture();
+		Map<Integer, R> results = itemShardRouter.writeOnShards(parts.keySet(), operation,
+				shard -> ItemOutbox.withCapture(capture, () -> write.apply(parts.get(shard))),
+				(shard, e) -> failed.accept(parts.get(shard), e));
+		results.forEach((shard, result) -> committed.accept(parts.get(shard), result));
+	}
+	
+	/**
+	 * Gives a new item its id ahead of the insert, as its id decides its shard.
+	 *
+	 * @param itemEntity the item entity
+	 * @return the id
+	 */
+	private long assignId(ItemEntity itemEntity) {
+		if(null == itemEntity.getId()) {
+			itemEntity.setId(itemIdAllocator.next());
+		}
+		return itemEntity.getId();
+	}
+	
+	/**
+	 * Validates an imported line.
+	 *
+	 * @param line the line
+	 * @return the errors, empty when the item is valid
+	 */
+	private List<String> validate(ItemImportLine line) {
+		if(null == line.getItemDto()) {
+			return Collections.singletonList(line.getError());
+		}
+		Set<ConstraintViolation<ItemDto>> violations = validator.validate(line.getItemDto());
+		List<String> errors = new ArrayList<>(violations.size());
+		for(ConstraintViolation<ItemDto> violation : violations) {
+			errors.add(violation.getPropertyPath() + ": " + violation.getMessage());
+		}
+		return errors;
 	}
 	
+	/**
+	 * Saves a chunk of imported items, along with their change event in one
+	 * transaction, reports their lines and clears the chunk. When the items
+	 * are sharded, the part of the chunk of each shard is saved in a
+	 * transaction on its shard, and its lines are accepted or rejected
+	 * whatever became of the other parts.
+	 *
+	 * @param chunk the chunk of items
+	 * @param chunkLineNumbers the line numbers of the items
+	 * @param results the consumer of the result of each line
+	 */
+	private void saveImportChunk(List<ItemEntity> chunk, List<Long> chunkLineNumbers, Consumer<ItemImportResultDto> results) {
+		Map<ItemEntity, Long> lineNumbers = new IdentityHashMap<>();
+		for(int i = 0; i < chunk.size(); i++) {
+			lineNumbers.put(chunk.get(i), chunkLineNumbers.get(i));
+		}
+		writeByShard(chunk, this::assignId, "importItems", this::saveChunk,
+				(part, saved) -> {
+					for(int i = 0; i < part.size(); i++) {
+						results.accept(new ItemImportResultDto(lineNumbers.get(part.get(i)), ItemImportStatus.ACCEPTED, saved.get(i).getId(), null));
+					}
+				},
+				(part, e) -> {
+					if(!(e instanceof DataAccessException || e instanceof TransactionException || e instanceof PersistenceException)) {
+						throw e;
+					}
+					logger.warn("Failed to save a chunk of {} imported items", part.size(), e);
+					List<String> errors = Collections.singletonList(messageSource.getMessage("itemsservice.persistenceexception.importchunkfailed", 
+							null, LocaleContextHolder.getLocale()));
+					for(ItemEntity itemEntity : part) {
+						results.accept(new ItemImportResultDto(lineNumbers.get(itemEntity), ItemImportStatus.REJECTED, null, errors));
+					}
+				});
+		chunk.clear();
+		chunkLineNumbers.clear();
+	}
 	
 	/**
 	 * Creates the confirmation dto.
@@ -157,7 +808,8 @@ public class ItemsServiceImpl implements ItemsService {
 	}
 	
 	/**
-	 * Convert.
+	 * Convert, for a new item. The id of the dto is not kept, as a preset id
+	 * would be inserted as is instead of being drawn from the sequence.
 	 *
 	 * @param sourceDto the source dto
 	 * @return the item entity
@@ -165,6 +817,7 @@ public class ItemsServiceImpl implements ItemsService {
 	private ItemEntity convert(ItemDto sourceDto) {
 		ItemEntity entity = new ItemEntity();
 		applyToEntity(sourceDto, entity);
+		entity.setId(null);
 		return entity;
 	}
 	
@@ -189,14 +842,39 @@ public class ItemsServiceImpl implements ItemsService {
 	 * @return the item dto
 	 */
 	private ItemDto convert(ItemEntity sourceEntity) {
-		if(null == sourceEntity) {
-			return null;
-		}
 		ZonedDateTime dateSubmitted = null;
+		ZonedDateTime dateModified = null;
 		
 		if(null != sourceEntity.getCreatedTimestamp()) {
 			dateSubmitted = ZonedDateTime.ofInstant(sourceEntity.getCreatedTimestamp(), ZoneOffset.UTC);
 		}
-		return new ItemDto(sourceEntity.getId(), sourceEntity.getName(), sourceEntity.getDescription(), dateSubmitted);
+		if(null != sourceEntity.getUpdatedTimestamp()) {
+			dateModified = ZonedDateTime.ofInstant(sourceEntity.getUpdatedTimestamp(), ZoneOffset.UTC);
+		}
+		return new ItemDto(sourceEntity.getId(), sourceEntity.getName(), sourceEntity.getDescription(), dateSubmitted,
+				sourceEntity.getVersion(), dateModified, sourceEntity.getStatus());
+	}
+	
+	/**
+	 * Convert.
+	 *
+	 * @param sourceProjection the source projection
+	 * @return the item dto
+	 */
+	private ItemDto convert(ItemProjection sourceProjection) {
+		if(null == sourceProjection) {
+			return null;
+		}
+		ZonedDateTime dateSubmitted = null;
+		ZonedDateTime dateModified = null;
+		
+		if(null != sourceProjection.getCreatedTimestamp()) {
+			dateSubmitted = ZonedDateTime.ofInstant(sourceProjection.getCreatedTimestamp(), ZoneOffset.UTC);
+		}
+		if(null != sourceProjection.getUpdatedTimestamp()) {
+			dateModified = ZonedDateTime.ofInstant(sourceProjection.getUpdatedTimestamp(), ZoneOffset.UTC);
+		}
+		return new ItemDto(sourceProjection.getId(), sourceProjection.getName(), sourceProjection.getDescription(), dateSubmitted,
+				sourceProjection.getVersion(), dateModified, sourceProjection.getStatus());
 	}
 }
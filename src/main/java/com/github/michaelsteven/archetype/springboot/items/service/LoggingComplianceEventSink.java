@@ -0,0 +1,34 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+
+/**
+ * The Class LoggingComplianceEventSink.
+ *
+ * The default sink, logging each event at debug level.
+ */
+@Component
+@ConditionalOnProperty(name = "api.compliance.sink", havingValue = "log", matchIfMissing = true)
+public class LoggingComplianceEventSink implements ComplianceEventSink {
+
+	private static final Logger logger = LoggerFactory.getLogger(LoggingComplianceEventSink.class);
+
+	/**
+	 * Logs a batch of events.
+	 *
+	 * @param complianceEvents the events
+	 */
+	@Override
+	public void write(List<ComplianceEvent> complianceEvents) {
+		if(logger.isDebugEnabled()) {
+			complianceEvents.forEach(complianceEvent -> logger.debug("{}", complianceEvent));
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * The Class LuceneItemSearchIndex.
+ * 
+ * Keeps the full-text index in an embedded Lucene index, in memory or in a
+ * directory when api.search.index-directory is set. The index is rebuilt
+ * from the items on startup, so it is never read back from a previous run.
+ * 
+ * Matches are ranked with BM25, a match in the name weighing more than one
+ * in the description.
+ */
+@Component
+public class LuceneItemSearchIndex implements ItemSearchIndex, Closeable {
+
+	/** The id field. */
+	static final String ID = "id";
+	
+	/** The name field. */
+	static final String NAME = "name";
+	
+	/** The description field. */
+	static final String DESCRIPTION = "description";
+	
+	/** The boost of matches in the name over matches in the description. */
+	static final float NAME_BOOST = 2f;
+	
+	private static final Set<String> ID_FIELD = Collections.singleton(ID);
+	
+	private Analyzer analyzer;
+	private Directory directory;
+	private IndexWriter indexWriter;
+	private SearcherManager searcherManager;
+	
+	/**
+	 * Constructor.
+	 *
+	 * @param indexDirectory the directory of the index, empty to keep it in memory
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public LuceneItemSearchIndex(@Value("${api.search.index-directory:}") String indexDirectory) throws IOException {
+		this.analyzer = new StandardAnalyzer();
+		this.directory = StringUtils.hasText(indexDirectory) ? FSDirectory.open(Paths.get(indexDirectory)) : new ByteBuffersDirectory();
+		this.indexWriter = new IndexWriter(directory, new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE));
+		this.searcherManager = new SearcherManager(indexWriter, null);
+	}
+	
+	/**
+	 * Adds an item to the index, or replaces it.
+	 *
+	 * @param id the id
+	 * @param name the name
+	 * @param description the description
+	 */
+	@Override
+	public void index(long id, String name, String description) {
+		String idValue = Long.toString(id);
+		Document document = new Document();
+		document.add(new StringField(ID, idValue, Field.Store.YES));
+		if(null != name) {
+			document.add(new TextField(NAME, name, Field.Store.NO));
+		}
+		if(null != description) {
+			document.add(new TextField(DESCRIPTION, description, Field.Store.NO));
+		}
+		try {
+			indexWriter.updateDocument(new Term(ID, idValue), document);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Removes items from the index.
+	 *
+	 * @param ids the ids
+	 */
+	@Override
+	public void remove(Collection<Long> ids) {
+		Term[] terms = ids.stream().map(id -> new Term(ID, Long.toString(id))).toArray(Term[]::new);
+		try {
+			indexWriter.deleteDocuments(terms);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Removes all the items from the index.
+	 */
+	@Override
+	public void clear() {
+		try {
+			indexWriter.deleteAll();
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Makes the changes made so far visible to searches, without committing
+	 * them to the directory.
+	 */
+	@Override
+	public void refresh() {
+		try {
+			searcherManager.maybeRefreshBlocking();
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Searches the items matching all the words of a query.
+	 * 
+	 * Only the top offset plus page size matches are collected, the total
+	 * is counted exactly.
+	 *
+	 * @param text the query
+	 * @param pageable the pageable
+	 * @return the page of the ids of the matching items
+	 */
+	@Override
+	public Page<Long> search(String text, Pageable pageable) {
+		Query query = parse(text);
+		if(null == query) {
+			return Page.empty(pageable);
+		}
+		int offset = (int) pageable.getOffset();
+		try {
+			IndexSearcher searcher = searcherManager.acquire();
+			try {
+				TopScoreDocCollector collector = TopScoreDocCollector.create(offset + pageable.getPageSize(), Integer.MAX_VALUE);
+				searcher.search(query, collector);
+				ScoreDoc[] scoreDocs = collector.topDocs(offset, pageable.getPageSize()).scoreDocs;
+				List<Long> ids = new ArrayList<>(scoreDocs.length);
+				for(ScoreDoc scoreDoc : scoreDocs) {
+					ids.add(Long.valueOf(searcher.doc(scoreDoc.doc, ID_FIELD).get(ID)));
+				}
+				return new PageImpl<>(ids, pageable, collector.getTotalHits());
+			}
+			finally {
+				searcherManager.release(searcher);
+			}
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Closes the index.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	@PreDestroy
+	public void close() throws IOException {
+		searcherManager.close();
+		indexWriter.close();
+		directory.close();
+	}
+	
+	/**
+	 * Parses a query into a conjunction of its words, each of them matching
+	 * either the name or the description.
+	 *
+	 * @param text the query
+	 * @return the query, null when the text holds no word
+	 */
+	private Query parse(String text) {
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		boolean empty = true;
+		try(TokenStream tokenStream = analyzer.tokenStream(NAME, text)) {
+			CharTermAttribute termAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+			tokenStream.reset();
+			while(tokenStream.incrementToken()) {
+				String word = termAttribute.toString();
+				Query wordQuery = new BooleanQuery.Builder()
+						.add(new BoostQuery(new TermQuery(new Term(NAME, word)), NAME_BOOST), BooleanClause.Occur.SHOULD)
+						.add(new TermQuery(new Term(DESCRIPTION, word)), BooleanClause.Occur.SHOULD)
+						.build();
+				builder.add(wordQuery, BooleanClause.Occur.MUST);
+				empty = false;
+			}
+			tokenStream.end();
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return empty ? null : builder.build();
+	}
+}
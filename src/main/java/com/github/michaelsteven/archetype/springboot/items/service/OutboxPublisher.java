@@ -0,0 +1,25 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.util.List;
+
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventEntity;
+
+/**
+ * The Interface OutboxPublisher.
+ *
+ * Where the OutboxRelay publishes the events of the outbox. The events are
+ * deleted from the outbox once a batch is published, and published again
+ * when it fails, so an implementation must tolerate the same event twice,
+ * as may also happen when the deletion fails. The publisher is picked with
+ * api.outbox.publisher.
+ */
+public interface OutboxPublisher {
+
+	/**
+	 * Publishes a batch of events.
+	 *
+	 * @param outboxEvents the events, in the order they were written
+	 * @throws RuntimeException when the batch could not be published, to retry it
+	 */
+	void publish(List<OutboxEventEntity> outboxEvents);
+}
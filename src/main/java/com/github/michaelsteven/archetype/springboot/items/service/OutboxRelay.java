@@ -0,0 +1,194 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventEntity;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemShardRouter;
+import com.github.michaelsteven.archetype.springboot.items.repository.OutboxEventRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * The Class OutboxRelay.
+ *
+ * When the outbox is enabled, a relay thread publishes its events. It locks
+ * the oldest events a batch at a time, with SELECT ... FOR UPDATE SKIP
+ * LOCKED, hands them to the OutboxPublisher, and deletes them with one
+ * statement, all in one transaction. The relays of every instance sharing the
+ * database so publish distinct events, and a batch whose publishing or
+ * deletion fails stays in the outbox to be published again. When the items
+ * are sharded, the relay goes over the outbox of each shard in turn.
+ *
+ * The batch is read in a read-write transaction, so never from a replica
+ * lagging behind the deletions.
+ */
+@Component
+public class OutboxRelay implements DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+	/** The name of the counter of the events published. */
+	static final String RELAYED_METRIC = "outbox.relayed";
+
+	/** The name of the timer of the time events waited in the outbox. */
+	static final String LAG_METRIC = "outbox.lag";
+
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000L;
+
+	private OutboxEventRepository outboxEventRepository;
+	private ItemShardRouter itemShardRouter;
+	private TransactionTemplate transactionTemplate;
+	private OutboxPublisher outboxPublisher;
+	private boolean enabled;
+	private int batchSize;
+	private long pollIntervalMillis;
+	private int shardCount;
+	private volatile boolean running;
+	private Thread relay;
+	private Counter relayed;
+	private Timer lag;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param outboxEventRepository the outbox event repository
+	 * @param itemShardRouter the item shard router, available when the items are sharded
+	 * @param transactionManager the transaction manager, a batch is locked, published and deleted in one transaction
+	 * @param outboxPublisher the outbox publisher
+	 * @param meterRegistry the meter registry
+	 * @param enabled whether the outbox is enabled
+	 * @param batchSize the number of events published per transaction at most
+	 * @param pollIntervalMillis how long the relay waits once it found no event to publish
+	 */
+	public OutboxRelay(OutboxEventRepository outboxEventRepository, ObjectProvider<ItemShardRouter> itemShardRouter,
+			PlatformTransactionManager transactionManager, OutboxPublisher outboxPublisher, MeterRegistry meterRegistry,
+			@Value("${api.outbox.enabled:false}") boolean enabled,
+			@Value("${api.outbox.batch-size:500}") int batchSize,
+			@Value("${api.outbox.poll-interval-ms:200}") long pollIntervalMillis) {
+		this.outboxEventRepository = outboxEventRepository;
+		this.itemShardRouter = itemShardRouter.getIfAvailable();
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.outboxPublisher = outboxPublisher;
+		this.enabled = enabled;
+		this.batchSize = batchSize;
+		this.pollIntervalMillis = pollIntervalMillis;
+		this.shardCount = null == this.itemShardRouter ? 1 : this.itemShardRouter.getShardCount();
+		this.relayed = meterRegistry.counter(RELAYED_METRIC);
+		this.lag = meterRegistry.timer(LAG_METRIC);
+	}
+
+	/**
+	 * Starts the relay, once the application is ready.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void start() {
+		if(enabled && null == relay) {
+			running = true;
+			relay = new Thread(this::relay, "outbox-relay");
+			relay.setDaemon(true);
+			relay.start();
+		}
+	}
+
+	/**
+	 * Stops the relay, once done with its current batch.
+	 *
+	 * @throws InterruptedException the interrupted exception
+	 */
+	@Override
+	public void destroy() throws InterruptedException {
+		running = false;
+		Thread relayThread;
+		synchronized(this) {
+			relayThread = relay;
+		}
+		if(null != relayThread) {
+			relayThread.interrupt();
+			relayThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+		}
+	}
+
+	/**
+	 * Publishes batches until stopped, from the shards in turn. Once a whole
+	 * round of the shards had nothing to publish, or failed, the relay waits
+	 * for the poll interval.
+	 */
+	private void relay() {
+		int shard = 0;
+		int idle = 0;
+		while(running) {
+			try {
+				if(relayBatch(shard) > 0) {
+					idle = 0;
+					continue;
+				}
+			}
+			catch(RuntimeException e) {
+				logger.warn("Failed to publish a batch of the outbox on shard {}: {}", shard, e.getMessage());
+			}
+			finally {
+				shard = (shard + 1) % shardCount;
+			}
+			if(++idle >= shardCount) {
+				idle = 0;
+				try {
+					Thread.sleep(pollIntervalMillis);
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Publishes and deletes a batch of the outbox of a shard in one transaction.
+	 *
+	 * @param shard the shard, ignored when the items are not sharded
+	 * @return the number of events published
+	 */
+	int relayBatch(int shard) {
+		List<OutboxEventEntity> outboxEvents = null == itemShardRouter
+				? transactionTemplate.execute(status -> lockPublishAndDelete())
+				: itemShardRouter.onShard(shard, "relayOutbox", () -> transactionTemplate.execute(status -> lockPublishAndDelete()));
+		Instant now = Instant.now();
+		for(OutboxEventEntity outboxEvent : outboxEvents) {
+			lag.record(Duration.between(outboxEvent.getCreatedTimestamp(), now));
+		}
+		relayed.increment(outboxEvents.size());
+		return outboxEvents.size();
+	}
+
+	/**
+	 * Locks the oldest events, publishes and deletes them, within the
+	 * transaction of the caller.
+	 *
+	 * @return the events published
+	 */
+	private List<OutboxEventEntity> lockPublishAndDelete() {
+		List<OutboxEventEntity> outboxEvents = outboxEventRepository.findAndLockByOrderByIdAsc(PageRequest.of(0, batchSize));
+		if(!outboxEvents.isEmpty()) {
+			outboxPublisher.publish(outboxEvents);
+			outboxEventRepository.deleteByIds(outboxEvents.stream().map(OutboxEventEntity::getId).collect(Collectors.toList()));
+		}
+		return outboxEvents;
+	}
+}
@@ -0,0 +1,65 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventType;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+
+/**
+ * The Class PipelineOutboxPublisher.
+ *
+ * The default publisher, handing the compliance events over to the
+ * compliance event pipeline. The change events have no consumer outside of
+ * the application yet, and are only dropped from the outbox. An event the
+ * pipeline discards, as its buffer is full or it is sampled out, fails the
+ * batch, so that it stays in the outbox to be published again.
+ */
+@Component
+@ConditionalOnProperty(name = "api.outbox.publisher", havingValue = "pipeline", matchIfMissing = true)
+public class PipelineOutboxPublisher implements OutboxPublisher {
+
+	private ComplianceEventPipeline complianceEventPipeline;
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param complianceEventPipeline the compliance event pipeline
+	 * @param objectMapper the object mapper, to read the events
+	 */
+	public PipelineOutboxPublisher(ComplianceEventPipeline complianceEventPipeline, ObjectMapper objectMapper) {
+		this.complianceEventPipeline = complianceEventPipeline;
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Publishes the compliance events of a batch to the pipeline.
+	 *
+	 * @param outboxEvents the events
+	 * @throws IllegalStateException when the pipeline discarded an event
+	 */
+	@Override
+	public void publish(List<OutboxEventEntity> outboxEvents) {
+		for(OutboxEventEntity outboxEvent : outboxEvents) {
+			if(OutboxEventType.compliance == outboxEvent.getType()) {
+				boolean accepted;
+				try {
+					accepted = complianceEventPipeline.publish(objectMapper.readValue(outboxEvent.getPayload(), ComplianceEvent.class));
+				}
+				catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				if(!accepted) {
+					throw new IllegalStateException("The compliance event pipeline discarded outbox event " + outboxEvent.getId());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,379 @@
+package com.github.michaelsteven.archetype.springboot.items.aspect;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.michaelsteven.archetype.springboot.items.configuration.AuditorAwareImpl;
+import com.github.michaelsteven.archetype.springboot.items.model.ConfirmationDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemVersion;
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventType;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+import com.github.michaelsteven.archetype.springboot.items.repository.OutboxEventRepository;
+import com.github.michaelsteven.archetype.springboot.items.service.ComplianceEventPipeline;
+import com.github.michaelsteven.archetype.springboot.items.service.ComplianceReadAggregator;
+import com.github.michaelsteven.archetype.springboot.items.service.ItemOutbox;
+import com.github.michaelsteven.archetype.springboot.items.service.ItemsService;
+import com.github.michaelsteven.archetype.springboot.items.service.ItemsServiceImpl;
+
+/**
+ * ComplianceEventAspect Unit Tests
+ */
+@ExtendWith(MockitoExtension.class)
+@WebAppConfiguration
+@DisplayName("ComplianceEventAspect Unit Tests")
+public class ComplianceEventAspectTest {
+
+	@Mock
+	private ComplianceEventPipeline complianceEventPipeline;
+
+	@Mock
+	private ComplianceReadAggregator complianceReadAggregator;
+
+	@Mock
+	private OutboxEventRepository outboxEventRepository;
+
+	private ItemsService itemsServiceProxy;
+	private ItemsServiceImpl itemsServiceMock;
+	private ItemOutbox itemOutbox;
+
+	/**
+	 * Setup.
+	 */
+	@BeforeEach
+	void setup() {
+		itemsServiceMock = Mockito.mock(ItemsServiceImpl.class);
+		itemOutbox = new ItemOutbox(outboxEventRepository, complianceEventPipeline, new ObjectMapper(), false);
+		itemsServiceProxy = proxy(itemOutbox);
+	}
+
+	/**
+	 * Creates a proxy of the items service mock, advised by the aspect.
+	 *
+	 * @param itemOutbox the item outbox
+	 * @return the proxy
+	 */
+	private ItemsService proxy(ItemOutbox itemOutbox) {
+		AspectJProxyFactory factory = new AspectJProxyFactory(itemsServiceMock);
+		factory.addAspect(new ComplianceEventAspect(complianceEventPipeline, complianceReadAggregator, new AuditorAwareImpl(), itemOutbox));
+		return factory.getProxy();
+	}
+
+	/**
+	 * Gets the events published to the pipeline, on the calling thread.
+	 *
+	 * @param count the number of events expected
+	 * @return the events
+	 */
+	private List<ComplianceEvent> publishedEvents(int count) {
+		ArgumentCaptor<ComplianceEvent> events = ArgumentCaptor.forClass(ComplianceEvent.class);
+		Mockito.verify(complianceEventPipeline, Mockito.times(count)).publish(events.capture());
+		return events.getAllValues();
+	}
+
+	/**
+	 * Gets the read events recorded through the read aggregator.
+	 *
+	 * @param count the number of events expected
+	 * @return the events
+	 */
+	private List<ComplianceEvent> readEvents(int count) {
+		ArgumentCaptor<ComplianceEvent> events = ArgumentCaptor.forClass(ComplianceEvent.class);
+		Mockito.verify(complianceReadAggregator, Mockito.times(count)).record(events.capture());
+		Mockito.verifyNoInteractions(complianceEventPipeline);
+		return events.getAllValues();
+	}
+
+	/**
+	 * Given call to a bulk delete
+	 */
+	@Nested
+	@DisplayName("Given call to a bulk delete")
+	class GivenCallToBulkDelete {
+
+		/**
+		 * Then should record one delete event per deleted id.
+		 */
+		@Test
+		@DisplayName("Then should record one delete event per deleted id")
+		public void thenShouldRecordOneEventPerDeletedId() {
+			Mockito.when(itemsServiceMock.deleteItemsByIds(Mockito.anyList())).thenReturn(Arrays.asList(1L, 3L));
+
+			itemsServiceProxy.deleteItemsByIds(Arrays.asList(1L, 2L, 3L));
+
+			List<ComplianceEvent> recordedEvents = publishedEvents(2);
+			List<Long> itemIds = recordedEvents.stream().map(ComplianceEvent::getItemId).sorted().collect(Collectors.toList());
+			assertEquals(Arrays.asList(1L, 3L), itemIds);
+			assertTrue(recordedEvents.stream().allMatch(event -> event.getAction() == ComplianceAction.delete));
+			assertTrue(recordedEvents.stream().allMatch(event -> "unknown".equals(event.getActor()) && null != event.getTimestamp()));
+			Mockito.verifyNoInteractions(complianceReadAggregator);
+		}
+	}
+
+	/**
+	 * Given call saving items chunk by chunk
+	 */
+	@Nested
+	@DisplayName("Given call saving items chunk by chunk")
+	class GivenCallSavingChunks {
+
+		/**
+		 * Then should record the events of each chunk once it committed, and keep them when a later chunk fails.
+		 */
+		@Test
+		@DisplayName("Then should record the events of each chunk as it commits")
+		public void thenShouldRecordEventsOfEachCommittedChunk() {
+			Mockito.when(itemsServiceMock.saveItems(Mockito.anyList())).thenAnswer(invocation -> {
+				TransactionSynchronizationManager.initSynchronization();
+				try {
+					itemOutbox.onItemChange(new ItemChangeEvent(ComplianceAction.create, Arrays.asList(1L, 2L)));
+					Mockito.verifyNoInteractions(complianceEventPipeline);
+					TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+				}
+				finally {
+					TransactionSynchronizationManager.clearSynchronization();
+				}
+				assertEquals(2, publishedEvents(2).size());
+				TransactionSynchronizationManager.initSynchronization();
+				try {
+					itemOutbox.onItemChange(new ItemChangeEvent(ComplianceAction.create, Arrays.asList(3L, 4L)));
+					throw new IllegalStateException("rolled back");
+				}
+				finally {
+					TransactionSynchronizationManager.clearSynchronization();
+				}
+			});
+
+			assertThrows(IllegalStateException.class, () -> itemsServiceProxy.saveItems(Arrays.asList(new ItemDto(), new ItemDto())));
+
+			List<ComplianceEvent> recordedEvents = publishedEvents(2);
+			assertEquals(Arrays.asList(1L, 2L), recordedEvents.stream().map(ComplianceEvent::getItemId).collect(Collectors.toList()));
+			assertTrue(recordedEvents.stream().allMatch(event -> event.getAction() == ComplianceAction.create));
+		}
+	}
+
+	/**
+	 * Given call to a single delete
+	 */
+	@Nested
+	@DisplayName("Given call to a single delete")
+	class GivenCallToSingleDelete {
+
+		/**
+		 * Then should record the delete event with the id.
+		 */
+		@Test
+		@DisplayName("Then should record the delete event with the id")
+		public void thenShouldRecordEventWithId() {
+			Mockito.doAnswer(invocation -> {
+				itemOutbox.onItemChange(new ItemChangeEvent(ComplianceAction.delete, Arrays.asList(12345L)));
+				return null;
+			}).when(itemsServiceMock).deleteItemById(12345L);
+
+			itemsServiceProxy.deleteItemById(12345L);
+
+			assertEquals(12345L, publishedEvents(1).get(0).getItemId());
+		}
+
+		/**
+		 * Then should record nothing when no item had the id, and nothing was deleted.
+		 */
+		@Test
+		@DisplayName("Then should record nothing when no item was deleted")
+		public void thenShouldRecordNothingWhenNoItemDeleted() {
+			itemsServiceProxy.deleteItemById(12345L);
+
+			Mockito.verifyNoInteractions(complianceEventPipeline);
+		}
+
+		/**
+		 * Then should record nothing when the delete failed, and was rolled back.
+		 */
+		@Test
+		@DisplayName("Then should record nothing when the delete failed")
+		public void thenShouldRecordNothingWhenFailed() {
+			Mockito.doThrow(new IllegalStateException("rolled back")).when(itemsServiceMock).deleteItemById(12345L);
+
+			assertThrows(IllegalStateException.class, () -> itemsServiceProxy.deleteItemById(12345L));
+
+			Mockito.verifyNoInteractions(complianceEventPipeline);
+		}
+	}
+
+	/**
+	 * Given call without an item id
+	 */
+	@Nested
+	@DisplayName("Given call without an item id")
+	class GivenCallWithoutItemId {
+
+		/**
+		 * Then should record a single event.
+		 */
+		@Test
+		@DisplayName("Then should record a single event")
+		public void thenShouldRecordSingleEvent() {
+			itemsServiceProxy.getItems(Pageable.unpaged());
+
+			List<ComplianceEvent> recordedEvents = readEvents(1);
+			assertNull(recordedEvents.get(0).getItemId());
+			assertEquals(ComplianceAction.read, recordedEvents.get(0).getAction());
+		}
+	}
+
+	/**
+	 * Given call to a read of several items
+	 */
+	@Nested
+	@DisplayName("Given call to a read of several items")
+	class GivenCallToReadOfSeveralItems {
+
+		/**
+		 * Then should record one read event per item of the page returned.
+		 */
+		@Test
+		@DisplayName("Then should record one read event per item returned")
+		public void thenShouldRecordOneEventPerItemReturned() {
+			Mockito.when(itemsServiceMock.getItems(Mockito.any(Pageable.class)))
+					.thenReturn(new PageImpl<>(Arrays.asList(item(7L), item(9L))));
+
+			itemsServiceProxy.getItems(Pageable.unpaged());
+
+			List<Long> itemIds = readEvents(2).stream().map(ComplianceEvent::getItemId).collect(Collectors.toList());
+			assertEquals(Arrays.asList(7L, 9L), itemIds);
+		}
+
+		/**
+		 * Then should record one read event per item handed to the consumer of an export.
+		 */
+		@Test
+		@DisplayName("Then should record one read event per item exported")
+		public void thenShouldRecordOneEventPerItemExported() {
+			Mockito.doAnswer(invocation -> {
+				Consumer<ItemDto> consumer = invocation.getArgument(0);
+				consumer.accept(item(1L));
+				consumer.accept(item(2L));
+				consumer.accept(item(3L));
+				return null;
+			}).when(itemsServiceMock).exportItems(Mockito.any());
+			List<ItemDto> exported = new ArrayList<>();
+
+			itemsServiceProxy.exportItems(exported::add);
+
+			assertEquals(3, exported.size());
+			List<Long> itemIds = readEvents(3).stream().map(ComplianceEvent::getItemId).collect(Collectors.toList());
+			assertEquals(Arrays.asList(1L, 2L, 3L), itemIds);
+		}
+
+		/**
+		 * Then should record one read event per item of the page of versions returned.
+		 */
+		@Test
+		@DisplayName("Then should record one read event per item version returned")
+		public void thenShouldRecordOneEventPerItemVersionReturned() {
+			ItemVersion itemVersion = Mockito.mock(ItemVersion.class);
+			Mockito.when(itemVersion.getId()).thenReturn(5L);
+			Mockito.when(itemsServiceMock.getItemVersions(Mockito.any(Pageable.class)))
+					.thenReturn(new PageImpl<>(Arrays.asList(itemVersion)));
+
+			itemsServiceProxy.getItemVersions(Pageable.unpaged());
+
+			assertEquals(5L, readEvents(1).get(0).getItemId());
+		}
+
+		/**
+		 * Creates an item.
+		 *
+		 * @param id the id
+		 * @return the item
+		 */
+		private ItemDto item(long id) {
+			ItemDto itemDto = new ItemDto();
+			itemDto.setId(id);
+			return itemDto;
+		}
+	}
+
+	/**
+	 * Given the outbox is enabled
+	 */
+	@Nested
+	@DisplayName("Given the outbox is enabled")
+	class GivenOutboxEnabled {
+
+		/**
+		 * Setup.
+		 */
+		@BeforeEach
+		void setup() {
+			itemOutbox = new ItemOutbox(outboxEventRepository, complianceEventPipeline, new ObjectMapper().findAndRegisterModules(), true);
+			itemsServiceProxy = proxy(itemOutbox);
+		}
+
+		/**
+		 * Then should leave the events of a change to the outbox, and publish none itself.
+		 */
+		@Test
+		@SuppressWarnings("unchecked")
+		@DisplayName("Then should write the delete events to the outbox")
+		public void thenShouldWriteEventsToOutbox() {
+			Mockito.when(itemsServiceMock.deleteItemsByIds(Mockito.anyList())).thenAnswer(invocation -> {
+				itemOutbox.onItemChange(new ItemChangeEvent(ComplianceAction.delete, Arrays.asList(1L, 3L)));
+				return Arrays.asList(1L, 3L);
+			});
+
+			itemsServiceProxy.deleteItemsByIds(Arrays.asList(1L, 2L, 3L));
+
+			ArgumentCaptor<List<OutboxEventEntity>> outboxEvents = ArgumentCaptor.forClass(List.class);
+			Mockito.verify(outboxEventRepository).saveAll(outboxEvents.capture());
+			List<OutboxEventType> types = outboxEvents.getValue().stream().map(OutboxEventEntity::getType).collect(Collectors.toList());
+			assertEquals(Arrays.asList(OutboxEventType.change, OutboxEventType.compliance, OutboxEventType.compliance), types);
+			assertTrue(outboxEvents.getValue().get(1).getPayload().contains("\"actor\":\"unknown\""));
+			Mockito.verifyNoInteractions(complianceEventPipeline);
+		}
+
+		/**
+		 * Then should publish the events itself when the call changed nothing through the outbox.
+		 */
+		@Test
+		@DisplayName("Then should publish the events of a call the outbox did not capture")
+		public void thenShouldPublishEventsNotCaptured() {
+			ConfirmationDto confirmationDto = new ConfirmationDto();
+			confirmationDto.setId(12345L);
+			Mockito.when(itemsServiceMock.saveItem(Mockito.any())).thenReturn(confirmationDto);
+
+			itemsServiceProxy.saveItem(new ItemDto());
+
+			assertEquals(12345L, publishedEvents(1).get(0).getItemId());
+			Mockito.verifyNoInteractions(outboxEventRepository);
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package com.github.michaelsteven.archetype.springboot.items.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.http.Cookie;
+
+import org.hibernate.SessionFactory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemRepository;
+
+/**
+ * The ReplicaRoutingDataSource test class
+ *
+ * Runs the application against two in-memory H2 databases, a primary and a
+ * replica. Nothing replicates between them, so an item inserted in only one
+ * of them tells which database served a request. The replica reports its lag
+ * from a table the tests set.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaRoutingDataSourceTest.PRIMARY_URL,
+        "api.datasource.replica.url=" + ReplicaRoutingDataSourceTest.REPLICA_URL,
+        "api.datasource.replica.lag-query=select lag_ms from replica_lag",
+        "api.datasource.replica.lag-check-interval-ms=3600000",
+        "api.datasource.replica.max-lag-ms=1000",
+        "api.datasource.replica.read-your-writes-ms=60000",
+        "spring.cache.type=none" })
+@AutoConfigureMockMvc
+@DisplayName("ReplicaRoutingDataSource Tests")
+public class ReplicaRoutingDataSourceTest
+{
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+    private static final String ITEM_PATH = "/api/v1/items/{id}";
+    private static final long REPLICA_ONLY_ID = 1000000L;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+
+    /**
+     * Setup, copies the schema of the primary to the replica on the first run,
+     * then leaves an item in the replica only, with the replica in sync.
+     */
+    @BeforeEach
+    void setup()
+    {
+        primary = new JdbcTemplate(new DriverManagerDataSource(PRIMARY_URL, "sa", ""));
+        replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+        if (replica.queryForObject("select count(*) from information_schema.tables where table_name = 'REPLICA_LAG'",
+                Integer.class) == 0)
+        {
+            List<String> schema = primary.queryForList("script nodata", String.class);
+            schema.stream().filter(sql -> !sql.startsWith("CREATE USER")).forEach(replica::execute);
+            replica.execute("create table replica_lag (lag_ms bigint)");
+            replica.update("insert into replica_lag values (0)");
+        }
+        primary.update("delete from items");
+        replica.update("delete from items");
+        replica.update("insert into items (id, name, description, version, created_ts, updated_ts) "
+                + "values (?, 'replica only', 'replica only', 0, current_timestamp, current_timestamp)", REPLICA_ONLY_ID);
+        setReplicaLag(0);
+    }
+
+    /**
+     * Then should read from the replica.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    @DisplayName("Then should read from the replica")
+    void thenShouldReadFromReplica() throws Exception
+    {
+        mockMvc.perform(get(ITEM_PATH, REPLICA_ONLY_ID))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("replica only"));
+    }
+
+    /**
+     * Then should write to the primary, and set the last write cookie.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    @DisplayName("Then should write to the primary")
+    void thenShouldWriteToPrimary() throws Exception
+    {
+        Cookie lastWrite = saveItem();
+
+        assertNotNull(lastWrite);
+        assertEquals(1, primary.queryForObject("select count(*) from items", Integer.class));
+        assertEquals(1, replica.queryForObject("select count(*) from items", Integer.class));
+    }
+
+    /**
+     * Then should read own writes from the primary, while other clients read
+     * from the replica.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    @DisplayName("Then should read own writes from the primary")
+    void thenShouldReadOwnWritesFromPrimary() throws Exception
+    {
+        Cookie lastWrite = saveItem();
+        long id = primary.queryForObject("select id from items", Long.class);
+
+        mockMvc.perform(get(ITEM_PATH, id).cookie(lastWrite))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("primary"));
+        mockMvc.perform(get(ITEM_PATH, id))
+                .andExpect(status().isNotFound());
+    }
+
+    /**
+     * Then should read from the replica once the stickiness window is over.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    @DisplayName("Then should read from the replica once the stickiness window is over")
+    void thenShouldReadFromReplicaAfterStickiness() throws Exception
+    {
+        Cookie lastWrite = new Cookie(ReadYourWritesFilter.LAST_WRITE_COOKIE, String.valueOf(System.currentTimeMillis() - 60000));
+
+        mockMvc.perform(get(ITEM_PATH, REPLICA_ONLY_ID).cookie(lastWrite))
+                .andExpect(status().isOk());
+    }
+
+    /**
+     * Then should read from the primary while the replica lags more than tolerated.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    @DisplayName("Then should read from the primary while the replica lags")
+    void thenShouldReadFromPrimaryWhileReplicaLags() throws Exception
+    {
+        setReplicaLag(5000);
+        assertFalse(replicaRoutingDataSource.isReplicaUsable());
+        mockMvc.perform(get(ITEM_PATH, REPLICA_ONLY_ID))
+                .andExpect(status().isNotFound());
+
+        setReplicaLag(500);
+        mockMvc.perform(get(ITEM_PATH, REPLICA_ONLY_ID))
+                .andExpect(status().isOk());
+    }
+
+    /**
+     * Then should read from the primary the reads required on it, e.g. the
+     * loading of a cache miss.
+     */
+    @Test
+    @DisplayName("Then should read from the primary the reads required on it")
+    void thenShouldReadFromPrimaryWhenRequired()
+    {
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        assertFalse(ReplicaRoutingDataSource.readFromPrimary(
+                () -> readOnlyTransaction.execute(status -> itemRepository.findProjectedById(REPLICA_ONLY_ID))).isPresent());
+        assertTrue(readOnlyTransaction.execute(status -> itemRepository.findProjectedById(REPLICA_ONLY_ID)).isPresent());
+    }
+
+    /**
+     * Then should turn the query cache off.
+     */
+    @Test
+    @DisplayName("Then should turn the query cache off")
+    void thenShouldTurnQueryCacheOff()
+    {
+        assertFalse(entityManagerFactory.unwrap(SessionFactory.class).getSessionFactoryOptions().isQueryCacheEnabled());
+    }
+
+    /**
+     * Saves an item.
+     *
+     * @return the last write cookie set by the response
+     * @throws Exception the exception
+     */
+    private Cookie saveItem() throws Exception
+    {
+        MvcResult result = mockMvc.perform(post("/api/v1/items").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"primary\",\"description\":\"primary\"}"))
+                .andExpect(status().isAccepted())
+                .andReturn();
+        JsonNode confirmation = objectMapper.readTree(result.getResponse().getContentAsString());
+        assertNotNull(confirmation.get("id"));
+        return result.getResponse().getCookie(ReadYourWritesFilter.LAST_WRITE_COOKIE);
+    }
+
+    /**
+     * Sets the lag the replica reports, and has it measured.
+     *
+     * @param lagMillis the lag in milliseconds
+     */
+    private void setReplicaLag(long lagMillis)
+    {
+        replica.update("update replica_lag set lag_ms = ?", lagMillis);
+        replicaRoutingDataSource.checkReplicaLag();
+        assertEquals(lagMillis, replicaRoutingDataSource.getLagMillis());
+    }
+}
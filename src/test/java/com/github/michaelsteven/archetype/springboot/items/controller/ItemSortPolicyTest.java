@@ -0,0 +1,56 @@
+package com.github.michaelsteven.archetype.springboot.items.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.context.MessageSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The ItemSortPolicy Unit test class
+ */
+@DisplayName("ItemSortPolicy Unit Tests")
+public class ItemSortPolicyTest
+{
+    /**
+     * Given the configured sort keys
+     */
+    @Nested
+    @DisplayName("Given the configured sort keys")
+    class GivenConfiguredSortKeys
+    {
+        /**
+         * Then should map each key to the index leading with its column.
+         */
+        @Test
+        @DisplayName("Then should map each key to the index leading with its column")
+        void thenShouldMapKeysToIndexes()
+        {
+            assertEquals("items_name_idx", ItemSortPolicy.supportingIndex("name"));
+            assertEquals("items_created_ts_idx", ItemSortPolicy.supportingIndex("createdTimestamp"));
+            assertEquals("items_updated_ts_idx", ItemSortPolicy.supportingIndex("updatedTimestamp"));
+        }
+
+        /**
+         * Then should fail to start with a key that is not indexed or not a property.
+         */
+        @Test
+        @DisplayName("Then should fail to start with a key that is not indexed or not a property")
+        void thenShouldFailWithUnindexedKey()
+        {
+            MessageSource messageSource = Mockito.mock(MessageSource.class);
+            assertThrows(IllegalStateException.class,
+                    () -> new ItemSortPolicy(messageSource, new SimpleMeterRegistry(), Arrays.asList("name", "description")));
+            assertThrows(IllegalStateException.class,
+                    () -> new ItemSortPolicy(messageSource, new SimpleMeterRegistry(), Collections.singletonList("colour")));
+        }
+    }
+}
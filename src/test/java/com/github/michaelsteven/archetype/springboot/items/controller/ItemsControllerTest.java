@@ -2,29 +2,43 @@ package com.github.michaelsteven.archetype.springboot.items.controller;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
 
+import javax.persistence.EntityNotFoundException;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.MessageSource;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -40,16 +54,28 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.github.michaelsteven.archetype.springboot.items.TestPageImpl;
 import com.github.michaelsteven.archetype.springboot.items.model.ApiError;
 import com.github.michaelsteven.archetype.springboot.items.model.ConfirmationDto;
+import com.github.michaelsteven.archetype.springboot.items.model.CursorPageDto;
 import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemFilter;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportLine;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportResultDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportStatus;
 import com.github.michaelsteven.archetype.springboot.items.model.ItemStatus;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemVersion;
+import com.github.michaelsteven.archetype.springboot.items.model.SerializedPage;
+import com.github.michaelsteven.archetype.springboot.items.service.ItemIngestQueueFullException;
 import com.github.michaelsteven.archetype.springboot.items.service.ItemsService;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 /**
  * Items controller unit tests
  */
@@ -63,6 +89,7 @@ public class ItemsControllerTest
     private MessageSource messageSource;
     private static final String API_VERSION = "v1";
     private ObjectMapper objectMapper;
+    private MeterRegistry meterRegistry;
 
     /**
      * Setup - executes before each test
@@ -72,16 +99,20 @@ public class ItemsControllerTest
     {
         itemsService = Mockito.mock(ItemsService.class);
         messageSource = Mockito.mock(MessageSource.class);
-        ItemsController itemsController = new ItemsController(itemsService, messageSource);
+        
+        objectMapper = new ObjectMapper();
+		objectMapper.registerModule(new JavaTimeModule());
+		objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        
+        meterRegistry = new SimpleMeterRegistry();
+        ItemSortPolicy itemSortPolicy = new ItemSortPolicy(messageSource, meterRegistry,
+                Arrays.asList("name", "createdTimestamp", "updatedTimestamp"));
+        ItemsController itemsController = new ItemsController(itemsService, messageSource, objectMapper, itemSortPolicy);
         
         mockMvc = MockMvcBuilders.standaloneSetup(itemsController)
         		   .setCustomArgumentResolvers(new PageableHandlerMethodArgumentResolver())
         		   .setControllerAdvice(new RestExceptionHandler())
         		   .build();
-        
-        objectMapper = new ObjectMapper();
-		objectMapper.registerModule(new JavaTimeModule());
-		objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     }
 
     /**
@@ -165,6 +196,629 @@ public class ItemsControllerTest
                 assertEquals(actualResult.getContent().size(), 1);
             }
         }
+
+        /**
+         * When the page is served serialized
+         */
+        @Nested
+        @DisplayName("When the page is served serialized")
+        class WhenPageIsSerialized
+        {
+            /**
+             * Setup
+             */
+            @BeforeEach
+            void setup()
+            {
+                Mockito.when(itemsService.isSerializedPage(Mockito.any(Pageable.class))).thenReturn(true);
+                Mockito.when(itemsService.getSerializedItems(Mockito.any(Pageable.class)))
+                        .thenReturn(new SerializedPage("{\"content\":[]}".getBytes(StandardCharsets.UTF_8), "\"abc\"", new long[0]));
+            }
+
+            /**
+             * Then should return the serialized bytes with their ETag.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return the serialized bytes with their ETag")
+            void thenShouldReturnSerializedBytes() throws Exception
+            {
+                mockMvc.perform(requestBuilder)
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON))
+                        .andExpect(MockMvcResultMatchers.content().string("{\"content\":[]}"))
+                        .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"abc\""));
+
+                Mockito.verify(itemsService, Mockito.never()).getItems(Mockito.any(Pageable.class));
+            }
+
+            /**
+             * Then should return 304 when the ETag matches.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return 304 when the ETag matches")
+            void thenShouldReturn304() throws Exception
+            {
+                mockMvc.perform(requestBuilder.header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+                        .andExpect(MockMvcResultMatchers.status().isNotModified());
+            }
+        }
+
+        /**
+         * When the page did not change since the ETag was sent
+         */
+        @Nested
+        @DisplayName("When the page did not change since the ETag was sent")
+        class WhenPageIsNotModified
+        {
+            /**
+             * Then should return 304 without loading the items.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return 304 without loading the items")
+            void thenShouldReturn304() throws Exception
+            {
+                ItemVersion itemVersion = Mockito.mock(ItemVersion.class);
+                Mockito.when(itemVersion.getId()).thenReturn(1L);
+                Mockito.when(itemVersion.getVersion()).thenReturn(2L);
+                Page<ItemVersion> versions = new PageImpl<>(Arrays.asList(itemVersion), PageRequest.of(0, 10), 1);
+                Mockito.when(itemsService.getItemVersions(Mockito.any(Pageable.class))).thenReturn(versions);
+                String eTag = ItemETags.ofPage(versions, ItemVersion::getId, ItemVersion::getVersion);
+
+                mockMvc.perform(requestBuilder.header(HttpHeaders.IF_NONE_MATCH, eTag))
+                        .andExpect(MockMvcResultMatchers.status().isNotModified())
+                        .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, eTag));
+
+                Mockito.verify(itemsService, Mockito.never()).getItems(Mockito.any(Pageable.class));
+            }
+        }
+
+        /**
+         * When the items are sorted
+         */
+        @Nested
+        @DisplayName("When the items are sorted")
+        class WhenSorted
+        {
+            /**
+             * Then should sort by the key then by id, and count the sort.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should sort by the key then by id, and count the sort")
+            void thenShouldSortByKeyThenById() throws Exception
+            {
+                ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+                Mockito.when(itemsService.getItems(pageable.capture())).thenReturn(new PageImpl<>(new ArrayList<>()));
+
+                mockMvc.perform(requestBuilder.param("sort", "name,desc"))
+                        .andExpect(MockMvcResultMatchers.status().isOk());
+
+                assertEquals(Sort.by(Sort.Direction.DESC, "name", "id"), pageable.getValue().getSort());
+                assertEquals(1.0, meterRegistry.get(ItemSortPolicy.SORT_METRIC)
+                        .tags("key", "name", "direction", "desc", "outcome", "accepted").counter().count());
+            }
+
+            /**
+             * Then should sort unsorted listings by id.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should sort unsorted listings by id")
+            void thenShouldSortUnsortedById() throws Exception
+            {
+                ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+                Mockito.when(itemsService.getItems(pageable.capture())).thenReturn(new PageImpl<>(new ArrayList<>()));
+
+                mockMvc.perform(requestBuilder).andExpect(MockMvcResultMatchers.status().isOk());
+
+                assertEquals(Sort.by("id"), pageable.getValue().getSort());
+            }
+
+            /**
+             * Then should reject a key without index.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should reject a key without index")
+            void thenShouldRejectKeyWithoutIndex() throws Exception
+            {
+                Mockito.when(messageSource.getMessage(Mockito.eq("itemscontroller.validationexception.sortnotallowed"),
+                        Mockito.any(), Mockito.any(Locale.class))).thenReturn("Sorting by description is not allowed");
+
+                mockMvc.perform(requestBuilder.param("sort", "description"))
+                        .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                        .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Sorting by description is not allowed"));
+
+                Mockito.verify(itemsService, Mockito.never()).getItems(Mockito.any(Pageable.class));
+                assertEquals(1.0, meterRegistry.get(ItemSortPolicy.SORT_METRIC)
+                        .tags("key", "other", "outcome", "rejected").counter().count());
+            }
+
+            /**
+             * Then should reject a sort on two keys.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should reject a sort on two keys")
+            void thenShouldRejectSortOnTwoKeys() throws Exception
+            {
+                Mockito.when(messageSource.getMessage(Mockito.eq("itemscontroller.validationexception.sortnotindexed"),
+                        Mockito.any(), Mockito.any(Locale.class))).thenReturn("Sort cannot be served by an index");
+
+                mockMvc.perform(requestBuilder.param("sort", "name,asc").param("sort", "createdTimestamp,asc"))
+                        .andExpect(MockMvcResultMatchers.status().isBadRequest());
+                mockMvc.perform(requestBuilder.param("sort", "name,asc").param("sort", "id,desc"))
+                        .andExpect(MockMvcResultMatchers.status().isBadRequest());
+
+                Mockito.verify(itemsService, Mockito.never()).getItems(Mockito.any(Pageable.class));
+            }
+        }
+
+        /**
+         * When the items are filtered
+         */
+        @Nested
+        @DisplayName("When the items are filtered")
+        class WhenFiltered
+        {
+            /**
+             * Then should pass the filter to the service, bypassing the serialized pages.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should pass the filter to the service, bypassing the serialized pages")
+            void thenShouldPassFilterToService() throws Exception
+            {
+                ItemDto itemDto = new ItemDto(7L, "wigit", null, null, 1L, null, null);
+                Page<ItemDto> page = new PageImpl<>(Arrays.asList(itemDto), PageRequest.of(0, 10), 1);
+                ArgumentCaptor<ItemFilter> filter = ArgumentCaptor.forClass(ItemFilter.class);
+                Mockito.when(itemsService.getItems(filter.capture(), Mockito.any(Pageable.class))).thenReturn(page);
+
+                MvcResult mvcResult = mockMvc.perform(requestBuilder
+                        .param("createdAfter", "2020-11-20T10:15:30Z").param("name", "wigit"))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andExpect(MockMvcResultMatchers.header().exists(HttpHeaders.ETAG))
+                        .andReturn();
+
+                JsonNode actualResult = objectMapper.readTree(mvcResult.getResponse().getContentAsString());
+                assertEquals(7L, actualResult.get("content").get(0).get("id").asLong());
+                assertEquals(Instant.parse("2020-11-20T10:15:30Z"), filter.getValue().getCreatedAfter());
+                assertEquals("wigit", filter.getValue().getName());
+                assertNull(filter.getValue().getUpdatedAfter());
+                Mockito.verify(itemsService, Mockito.never()).isSerializedPage(Mockito.any(Pageable.class));
+            }
+        }
+    }
+
+    /**
+     * Given call to retrieve a slice of items
+     */
+    @Nested
+    @DisplayName("Given call to retrieve a slice of items")
+    class GivenCallToRetrieveSliceOfItems
+    {
+        private MockHttpServletRequestBuilder requestBuilder;
+
+        /**
+         * Setup - executes before each test
+         */
+        @BeforeEach
+        void setup()
+        {
+            requestBuilder = MockMvcRequestBuilders
+                    .get("/api/" + API_VERSION + "/items").param("slice", "true")
+                    .accept(MediaType.APPLICATION_JSON);
+
+            List<ItemDto> itemDtoList = new ArrayList<>();
+            itemDtoList.add(new ItemDto());
+            Mockito.when(itemsService.getItemsSlice(Mockito.any(Pageable.class)))
+                    .thenReturn(new SliceImpl<>(itemDtoList, PageRequest.of(0, 1), true));
+        }
+
+        /**
+         * When the approximate count is known
+         */
+        @Nested
+        @DisplayName("When the approximate count is known")
+        class WhenApproximateCountIsKnown
+        {
+            /**
+             * Then should return the slice and the approximate total
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return the slice and the approximate total")
+            void thenShouldReturnSliceAndApproximateTotal() throws Exception
+            {
+                Mockito.when(itemsService.getApproximateItemCount()).thenReturn(OptionalLong.of(42L));
+
+                MvcResult mvcResult = mockMvc.perform(requestBuilder)
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andExpect(MockMvcResultMatchers.header().string(ItemsController.APPROXIMATE_TOTAL_COUNT_HEADER, "42"))
+                        .andDo(MockMvcResultHandlers.print()).andReturn();
+
+                JsonNode slice = objectMapper.readTree(mvcResult.getResponse().getContentAsString());
+                assertEquals(1, slice.get("content").size());
+                assertFalse(slice.get("last").asBoolean());
+                assertFalse(slice.has("totalElements"));
+                Mockito.verify(itemsService, Mockito.never()).getItems(Mockito.any(Pageable.class));
+            }
+        }
+
+        /**
+         * When the approximate count is not known yet
+         */
+        @Nested
+        @DisplayName("When the approximate count is not known yet")
+        class WhenApproximateCountIsNotKnown
+        {
+            /**
+             * Then should omit the approximate total
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should omit the approximate total")
+            void thenShouldOmitApproximateTotal() throws Exception
+            {
+                Mockito.when(itemsService.getApproximateItemCount()).thenReturn(OptionalLong.empty());
+
+                mockMvc.perform(requestBuilder)
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andExpect(MockMvcResultMatchers.header().doesNotExist(ItemsController.APPROXIMATE_TOTAL_COUNT_HEADER))
+                        .andDo(MockMvcResultHandlers.print()).andReturn();
+            }
+        }
+    }
+
+    /**
+     * Given call to retrieve items by cursor
+     */
+    @Nested
+    @DisplayName("Given call to retrieve items by cursor")
+    class GivenCallToRetrieveItemsByCursor
+    {
+        /**
+         * When call is valid
+         */
+        @Nested
+        @DisplayName("When call is valid")
+        class WhenCallIsValid
+        {
+            /**
+             * Setup
+             */
+            @BeforeEach
+            void setup()
+            {
+                ItemDto itemDto = new ItemDto();
+                itemDto.setId(7L);
+                List<ItemDto> itemDtoList = new ArrayList<>();
+                itemDtoList.add(itemDto);
+                CursorPageDto<ItemDto> page = new CursorPageDto<>(itemDtoList, 1, true, "Nw");
+
+                Mockito.when(itemsService.getItemsAfter(Mockito.anyString(), Mockito.anyInt())).thenReturn(page);
+            }
+
+            /**
+             * Then should return the page with the next cursor
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return the page with the next cursor")
+            void thenShouldReturnPageWithNextCursor() throws Exception
+            {
+                MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/" + API_VERSION + "/items").param("after", "").param("size", "1")
+                        .accept(MediaType.APPLICATION_JSON))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andDo(MockMvcResultHandlers.print()).andReturn();
+
+                CursorPageDto<ItemDto> actualResult = objectMapper.readValue(mvcResult.getResponse().getContentAsString(),
+                        new TypeReference<CursorPageDto<ItemDto>>()
+                        {
+                        });
+                assertEquals(1, actualResult.getContent().size());
+                assertEquals("Nw", actualResult.getNextCursor());
+                Mockito.verify(itemsService).getItemsAfter("", 1);
+            }
+        }
+    }
+
+    /**
+     * Given call to search items
+     */
+    @Nested
+    @DisplayName("Given call to search items")
+    class GivenCallToSearchItems
+    {
+        /**
+         * When call is valid
+         */
+        @Nested
+        @DisplayName("When call is valid")
+        class WhenCallIsValid
+        {
+            /**
+             * Setup
+             */
+            @BeforeEach
+            void setup()
+            {
+                ItemDto itemDto = new ItemDto();
+                itemDto.setId(7L);
+                Page<ItemDto> page = new PageImpl<>(Arrays.asList(itemDto), PageRequest.of(0, 10), 1);
+                Mockito.when(itemsService.searchItems(Mockito.eq("blue wigit"), Mockito.any(Pageable.class))).thenReturn(page);
+            }
+
+            /**
+             * Then should return the page of matching items
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return the page of matching items")
+            void thenShouldReturnPageOfMatchingItems() throws Exception
+            {
+                MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/" + API_VERSION + "/items:search").param("q", "blue wigit")
+                        .accept(MediaType.APPLICATION_JSON))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andDo(MockMvcResultHandlers.print()).andReturn();
+
+                JsonNode actualResult = objectMapper.readTree(mvcResult.getResponse().getContentAsString());
+                assertEquals(7L, actualResult.get("content").get(0).get("id").asLong());
+                assertEquals(1, actualResult.get("totalElements").asInt());
+            }
+        }
+    }
+
+    /**
+     * Given call to suggest item names
+     */
+    @Nested
+    @DisplayName("Given call to suggest item names")
+    class GivenCallToSuggestItemNames
+    {
+        /**
+         * When call is valid
+         */
+        @Nested
+        @DisplayName("When call is valid")
+        class WhenCallIsValid
+        {
+            /**
+             * Then should return the names, ten at most by default
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return the names, ten at most by default")
+            void thenShouldReturnNames() throws Exception
+            {
+                Mockito.when(itemsService.suggestItemNames("wig", 10)).thenReturn(Arrays.asList("wig", "Wigit"));
+
+                MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/" + API_VERSION + "/items:suggest").param("prefix", "wig")
+                        .accept(MediaType.APPLICATION_JSON))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andDo(MockMvcResultHandlers.print()).andReturn();
+
+                String[] actualResult = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), String[].class);
+                assertEquals(Arrays.asList("wig", "Wigit"), Arrays.asList(actualResult));
+            }
+        }
+    }
+
+    /**
+     * Given call to export items
+     */
+    @Nested
+    @DisplayName("Given call to export items")
+    class GivenCallToExportItems
+    {
+        /**
+         * When items exist
+         */
+        @Nested
+        @DisplayName("When items exist")
+        class WhenItemsExist
+        {
+            /**
+             * Setup
+             */
+            @BeforeEach
+            void setup()
+            {
+                Mockito.doAnswer(invocation -> {
+                    Consumer<ItemDto> consumer = invocation.getArgument(0);
+                    consumer.accept(new ItemDto(1L, "first", "the first item", null, 0L, null, null));
+                    consumer.accept(new ItemDto(2L, "second", "the second, with a comma", null, 3L, null, ItemStatus.PROCESSED));
+                    return null;
+                }).when(itemsService).exportItems(Mockito.any());
+            }
+
+            /**
+             * Then should stream one JSON item per line
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should stream one JSON item per line")
+            void thenShouldStreamOneJsonItemPerLine() throws Exception
+            {
+                MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/" + API_VERSION + "/items:export"))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andDo(MockMvcResultHandlers.print()).andReturn();
+
+                MockHttpServletResponse response = mvcResult.getResponse();
+                assertTrue(response.getContentType().startsWith(MediaType.APPLICATION_NDJSON_VALUE));
+                String[] lines = response.getContentAsString(StandardCharsets.UTF_8).split("\n");
+                assertEquals(2, lines.length);
+                assertEquals(1L, objectMapper.readValue(lines[0], ItemDto.class).getId());
+                ItemDto second = objectMapper.readValue(lines[1], ItemDto.class);
+                assertEquals(2L, second.getId());
+                assertEquals(3L, second.getVersion());
+            }
+
+            /**
+             * Then should stream CSV with a header line
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should stream CSV with a header line")
+            void thenShouldStreamCsvWithHeaderLine() throws Exception
+            {
+                MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/" + API_VERSION + "/items:export").param("format", "csv"))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andDo(MockMvcResultHandlers.print()).andReturn();
+
+                MockHttpServletResponse response = mvcResult.getResponse();
+                assertTrue(response.getContentType().startsWith("text/csv"));
+                assertEquals("attachment; filename=\"items.csv\"", response.getHeader(HttpHeaders.CONTENT_DISPOSITION));
+                String[] lines = response.getContentAsString(StandardCharsets.UTF_8).split("\n");
+                assertEquals(3, lines.length);
+                assertEquals("id,name,description,dateSubmitted,version,dateModified,status", lines[0]);
+                assertEquals("2,second,\"the second, with a comma\",,3,,PROCESSED", lines[2]);
+            }
+        }
+    }
+
+    /**
+     * Given call to import items
+     */
+    @Nested
+    @DisplayName("Given call to import items")
+    class GivenCallToImportItems
+    {
+        /**
+         * When the upload holds good and bad records
+         */
+        @Nested
+        @DisplayName("When the upload holds good and bad records")
+        class WhenUploadHoldsGoodAndBadRecords
+        {
+            /**
+             * Setup
+             */
+            @BeforeEach
+            void setup()
+            {
+                Mockito.doAnswer(invocation -> {
+                    Iterator<ItemImportLine> lines = invocation.getArgument(0);
+                    Consumer<ItemImportResultDto> results = invocation.getArgument(1);
+                    while (lines.hasNext())
+                    {
+                        ItemImportLine line = lines.next();
+                        results.accept(null == line.getItemDto()
+                                ? new ItemImportResultDto(line.getLineNumber(), ItemImportStatus.REJECTED, null, Arrays.asList(line.getError()))
+                                : new ItemImportResultDto(line.getLineNumber(), ItemImportStatus.ACCEPTED, line.getLineNumber() * 10, null));
+                    }
+                    return null;
+                }).when(itemsService).importItems(Mockito.any(), Mockito.any());
+            }
+
+            /**
+             * Then should report each NDJSON line
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should report each NDJSON line")
+            void thenShouldReportEachNdjsonLine() throws Exception
+            {
+                String body = "{\"name\":\"first\"}\n{\"name\":{\"x\":1}}\n\n{\"name\":\"third\"}\n";
+                MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/" + API_VERSION + "/items:import")
+                        .contentType(MediaType.APPLICATION_NDJSON).content(body))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andDo(MockMvcResultHandlers.print()).andReturn();
+
+                List<ItemImportResultDto> results = readResults(mvcResult);
+                assertEquals(3, results.size());
+                assertEquals(1L, results.get(0).getLine());
+                assertEquals(ItemImportStatus.ACCEPTED, results.get(0).getStatus());
+                assertEquals(2L, results.get(1).getLine());
+                assertEquals(ItemImportStatus.REJECTED, results.get(1).getStatus());
+                assertEquals(4L, results.get(2).getLine());
+                assertEquals(40L, results.get(2).getId());
+            }
+
+            /**
+             * Then should report each CSV record by the line it starts on
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should report each CSV record by the line it starts on")
+            void thenShouldReportEachCsvRecordByLine() throws Exception
+            {
+                String body = "name,description\nfirst,\"two\nlines\"\nsecond,d\n";
+                MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/" + API_VERSION + "/items:import")
+                        .contentType("text/csv").content(body))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andDo(MockMvcResultHandlers.print()).andReturn();
+
+                List<ItemImportResultDto> results = readResults(mvcResult);
+                assertEquals(2, results.size());
+                assertEquals(2L, results.get(0).getLine());
+                assertEquals(4L, results.get(1).getLine());
+            }
+
+            /**
+             * Then should stop at malformed input
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should stop at malformed input")
+            void thenShouldStopAtMalformedInput() throws Exception
+            {
+                String body = "{\"name\":\"first\"}\n{\"name\":\"broken\n{\"name\":\"third\"}\n";
+                MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/" + API_VERSION + "/items:import")
+                        .contentType(MediaType.APPLICATION_NDJSON).content(body))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andDo(MockMvcResultHandlers.print()).andReturn();
+
+                List<ItemImportResultDto> results = readResults(mvcResult);
+                assertEquals(2, results.size());
+                assertEquals(ItemImportStatus.REJECTED, results.get(1).getStatus());
+                assertEquals(2L, results.get(1).getLine());
+            }
+
+            /**
+             * Reads the results of an import.
+             *
+             * @param mvcResult the mvc result
+             * @return the results
+             * @throws Exception the exception
+             */
+            private List<ItemImportResultDto> readResults(MvcResult mvcResult) throws Exception
+            {
+                assertTrue(mvcResult.getResponse().getContentType().startsWith(MediaType.APPLICATION_NDJSON_VALUE));
+                return objectMapper.readerFor(ItemImportResultDto.class)
+                        .<ItemImportResultDto>readValues(mvcResult.getResponse().getContentAsString(StandardCharsets.UTF_8))
+                        .readAll();
+            }
+        }
     }
 
     /**
@@ -196,6 +850,7 @@ public class ItemsControllerTest
     		void setup() {
                 ItemDto itemDto = new ItemDto();
                 itemDto.setId(123L);
+                itemDto.setVersion(2L);
                 Optional<ItemDto> optionalItemDto = Optional.of(itemDto);
                 
                 // have the service call return the optional itemdto
@@ -234,8 +889,60 @@ public class ItemsControllerTest
                 mockMvc.perform(requestBuilder).andExpect(MockMvcResultMatchers.status().isOk())
                         .andDo(MockMvcResultHandlers.print()).andReturn();
     		}
+    		
+    		/**
+    		 * Then should return the ETag of the item version
+    		 * @throws Exception 
+    		 */
+    		@Test
+    		void thenShouldReturnETag() throws Exception {
+                mockMvc.perform(requestBuilder)
+                        .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"123-2\""));
+    		}
+    		
+    		/**
+    		 * Then should return 200 with the new ETag when the sent one is stale
+    		 * @throws Exception 
+    		 */
+    		@Test
+    		void thenShouldReturn200WhenETagIsStale() throws Exception {
+                ItemVersion itemVersion = Mockito.mock(ItemVersion.class);
+                Mockito.when(itemVersion.getVersion()).thenReturn(2L);
+                Mockito.when(itemsService.getItemVersion(123L)).thenReturn(Optional.of(itemVersion));
+
+                mockMvc.perform(requestBuilder.header(HttpHeaders.IF_NONE_MATCH, "\"123-1\""))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"123-2\""));
+    		}
     	}
     	
+        /**
+         * When the item did not change since the ETag was sent
+         */
+        @Nested
+        @DisplayName("When the item did not change since the ETag was sent")
+        class WhenItemIsNotModified
+        {
+            /**
+             * Then should return 304 without loading the item.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return 304 without loading the item")
+            void thenShouldReturn304() throws Exception
+            {
+                ItemVersion itemVersion = Mockito.mock(ItemVersion.class);
+                Mockito.when(itemVersion.getVersion()).thenReturn(2L);
+                Mockito.when(itemsService.getItemVersion(123L)).thenReturn(Optional.of(itemVersion));
+
+                mockMvc.perform(requestBuilder.header(HttpHeaders.IF_NONE_MATCH, "\"123-2\""))
+                        .andExpect(MockMvcResultMatchers.status().isNotModified());
+
+                Mockito.verify(itemsService, Mockito.never()).getItemById(Mockito.anyLong());
+            }
+        }
+    	
         /**
          * When Item is not found
          */
@@ -311,6 +1018,33 @@ public class ItemsControllerTest
         }
     }
     
+    /**
+     * Given call to delete by ids
+     */
+    @Nested
+    @DisplayName("Given call to delete by ids")
+    class GivenCallToDeleteByIds
+    {
+        /**
+         * Then should delete the items
+         *
+         * @throws Exception the exception
+         */
+        @Test
+        @DisplayName("Then should delete the items")
+        void thenShouldDeleteItems() throws Exception
+        {
+            Mockito.when(itemsService.deleteItemsByIds(Mockito.anyList())).thenReturn(Arrays.asList(1L, 3L));
+
+            mockMvc.perform(MockMvcRequestBuilders.delete("/api/" + API_VERSION + "/items").param("ids", "1,2,3")
+                    .characterEncoding("utf-8").accept(MediaType.APPLICATION_JSON))
+                    .andExpect(MockMvcResultMatchers.status().isNoContent())
+                    .andDo(MockMvcResultHandlers.print()).andReturn();
+
+            Mockito.verify(itemsService).deleteItemsByIds(Arrays.asList(1L, 2L, 3L));
+        }
+    }
+
     /**
      * Given POST to create an item
      */
@@ -503,8 +1237,217 @@ public class ItemsControllerTest
                 assertEquals(expectedContent, content);
             }
         }
+
+        /**
+         * When the ingest queue is full
+         */
+        @Nested
+        @DisplayName("When the ingest queue is full")
+        class WhenIngestQueueIsFull
+        {
+            /**
+             * Then should return 503 Service Unavailable with Retry-After.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return 503 Service Unavailable with Retry-After")
+            void thenShouldReturn503WithRetryAfter() throws Exception
+            {
+                ItemDto itemDto = new ItemDto();
+                itemDto.setName("foo bar");
+                Mockito.when(itemsService.saveItem(Mockito.any(ItemDto.class)))
+                        .thenThrow(new ItemIngestQueueFullException("full", 3));
+
+                mockMvc.perform(MockMvcRequestBuilders.post("/api/" + API_VERSION + "/items")
+                        .content(objectMapper.writeValueAsString(itemDto)).contentType(MediaType.APPLICATION_JSON))
+                        .andExpect(MockMvcResultMatchers.status().isServiceUnavailable())
+                        .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.RETRY_AFTER, "3"));
+            }
+        }
     }
     
+    /**
+     * Given POST to create a batch of items
+     */
+    @Nested
+    @DisplayName("Given POST to create a batch of items")
+    class GivenPostToCreateBatchOfItems
+    {
+        /**
+         * When the items are valid
+         */
+        @Nested
+        @DisplayName("When the items are valid")
+        class WhenItemsAreValid
+        {
+            /**
+             * Then should return 202 Accepted with a confirmation per item.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return 202 Accepted with a confirmation per item")
+            void thenShouldReturn202WithConfirmationPerItem() throws Exception
+            {
+                ItemDto itemDto = new ItemDto();
+                itemDto.setName("foo bar");
+                ConfirmationDto first = new ConfirmationDto();
+                first.setId(1L);
+                ConfirmationDto second = new ConfirmationDto();
+                second.setId(2L);
+                Mockito.when(itemsService.saveItems(Mockito.anyList())).thenReturn(Arrays.asList(first, second));
+
+                MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.post("/api/" + API_VERSION + "/items:batch")
+                        .characterEncoding("utf-8").contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Arrays.asList(itemDto, itemDto))))
+                        .andExpect(MockMvcResultMatchers.status().isAccepted())
+                        .andDo(MockMvcResultHandlers.print()).andReturn();
+
+                List<ConfirmationDto> confirmationDtos = objectMapper.readValue(mvcResult.getResponse().getContentAsString(),
+                        new TypeReference<List<ConfirmationDto>>()
+                        {
+                        });
+                assertEquals(2, confirmationDtos.size());
+                assertEquals(2L, confirmationDtos.get(1).getId());
+            }
+        }
+    }
+
+    /**
+     * Given PUT to edit an item
+     */
+    @Nested
+    @DisplayName("Given PUT to edit an item")
+    class GivenPutToEditItem
+    {
+        ItemDto itemDto;
+        ConfirmationDto confirmationDto;
+
+        /**
+         * Setup.
+         */
+        @BeforeEach
+        void setup()
+        {
+            itemDto = new ItemDto();
+            itemDto.setId(7L);
+            itemDto.setName("foo bar");
+            confirmationDto = new ConfirmationDto();
+            confirmationDto.setId(7L);
+        }
+
+        /**
+         * When an If-Match header is sent
+         */
+        @Nested
+        @DisplayName("When an If-Match header is sent")
+        class WhenIfMatchIsSent
+        {
+            /**
+             * Then should update at the expected version and return the new ETag.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should update at the expected version and return the new ETag")
+            void thenShouldReturnNewETag() throws Exception
+            {
+                Mockito.when(itemsService.editItem(Mockito.any(ItemDto.class), Mockito.eq(3L))).thenReturn(confirmationDto);
+
+                mockMvc.perform(MockMvcRequestBuilders.put("/api/" + API_VERSION + "/items/7")
+                        .header(HttpHeaders.IF_MATCH, "\"7-3\"")
+                        .characterEncoding("utf-8").contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(itemDto)))
+                        .andExpect(MockMvcResultMatchers.status().isAccepted())
+                        .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"7-4\""));
+            }
+
+            /**
+             * Then should return 412 when the item is at another version.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return 412 when the item is at another version")
+            void thenShouldReturn412() throws Exception
+            {
+                Mockito.when(itemsService.editItem(Mockito.any(ItemDto.class), Mockito.eq(3L)))
+                        .thenThrow(new OptimisticLockingFailureException("stale"));
+
+                mockMvc.perform(MockMvcRequestBuilders.put("/api/" + API_VERSION + "/items/7")
+                        .header(HttpHeaders.IF_MATCH, "\"7-3\"")
+                        .characterEncoding("utf-8").contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(itemDto)))
+                        .andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+            }
+
+            /**
+             * Then should return 412 without updating when the tag is for another item.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return 412 without updating when the tag is for another item")
+            void thenShouldReturn412ForForeignTag() throws Exception
+            {
+                mockMvc.perform(MockMvcRequestBuilders.put("/api/" + API_VERSION + "/items/7")
+                        .header(HttpHeaders.IF_MATCH, "W/\"8-3\"")
+                        .characterEncoding("utf-8").contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(itemDto)))
+                        .andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+
+                Mockito.verify(itemsService, Mockito.never()).editItem(Mockito.any(ItemDto.class), Mockito.any());
+            }
+
+            /**
+             * Then should return 412 rather than 404 when the header is * and the item does not exist.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return 412 when the header is * and the item does not exist")
+            void thenShouldReturn412ForAnyWhenMissing() throws Exception
+            {
+                Mockito.when(itemsService.editItem(Mockito.any(ItemDto.class), Mockito.isNull()))
+                        .thenThrow(new EntityNotFoundException("missing"));
+
+                mockMvc.perform(MockMvcRequestBuilders.put("/api/" + API_VERSION + "/items/7")
+                        .header(HttpHeaders.IF_MATCH, "*")
+                        .characterEncoding("utf-8").contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(itemDto)))
+                        .andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+            }
+        }
+
+        /**
+         * When no If-Match header is sent
+         */
+        @Nested
+        @DisplayName("When no If-Match header is sent")
+        class WhenNoIfMatchIsSent
+        {
+            /**
+             * Then should return 404 when the item does not exist.
+             *
+             * @throws Exception the exception
+             */
+            @Test
+            @DisplayName("Then should return 404 when the item does not exist")
+            void thenShouldReturn404() throws Exception
+            {
+                Mockito.when(itemsService.editItem(Mockito.any(ItemDto.class), Mockito.isNull()))
+                        .thenThrow(new EntityNotFoundException("missing"));
+
+                mockMvc.perform(MockMvcRequestBuilders.put("/api/" + API_VERSION + "/items/7")
+                        .characterEncoding("utf-8").contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(itemDto)))
+                        .andExpect(MockMvcResultMatchers.status().isNotFound())
+                        .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.ETAG));
+            }
+        }
+    }
+
     /**
      * Verify api error.
      *
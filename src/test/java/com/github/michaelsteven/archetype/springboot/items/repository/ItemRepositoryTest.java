@@ -0,0 +1,258 @@
+package com.github.michaelsteven.archetype.springboot.items.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemFilter;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemStatus;
+
+/**
+ * The ItemRepository query plan test class
+ *
+ * Runs the filtered listings against H2, records the SQL Hibernate generated
+ * for them, and checks with EXPLAIN that both the page query and the count
+ * query use the index of the filtered column, and that the submitted items
+ * are claimed with the status index.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.github.michaelsteven.archetype.springboot.items.repository.ItemRepositoryTest$SqlRecorder")
+@DisplayName("ItemRepository Query Plan Tests")
+public class ItemRepositoryTest
+{
+    private static final Instant START = Instant.parse("2020-11-20T00:00:00Z");
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * Setup, an item per hour with ten distinct names, the last ten submitted
+     * and the others processed, inserted in the test transaction with plain
+     * JDBC as the auditing would overwrite the timestamps.
+     *
+     * @throws SQLException the SQL exception
+     */
+    @BeforeEach
+    void setup() throws SQLException
+    {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try (PreparedStatement statement = connection.prepareStatement(
+                "insert into items (id, name, description, version, created_ts, updated_ts, status) values (?, ?, ?, 0, ?, ?, ?)"))
+        {
+            for (int i = 0; i < 1000; i++)
+            {
+                statement.setLong(1, i + 1);
+                statement.setString(2, "item " + (i % 10));
+                statement.setString(3, "description " + i);
+                statement.setTimestamp(4, Timestamp.from(START.plusSeconds(3600L * i)));
+                statement.setTimestamp(5, Timestamp.from(START.plusSeconds(3600L * i + 60)));
+                statement.setString(6, (i < 990 ? ItemStatus.PROCESSED : ItemStatus.SUBMITTED).name());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        SqlRecorder.STATEMENTS.clear();
+    }
+
+    /**
+     * Then should find the items created in a range with the created index.
+     *
+     * @throws SQLException the SQL exception
+     */
+    @Test
+    @DisplayName("Then should find the items created in a range with the created index")
+    void thenShouldUseCreatedIndex() throws SQLException
+    {
+        Instant after = START.plusSeconds(3600L * 990);
+        Instant before = START.plusSeconds(3600L * 995);
+        Page<ItemEntity> page = find(new ItemFilter(after, before, null, null));
+
+        assertEquals(4, page.getTotalElements());
+        assertUseIndex("ITEMS_CREATED_TS_IDX", Timestamp.from(after), Timestamp.from(before));
+    }
+
+    /**
+     * Then should find the items updated since an instant with the updated index.
+     *
+     * @throws SQLException the SQL exception
+     */
+    @Test
+    @DisplayName("Then should find the items updated since an instant with the updated index")
+    void thenShouldUseUpdatedIndex() throws SQLException
+    {
+        Instant after = START.plusSeconds(3600L * 980);
+        Page<ItemEntity> page = find(new ItemFilter(null, null, after, null));
+
+        assertEquals(20, page.getTotalElements());
+        assertUseIndex("ITEMS_UPDATED_TS_IDX", Timestamp.from(after));
+    }
+
+    /**
+     * Then should find the items by name with the name index.
+     *
+     * @throws SQLException the SQL exception
+     */
+    @Test
+    @DisplayName("Then should find the items by name with the name index")
+    void thenShouldUseNameIndex() throws SQLException
+    {
+        Page<ItemEntity> page = find(new ItemFilter(null, null, null, "item 7"));
+
+        assertEquals(100, page.getTotalElements());
+        assertUseIndex("ITEMS_NAME_IDX", "item 7");
+    }
+
+    /**
+     * Then should lock the oldest submitted items with the status index.
+     *
+     * @throws SQLException the SQL exception
+     */
+    @Test
+    @DisplayName("Then should lock the oldest submitted items with the status index")
+    void thenShouldLockOldestSubmittedItems() throws SQLException
+    {
+        List<ItemEntity> items = itemRepository.findAndLockByStatusOrderByCreatedTimestampAsc(ItemStatus.SUBMITTED,
+                PageRequest.of(0, 4));
+
+        assertEquals(Arrays.asList(991L, 992L, 993L, 994L), items.stream().map(ItemEntity::getId).collect(Collectors.toList()));
+        assertEquals(1, SqlRecorder.STATEMENTS.size());
+        String sql = SqlRecorder.STATEMENTS.get(0);
+        assertTrue(sql.toLowerCase(Locale.ROOT).endsWith(" for update"), sql);
+        String plan = explain(DataSourceUtils.getConnection(dataSource), sql, ItemStatus.SUBMITTED.name());
+        assertTrue(plan.toUpperCase(Locale.ROOT).contains("ITEMS_STATUS_CREATED_TS_IDX"), () -> "not using the status index: " + plan);
+        assertEquals(10, itemRepository.countByStatus(ItemStatus.SUBMITTED));
+        assertEquals(START.plusSeconds(3600L * 990), itemRepository.findOldestCreatedTimestampByStatus(ItemStatus.SUBMITTED).get());
+    }
+
+    /**
+     * Then should insert an item accepted earlier with the time it was accepted, not the time of the insert.
+     *
+     * @throws SQLException the SQL exception
+     */
+    @Test
+    @DisplayName("Then should keep the accepted timestamp as the created timestamp")
+    void thenShouldKeepAcceptedTimestamp() throws SQLException
+    {
+        ItemEntity itemEntity = new ItemEntity();
+        itemEntity.setId(5000L);
+        itemEntity.setName("accepted");
+        itemEntity.setAcceptedTimestamp(START);
+
+        itemRepository.saveAndFlush(itemEntity);
+
+        try (PreparedStatement statement = DataSourceUtils.getConnection(dataSource)
+                .prepareStatement("select created_ts from items where id = ?"))
+        {
+            statement.setLong(1, 5000L);
+            try (ResultSet resultSet = statement.executeQuery())
+            {
+                assertTrue(resultSet.next());
+                assertEquals(START, resultSet.getTimestamp(1).toInstant());
+            }
+        }
+    }
+
+        /**
+     * Finds the second page of two items meeting a filter, a page that is
+     * neither the first nor the last one so that the count query is issued.
+     *
+     * @param filter the filter
+     * @return the page
+     */
+    private Page<ItemEntity> find(ItemFilter filter)
+    {
+        return itemRepository.findAll(ItemSpecifications.matching(filter), PageRequest.of(1, 2));
+    }
+
+    /**
+     * Asserts the page and count queries recorded use an index.
+     *
+     * @param index the index name
+     * @param parameters the parameters of the where clause
+     * @throws SQLException the SQL exception
+     */
+    private void assertUseIndex(String index, Object... parameters) throws SQLException
+    {
+        assertEquals(2, SqlRecorder.STATEMENTS.size());
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        for (String sql : SqlRecorder.STATEMENTS)
+        {
+            String plan = explain(connection, sql, parameters);
+            assertTrue(plan.toUpperCase(Locale.ROOT).contains(index), () -> "not using " + index + ": " + plan);
+        }
+    }
+
+    /**
+     * Explains a statement.
+     *
+     * @param connection the connection
+     * @param sql the SQL
+     * @param parameters the parameters of the where clause, any other parameter is a row limit or offset
+     * @return the plan
+     * @throws SQLException the SQL exception
+     */
+    private static String explain(Connection connection, String sql, Object... parameters) throws SQLException
+    {
+        try (PreparedStatement statement = connection.prepareStatement("explain " + sql))
+        {
+            int count = statement.getParameterMetaData().getParameterCount();
+            for (int i = 0; i < count; i++)
+            {
+                statement.setObject(i + 1, i < parameters.length ? parameters[i] : 2);
+            }
+            try (ResultSet resultSet = statement.executeQuery())
+            {
+                resultSet.next();
+                return resultSet.getString(1);
+            }
+        }
+    }
+
+
+    /**
+     * Records the statements selecting from the items table.
+     */
+    public static class SqlRecorder implements StatementInspector
+    {
+        private static final long serialVersionUID = 1L;
+
+        static final List<String> STATEMENTS = new ArrayList<>();
+
+        @Override
+        public String inspect(String sql)
+        {
+            if (sql.toLowerCase(Locale.ROOT).startsWith("select") && sql.contains(" items "))
+            {
+                STATEMENTS.add(sql);
+            }
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.github.michaelsteven.archetype.springboot.items.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ConfirmationDto;
+import com.github.michaelsteven.archetype.springboot.items.model.CursorPageDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+import com.github.michaelsteven.archetype.springboot.items.service.ItemsService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The ShardedItemRepository test class
+ *
+ * Runs the application against three in-memory H2 shards, the schema being
+ * generated on each of them.
+ */
+@SpringBootTest(properties = {
+        "api.shards.urls=" + ShardedItemRepositoryTest.SHARD_0_URL + "," + ShardedItemRepositoryTest.SHARD_1_URL + ","
+                + ShardedItemRepositoryTest.SHARD_2_URL,
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false",
+        "spring.cache.type=none" })
+@DisplayName("ShardedItemRepository Tests")
+public class ShardedItemRepositoryTest
+{
+    static final String SHARD_0_URL = "jdbc:h2:mem:shard-0;DB_CLOSE_DELAY=-1";
+    static final String SHARD_1_URL = "jdbc:h2:mem:shard-1;DB_CLOSE_DELAY=-1";
+    static final String SHARD_2_URL = "jdbc:h2:mem:shard-2;DB_CLOSE_DELAY=-1";
+    private static final int SHARD_COUNT = 3;
+    private static final int ITEM_COUNT = 60;
+
+    @Autowired
+    private ItemsService itemsService;
+
+    @Autowired
+    private ItemShardRebalancer itemShardRebalancer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private List<JdbcTemplate> shards;
+
+    /**
+     * Setup, empties the shards.
+     */
+    @BeforeEach
+    void setup()
+    {
+        shards = Arrays.asList(SHARD_0_URL, SHARD_1_URL, SHARD_2_URL).stream()
+                .map(url -> new JdbcTemplate(new DriverManagerDataSource(url, "sa", "")))
+                .collect(Collectors.toList());
+        shards.forEach(shard -> shard.update("delete from items"));
+    }
+
+    /**
+     * Then should save each item on the shard of its id.
+     */
+    @Test
+    @DisplayName("Then should save each item on the shard of its id")
+    void thenShouldSaveItemsOnTheirShard()
+    {
+        List<Long> ids = saveItems();
+
+        for (int shard = 0; shard < SHARD_COUNT; shard++)
+        {
+            List<Long> shardIds = shards.get(shard).queryForList("select id from items", Long.class);
+            assertFalse(shardIds.isEmpty());
+            for (long id : shardIds)
+            {
+                assertEquals(shard, ItemShardRouter.shardOf(id, SHARD_COUNT));
+            }
+        }
+        assertEquals(ids.size(), itemShardRebalancer.countByShard().values().stream().mapToLong(Long::longValue).sum());
+        assertNotNull(meterRegistry.find(ItemShardRouter.SHARD_METRIC).tag("shard", "2").timer());
+    }
+
+    /**
+     * Then should insert a single item, saved in a transaction of the service, on the shard of its id.
+     */
+    @Test
+    @DisplayName("Then should save a single item on the shard of its id")
+    void thenShouldSaveSingleItemOnItsShard()
+    {
+        for (int i = 0; i < 6; i++)
+        {
+            long id = itemsService.saveItem(new ItemDto(null, "single " + i, "description " + i, null, null, null, null)).getId();
+
+            int shard = ItemShardRouter.shardOf(id, SHARD_COUNT);
+            assertEquals(1, shards.get(shard).queryForObject("select count(*) from items where id = ?", Integer.class, id));
+            assertTrue(itemsService.getItemById(id).isPresent());
+        }
+    }
+
+    /**
+     * Then should get, edit and delete an item on its shard.
+     */
+    @Test
+    @DisplayName("Then should get, edit and delete an item on its shard")
+    void thenShouldGetEditAndDeleteItem()
+    {
+        List<Long> ids = saveItems();
+        for (long id : ids)
+        {
+            assertTrue(itemsService.getItemById(id).isPresent());
+        }
+
+        long id = ids.get(0);
+        ItemDto itemDto = itemsService.getItemById(id).get();
+        itemDto.setName("edited");
+        itemsService.editItem(itemDto, null);
+        assertEquals("edited", itemsService.getItemById(id).get().getName());
+
+        itemsService.deleteItemById(id);
+        assertFalse(itemsService.getItemById(id).isPresent());
+        assertEquals(ids.size() - 1, itemsService.getItems(PageRequest.of(0, 10)).getTotalElements());
+    }
+
+    /**
+     * Then should merge the pages of the shards in sort order.
+     */
+    @Test
+    @DisplayName("Then should merge the pages of the shards in sort order")
+    void thenShouldMergePagesInSortOrder()
+    {
+        List<Long> ids = saveItems();
+        List<ItemDto> expected = ids.stream()
+                .map(id -> itemsService.getItemById(id).get())
+                .sorted(Comparator.comparing(ItemDto::getName).reversed().thenComparing(ItemDto::getId))
+                .collect(Collectors.toList());
+
+        Page<ItemDto> page = itemsService.getItems(PageRequest.of(2, 7, Sort.by(Sort.Direction.DESC, "name")));
+
+        assertEquals(ITEM_COUNT, page.getTotalElements());
+        assertEquals(expected.subList(14, 21).stream().map(ItemDto::getId).collect(Collectors.toList()),
+                page.getContent().stream().map(ItemDto::getId).collect(Collectors.toList()));
+    }
+
+    /**
+     * Then should page through and export the items of every shard in id order.
+     */
+    @Test
+    @DisplayName("Then should page through and export the items in id order")
+    void thenShouldPageThroughItemsInIdOrder()
+    {
+        List<Long> ids = saveItems();
+        ids.sort(Comparator.naturalOrder());
+
+        List<Long> paged = new ArrayList<>();
+        String cursor = null;
+        do
+        {
+            CursorPageDto<ItemDto> page = itemsService.getItemsAfter(cursor, 25);
+            page.getContent().forEach(item -> paged.add(item.getId()));
+            cursor = page.getNextCursor();
+        }
+        while (null != cursor);
+        assertEquals(ids, paged);
+
+        List<Long> exported = new ArrayList<>();
+        itemsService.exportItems(item -> exported.add(item.getId()));
+        assertEquals(ids, exported);
+    }
+
+    /**
+     * Then should move the misplaced items to their shard.
+     */
+    @Test
+    @DisplayName("Then should move the misplaced items to their shard")
+    void thenShouldRebalanceMisplacedItems()
+    {
+        for (long id = 1; id <= ITEM_COUNT; id++)
+        {
+            shards.get(0).update("insert into items (id, name, description, version, created_ts, updated_ts) "
+                    + "values (?, 'moved', 'moved', 0, current_timestamp, current_timestamp)", id);
+        }
+        long misplaced = IntStream.rangeClosed(1, ITEM_COUNT)
+                .filter(id -> ItemShardRouter.shardOf(id, SHARD_COUNT) != 0)
+                .count();
+
+        Map<Integer, Long> moved = itemShardRebalancer.rebalance();
+
+        assertEquals(misplaced, moved.get(0).longValue());
+        assertEquals(0L, itemShardRebalancer.rebalance().values().stream().mapToLong(Long::longValue).sum());
+        for (long id = 1; id <= ITEM_COUNT; id++)
+        {
+            assertEquals("moved", itemsService.getItemById(id).get().getName());
+        }
+        assertEquals(ITEM_COUNT, itemShardRebalancer.countByShard().values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    /**
+     * Saves items, named so that several of them share a name.
+     *
+     * @return the ids of the items
+     */
+    private List<Long> saveItems()
+    {
+        List<ItemDto> itemDtos = IntStream.range(0, ITEM_COUNT)
+                .mapToObj(i -> new ItemDto(null, "item " + (i % 10), "description " + i, null, null, null, null))
+                .collect(Collectors.toList());
+        return itemsService.saveItems(itemDtos).stream()
+                .map(ConfirmationDto::getId)
+                .collect(Collectors.toList());
+    }
+}
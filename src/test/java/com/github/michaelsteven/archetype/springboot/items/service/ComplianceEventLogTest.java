@@ -0,0 +1,390 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEventFilter;
+
+/**
+ * The ComplianceEventLog Unit test class
+ */
+@DisplayName("ComplianceEventLog Unit Tests")
+public class ComplianceEventLogTest
+{
+    private static final Instant START = Instant.parse("2020-11-01T00:00:00.123456789Z");
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Then should read back every field of the events appended, including the missing ones.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    @DisplayName("Then should read back the events appended")
+    void thenShouldReadBackEvents() throws IOException
+    {
+        ComplianceEvent withoutItem = event(0L);
+        withoutItem.setItemId(null);
+        withoutItem.setAction(null);
+        withoutItem.setEventSource(null);
+        withoutItem.setActor(null);
+        withoutItem.setCount(42L);
+
+        ComplianceEventLog complianceEventLog = newLog(0L);
+        complianceEventLog.append(Arrays.asList(event(1L), withoutItem));
+
+        List<ComplianceEvent> complianceEvents = replay(complianceEventLog, null, null);
+        assertEquals(Arrays.asList(event(1L), withoutItem), complianceEvents);
+        assertNull(complianceEvents.get(1).getItemId());
+        complianceEventLog.close();
+    }
+
+    /**
+     * Then should roll the segments over once full, and read them all back, from another log of the directory too.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    @DisplayName("Then should roll the segments over once full")
+    void thenShouldRollSegmentsOver() throws IOException
+    {
+        ComplianceEventLog complianceEventLog = newLog(0L);
+        complianceEventLog.append(events(0, 5000));
+
+        assertEquals(itemIds(0, 5000), itemIds(replay(complianceEventLog, null, null)));
+        complianceEventLog.close();
+        long segments = segmentCount();
+        assertTrue(segments > 1);
+
+        ComplianceEventLog reopened = newLog(0L);
+        reopened.append(events(5000, 5001));
+        assertEquals(itemIds(0, 5001), itemIds(replay(reopened, null, null)));
+        assertEquals(segments + 1, segmentCount());
+        reopened.close();
+    }
+
+    /**
+     * Then should roll the segments over once open for the roll interval.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Test
+    @DisplayName("Then should roll the segments over on time")
+    void thenShouldRollSegmentsOverOnTime() throws IOException, InterruptedException
+    {
+        ComplianceEventLog complianceEventLog = newLog(1L);
+        complianceEventLog.append(events(0, 1));
+        Thread.sleep(5L);
+        complianceEventLog.append(events(1, 2));
+
+        assertEquals(2, segmentCount());
+        assertEquals(itemIds(0, 2), itemIds(replay(complianceEventLog, null, null)));
+        complianceEventLog.close();
+    }
+
+    /**
+     * Then should only read back the events of the time window, the start inclusive and the end exclusive.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    @DisplayName("Then should read back the events of a time window")
+    void thenShouldReadBackTimeWindow() throws IOException
+    {
+        ComplianceEventLog complianceEventLog = newLog(0L);
+        complianceEventLog.append(events(0, 5000));
+
+        assertEquals(itemIds(1000, 3500),
+                itemIds(replay(complianceEventLog, START.plusSeconds(1000), START.plusSeconds(3500))));
+        assertEquals(itemIds(4990, 5000), itemIds(replay(complianceEventLog, START.plusSeconds(4990), null)));
+        assertEquals(itemIds(0, 0), itemIds(replay(complianceEventLog, null, START)));
+        complianceEventLog.close();
+    }
+
+    /**
+     * Then should find the events of an item through its postings, across segments, and resume after a position.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    @DisplayName("Then should query the events of an item")
+    void thenShouldQueryEventsOfItem() throws IOException
+    {
+        ComplianceEventLog complianceEventLog = newLog(0L);
+        List<ComplianceEvent> appended = events(0, 5000);
+        appended.forEach(event -> event.setItemId(event.getItemId() % 100));
+        complianceEventLog.append(appended);
+        ComplianceEventFilter filter = new ComplianceEventFilter(null, null, 42L, null, null);
+
+        ComplianceEventLog.Query query = complianceEventLog.query(filter, -1L);
+        List<ComplianceEvent> firstPage = take(query, 30);
+        List<ComplianceEvent> rest = take(complianceEventLog.query(filter, query.getPosition()), Integer.MAX_VALUE);
+
+        assertEquals(30, firstPage.size());
+        assertEquals(20, rest.size());
+        assertTrue(firstPage.stream().allMatch(event -> 42L == event.getItemId()));
+        assertEquals(START.plusSeconds(42L), firstPage.get(0).getTimestamp());
+        assertEquals(START.plusSeconds(4942L), rest.get(19).getTimestamp());
+        assertFalse(complianceEventLog.query(new ComplianceEventFilter(null, null, 100L, null, null), -1L).hasNext());
+        complianceEventLog.close();
+    }
+
+    /**
+     * Then should scan only the time window, applying the other criteria to the events read.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    @DisplayName("Then should query the events of a time window")
+    void thenShouldQueryTimeWindow() throws IOException
+    {
+        ComplianceEventLog complianceEventLog = newLog(0L);
+        List<ComplianceEvent> appended = events(0, 5000);
+        appended.stream().filter(event -> 0L == event.getItemId() % 2).forEach(event -> event.setAction(ComplianceAction.update));
+        complianceEventLog.append(appended);
+        ComplianceEventFilter filter = new ComplianceEventFilter(null, ComplianceAction.update, null,
+                START.plusSeconds(1000), START.plusSeconds(3500));
+
+        ComplianceEventLog.Query query = complianceEventLog.query(filter, -1L);
+        List<ComplianceEvent> firstPage = take(query, 100);
+        List<ComplianceEvent> rest = take(complianceEventLog.query(filter, query.getPosition()), Integer.MAX_VALUE);
+
+        List<Long> expected = LongStream.range(1000, 3500).filter(id -> 0L == id % 2).boxed().collect(Collectors.toList());
+        List<ComplianceEvent> all = new ArrayList<>(firstPage);
+        all.addAll(rest);
+        assertEquals(expected, itemIds(all));
+        filter.setResource("another");
+        assertFalse(complianceEventLog.query(filter, -1L).hasNext());
+        complianceEventLog.close();
+    }
+
+    /**
+     * Then should find the events of a resource and an action through their postings, without a time window.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    @DisplayName("Then should query the events of a resource and an action")
+    void thenShouldQueryEventsOfResourceAndAction() throws IOException
+    {
+        ComplianceEventLog complianceEventLog = newLog(0L);
+        List<ComplianceEvent> appended = events(0, 5000);
+        appended.stream().filter(event -> 0L == event.getItemId() % 500).forEach(event -> event.setResource("another"));
+        appended.stream().filter(event -> 0L == event.getItemId() % 1000).forEach(event -> event.setAction(ComplianceAction.delete));
+        complianceEventLog.append(appended);
+        complianceEventLog.append(events(5000, 5001));
+
+        ComplianceEventLog.Query query = complianceEventLog.query(new ComplianceEventFilter("another", null, null, null, null), -1L);
+        List<ComplianceEvent> firstPage = take(query, 4);
+        List<ComplianceEvent> rest = take(complianceEventLog.query(new ComplianceEventFilter("another", null, null, null, null),
+                query.getPosition()), Integer.MAX_VALUE);
+
+        assertEquals(Arrays.asList(0L, 500L, 1000L, 1500L), itemIds(firstPage));
+        assertEquals(Arrays.asList(2000L, 2500L, 3000L, 3500L, 4000L, 4500L), itemIds(rest));
+        assertEquals(Arrays.asList(0L, 1000L, 2000L, 3000L, 4000L), itemIds(take(complianceEventLog.query(
+                new ComplianceEventFilter(null, ComplianceAction.delete, null, null, null), -1L), Integer.MAX_VALUE)));
+        complianceEventLog.close();
+    }
+
+    /**
+     * Then should write the index of each segment rolled over next to it, and rebuild a missing one when opened again.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    @DisplayName("Then should write the indexes, and rebuild them on open")
+    void thenShouldRebuildIndexesOnOpen() throws IOException
+    {
+        ComplianceEventLog complianceEventLog = newLog(0L);
+        complianceEventLog.append(events(0, 3000));
+        complianceEventLog.close();
+        List<Path> indexes = files(".idx");
+        assertEquals(segmentCount(), indexes.size());
+        Files.delete(indexes.get(0));
+        Files.delete(indexes.get(indexes.size() - 1));
+
+        ComplianceEventLog reopened = newLog(0L);
+        assertEquals(indexes.size(), files(".idx").size());
+        reopened.append(events(3000, 3001));
+
+        assertEquals(itemIds(2999, 3001),
+                itemIds(take(reopened.query(new ComplianceEventFilter(null, null, null, START.plusSeconds(2999), null), -1L), 10)));
+        assertEquals(itemIds(1234, 1235),
+                itemIds(take(reopened.query(new ComplianceEventFilter(null, null, 1234L, null, null), -1L), 10)));
+        reopened.close();
+    }
+
+    /**
+     * Then should delete the segments whose last event is older than the retention, and their index, as segments roll over.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    @DisplayName("Then should delete the expired segments")
+    void thenShouldDeleteExpiredSegments() throws IOException
+    {
+        ComplianceEventLog complianceEventLog = new ComplianceEventLog(directory, ComplianceEventLog.MIN_SEGMENT_BYTES, 0L, 0L,
+                60000L, 86400000L);
+        complianceEventLog.append(events(0, 5000));
+        List<ComplianceEvent> recent = events(5000, 5001);
+        recent.get(0).setTimestamp(Instant.now());
+        complianceEventLog.close();
+
+        ComplianceEventLog reopened = new ComplianceEventLog(directory, ComplianceEventLog.MIN_SEGMENT_BYTES, 0L, 0L,
+                60000L, 86400000L);
+        reopened.append(recent);
+
+        assertEquals(1, segmentCount());
+        assertEquals(0, files(".idx").size());
+        assertEquals(Arrays.asList(5000L), itemIds(replay(reopened, null, null)));
+        assertEquals(Arrays.asList(5000L), itemIds(take(reopened.query(new ComplianceEventFilter(), -1L), Integer.MAX_VALUE)));
+        reopened.close();
+    }
+
+    /**
+     * Creates a log of small segments, forcing every batch to disk.
+     *
+     * @param rollIntervalMillis the roll interval
+     * @return the log
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private ComplianceEventLog newLog(long rollIntervalMillis) throws IOException
+    {
+        return new ComplianceEventLog(directory, ComplianceEventLog.MIN_SEGMENT_BYTES, rollIntervalMillis, 0L, 60000L, 0L);
+    }
+
+    /**
+     * Gets the number of segment files.
+     *
+     * @return the number of segments
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private long segmentCount() throws IOException
+    {
+        return files(".log").size();
+    }
+
+    /**
+     * Gets the files of the log directory with a suffix.
+     *
+     * @param suffix the suffix
+     * @return the paths, sorted
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private List<Path> files(String suffix) throws IOException
+    {
+        try (Stream<Path> paths = Files.list(directory))
+        {
+            return paths.filter(path -> path.getFileName().toString().endsWith(suffix)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Reads back the events of a time window.
+     *
+     * @param complianceEventLog the log
+     * @param from the start of the window
+     * @param to the end of the window
+     * @return the events
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static List<ComplianceEvent> replay(ComplianceEventLog complianceEventLog, Instant from, Instant to)
+            throws IOException
+    {
+        List<ComplianceEvent> complianceEvents = new ArrayList<>();
+        complianceEventLog.replay(from, to, complianceEvents::add);
+        return complianceEvents;
+    }
+
+    /**
+     * Takes the next events of a query.
+     *
+     * @param query the query
+     * @param limit the number of events taken at most
+     * @return the events
+     */
+    private static List<ComplianceEvent> take(ComplianceEventLog.Query query, int limit)
+    {
+        List<ComplianceEvent> complianceEvents = new ArrayList<>();
+        while (complianceEvents.size() < limit && query.hasNext())
+        {
+            complianceEvents.add(query.next());
+        }
+        return complianceEvents;
+    }
+
+    /**
+     * Gets the item ids of events.
+     *
+     * @param complianceEvents the events
+     * @return the item ids
+     */
+    private static List<Long> itemIds(List<ComplianceEvent> complianceEvents)
+    {
+        return complianceEvents.stream().map(ComplianceEvent::getItemId).collect(Collectors.toList());
+    }
+
+    /**
+     * Gets a range of item ids.
+     *
+     * @param from the first id
+     * @param to the id past the last
+     * @return the item ids
+     */
+    private static List<Long> itemIds(long from, long to)
+    {
+        return LongStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Creates events a second apart.
+     *
+     * @param from the first item id
+     * @param to the item id past the last
+     * @return the events
+     */
+    private static List<ComplianceEvent> events(long from, long to)
+    {
+        return LongStream.range(from, to).mapToObj(ComplianceEventLogTest::event).collect(Collectors.toList());
+    }
+
+    /**
+     * Creates an event, recorded as many seconds after the start as its item id.
+     *
+     * @param itemId the item id
+     * @return the event
+     */
+    private static ComplianceEvent event(long itemId)
+    {
+        ComplianceEvent complianceEvent = new ComplianceEvent();
+        complianceEvent.setAction(ComplianceAction.read);
+        complianceEvent.setResource("com.github.michaelsteven.archetype.springboot.items.service.ItemsServiceImpl");
+        complianceEvent.setEventSource("com.github.michaelsteven.archetype.springboot.items.service.ItemsServiceImpl.getItemById");
+        complianceEvent.setItemId(itemId);
+        complianceEvent.setActor("unknown");
+        complianceEvent.setTimestamp(START.plusSeconds(itemId));
+        return complianceEvent;
+    }
+}
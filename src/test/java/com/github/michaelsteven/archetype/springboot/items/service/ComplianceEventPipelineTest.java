@@ -0,0 +1,214 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+import com.github.michaelsteven.archetype.springboot.items.service.ComplianceEventPipeline.OverflowPolicy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The ComplianceEventPipeline Unit test class
+ */
+@DisplayName("ComplianceEventPipeline Unit Tests")
+public class ComplianceEventPipelineTest
+{
+    private MeterRegistry meterRegistry;
+    private List<List<ComplianceEvent>> batches;
+    private ComplianceEventPipeline pipeline;
+
+    /**
+     * Setup, the sink collects the batches it is given.
+     */
+    @BeforeEach
+    void setup()
+    {
+        meterRegistry = new SimpleMeterRegistry();
+        batches = new ArrayList<>();
+    }
+
+    /**
+     * Tear down, stops the writer.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @AfterEach
+    void tearDown() throws InterruptedException
+    {
+        pipeline.destroy();
+    }
+
+    /**
+     * Then should write the events published before the start, in batches, in order.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @Test
+    @DisplayName("Then should write the events in batches, in order")
+    void thenShouldWriteEventsInBatches() throws InterruptedException
+    {
+        pipeline = newPipeline(16, OverflowPolicy.drop, 4);
+        for (long i = 0; i < 10; i++)
+        {
+            assertTrue(pipeline.publish(event(i)));
+        }
+        assertEquals(10.0, meterRegistry.get(ComplianceEventPipeline.QUEUED_METRIC).gauge().value());
+
+        pipeline.start();
+        pipeline.destroy();
+
+        assertTrue(batches.stream().allMatch(batch -> batch.size() <= 4));
+        assertEquals(itemIds(0, 10), written());
+        assertEquals(10.0, meterRegistry.counter(ComplianceEventPipeline.WRITTEN_METRIC).count());
+    }
+
+    /**
+     * Then should drop the events and count them while the buffer is full,
+     * warning of the first one.
+     *
+     * @param output the captured output
+     */
+    @Test
+    @ExtendWith(OutputCaptureExtension.class)
+    @DisplayName("Then should drop the events while the buffer is full")
+    void thenShouldDropEventsWhenFull(CapturedOutput output)
+    {
+        pipeline = newPipeline(2, OverflowPolicy.drop, 4);
+
+        assertTrue(pipeline.publish(event(0L)));
+        assertTrue(pipeline.publish(event(1L)));
+        assertFalse(pipeline.publish(event(2L)));
+        assertFalse(pipeline.publish(event(3L)));
+
+        assertEquals(2.0, meterRegistry.counter(ComplianceEventPipeline.DROPPED_METRIC, "reason", "full").count());
+        assertEquals(1, output.getOut().split("Discarding compliance events", -1).length - 1);
+    }
+
+    /**
+     * Then should keep one event in every sample once the buffer is half full.
+     */
+    @Test
+    @DisplayName("Then should sample the events once the buffer is half full")
+    void thenShouldSampleEventsWhenHalfFull()
+    {
+        pipeline = newPipeline(8, OverflowPolicy.sample, 4);
+
+        for (long i = 0; i < 14; i++)
+        {
+            pipeline.publish(event(i));
+        }
+
+        assertEquals(7.0, meterRegistry.get(ComplianceEventPipeline.QUEUED_METRIC).gauge().value());
+        assertEquals(7.0, meterRegistry.counter(ComplianceEventPipeline.DROPPED_METRIC, "reason", "sampled").count());
+    }
+
+    /**
+     * Then should make the callers wait for room rather than drop, while running.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @Test
+    @DisplayName("Then should block the callers while the buffer is full")
+    void thenShouldBlockWhenFull() throws InterruptedException
+    {
+        pipeline = newPipeline(2, OverflowPolicy.block, 1);
+        pipeline.start();
+
+        for (long i = 0; i < 1000; i++)
+        {
+            assertTrue(pipeline.publish(event(i)));
+        }
+        pipeline.destroy();
+
+        assertEquals(itemIds(0, 1000), written());
+        assertEquals(0.0, meterRegistry.counter(ComplianceEventPipeline.DROPPED_METRIC, "reason", "full").count());
+    }
+
+    /**
+     * Then should write the events published while the application starts, the writer running once the pipeline is
+     * initialized.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @Test
+    @DisplayName("Then should block rather than drop once initialized")
+    void thenShouldBlockOnceInitialized() throws InterruptedException
+    {
+        pipeline = newPipeline(2, OverflowPolicy.block, 1);
+        pipeline.afterPropertiesSet();
+
+        for (long i = 0; i < 100; i++)
+        {
+            assertTrue(pipeline.publish(event(i)));
+        }
+        pipeline.destroy();
+
+        assertEquals(itemIds(0, 100), written());
+        assertEquals(0.0, meterRegistry.counter(ComplianceEventPipeline.DROPPED_METRIC, "reason", "full").count());
+    }
+
+    /**
+     * Creates a pipeline writing to the collected batches.
+     *
+     * @param capacity the capacity
+     * @param overflowPolicy the overflow policy
+     * @param batchSize the batch size
+     * @return the pipeline
+     */
+    private ComplianceEventPipeline newPipeline(int capacity, OverflowPolicy overflowPolicy, int batchSize)
+    {
+        return new ComplianceEventPipeline(events -> batches.add(new ArrayList<>(events)), meterRegistry,
+                capacity, overflowPolicy, 4, batchSize, 1);
+    }
+
+    /**
+     * Gets the item ids of the events written, in order.
+     *
+     * @return the item ids
+     */
+    private List<Long> written()
+    {
+        return batches.stream().flatMap(List::stream).map(ComplianceEvent::getItemId).collect(Collectors.toList());
+    }
+
+    /**
+     * Gets a range of item ids.
+     *
+     * @param from the first id
+     * @param to the id past the last
+     * @return the item ids
+     */
+    private static List<Long> itemIds(long from, long to)
+    {
+        return LongStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Creates an event.
+     *
+     * @param itemId the item id
+     * @return the event
+     */
+    private static ComplianceEvent event(long itemId)
+    {
+        ComplianceEvent complianceEvent = new ComplianceEvent();
+        complianceEvent.setItemId(itemId);
+        return complianceEvent;
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+
+/**
+ * The ComplianceEventRingBuffer Unit test class
+ */
+@DisplayName("ComplianceEventRingBuffer Unit Tests")
+public class ComplianceEventRingBufferTest
+{
+    /**
+     * Then should hand the events back in order, refusing them while full.
+     */
+    @Test
+    @DisplayName("Then should hand the events back in order, refusing them while full")
+    void thenShouldHandEventsBackInOrder()
+    {
+        ComplianceEventRingBuffer ringBuffer = new ComplianceEventRingBuffer(3);
+        assertEquals(4, ringBuffer.getCapacity());
+
+        for (long i = 0; i < 4; i++)
+        {
+            assertTrue(ringBuffer.offer(event(i)));
+        }
+        assertFalse(ringBuffer.offer(event(4L)));
+        assertEquals(4, ringBuffer.size());
+
+        assertEquals(0L, ringBuffer.poll().getItemId());
+        assertTrue(ringBuffer.offer(event(4L)));
+        List<ComplianceEvent> drained = new ArrayList<>();
+        assertEquals(4, ringBuffer.drainTo(drained, 10));
+        assertEquals(1L, drained.get(0).getItemId());
+        assertEquals(4L, drained.get(3).getItemId());
+        assertNull(ringBuffer.poll());
+        assertEquals(0, ringBuffer.size());
+    }
+
+    /**
+     * Then should deliver every event of concurrent producers once, in the order of each producer.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @Test
+    @DisplayName("Then should deliver every event of concurrent producers once")
+    void thenShouldDeliverConcurrentEventsOnce() throws InterruptedException
+    {
+        int producers = 4;
+        int eventsPerProducer = 100000;
+        ComplianceEventRingBuffer ringBuffer = new ComplianceEventRingBuffer(64);
+        ExecutorService executorService = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++)
+        {
+            long producer = p;
+            executorService.execute(() -> {
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                for (long i = 0; i < eventsPerProducer; i++)
+                {
+                    ComplianceEvent complianceEvent = event(producer * eventsPerProducer + i);
+                    while (!ringBuffer.offer(complianceEvent))
+                    {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        long[] next = new long[producers];
+        int received = 0;
+        while (received < producers * eventsPerProducer)
+        {
+            ComplianceEvent complianceEvent = ringBuffer.poll();
+            if (null == complianceEvent)
+            {
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) (complianceEvent.getItemId() / eventsPerProducer);
+            assertEquals(next[producer]++, complianceEvent.getItemId() % eventsPerProducer);
+            received++;
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+        assertNull(ringBuffer.poll());
+    }
+
+    /**
+     * Creates an event.
+     *
+     * @param itemId the item id
+     * @return the event
+     */
+    private static ComplianceEvent event(long itemId)
+    {
+        ComplianceEvent complianceEvent = new ComplianceEvent();
+        complianceEvent.setItemId(itemId);
+        return complianceEvent;
+    }
+}
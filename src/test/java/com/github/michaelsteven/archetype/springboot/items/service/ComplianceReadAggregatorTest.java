@@ -0,0 +1,150 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+import com.github.michaelsteven.archetype.springboot.items.service.ComplianceReadAggregator.ReadPolicy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The ComplianceReadAggregator Unit test class
+ */
+@ExtendWith(MockitoExtension.class)
+@WebAppConfiguration
+@DisplayName("ComplianceReadAggregator Unit Tests")
+public class ComplianceReadAggregatorTest
+{
+    @Mock
+    private ComplianceEventPipeline complianceEventPipeline;
+
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Setup.
+     */
+    @BeforeEach
+    void setup()
+    {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    /**
+     * Then should publish one read event in sample-one-in, standing for that many reads.
+     */
+    @Test
+    @DisplayName("Then should publish a sample of the read events")
+    void thenShouldPublishSampleOfReads()
+    {
+        ComplianceReadAggregator complianceReadAggregator = newAggregator(ReadPolicy.sample, 10);
+
+        for (long i = 0; i < 10000; i++)
+        {
+            complianceReadAggregator.record(read(i));
+        }
+
+        List<ComplianceEvent> published = published();
+        assertTrue(published.size() > 500 && published.size() < 1500, "published " + published.size());
+        assertTrue(published.stream().allMatch(event -> 10L == event.getCount()));
+    }
+
+    /**
+     * Then should count the reads by item until flushed, then publish one event per item with its count.
+     */
+    @Test
+    @DisplayName("Then should roll the read events up into counters")
+    void thenShouldRollReadsUp()
+    {
+        ComplianceReadAggregator complianceReadAggregator = newAggregator(ReadPolicy.rollup, 10);
+
+        for (long i = 0; i < 30; i++)
+        {
+            complianceReadAggregator.record(read(i % 3));
+        }
+        Mockito.verifyNoInteractions(complianceEventPipeline);
+        assertEquals(3.0, meterRegistry.get(ComplianceReadAggregator.ROLLUP_KEYS_METRIC).gauge().value());
+
+        complianceReadAggregator.flush();
+
+        Map<Long, Long> counts = published().stream()
+                .collect(Collectors.toMap(ComplianceEvent::getItemId, ComplianceEvent::getCount));
+        assertEquals(3, counts.size());
+        assertTrue(counts.values().stream().allMatch(count -> 10L == count));
+        assertEquals(0.0, meterRegistry.get(ComplianceReadAggregator.ROLLUP_KEYS_METRIC).gauge().value());
+    }
+
+    /**
+     * Then should publish the reads of further items as is while the counters are at their limit.
+     */
+    @Test
+    @DisplayName("Then should publish the reads as is once the counters are full")
+    void thenShouldPublishReadsWhenCountersFull()
+    {
+        ComplianceReadAggregator complianceReadAggregator = newAggregator(ReadPolicy.rollup, 2);
+
+        complianceReadAggregator.record(read(1L));
+        complianceReadAggregator.record(read(2L));
+        complianceReadAggregator.record(read(1L));
+        complianceReadAggregator.record(read(3L));
+
+        List<ComplianceEvent> published = published();
+        assertEquals(1, published.size());
+        assertEquals(3L, published.get(0).getItemId());
+    }
+
+    /**
+     * Creates an aggregator.
+     *
+     * @param readPolicy the read policy
+     * @param limit the sample-one-in and the counters held at most
+     * @return the aggregator
+     */
+    private ComplianceReadAggregator newAggregator(ReadPolicy readPolicy, int limit)
+    {
+        return new ComplianceReadAggregator(complianceEventPipeline, meterRegistry, readPolicy, limit, limit);
+    }
+
+    /**
+     * Gets the events published to the pipeline.
+     *
+     * @return the events
+     */
+    private List<ComplianceEvent> published()
+    {
+        ArgumentCaptor<ComplianceEvent> events = ArgumentCaptor.forClass(ComplianceEvent.class);
+        Mockito.verify(complianceEventPipeline, Mockito.atLeastOnce()).publish(events.capture());
+        return events.getAllValues();
+    }
+
+    /**
+     * Creates a read event.
+     *
+     * @param itemId the item id
+     * @return the event
+     */
+    private static ComplianceEvent read(long itemId)
+    {
+        ComplianceEvent complianceEvent = new ComplianceEvent();
+        complianceEvent.setAction(ComplianceAction.read);
+        complianceEvent.setResource("ItemsServiceImpl");
+        complianceEvent.setItemId(itemId);
+        return complianceEvent;
+    }
+}
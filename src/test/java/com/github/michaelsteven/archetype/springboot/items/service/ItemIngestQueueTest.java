@@ -0,0 +1,346 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.PersistenceException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.MessageSource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemIdAllocator;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The ItemIngestQueue Unit test class
+ */
+@ExtendWith(MockitoExtension.class)
+@WebAppConfiguration
+@DisplayName("ItemIngestQueue Unit Tests")
+public class ItemIngestQueueTest
+{
+    private static final long TIMEOUT_MILLIS = 5000L;
+
+    @Mock
+    private ItemRepository itemRepository;
+
+    @Mock
+    private ItemIdAllocator itemIdAllocator;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @TempDir
+    Path journalDirectory;
+
+    private MeterRegistry meterRegistry;
+    private List<ItemIngestQueue> queues;
+
+    /**
+     * Setup, ids are handed out in sequence.
+     */
+    @BeforeEach
+    void setup()
+    {
+        AtomicLong nextId = new AtomicLong();
+        Mockito.lenient().when(itemIdAllocator.next()).thenAnswer(invocation -> nextId.incrementAndGet());
+        meterRegistry = new SimpleMeterRegistry();
+        queues = new ArrayList<>();
+    }
+
+    /**
+     * Tear down, stops the queues.
+     *
+     * @throws Exception the exception
+     */
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        for (ItemIngestQueue queue : queues)
+        {
+            queue.destroy();
+        }
+    }
+
+    /**
+     * Then should insert the queued items in one batch, and publish their creation.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    @DisplayName("Then should insert the queued items in one batch")
+    void thenShouldInsertQueuedItemsInOneBatch() throws Exception
+    {
+        ItemIngestQueue queue = newQueue(100);
+        for (int i = 0; i < 20; i++)
+        {
+            ItemEntity itemEntity = queue.submit(item("item " + i));
+            assertEquals(i + 1, itemEntity.getId());
+        }
+
+        queue.start();
+
+        assertEquals(Collections.singletonList(ids(1, 20)), savedBatches(1));
+        ArgumentCaptor<ItemChangeEvent> event = ArgumentCaptor.forClass(ItemChangeEvent.class);
+        Mockito.verify(applicationEventPublisher, Mockito.timeout(TIMEOUT_MILLIS)).publishEvent(event.capture());
+        assertEquals(ids(1, 20), event.getValue().getItemIds());
+    }
+
+    /**
+     * Then should refuse items once the queue is full.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    @DisplayName("Then should refuse items once the queue is full")
+    void thenShouldRefuseItemsWhenFull() throws Exception
+    {
+        ItemIngestQueue queue = newQueue(2);
+        queue.submit(item("first"));
+        queue.submit(item("second"));
+
+        ItemIngestQueueFullException exception = assertThrows(ItemIngestQueueFullException.class,
+                () -> queue.submit(item("third")));
+
+        assertEquals(1, exception.getRetryAfterSeconds());
+        assertEquals(1.0, meterRegistry.counter(ItemIngestQueue.REJECTED_METRIC).count());
+    }
+
+    /**
+     * Then should insert the items left in the journal, except those already inserted.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    @DisplayName("Then should insert the items left in the journal")
+    void thenShouldInsertItemsLeftInJournal() throws Exception
+    {
+        ItemIngestQueue stopped = newQueue(100);
+        stopped.submit(item("first"));
+        stopped.submit(item("second"));
+        Instant submitted = stopped.submit(item("third")).getCreatedTimestamp();
+        stopped.destroy();
+        when(itemRepository.findExistingIds(ids(1, 3))).thenReturn(Collections.singletonList(1L));
+
+        ItemIngestQueue recovered = newQueue(100);
+        recovered.start();
+
+        assertEquals(Collections.singletonList(ids(2, 3)), savedBatches(1));
+        assertEquals(submitted, savedItems(1).get(0).get(1).getAcceptedTimestamp());
+        recovered.destroy();
+        try (Stream<Path> files = Files.list(journalDirectory))
+        {
+            assertEquals(0, files.count());
+        }
+    }
+
+    /**
+     * Then should journal the items submitted concurrently, forcing the journal to disk, and insert them all when recovered.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    @DisplayName("Then should journal concurrent submits with fsync")
+    void thenShouldJournalConcurrentSubmits() throws Exception
+    {
+        ItemIngestQueue stopped = newQueue(1000, true);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> submits = new ArrayList<>();
+        for (int i = 0; i < 400; i++)
+        {
+            String name = "item " + i;
+            submits.add(executorService.submit(() -> stopped.submit(item(name))));
+        }
+        for (Future<?> submit : submits)
+        {
+            submit.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        executorService.shutdown();
+        stopped.destroy();
+
+        ItemIngestQueue recovered = newQueue(1000);
+        recovered.start();
+
+        List<Long> saved = savedBatches(1).get(0);
+        saved.sort(Comparator.naturalOrder());
+        assertEquals(ids(1, 400), saved);
+    }
+
+    /**
+     * Then should retry a batch while the database fails.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    @DisplayName("Then should retry a batch while the database fails")
+    void thenShouldRetryWhileDatabaseFails() throws Exception
+    {
+        when(itemRepository.saveAll(Mockito.anyIterable()))
+                .thenThrow(new PersistenceException("unavailable"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        ItemIngestQueue queue = newQueue(100);
+        queue.submit(item("first"));
+        queue.submit(item("second"));
+
+        queue.start();
+
+        assertEquals(Arrays.asList(ids(1, 2), ids(1, 2)), savedBatches(2));
+    }
+
+    /**
+     * Then should drop an item the database refuses, and insert the others.
+     *
+     * @throws Exception the exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    @DisplayName("Then should drop an item the database refuses")
+    void thenShouldDropRefusedItem() throws Exception
+    {
+        when(itemRepository.saveAll(Mockito.anyIterable())).thenAnswer(invocation -> {
+            for (ItemEntity itemEntity : (Iterable<ItemEntity>) invocation.getArgument(0))
+            {
+                if (2L == itemEntity.getId())
+                {
+                    throw new PersistenceException(new DataIntegrityViolationException("refused"));
+                }
+            }
+            return invocation.getArgument(0);
+        });
+        ItemIngestQueue queue = newQueue(3);
+        queue.submit(item("first"));
+        queue.submit(item("second"));
+        queue.submit(item("third"));
+
+        queue.start();
+
+        assertEquals(Arrays.asList(ids(1, 3), ids(1, 1), ids(2, 2), ids(3, 3)), savedBatches(4));
+        Mockito.verify(applicationEventPublisher, Mockito.timeout(TIMEOUT_MILLIS).times(2)).publishEvent(Mockito.any(ItemChangeEvent.class));
+        queue.submit(item("fourth"));
+    }
+
+    /**
+     * Creates an enabled queue journaling to the temporary directory.
+     *
+     * @param capacity the capacity
+     * @return the queue
+     * @throws Exception the exception
+     */
+    private ItemIngestQueue newQueue(int capacity) throws Exception
+    {
+        return newQueue(capacity, false);
+    }
+
+    /**
+     * Creates an enabled queue journaling to the temporary directory.
+     *
+     * @param capacity the capacity
+     * @param fsync whether the journal appends are forced to disk
+     * @return the queue
+     * @throws Exception the exception
+     */
+    private ItemIngestQueue newQueue(int capacity, boolean fsync) throws Exception
+    {
+        ItemIngestQueue queue = new ItemIngestQueue(itemRepository, itemIdAllocator, Mockito.mock(PlatformTransactionManager.class),
+                applicationEventPublisher, Mockito.mock(MessageSource.class), meterRegistry, new ObjectMapper(),
+                true, capacity, 500, 10, 1, journalDirectory.toString(), fsync);
+        queues.add(queue);
+        return queue;
+    }
+
+    /**
+     * Gets the ids of the batches saved, waiting for them.
+     *
+     * @param count the number of batches expected
+     * @return the ids of each batch
+     */
+    private List<List<Long>> savedBatches(int count)
+    {
+        return savedItems(count).stream()
+                .map(batch -> batch.stream().map(ItemEntity::getId).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the items of the batches saved, waiting for them.
+     *
+     * @param count the number of batches expected
+     * @return the items of each batch
+     */
+    @SuppressWarnings("unchecked")
+    private List<List<ItemEntity>> savedItems(int count)
+    {
+        ArgumentCaptor<Iterable<ItemEntity>> batches = ArgumentCaptor.forClass(Iterable.class);
+        Mockito.verify(itemRepository, Mockito.timeout(TIMEOUT_MILLIS).times(count)).saveAll(batches.capture());
+        List<List<ItemEntity>> items = new ArrayList<>();
+        for (Iterable<ItemEntity> batch : batches.getAllValues())
+        {
+            List<ItemEntity> batchItems = new ArrayList<>();
+            batch.forEach(batchItems::add);
+            items.add(batchItems);
+        }
+        return items;
+    }
+
+    /**
+     * Creates a new item.
+     *
+     * @param name the name
+     * @return the item
+     */
+    private static ItemEntity item(String name)
+    {
+        ItemEntity itemEntity = new ItemEntity();
+        itemEntity.setName(name);
+        itemEntity.setDescription(name);
+        return itemEntity;
+    }
+
+    /**
+     * Gets a range of ids.
+     *
+     * @param first the first id
+     * @param last the last id
+     * @return the ids
+     */
+    private static List<Long> ids(long first, long last)
+    {
+        return Stream.iterate(first, id -> id + 1).limit(last - first + 1).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,194 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Heap footprint of a trie of a million item names, and latency of the
+ * suggestions for prefixes typed from them. Names are two words drawn from a
+ * Zipf distributed vocabulary of words spelt out of syllables, so that they
+ * share prefixes the way real names do.
+ *
+ * Not part of the regular build, run it with:
+ * mvn test -Dtest=ItemNameTrieBenchmarkTest -Dbenchmark=true [-Dbenchmark.items=1000000] [-Dbenchmark.suggestions=100000]
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@DisplayName("ItemNameTrie benchmark")
+public class ItemNameTrieBenchmarkTest
+{
+    private static final int VOCABULARY_SIZE = 50000;
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final String[] SYLLABLES = { "ba", "ko", "ri", "te", "mu", "sa", "lo", "ne", "gi", "du",
+            "pe", "fa", "zo", "hi", "wu", "ca", "je", "vo", "ty", "qu" };
+    private static final int MAX_NAME_LENGTH = 25;
+
+    /**
+     * Adds the names, measuring the heap they take, then suggests ten names
+     * for prefixes of one to five characters of the names, and prints the
+     * latency percentiles.
+     */
+    @Test
+    @DisplayName("Measure footprint and suggestion latency over a million names")
+    void measureFootprintAndLatency()
+    {
+        int count = Integer.getInteger("benchmark.items", 1000000);
+        int suggestions = Integer.getInteger("benchmark.suggestions", 100000);
+        Random random = new Random(42);
+        double[] cumulative = zipfCumulative();
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            names[i] = name(cumulative, random);
+        }
+
+        long before = usedHeap();
+        ItemNameTrie itemNameTrie = new ItemNameTrie();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++)
+        {
+            itemNameTrie.put(i + 1, names[i]);
+        }
+        long elapsed = System.nanoTime() - start;
+        long footprint = usedHeap() - before;
+        System.out.printf("added %d names in %.1f s, %d distinct%n", count, elapsed / 1e9, distinct(names));
+        System.out.printf("heap: %.1f MB, %.0f bytes per name, %.1f MB per million names%n",
+                footprint / 1e6, (double) footprint / count, footprint / 1e6 * 1000000 / count);
+
+        // warm up, then measure
+        suggest(itemNameTrie, names, suggestions, random);
+        long[] latencies = suggest(itemNameTrie, names, suggestions, random);
+        print("suggest", latencies);
+        assertFalse(itemNameTrie.suggest(names[0].substring(0, 1), 10).isEmpty());
+    }
+
+    /**
+     * Suggests names for prefixes of random names, timing each suggestion.
+     *
+     * @param itemNameTrie the item name trie
+     * @param names the names
+     * @param suggestions the number of suggestions
+     * @param random the random
+     * @return the sorted suggestion latencies, in nanoseconds
+     */
+    private static long[] suggest(ItemNameTrie itemNameTrie, String[] names, int suggestions, Random random)
+    {
+        long[] latencies = new long[suggestions];
+        for (int i = 0; i < suggestions; i++)
+        {
+            String name = names[random.nextInt(names.length)];
+            String prefix = name.substring(0, Math.min(name.length(), 1 + random.nextInt(5)));
+            long start = System.nanoTime();
+            itemNameTrie.suggest(prefix, 10);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Draws a name of two words from the vocabulary.
+     *
+     * @param cumulative the cumulative word distribution
+     * @param random the random
+     * @return the name
+     */
+    private static String name(double[] cumulative, Random random)
+    {
+        String name = word(cumulative, random) + " " + word(cumulative, random);
+        return name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name;
+    }
+
+    /**
+     * Draws a word from the vocabulary, spelt out of syllables.
+     *
+     * @param cumulative the cumulative word distribution
+     * @param random the random
+     * @return the word
+     */
+    private static String word(double[] cumulative, Random random)
+    {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[cumulative.length - 1]);
+        int rank = index < 0 ? -index - 1 : index;
+        StringBuilder builder = new StringBuilder();
+        do
+        {
+            builder.append(SYLLABLES[rank % SYLLABLES.length]);
+            rank /= SYLLABLES.length;
+        }
+        while (rank > 0);
+        return builder.toString();
+    }
+
+    /**
+     * Builds the cumulative Zipf distribution over the word ranks.
+     *
+     * @return the cumulative weights
+     */
+    private static double[] zipfCumulative()
+    {
+        double[] cumulative = new double[VOCABULARY_SIZE];
+        double sum = 0;
+        for (int rank = 0; rank < VOCABULARY_SIZE; rank++)
+        {
+            sum += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulative[rank] = sum;
+        }
+        return cumulative;
+    }
+
+    /**
+     * Counts the distinct names.
+     *
+     * @param names the names
+     * @return the number of distinct names
+     */
+    private static long distinct(String[] names)
+    {
+        return Arrays.stream(names).distinct().count();
+    }
+
+    /**
+     * Gets the heap used once garbage collected.
+     *
+     * @return the used heap, in bytes
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Gets a percentile of sorted latencies.
+     *
+     * @param sortedLatencies the sorted latencies
+     * @param percentile the percentile, between 0 and 1
+     * @return the latency at the percentile
+     */
+    private static long percentile(long[] sortedLatencies, double percentile)
+    {
+        return sortedLatencies[(int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile * sortedLatencies.length) - 1)];
+    }
+
+    /**
+     * Prints the latency percentiles.
+     *
+     * @param label the label
+     * @param sortedLatencies the sorted latencies
+     */
+    private static void print(String label, long[] sortedLatencies)
+    {
+        System.out.printf("%s: p50 %7.1f us, p99 %8.1f us, p99.9 %8.1f us%n", label,
+                percentile(sortedLatencies, 0.5) / 1e3, percentile(sortedLatencies, 0.99) / 1e3, percentile(sortedLatencies, 0.999) / 1e3);
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The ItemNameTrie Unit test class
+ */
+@DisplayName("ItemNameTrie Unit Tests")
+public class ItemNameTrieTest
+{
+    private ItemNameTrie itemNameTrie;
+
+    /**
+     * Setup.
+     */
+    @BeforeEach
+    void setup()
+    {
+        itemNameTrie = new ItemNameTrie();
+        itemNameTrie.put(1L, "Wigit");
+        itemNameTrie.put(2L, "wig");
+        itemNameTrie.put(3L, "Wigwam");
+        itemNameTrie.put(4L, "sprocket");
+        itemNameTrie.put(5L, "WIGIT");
+    }
+
+    /**
+     * Given a prefix
+     */
+    @Nested
+    @DisplayName("Given a prefix")
+    class GivenPrefix
+    {
+        /**
+         * Then should suggest the distinct names in alphabetical order ignoring case.
+         */
+        @Test
+        @DisplayName("Then should suggest the distinct names in alphabetical order ignoring case")
+        void thenShouldSuggestDistinctNamesInOrder()
+        {
+            assertEquals(Arrays.asList("wig", "Wigit", "Wigwam"), itemNameTrie.suggest("WI", 10));
+            assertEquals(Collections.singletonList("Wigwam"), itemNameTrie.suggest("wIgW", 10));
+            assertEquals(Collections.singletonList("Wigit"), itemNameTrie.suggest("wigit", 10));
+            assertEquals(Arrays.asList("wig", "Wigit"), itemNameTrie.suggest("w", 2));
+            assertEquals(5, itemNameTrie.size());
+        }
+
+        /**
+         * Then should suggest nothing when no name starts with it.
+         */
+        @Test
+        @DisplayName("Then should suggest nothing when no name starts with it")
+        void thenShouldSuggestNothing()
+        {
+            assertTrue(itemNameTrie.suggest("wigs", 10).isEmpty());
+            assertTrue(itemNameTrie.suggest("gear", 10).isEmpty());
+            assertTrue(itemNameTrie.suggest("sprockets", 10).isEmpty());
+        }
+    }
+
+    /**
+     * Given items changed
+     */
+    @Nested
+    @DisplayName("Given items changed")
+    class GivenItemsChanged
+    {
+        /**
+         * Then should suggest a name until its last item is gone.
+         */
+        @Test
+        @DisplayName("Then should suggest a name until its last item is gone")
+        void thenShouldSuggestNameUntilLastItemIsGone()
+        {
+            itemNameTrie.remove(1L);
+            assertEquals(Arrays.asList("wig", "Wigit", "Wigwam"), itemNameTrie.suggest("wig", 10));
+
+            itemNameTrie.put(5L, "Gear");
+            itemNameTrie.remove(2L);
+            itemNameTrie.remove(42L);
+            assertEquals(Collections.singletonList("Wigwam"), itemNameTrie.suggest("wig", 10));
+            assertEquals(Collections.singletonList("Gear"), itemNameTrie.suggest("g", 10));
+            assertEquals(3, itemNameTrie.size());
+
+            itemNameTrie.put(6L, "WIGWAM hut");
+            itemNameTrie.remove(3L);
+            assertEquals(Collections.singletonList("WIGWAM hut"), itemNameTrie.suggest("wig", 10));
+        }
+
+        /**
+         * Then should keep finding the other names once nodes are pruned.
+         */
+        @Test
+        @DisplayName("Then should keep finding the other names once nodes are pruned")
+        void thenShouldKeepFindingOtherNames()
+        {
+            for(long id = 10; id < 2010; id++)
+            {
+                itemNameTrie.put(id, "wig" + id);
+            }
+            for(long id = 10; id < 2010; id++)
+            {
+                itemNameTrie.remove(id);
+            }
+            assertEquals(Arrays.asList("wig", "Wigit", "Wigwam"), itemNameTrie.suggest("wig", 10));
+            assertEquals(Collections.singletonList("sprocket"), itemNameTrie.suggest("SPR", 10));
+
+            itemNameTrie.clear();
+            assertTrue(itemNameTrie.suggest("w", 10).isEmpty());
+            assertEquals(0, itemNameTrie.size());
+        }
+    }
+}
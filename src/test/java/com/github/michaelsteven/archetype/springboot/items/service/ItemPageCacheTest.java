@@ -0,0 +1,144 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+import com.github.michaelsteven.archetype.springboot.items.model.SerializedPage;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+
+/**
+ * The ItemPageCache Unit test class
+ */
+@ExtendWith(MockitoExtension.class)
+@WebAppConfiguration
+@DisplayName("ItemPageCache Unit Tests")
+public class ItemPageCacheTest
+{
+    private ItemPageCache itemPageCache;
+    private AtomicInteger loads;
+    private Supplier<Page<ItemDto>> loader;
+
+    /**
+     * Setup.
+     */
+    @BeforeEach
+    void setup()
+    {
+        itemPageCache = new ItemPageCache(new ConcurrentMapCacheManager(ItemPageCache.ITEM_PAGES_CACHE), new ObjectMapper(),
+                Mockito.mock(PlatformTransactionManager.class), 2);
+        loads = new AtomicInteger();
+        loader = () ->
+        {
+            ItemDto itemDto = new ItemDto();
+            itemDto.setId(1L);
+            itemDto.setName("load " + loads.incrementAndGet());
+            return new PageImpl<>(Collections.singletonList(itemDto), PageRequest.of(0, 10), 1);
+        };
+    }
+
+    /**
+     * Given a page
+     */
+    @Nested
+    @DisplayName("Given a page")
+    class GivenPage
+    {
+        /**
+         * Then only the leading pages should be cacheable
+         */
+        @Test
+        @DisplayName("Then only the leading pages should be cacheable")
+        void thenOnlyLeadingPagesShouldBeCacheable()
+        {
+            assertTrue(itemPageCache.isCacheable(PageRequest.of(1, 10)));
+            assertFalse(itemPageCache.isCacheable(PageRequest.of(2, 10)));
+            assertFalse(itemPageCache.isCacheable(Pageable.unpaged()));
+        }
+
+        /**
+         * Then should load the page once while nothing changes
+         */
+        @Test
+        @DisplayName("Then should load the page once while nothing changes")
+        void thenShouldLoadOnce()
+        {
+            SerializedPage first = itemPageCache.get(PageRequest.of(0, 10), loader);
+            SerializedPage second = itemPageCache.get(PageRequest.of(0, 10), loader);
+
+            assertSame(first, second);
+            assertEquals(1, loads.get());
+        }
+
+        /**
+         * Then should key the pages by number, size and sort
+         */
+        @Test
+        @DisplayName("Then should key the pages by number, size and sort")
+        void thenShouldKeyByNumberSizeAndSort()
+        {
+            itemPageCache.get(PageRequest.of(0, 10), loader);
+            itemPageCache.get(PageRequest.of(0, 20), loader);
+            itemPageCache.get(PageRequest.of(1, 10), loader);
+
+            assertEquals(3, loads.get());
+        }
+
+        /**
+         * Then should reload the page after an item change
+         */
+        @Test
+        @DisplayName("Then should reload the page after an item change")
+        void thenShouldReloadAfterChange()
+        {
+            SerializedPage first = itemPageCache.get(PageRequest.of(0, 10), loader);
+            itemPageCache.onItemChange(new ItemChangeEvent(ComplianceAction.update, Collections.singletonList(1L)));
+            SerializedPage second = itemPageCache.get(PageRequest.of(0, 10), loader);
+
+            assertEquals(2, loads.get());
+            assertNotEquals(first.getETag(), second.getETag());
+        }
+
+        /**
+         * Then should not serve a page loaded while a change was committed
+         */
+        @Test
+        @DisplayName("Then should not serve a page loaded while a change was committed")
+        void thenShouldNotServePageLoadedDuringChange()
+        {
+            itemPageCache.get(PageRequest.of(0, 10), () ->
+            {
+                Page<ItemDto> page = loader.get();
+                itemPageCache.onItemChange(new ItemChangeEvent(ComplianceAction.update, Collections.singletonList(1L)));
+                return page;
+            });
+            itemPageCache.get(PageRequest.of(0, 10), loader);
+
+            assertEquals(2, loads.get());
+        }
+    }
+}
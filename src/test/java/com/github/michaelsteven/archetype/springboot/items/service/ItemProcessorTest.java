@@ -0,0 +1,243 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemStatus;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceAction;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemRepository;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemShardRouter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The ItemProcessor Unit test class
+ */
+@ExtendWith(MockitoExtension.class)
+@WebAppConfiguration
+@DisplayName("ItemProcessor Unit Tests")
+public class ItemProcessorTest
+{
+    private static final long TIMEOUT_MILLIS = 5000L;
+
+    @Mock
+    private ItemRepository itemRepository;
+
+    @Mock
+    private ItemShardRouter itemShardRouter;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private Cache itemsCache;
+
+    private MeterRegistry meterRegistry;
+    private ItemProcessor itemProcessor;
+
+    /**
+     * Setup.
+     */
+    @BeforeEach
+    void setup()
+    {
+        Mockito.lenient().when(cacheManager.getCache(ItemsServiceImpl.ITEMS_CACHE)).thenReturn(itemsCache);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    /**
+     * Tear down, stops the workers.
+     *
+     * @throws Exception the exception
+     */
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        if (null != itemProcessor)
+        {
+            itemProcessor.destroy();
+        }
+    }
+
+    /**
+     * Then should mark the claimed items processed, and publish their update.
+     */
+    @Test
+    @DisplayName("Then should mark the claimed items processed")
+    void thenShouldMarkClaimedItemsProcessed()
+    {
+        List<ItemEntity> items = Arrays.asList(item(1L), item(2L));
+        when(itemRepository.findAndLockByStatusOrderByCreatedTimestampAsc(Mockito.eq(ItemStatus.SUBMITTED), Mockito.any(Pageable.class)))
+                .thenReturn(items);
+        newProcessor(null);
+
+        assertEquals(2, itemProcessor.processBatch(0));
+
+        assertEquals(ItemStatus.PROCESSED, items.get(0).getStatus());
+        assertEquals(ItemStatus.PROCESSED, items.get(1).getStatus());
+        ArgumentCaptor<ItemChangeEvent> event = ArgumentCaptor.forClass(ItemChangeEvent.class);
+        Mockito.verify(applicationEventPublisher).publishEvent(event.capture());
+        assertEquals(ComplianceAction.update, event.getValue().getAction());
+        assertEquals(Arrays.asList(1L, 2L), event.getValue().getItemIds());
+        Mockito.verify(itemsCache).evict(1L);
+        Mockito.verify(itemsCache).evict(2L);
+        assertEquals(2.0, meterRegistry.counter(ItemProcessor.PROCESSED_METRIC).count());
+        assertEquals(2L, meterRegistry.timer(ItemProcessor.LATENCY_METRIC).count());
+    }
+
+    /**
+     * Then should run the processing step on each claimed item before marking it processed.
+     */
+    @Test
+    @DisplayName("Then should run the processing step before marking the items processed")
+    void thenShouldRunProcessingStep()
+    {
+        List<ItemEntity> items = Arrays.asList(item(1L), item(2L));
+        when(itemRepository.findAndLockByStatusOrderByCreatedTimestampAsc(Mockito.eq(ItemStatus.SUBMITTED), Mockito.any(Pageable.class)))
+                .thenReturn(items);
+        List<Long> stepped = new ArrayList<>();
+        newProcessor(null, itemEntity -> {
+            assertEquals(ItemStatus.SUBMITTED, itemEntity.getStatus());
+            stepped.add(itemEntity.getId());
+        });
+
+        assertEquals(2, itemProcessor.processBatch(0));
+
+        assertEquals(Arrays.asList(1L, 2L), stepped);
+        assertEquals(ItemStatus.PROCESSED, items.get(1).getStatus());
+    }
+
+    /**
+     * Then should claim the items of a shard on that shard.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    @DisplayName("Then should claim the items of a shard on that shard")
+    void thenShouldClaimOnShard()
+    {
+        when(itemShardRouter.getShardCount()).thenReturn(3);
+        when(itemShardRouter.onShard(Mockito.eq(2), Mockito.anyString(), Mockito.any()))
+                .thenAnswer(invocation -> ((Supplier<Object>) invocation.getArgument(2)).get());
+        when(itemRepository.findAndLockByStatusOrderByCreatedTimestampAsc(Mockito.eq(ItemStatus.SUBMITTED), Mockito.any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+        newProcessor(itemShardRouter);
+
+        assertEquals(0, itemProcessor.processBatch(2));
+
+        Mockito.verify(itemShardRouter).onShard(Mockito.eq(2), Mockito.anyString(), Mockito.any());
+        Mockito.verifyNoInteractions(applicationEventPublisher);
+    }
+
+    /**
+     * Then should keep processing once claiming failed.
+     */
+    @Test
+    @DisplayName("Then should keep processing once claiming failed")
+    void thenShouldKeepProcessingAfterFailure()
+    {
+        ItemEntity itemEntity = item(1L);
+        when(itemRepository.findAndLockByStatusOrderByCreatedTimestampAsc(Mockito.eq(ItemStatus.SUBMITTED), Mockito.any(Pageable.class)))
+                .thenThrow(new CannotAcquireLockException("busy"))
+                .thenReturn(Collections.singletonList(itemEntity))
+                .thenReturn(Collections.emptyList());
+        newProcessor(null);
+
+        itemProcessor.start();
+
+        Mockito.verify(applicationEventPublisher, Mockito.timeout(TIMEOUT_MILLIS)).publishEvent(Mockito.any(ItemChangeEvent.class));
+        assertEquals(ItemStatus.PROCESSED, itemEntity.getStatus());
+    }
+
+    /**
+     * Then should gauge the submitted items left and the age of the oldest.
+     */
+    @Test
+    @DisplayName("Then should gauge the backlog")
+    void thenShouldGaugeBacklog()
+    {
+        when(itemRepository.countByStatus(ItemStatus.SUBMITTED)).thenReturn(42L);
+        when(itemRepository.findOldestCreatedTimestampByStatus(ItemStatus.SUBMITTED))
+                .thenReturn(Optional.of(Instant.now().minusSeconds(60)));
+        newProcessor(null);
+
+        itemProcessor.refreshBacklog();
+
+        assertEquals(42.0, meterRegistry.get(ItemProcessor.BACKLOG_METRIC).gauge().value());
+        double oldestSeconds = meterRegistry.get(ItemProcessor.OLDEST_METRIC).timeGauge().value(TimeUnit.SECONDS);
+        assertEquals(60.0, oldestSeconds, 5.0);
+    }
+
+    /**
+     * Creates an enabled processor of one worker, without processing step.
+     *
+     * @param router the shard router, null when not sharded
+     */
+    private void newProcessor(ItemShardRouter router)
+    {
+        newProcessor(router, null);
+    }
+
+    /**
+     * Creates an enabled processor of one worker.
+     *
+     * @param router the shard router, null when not sharded
+     * @param itemProcessingStep the processing step, null for none
+     */
+    @SuppressWarnings("unchecked")
+    private void newProcessor(ItemShardRouter router, ItemProcessingStep itemProcessingStep)
+    {
+        ObjectProvider<ItemShardRouter> routerProvider = Mockito.mock(ObjectProvider.class);
+        when(routerProvider.getIfAvailable()).thenReturn(router);
+        ObjectProvider<ItemProcessingStep> stepProvider = Mockito.mock(ObjectProvider.class);
+        when(stepProvider.getIfAvailable()).thenReturn(itemProcessingStep);
+        itemProcessor = new ItemProcessor(itemRepository, routerProvider, stepProvider, Mockito.mock(PlatformTransactionManager.class),
+                applicationEventPublisher, cacheManager, meterRegistry, true, 1, 10, 10);
+    }
+
+    /**
+     * Creates a submitted item.
+     *
+     * @param id the id
+     * @return the item
+     */
+    private static ItemEntity item(long id)
+    {
+        ItemEntity itemEntity = new ItemEntity();
+        itemEntity.setId(id);
+        itemEntity.setCreatedTimestamp(Instant.now().minusSeconds(1));
+        return itemEntity;
+    }
+}
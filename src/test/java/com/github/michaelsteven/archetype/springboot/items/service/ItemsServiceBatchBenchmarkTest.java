@@ -0,0 +1,74 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+
+/**
+ * Throughput comparison of the batch and the single item save paths.
+ * 
+ * Not part of the regular build, run it with:
+ * mvn test -Dtest=ItemsServiceBatchBenchmarkTest -Dbenchmark=true [-Dbenchmark.items=20000]
+ */
+@SpringBootTest(properties = "logging.level.com.github.michaelsteven.archetype.springboot.items=INFO")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@DisplayName("ItemsService batch save benchmark")
+public class ItemsServiceBatchBenchmarkTest
+{
+    @Autowired
+    private ItemsService itemsService;
+
+    /**
+     * Saves the same number of items one by one and as a batch, and prints the throughput of each.
+     */
+    @Test
+    @DisplayName("Compare single item and batch save throughput")
+    void compareSingleItemAndBatchThroughput()
+    {
+        int count = Integer.getInteger("benchmark.items", 20000);
+        List<ItemDto> itemDtos = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            itemDtos.add(new ItemDto(null, "item" + i, "benchmark item " + i, null, null, null, null));
+        }
+
+        // warm up both paths
+        itemsService.saveItems(itemDtos.subList(0, Math.min(1000, count)));
+        itemDtos.subList(0, Math.min(1000, count)).forEach(itemsService::saveItem);
+
+        long start = System.nanoTime();
+        itemDtos.forEach(itemsService::saveItem);
+        long singleNanos = System.nanoTime() - start;
+
+        List<ItemDto> batch = new ArrayList<>(ItemsService.MAX_BATCH_SIZE);
+        int saved = 0;
+        start = System.nanoTime();
+        for (ItemDto itemDto : itemDtos)
+        {
+            batch.add(itemDto);
+            if (batch.size() == ItemsService.MAX_BATCH_SIZE)
+            {
+                saved += itemsService.saveItems(batch).size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+        {
+            saved += itemsService.saveItems(batch).size();
+        }
+        long batchNanos = System.nanoTime() - start;
+
+        assertEquals(count, saved);
+        System.out.printf("saveItem  x %d: %6d ms, %8.0f items/s%n", count, singleNanos / 1_000_000, count * 1e9 / singleNanos);
+        System.out.printf("saveItems x %d: %6d ms, %8.0f items/s%n", count, batchNanos / 1_000_000, count * 1e9 / batchNanos);
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import com.github.michaelsteven.archetype.springboot.items.model.ConfirmationDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
+
+/**
+ * Latency comparison of item reads with and without the item cache, for ids
+ * drawn from a Zipf distribution so that a few items get most of the reads.
+ * 
+ * Not part of the regular build, run it with:
+ * mvn test -Dtest=ItemsServiceCacheBenchmarkTest -Dbenchmark=true [-Dbenchmark.items=10000] [-Dbenchmark.reads=100000]
+ */
+@SpringBootTest(properties = "logging.level.com.github.michaelsteven.archetype.springboot.items=INFO")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@DisplayName("ItemsService item cache benchmark")
+public class ItemsServiceCacheBenchmarkTest
+{
+    private static final double ZIPF_EXPONENT = 1.1;
+
+    @Autowired
+    private ItemsService itemsService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * Reads the same skewed sequence of ids with the cache cleared before every read, then
+     * with a warm cache, and prints the latency percentiles of each.
+     */
+    @Test
+    @DisplayName("Compare item read latency with and without the cache")
+    void compareReadLatencyWithAndWithoutCache()
+    {
+        int count = Integer.getInteger("benchmark.items", 10000);
+        int reads = Integer.getInteger("benchmark.reads", 100000);
+        List<ItemDto> itemDtos = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            itemDtos.add(new ItemDto(null, "item" + i, "benchmark item " + i, null, null, null, null));
+        }
+        List<Long> ids = new ArrayList<>(count);
+        for (int from = 0; from < count; from += ItemsService.MAX_BATCH_SIZE)
+        {
+            for (ConfirmationDto confirmationDto : itemsService.saveItems(itemDtos.subList(from, Math.min(count, from + ItemsService.MAX_BATCH_SIZE))))
+            {
+                ids.add(confirmationDto.getId());
+            }
+        }
+        long[] sequence = zipfSequence(ids, reads, new Random(42));
+        Cache cache = cacheManager.getCache(ItemsServiceImpl.ITEMS_CACHE);
+
+        // warm up the read path, then the cache
+        read(sequence, cache, true);
+        long[] uncached = read(sequence, cache, true);
+        read(sequence, cache, false);
+        long[] cached = read(sequence, cache, false);
+
+        print("no cache", uncached);
+        print("cache   ", cached);
+        assertTrue(percentile(cached, 0.99) <= percentile(uncached, 0.99));
+    }
+
+    /**
+     * Reads the items of the sequence, timing each read.
+     *
+     * @param sequence the ids to read
+     * @param cache the item cache
+     * @param clearBeforeRead whether to clear the cache before each read
+     * @return the sorted read latencies, in nanoseconds
+     */
+    private long[] read(long[] sequence, Cache cache, boolean clearBeforeRead)
+    {
+        long[] latencies = new long[sequence.length];
+        for (int i = 0; i < sequence.length; i++)
+        {
+            if (clearBeforeRead)
+            {
+                cache.clear();
+            }
+            long start = System.nanoTime();
+            itemsService.getItemById(sequence[i]);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Draws ids with a Zipf distribution over their rank in the list.
+     *
+     * @param ids the ids, the first being the most frequent
+     * @param length the number of ids to draw
+     * @param random the random
+     * @return the ids drawn
+     */
+    private static long[] zipfSequence(List<Long> ids, int length, Random random)
+    {
+        double[] cumulative = new double[ids.size()];
+        double sum = 0;
+        for (int rank = 0; rank < ids.size(); rank++)
+        {
+            sum += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulative[rank] = sum;
+        }
+        long[] sequence = new long[length];
+        for (int i = 0; i < length; i++)
+        {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            sequence[i] = ids.get(Math.min(ids.size() - 1, index < 0 ? -index - 1 : index));
+        }
+        return sequence;
+    }
+
+    /**
+     * Gets a percentile of sorted latencies.
+     *
+     * @param sortedLatencies the sorted latencies
+     * @param percentile the percentile, between 0 and 1
+     * @return the latency at the percentile
+     */
+    private static long percentile(long[] sortedLatencies, double percentile)
+    {
+        return sortedLatencies[(int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile * sortedLatencies.length) - 1)];
+    }
+
+    /**
+     * Prints the latency percentiles.
+     *
+     * @param label the label
+     * @param sortedLatencies the sorted latencies
+     */
+    private static void print(String label, long[] sortedLatencies)
+    {
+        System.out.printf("%s: p50 %6.1f us, p99 %7.1f us, p99.9 %7.1f us%n", label,
+                percentile(sortedLatencies, 0.5) / 1e3, percentile(sortedLatencies, 0.99) / 1e3, percentile(sortedLatencies, 0.999) / 1e3);
+    }
+}
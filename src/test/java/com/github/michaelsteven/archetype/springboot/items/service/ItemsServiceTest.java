@@ -1,32 +1,74 @@
 package com.github.michaelsteven.archetype.springboot.items.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.PersistenceException;
+import javax.validation.Validation;
+import javax.validation.ValidationException;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.MessageSource;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
 
 import com.github.michaelsteven.archetype.springboot.items.TestPageImpl;
 import com.github.michaelsteven.archetype.springboot.items.model.ConfirmationDto;
+import com.github.michaelsteven.archetype.springboot.items.model.CursorPageDto;
 import com.github.michaelsteven.archetype.springboot.items.model.ItemDto;
 import com.github.michaelsteven.archetype.springboot.items.model.ItemEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemFilter;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportLine;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportResultDto;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemImportStatus;
+import com.github.michaelsteven.archetype.springboot.items.model.ItemProjection;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ItemChangeEvent;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemIdAllocator;
 import com.github.michaelsteven.archetype.springboot.items.repository.ItemRepository;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemShardRouter;
 
 /**
  * The ItemsService Unit test class
@@ -42,6 +84,27 @@ public class ItemsServiceTest
     @Mock
     private MessageSource messageSource;
 
+    @Mock
+    private ItemCountCache itemCountCache;
+
+    @Mock
+    private ItemPageCache itemPageCache;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    private ItemSearchIndex itemSearchIndex;
+
+    @Mock
+    private ItemNameSuggester itemNameSuggester;
+
+    @Mock
+    private ItemIngestQueue itemIngestQueue;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     private ItemsService itemsService;
 
     /**
@@ -50,7 +113,10 @@ public class ItemsServiceTest
     @BeforeEach
     void setup()
     {
-        itemsService = new ItemsServiceImpl(itemRepository, messageSource);
+        itemsService = new ItemsServiceImpl(itemRepository, messageSource, itemCountCache, () -> Optional.of("tester"),
+                itemPageCache, new ConcurrentMapCacheManager(ItemsServiceImpl.ITEMS_CACHE), applicationEventPublisher, itemSearchIndex,
+                itemNameSuggester, itemIngestQueue, Validation.buildDefaultValidatorFactory().getValidator(), transactionManager,
+                Mockito.mock(ObjectProvider.class), Mockito.mock(ItemIdAllocator.class), 2);
     }
 
     /**
@@ -95,6 +161,266 @@ public class ItemsServiceTest
                 assertNotNull(confirmationDto);
                 assertEquals(12345, confirmationDto.getId());
             }
+
+            /**
+             * Then should not keep an id set by the client.
+             */
+            @Test
+            @DisplayName("Then should not keep an id set by the client")
+            void thenShouldNotKeepClientId()
+            {
+                itemDto.setId(99L);
+                when(itemRepository.save(Mockito.any(ItemEntity.class)))
+                        .thenAnswer(invocation -> invocation.getArgument(0));
+
+                itemsService.saveItem(itemDto);
+
+                ArgumentCaptor<ItemEntity> saved = ArgumentCaptor.forClass(ItemEntity.class);
+                Mockito.verify(itemRepository).save(saved.capture());
+                assertNull(saved.getValue().getId());
+            }
+
+            /**
+             * Then should queue the item instead of saving it, when the ingest queue is enabled.
+             */
+            @Test
+            @DisplayName("Then should queue the item when the ingest queue is enabled")
+            void thenShouldQueueItemWhenIngestQueueIsEnabled()
+            {
+                when(itemIngestQueue.isEnabled()).thenReturn(true);
+                when(itemIngestQueue.submit(Mockito.any(ItemEntity.class))).thenAnswer(invocation -> {
+                    ItemEntity itemEntity = invocation.getArgument(0);
+                    itemEntity.setId(7L);
+                    itemEntity.setCreatedTimestamp(Instant.now());
+                    return itemEntity;
+                });
+
+                ConfirmationDto confirmationDto = itemsService.saveItem(itemDto);
+
+                assertEquals(7L, confirmationDto.getId());
+                assertNotNull(confirmationDto.getDateSubmitted());
+                Mockito.verify(itemRepository, Mockito.never()).save(Mockito.any(ItemEntity.class));
+                Mockito.verifyNoInteractions(applicationEventPublisher);
+            }
+        }
+    }
+
+    /**
+     * Given a batch of items to save
+     */
+    @Nested
+    @DisplayName("Given a batch of items to save")
+    class GivenBatchOfItemsToSave
+    {
+        /**
+         * When the batch is larger than a chunk
+         */
+        @Nested
+        @DisplayName("When the batch is larger than a chunk")
+        class WhenBatchIsLargerThanChunk
+        {
+            /**
+             * Then should save in chunks and confirm each item in order.
+             */
+            @SuppressWarnings("unchecked")
+            @Test
+            @DisplayName("Then should save in chunks and confirm each item in order")
+            void thenShouldSaveInChunksAndConfirmEachItem()
+            {
+                long[] nextId = { 1L };
+                when(itemRepository.saveAll(Mockito.anyIterable())).thenAnswer(invocation -> {
+                    List<ItemEntity> saved = new ArrayList<>();
+                    for (ItemEntity entity : (Iterable<ItemEntity>) invocation.getArgument(0))
+                    {
+                        entity.setId(nextId[0]++);
+                        saved.add(entity);
+                    }
+                    return saved;
+                });
+
+                List<ConfirmationDto> confirmationDtos = itemsService.saveItems(
+                        Arrays.asList(new ItemDto(), new ItemDto(), new ItemDto()));
+
+                Mockito.verify(itemRepository, Mockito.times(2)).saveAll(Mockito.anyIterable());
+                assertEquals(3, confirmationDtos.size());
+                assertEquals(1L, confirmationDtos.get(0).getId());
+                assertEquals(3L, confirmationDtos.get(2).getId());
+            }
+        }
+
+        /**
+         * When the items are sharded
+         */
+        @Nested
+        @DisplayName("When the items are sharded")
+        class WhenItemsAreSharded
+        {
+            /**
+             * Then should save the items of each shard along with their change in a transaction on the shard.
+             */
+            @SuppressWarnings("unchecked")
+            @Test
+            @DisplayName("Then should save the items of each shard along with their change on the shard")
+            void thenShouldSaveItemsOfEachShardWithTheirChange()
+            {
+                ItemIdAllocator itemIdAllocator = Mockito.mock(ItemIdAllocator.class);
+                when(itemIdAllocator.next()).thenReturn(1L, 2L);
+                List<Integer> shardsWritten = new ArrayList<>();
+                ItemsService shardedItemsService = shardedItemsService(itemIdAllocator, shardsWritten, null);
+                when(itemRepository.saveAll(Mockito.anyIterable())).thenAnswer(invocation -> {
+                    List<ItemEntity> saved = new ArrayList<>();
+                    ((Iterable<ItemEntity>) invocation.getArgument(0)).forEach(saved::add);
+                    return saved;
+                });
+                ArgumentCaptor<ItemChangeEvent> events = ArgumentCaptor.forClass(ItemChangeEvent.class);
+
+                List<ConfirmationDto> confirmationDtos = shardedItemsService.saveItems(Arrays.asList(new ItemDto(), new ItemDto()));
+
+                assertEquals(Arrays.asList(0, 1), shardsWritten);
+                Mockito.verify(applicationEventPublisher, Mockito.times(2)).publishEvent(events.capture());
+                assertEquals(Arrays.asList(2L), events.getAllValues().get(0).getItemIds());
+                assertEquals(Arrays.asList(1L), events.getAllValues().get(1).getItemIds());
+                Mockito.verifyNoInteractions(transactionManager);
+                assertEquals(1L, confirmationDtos.get(0).getId());
+                assertEquals(2L, confirmationDtos.get(1).getId());
+            }
+        }
+    }
+
+    /**
+     * Given lines of items to import
+     */
+    @Nested
+    @DisplayName("Given lines of items to import")
+    class GivenLinesOfItemsToImport
+    {
+        private List<ItemImportLine> lines;
+        private List<ItemImportResultDto> results;
+
+        /**
+         * Setup.
+         */
+        @BeforeEach
+        void setup()
+        {
+            lines = Arrays.asList(
+                    new ItemImportLine(1L, new ItemDto(77L, "first", "an item", null, null, null, null), null),
+                    new ItemImportLine(2L, null, "Unexpected character"),
+                    new ItemImportLine(3L, new ItemDto(), null),
+                    new ItemImportLine(4L, new ItemDto(null, "second", "an item", null, null, null, null), null),
+                    new ItemImportLine(5L, new ItemDto(null, "third", "an item", null, null, null, null), null));
+            results = new ArrayList<>();
+        }
+
+        /**
+         * When the chunks save
+         */
+        @Nested
+        @DisplayName("When the chunks save")
+        class WhenChunksSave
+        {
+            /**
+             * Then should save valid items in chunks and reject the others.
+             */
+            @SuppressWarnings("unchecked")
+            @Test
+            @DisplayName("Then should save valid items in chunks and reject the others")
+            void thenShouldSaveValidItemsInChunksAndRejectOthers()
+            {
+                long[] nextId = { 1L };
+                when(itemRepository.saveAll(Mockito.anyIterable())).thenAnswer(invocation -> {
+                    List<ItemEntity> saved = new ArrayList<>();
+                    for (ItemEntity entity : (Iterable<ItemEntity>) invocation.getArgument(0))
+                    {
+                        assertNull(entity.getId());
+                        entity.setId(nextId[0]++);
+                        saved.add(entity);
+                    }
+                    return saved;
+                });
+
+                itemsService.importItems(lines.iterator(), results::add);
+
+                Mockito.verify(itemRepository, Mockito.times(2)).saveAll(Mockito.anyIterable());
+                assertEquals(5, results.size());
+                Map<Long, ItemImportResultDto> resultsByLine = results.stream()
+                        .collect(Collectors.toMap(ItemImportResultDto::getLine, Function.identity()));
+                assertEquals(ItemImportStatus.ACCEPTED, resultsByLine.get(1L).getStatus());
+                assertEquals(1L, resultsByLine.get(1L).getId());
+                assertEquals(ItemImportStatus.REJECTED, resultsByLine.get(2L).getStatus());
+                assertEquals("Unexpected character", resultsByLine.get(2L).getErrors().get(0));
+                assertEquals(ItemImportStatus.REJECTED, resultsByLine.get(3L).getStatus());
+                assertTrue(resultsByLine.get(3L).getErrors().get(0).startsWith("name"));
+                assertEquals(2L, resultsByLine.get(4L).getId());
+                assertEquals(3L, resultsByLine.get(5L).getId());
+            }
+        }
+
+        /**
+         * When a chunk fails to save
+         */
+        @Nested
+        @DisplayName("When a chunk fails to save")
+        class WhenChunkFailsToSave
+        {
+            /**
+             * Then should reject the lines of that chunk and go on.
+             */
+            @Test
+            @DisplayName("Then should reject the lines of that chunk and go on")
+            void thenShouldRejectLinesOfChunkAndGoOn()
+            {
+                when(messageSource.getMessage(Mockito.anyString(), Mockito.any(), Mockito.any(Locale.class)))
+                        .thenReturn("Chunk failed");
+                when(itemRepository.saveAll(Mockito.anyIterable()))
+                        .thenThrow(new PersistenceException("boom"))
+                        .thenAnswer(invocation -> invocation.getArgument(0));
+
+                itemsService.importItems(lines.iterator(), results::add);
+
+                List<Long> rejectedLines = results.stream()
+                        .filter(result -> ItemImportStatus.REJECTED == result.getStatus())
+                        .map(ItemImportResultDto::getLine)
+                        .sorted()
+                        .collect(Collectors.toList());
+                assertEquals(Arrays.asList(1L, 2L, 3L, 4L), rejectedLines);
+                assertEquals(5L, results.get(results.size() - 1).getLine());
+                assertEquals(ItemImportStatus.ACCEPTED, results.get(results.size() - 1).getStatus());
+            }
+        }
+
+        /**
+         * When a chunk fails to commit
+         */
+        @Nested
+        @DisplayName("When a chunk fails to commit")
+        class WhenChunkFailsToCommit
+        {
+            /**
+             * Then should reject the lines of that chunk and go on.
+             */
+            @Test
+            @DisplayName("Then should reject the lines of that chunk and go on")
+            void thenShouldRejectLinesOfChunkAndGoOn()
+            {
+                when(messageSource.getMessage(Mockito.anyString(), Mockito.any(), Mockito.any(Locale.class)))
+                        .thenReturn("Chunk failed");
+                when(itemRepository.saveAll(Mockito.anyIterable())).thenAnswer(invocation -> invocation.getArgument(0));
+                Mockito.doThrow(new TransactionSystemException("commit failed"))
+                        .doNothing()
+                        .when(transactionManager).commit(Mockito.any());
+
+                itemsService.importItems(lines.iterator(), results::add);
+
+                assertEquals(5, results.size());
+                List<Long> rejectedLines = results.stream()
+                        .filter(result -> ItemImportStatus.REJECTED == result.getStatus())
+                        .map(ItemImportResultDto::getLine)
+                        .sorted()
+                        .collect(Collectors.toList());
+                assertEquals(Arrays.asList(1L, 2L, 3L, 4L), rejectedLines);
+                assertEquals(ItemImportStatus.ACCEPTED, results.get(results.size() - 1).getStatus());
+            }
         }
     }
 
@@ -122,7 +448,93 @@ public class ItemsServiceTest
             	// make the delete call
                 itemsService.deleteItemById(12345L);
                 
-                //verify the repository's delete method was invoked.
+                //verify the repository's delete method was invoked, without loading the item first.
+                Mockito.verify(itemRepository).deleteItemById(12345L);
+                Mockito.verify(itemRepository, Mockito.never()).findById(Mockito.anyLong());
+            }
+        }
+    }
+
+    /**
+     * Given IDs of items to delete.
+     */
+    @Nested
+    @DisplayName("Given IDs of items to delete")
+    class GivenIdsOfItemsToDelete
+    {
+        /**
+         * When only some of the items exist
+         */
+        @Nested
+        @DisplayName("When only some of the items exist")
+        class WhenOnlySomeItemsExist
+        {
+            /**
+             * Then should delete and return the existing items
+             */
+            @Test
+            @DisplayName("Then should delete and return the existing items")
+            void thenShouldDeleteAndReturnExistingItems()
+            {
+                List<Long> ids = Arrays.asList(1L, 2L, 3L);
+                List<Long> existingIds = Arrays.asList(1L, 3L);
+                when(itemRepository.findExistingIds(ids)).thenReturn(existingIds);
+
+                List<Long> deletedIds = itemsService.deleteItemsByIds(ids);
+
+                assertEquals(existingIds, deletedIds);
+                Mockito.verify(itemRepository).deleteItemsByIds(existingIds);
+            }
+        }
+
+        /**
+         * When none of the items exist
+         */
+        @Nested
+        @DisplayName("When none of the items exist")
+        class WhenNoItemsExist
+        {
+            /**
+             * Then should not issue a delete
+             */
+            @Test
+            @DisplayName("Then should not issue a delete")
+            void thenShouldNotIssueDelete()
+            {
+                when(itemRepository.findExistingIds(Mockito.anyCollection())).thenReturn(new ArrayList<>());
+
+                assertTrue(itemsService.deleteItemsByIds(Arrays.asList(1L)).isEmpty());
+                Mockito.verify(itemRepository, Mockito.never()).deleteItemsByIds(Mockito.anyCollection());
+            }
+        }
+
+        /**
+         * When the items are sharded and a shard fails
+         */
+        @Nested
+        @DisplayName("When the items are sharded and a shard fails")
+        class WhenShardFails
+        {
+            /**
+             * Then should throw rather than return a partial delete, and clear the item cache.
+             */
+            @Test
+            @DisplayName("Then should throw rather than return a partial delete, and clear the item cache")
+            void thenShouldThrowAndClearItemCache()
+            {
+                List<Integer> shardsWritten = new ArrayList<>();
+                ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(ItemsServiceImpl.ITEMS_CACHE);
+                cacheManager.getCache(ItemsServiceImpl.ITEMS_CACHE).put(2L, new ItemDto());
+                ItemsService shardedItemsService = shardedItemsService(Mockito.mock(ItemIdAllocator.class), shardsWritten, 1,
+                        cacheManager);
+                when(itemRepository.findExistingIds(Mockito.anyCollection())).thenAnswer(invocation -> new ArrayList<>(
+                        invocation.<List<Long>>getArgument(0)));
+
+                assertThrows(PersistenceException.class, () -> shardedItemsService.deleteItemsByIds(Arrays.asList(1L, 2L)));
+
+                assertEquals(Arrays.asList(0), shardsWritten);
+                Mockito.verify(itemRepository).deleteItemsByIds(Arrays.asList(2L));
+                assertNull(cacheManager.getCache(ItemsServiceImpl.ITEMS_CACHE).get(2L));
             }
         }
     }
@@ -146,8 +558,8 @@ public class ItemsServiceTest
         	 */
         	@BeforeEach
         	void setup() {
-        		Optional<ItemEntity> optionalItemEntity = Optional.of(new ItemEntity());
-                when(itemRepository.findById(Mockito.anyLong())).thenReturn(optionalItemEntity);
+        		Optional<ItemProjection> optionalItemProjection = Optional.of(Mockito.mock(ItemProjection.class));
+                when(itemRepository.findProjectedById(Mockito.anyLong())).thenReturn(optionalItemProjection);
         	}
         	
             /**
@@ -176,8 +588,8 @@ public class ItemsServiceTest
             @DisplayName("Then should return empty optional")
             void thenShouldRetunEmptyOptional()
             {
-                Optional<ItemEntity> optionalItemEntity = Optional.empty();
-                when(itemRepository.findById(Mockito.anyLong())).thenReturn(optionalItemEntity);
+                Optional<ItemProjection> optionalItemProjection = Optional.empty();
+                when(itemRepository.findProjectedById(Mockito.anyLong())).thenReturn(optionalItemProjection);
                 Optional<ItemDto> optionalItemDto = itemsService.getItemById(12345L);
                 assertTrue(!optionalItemDto.isPresent());
             }
@@ -205,15 +617,271 @@ public class ItemsServiceTest
             @DisplayName("Then should return paged list")
             void thenShouldReturnPagedList()
             {
-                Page<ItemEntity> itemEntityPage = new TestPageImpl<>();
-                when(itemRepository.findAll(Mockito.any(PageRequest.class)))
-                        .thenReturn(itemEntityPage);
+                Page<ItemProjection> itemProjectionPage = new TestPageImpl<>();
+                when(itemRepository.findAllProjectedBy(Mockito.any(PageRequest.class)))
+                        .thenReturn(itemProjectionPage);
                 
                 Pageable pageable = PageRequest.of(1, 10, Sort.by("id").ascending());
                 Page<ItemDto> actualPagedLoanApplication = itemsService.getItems(pageable);
                 assertNotNull(actualPagedLoanApplication);
             }
         }
+
+        /**
+         * The Class WhenCalledForSlice.
+         */
+        @Nested
+        @DisplayName("When getting a slice")
+        class WhenCalledForSlice
+        {
+            /**
+             * Then should return slice without counting.
+             */
+            @Test
+            @DisplayName("Then should return slice without counting")
+            void thenShouldReturnSliceWithoutCounting()
+            {
+                ItemProjection itemProjection = mockItemProjection(1L);
+                Pageable pageable = PageRequest.of(0, 1, Sort.by("id").ascending());
+                when(itemRepository.findAllBy(Mockito.any(Pageable.class)))
+                        .thenReturn(new SliceImpl<>(Arrays.asList(itemProjection), pageable, true));
+
+                Slice<ItemDto> slice = itemsService.getItemsSlice(pageable);
+                assertEquals(1, slice.getContent().size());
+                assertTrue(slice.hasNext());
+                Mockito.verify(itemRepository, Mockito.never()).count();
+            }
+        }
+    }
+
+    /**
+     * Given call to get items by cursor
+     */
+    @Nested
+    @DisplayName("Given call to get items by cursor")
+    class GivenCallToGetItemsByCursor
+    {
+        /**
+         * When more items follow the page
+         */
+        @Nested
+        @DisplayName("When more items follow the page")
+        class WhenMoreItemsFollow
+        {
+            /**
+             * Setup.
+             */
+            @BeforeEach
+            void setup()
+            {
+                ItemProjection first = mockItemProjection(41L);
+                ItemProjection second = mockItemProjection(42L);
+                when(itemRepository.findByIdGreaterThanOrderByIdAsc(Mockito.eq(0L), Mockito.any(Pageable.class)))
+                        .thenReturn(new SliceImpl<>(Arrays.asList(first, second), PageRequest.of(0, 2), true));
+            }
+
+            /**
+             * Then should return a cursor that seeks past the last item.
+             */
+            @Test
+            @DisplayName("Then should return a cursor that seeks past the last item")
+            void thenShouldReturnCursorPastLastItem()
+            {
+                CursorPageDto<ItemDto> page = itemsService.getItemsAfter("", 2);
+                assertEquals(2, page.getContent().size());
+                assertTrue(page.isHasNext());
+                assertNotNull(page.getNextCursor());
+
+                ItemProjection third = mockItemProjection(43L);
+                when(itemRepository.findByIdGreaterThanOrderByIdAsc(Mockito.eq(42L), Mockito.any(Pageable.class)))
+                        .thenReturn(new SliceImpl<>(Arrays.asList(third), PageRequest.of(0, 2), false));
+
+                CursorPageDto<ItemDto> nextPage = itemsService.getItemsAfter(page.getNextCursor(), 2);
+                assertEquals(43L, nextPage.getContent().get(0).getId());
+                assertFalse(nextPage.isHasNext());
+                assertNull(nextPage.getNextCursor());
+            }
+        }
+
+        /**
+         * When the cursor is not valid
+         */
+        @Nested
+        @DisplayName("When the cursor is not valid")
+        class WhenCursorIsNotValid
+        {
+            /**
+             * Then should throw validation exception.
+             */
+            @Test
+            @DisplayName("Then should throw validation exception")
+            void thenShouldThrowValidationException()
+            {
+                when(messageSource.getMessage(Mockito.anyString(), Mockito.any(), Mockito.any(Locale.class)))
+                        .thenReturn("Invalid cursor");
+                assertThrows(ValidationException.class, () -> itemsService.getItemsAfter("not-a-cursor", 10));
+            }
+        }
+    }
+
+    /**
+     * Given call to export items
+     */
+    @Nested
+    @DisplayName("Given call to export items")
+    class GivenCallToExportItems
+    {
+        /**
+         * When items exist
+         */
+        @Nested
+        @DisplayName("When items exist")
+        class WhenItemsExist
+        {
+            /**
+             * Then should hand each item to the consumer and close the stream.
+             */
+            @Test
+            @DisplayName("Then should hand each item to the consumer and close the stream")
+            void thenShouldHandEachItemToConsumerAndCloseStream()
+            {
+                AtomicBoolean closed = new AtomicBoolean();
+                Stream<ItemProjection> items = Stream.of(mockItemProjection(1L), mockItemProjection(2L))
+                        .onClose(() -> closed.set(true));
+                when(itemRepository.streamAllByOrderByIdAsc()).thenReturn(items);
+
+                List<ItemDto> exported = new ArrayList<>();
+                itemsService.exportItems(exported::add);
+                assertEquals(2, exported.size());
+                assertEquals(1L, exported.get(0).getId());
+                assertEquals(2L, exported.get(1).getId());
+                assertTrue(closed.get());
+            }
+        }
+    }
+
+    /**
+     * Given call to search items
+     */
+    @Nested
+    @DisplayName("Given call to search items")
+    class GivenCallToSearchItems
+    {
+        /**
+         * When the index finds items
+         */
+        @Nested
+        @DisplayName("When the index finds items")
+        class WhenIndexFindsItems
+        {
+            /**
+             * Then should return the items in order of relevance, leaving out deleted ones.
+             */
+            @Test
+            @DisplayName("Then should return the items in order of relevance, leaving out deleted ones")
+            void thenShouldReturnItemsInOrderOfRelevance()
+            {
+                Pageable pageable = PageRequest.of(0, 3);
+                when(itemSearchIndex.search("wigit", pageable)).thenReturn(new PageImpl<>(Arrays.asList(42L, 7L, 9L), pageable, 5));
+                List<ItemProjection> items = Arrays.asList(mockItemProjection(7L), mockItemProjection(42L));
+                when(itemRepository.findProjectedByIdIn(Arrays.asList(42L, 7L, 9L))).thenReturn(items);
+
+                Page<ItemDto> page = itemsService.searchItems("wigit", pageable);
+                assertEquals(2, page.getContent().size());
+                assertEquals(42L, page.getContent().get(0).getId());
+                assertEquals(7L, page.getContent().get(1).getId());
+                assertEquals(5, page.getTotalElements());
+            }
+        }
+
+        /**
+         * When the page is past the search window
+         */
+        @Nested
+        @DisplayName("When the page is past the search window")
+        class WhenPageIsPastSearchWindow
+        {
+            /**
+             * Then should throw validation exception.
+             */
+            @Test
+            @DisplayName("Then should throw validation exception")
+            void thenShouldThrowValidationException()
+            {
+                when(messageSource.getMessage(Mockito.anyString(), Mockito.any(), Mockito.any(Locale.class)))
+                        .thenReturn("Past the search window");
+                assertThrows(ValidationException.class,
+                        () -> itemsService.searchItems("wigit", PageRequest.of(ItemsService.MAX_SEARCH_RESULTS / 10, 10)));
+                Mockito.verifyNoInteractions(itemSearchIndex);
+            }
+        }
+    }
+
+    /**
+     * Given call to get items with a filter
+     */
+    @Nested
+    @DisplayName("Given call to get items with a filter")
+    class GivenCallToGetItemsWithFilter
+    {
+        /**
+         * Then should query the specification of the criteria.
+         */
+        @Test
+        @DisplayName("Then should query the specification of the criteria")
+        void thenShouldQuerySpecification()
+        {
+            ItemEntity itemEntity = new ItemEntity();
+            itemEntity.setId(7L);
+            itemEntity.setName("wigit");
+            itemEntity.setVersion(2L);
+            itemEntity.setCreatedTimestamp(Instant.parse("2020-11-20T10:15:30Z"));
+            Pageable pageable = PageRequest.of(0, 10);
+            when(itemRepository.findAll(Mockito.<Specification<ItemEntity>>any(), Mockito.eq(pageable)))
+                    .thenReturn(new PageImpl<>(Arrays.asList(itemEntity), pageable, 1));
+
+            Page<ItemDto> page = itemsService.getItems(new ItemFilter(null, null, null, "wigit"), pageable);
+            assertEquals(7L, page.getContent().get(0).getId());
+            assertEquals(2L, page.getContent().get(0).getVersion());
+            assertEquals(2020, page.getContent().get(0).getDateSubmitted().getYear());
+        }
+
+        /**
+         * Then should list all the items when no criteria is set.
+         */
+        @Test
+        @DisplayName("Then should list all the items when no criteria is set")
+        void thenShouldListAllItemsWithoutCriteria()
+        {
+            Pageable pageable = PageRequest.of(0, 10);
+            List<ItemProjection> items = Arrays.asList(mockItemProjection(7L));
+            when(itemRepository.findAllProjectedBy(pageable)).thenReturn(new PageImpl<>(items, pageable, 1));
+
+            Page<ItemDto> page = itemsService.getItems(new ItemFilter(), pageable);
+            assertEquals(7L, page.getContent().get(0).getId());
+            Mockito.verify(itemRepository, Mockito.never()).findAll(Mockito.<Specification<ItemEntity>>any(), Mockito.any(Pageable.class));
+        }
+    }
+
+    /**
+     * Given call to suggest item names
+     */
+    @Nested
+    @DisplayName("Given call to suggest item names")
+    class GivenCallToSuggestItemNames
+    {
+        /**
+         * Then should return the names of the suggester without querying.
+         */
+        @Test
+        @DisplayName("Then should return the names of the suggester without querying")
+        void thenShouldReturnNamesOfSuggester()
+        {
+            when(itemNameSuggester.suggest("wig", 10)).thenReturn(Arrays.asList("wig", "Wigit"));
+
+            assertEquals(Arrays.asList("wig", "Wigit"), itemsService.suggestItemNames("wig", 10));
+            Mockito.verifyNoInteractions(itemRepository);
+        }
     }
 
     /**
@@ -223,60 +891,183 @@ public class ItemsServiceTest
     @DisplayName("Given item to edit")
     class GivenItemToEdit
     {
+        ItemDto itemDto;
 
         /**
-         * When item is valid
+         * Setup.
+         */
+        @BeforeEach
+        void setup()
+        {
+            itemDto = new ItemDto();
+            itemDto.setId(12345L);
+            itemDto.setName("fizz buzz");
+        }
+
+        /**
+         * When no version is expected
          */
         @Nested
-        @DisplayName("When item is valid")
-        class WhenItemIsValid
+        @DisplayName("When no version is expected")
+        class WhenNoVersionIsExpected
         {
-            ItemEntity itemEntity;
-            ItemEntity savedItemEntity;
-            ItemDto itemDto;
+            /**
+             * Then should update with a single statement and return confirmation DTO
+             */
+            @Test
+            @DisplayName("Then should update with a single statement and return confirmation DTO")
+            void thenShouldReturnConfirmationDto()
+            {
+                when(itemRepository.updateItem(Mockito.eq(12345L), Mockito.eq("fizz buzz"), Mockito.isNull(),
+                        Mockito.any(Instant.class), Mockito.eq("tester"))).thenReturn(1);
+
+                ConfirmationDto confirmationDto = itemsService.editItem(itemDto, null);
+
+                assertNotNull(confirmationDto);
+                assertEquals(12345, confirmationDto.getId());
+                assertNotNull(confirmationDto.getDateSubmitted());
+                Mockito.verify(itemRepository, Mockito.never()).findById(Mockito.anyLong());
+            }
 
             /**
-             * Setup.
+             * Then should throw entity not found when no row was updated
              */
-            @BeforeEach
-            void setup()
+            @Test
+            @DisplayName("Then should throw entity not found when no row was updated")
+            void thenShouldThrowEntityNotFound()
             {
-                itemEntity = new ItemEntity();
-                itemEntity.setId(12345L);
-                itemEntity.setName("foo bar");
-                
-                savedItemEntity = new ItemEntity();
-                savedItemEntity.setId(12345L);
-                savedItemEntity.setName("fizz buzz"); 
-                
-                itemDto = new ItemDto();
-                itemDto.setId(12345L);
-                itemDto.setName("fizz buzz");              
-                
+                when(itemRepository.updateItem(Mockito.anyLong(), Mockito.anyString(), Mockito.any(),
+                        Mockito.any(Instant.class), Mockito.any())).thenReturn(0);
+
+                assertThrows(EntityNotFoundException.class, () -> itemsService.editItem(itemDto, null));
+                Mockito.verify(itemRepository, Mockito.never()).existsById(Mockito.anyLong());
             }
+        }
 
+        /**
+         * When a version is expected
+         */
+        @Nested
+        @DisplayName("When a version is expected")
+        class WhenVersionIsExpected
+        {
             /**
-             * Then should return confirmation DTO
+             * Then should update conditionally and return confirmation DTO
              */
             @Test
-            @DisplayName("Then should return confirmation DTO")
+            @DisplayName("Then should update conditionally and return confirmation DTO")
             void thenShouldReturnConfirmationDto()
             {
-                // when calling findById on the repository
-                Optional<ItemEntity> optionalItemEntity = Optional.of(itemEntity);
-                when(itemRepository.findById(Mockito.anyLong())).thenReturn(optionalItemEntity);
-
-                // when calling save on the repository
-                when(itemRepository.save(Mockito.any(ItemEntity.class)))
-                        .thenReturn(savedItemEntity);
+                when(itemRepository.updateItemIfVersion(Mockito.eq(12345L), Mockito.eq(3L), Mockito.eq("fizz buzz"),
+                        Mockito.isNull(), Mockito.any(Instant.class), Mockito.eq("tester"))).thenReturn(1);
 
-                // make the call to the service
-                ConfirmationDto confirmationDto = itemsService.editItem(itemDto);
+                ConfirmationDto confirmationDto = itemsService.editItem(itemDto, 3L);
 
-                // validate the response
-                assertNotNull(confirmationDto);
                 assertEquals(12345, confirmationDto.getId());
+                Mockito.verify(itemRepository, Mockito.never()).existsById(Mockito.anyLong());
+            }
+
+            /**
+             * Then should throw optimistic locking failure when the item is at another version
+             */
+            @Test
+            @DisplayName("Then should throw optimistic locking failure when the item is at another version")
+            void thenShouldThrowOptimisticLockingFailure()
+            {
+                when(itemRepository.updateItemIfVersion(Mockito.anyLong(), Mockito.anyLong(), Mockito.anyString(),
+                        Mockito.any(), Mockito.any(Instant.class), Mockito.any())).thenReturn(0);
+                when(itemRepository.existsById(12345L)).thenReturn(true);
+
+                assertThrows(OptimisticLockingFailureException.class, () -> itemsService.editItem(itemDto, 3L));
+            }
+
+            /**
+             * Then should throw entity not found when the item does not exist
+             */
+            @Test
+            @DisplayName("Then should throw entity not found when the item does not exist")
+            void thenShouldThrowEntityNotFound()
+            {
+                when(itemRepository.updateItemIfVersion(Mockito.anyLong(), Mockito.anyLong(), Mockito.anyString(),
+                        Mockito.any(), Mockito.any(Instant.class), Mockito.any())).thenReturn(0);
+                when(itemRepository.existsById(12345L)).thenReturn(false);
+
+                assertThrows(EntityNotFoundException.class, () -> itemsService.editItem(itemDto, 3L));
             }
         }
     }
+
+    /**
+     * Builds an items service over two shards, see the overload, with a cache of items of its own.
+     *
+     * @param itemIdAllocator the item id allocator
+     * @param shardsWritten the list the shards committed are added to
+     * @param failingShard the shard whose write fails with a PersistenceException, null for none
+     * @return the items service
+     */
+    private ItemsService shardedItemsService(ItemIdAllocator itemIdAllocator, List<Integer> shardsWritten, Integer failingShard)
+    {
+        return shardedItemsService(itemIdAllocator, shardsWritten, failingShard,
+                new ConcurrentMapCacheManager(ItemsServiceImpl.ITEMS_CACHE));
+    }
+
+    /**
+     * Builds an items service over two shards, the items of even ids on the first one. The shards are written in turn on
+     * the current thread.
+     *
+     * @param itemIdAllocator the item id allocator
+     * @param shardsWritten the list the shards committed are added to
+     * @param failingShard the shard whose write fails with a PersistenceException, null for none
+     * @param cacheManager the cache manager
+     * @return the items service
+     */
+    @SuppressWarnings("unchecked")
+    private ItemsService shardedItemsService(ItemIdAllocator itemIdAllocator, List<Integer> shardsWritten, Integer failingShard,
+            ConcurrentMapCacheManager cacheManager)
+    {
+        ItemShardRouter router = Mockito.mock(ItemShardRouter.class);
+        ObjectProvider<ItemShardRouter> routerProvider = Mockito.mock(ObjectProvider.class);
+        when(routerProvider.getIfAvailable()).thenReturn(router);
+        when(router.groupByShard(Mockito.anyIterable(), Mockito.any())).thenAnswer(invocation -> {
+            ToLongFunction<Object> id = invocation.getArgument(1);
+            Map<Integer, List<Object>> groups = new TreeMap<>();
+            for (Object item : (Iterable<Object>) invocation.getArgument(0))
+            {
+                groups.computeIfAbsent((int) (id.applyAsLong(item) % 2), shard -> new ArrayList<>()).add(item);
+            }
+            return groups;
+        });
+        when(router.writeOnShards(Mockito.anyCollection(), Mockito.anyString(), Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+            IntFunction<Object> work = invocation.getArgument(2);
+            BiConsumer<Integer, RuntimeException> failed = invocation.getArgument(3);
+            Map<Integer, Object> results = new TreeMap<>();
+            for (int shard : (Iterable<Integer>) invocation.getArgument(0))
+            {
+                if (Integer.valueOf(shard).equals(failingShard))
+                {
+                    failed.accept(shard, new PersistenceException("shard " + shard + " failed"));
+                    continue;
+                }
+                results.put(shard, work.apply(shard));
+                shardsWritten.add(shard);
+            }
+            return results;
+        });
+        return new ItemsServiceImpl(itemRepository, messageSource, itemCountCache, () -> Optional.of("tester"), itemPageCache,
+                cacheManager, applicationEventPublisher, itemSearchIndex, itemNameSuggester, itemIngestQueue,
+                Validation.buildDefaultValidatorFactory().getValidator(), transactionManager, routerProvider, itemIdAllocator, 2);
+    }
+
+    /**
+     * Mocks an item projection.
+     *
+     * @param id the id
+     * @return the item projection
+     */
+    private static ItemProjection mockItemProjection(long id)
+    {
+        ItemProjection itemProjection = Mockito.mock(ItemProjection.class);
+        when(itemProjection.getId()).thenReturn(id);
+        return itemProjection;
+    }
 }
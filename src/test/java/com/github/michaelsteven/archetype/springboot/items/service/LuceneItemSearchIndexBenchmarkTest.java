@@ -0,0 +1,149 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.domain.PageRequest;
+
+/**
+ * Latency of searches against an index of a million items, with names and
+ * descriptions drawn from a Zipf distributed vocabulary so that some words
+ * match a large share of the items and others only a handful.
+ * 
+ * Not part of the regular build, run it with:
+ * mvn test -Dtest=LuceneItemSearchIndexBenchmarkTest -Dbenchmark=true [-Dbenchmark.items=1000000] [-Dbenchmark.searches=10000]
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@DisplayName("LuceneItemSearchIndex search benchmark")
+public class LuceneItemSearchIndexBenchmarkTest
+{
+    private static final int VOCABULARY_SIZE = 50000;
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    /**
+     * Indexes the items, then runs one and two word searches for the first page
+     * of results, and prints the latency percentiles of each.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    @DisplayName("Measure search latency over a million items")
+    void measureSearchLatency() throws IOException
+    {
+        int count = Integer.getInteger("benchmark.items", 1000000);
+        int searches = Integer.getInteger("benchmark.searches", 10000);
+        Random random = new Random(42);
+        double[] cumulative = zipfCumulative();
+
+        try (LuceneItemSearchIndex itemSearchIndex = new LuceneItemSearchIndex(""))
+        {
+            long start = System.nanoTime();
+            for (int id = 1; id <= count; id++)
+            {
+                itemSearchIndex.index(id, words(2, cumulative, random), words(8, cumulative, random));
+            }
+            itemSearchIndex.refresh();
+            System.out.printf("indexed %d items in %.1f s%n", count, (System.nanoTime() - start) / 1e9);
+
+            // warm up, then measure
+            search(itemSearchIndex, 1, searches, cumulative, random);
+            long[] oneWord = search(itemSearchIndex, 1, searches, cumulative, random);
+            long[] twoWords = search(itemSearchIndex, 2, searches, cumulative, random);
+
+            print("1 word ", oneWord);
+            print("2 words", twoWords);
+            assertTrue(percentile(oneWord, 0.5) > 0);
+        }
+    }
+
+    /**
+     * Runs searches of random words, timing each one.
+     *
+     * @param itemSearchIndex the item search index
+     * @param wordCount the number of words per search
+     * @param searches the number of searches
+     * @param cumulative the cumulative word distribution
+     * @param random the random
+     * @return the sorted search latencies, in nanoseconds
+     */
+    private static long[] search(LuceneItemSearchIndex itemSearchIndex, int wordCount, int searches, double[] cumulative, Random random)
+    {
+        long[] latencies = new long[searches];
+        for (int i = 0; i < searches; i++)
+        {
+            String query = words(wordCount, cumulative, random);
+            long start = System.nanoTime();
+            itemSearchIndex.search(query, PageRequest.of(0, 10));
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Draws words from the vocabulary.
+     *
+     * @param count the number of words
+     * @param cumulative the cumulative word distribution
+     * @param random the random
+     * @return the words, separated by spaces
+     */
+    private static String words(int count, double[] cumulative, Random random)
+    {
+        StringBuilder builder = new StringBuilder();
+        double sum = cumulative[cumulative.length - 1];
+        for (int i = 0; i < count; i++)
+        {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            builder.append(i == 0 ? "" : " ").append('w').append(index < 0 ? -index - 1 : index);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Builds the cumulative Zipf distribution over the word ranks.
+     *
+     * @return the cumulative weights
+     */
+    private static double[] zipfCumulative()
+    {
+        double[] cumulative = new double[VOCABULARY_SIZE];
+        double sum = 0;
+        for (int rank = 0; rank < VOCABULARY_SIZE; rank++)
+        {
+            sum += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulative[rank] = sum;
+        }
+        return cumulative;
+    }
+
+    /**
+     * Gets a percentile of sorted latencies.
+     *
+     * @param sortedLatencies the sorted latencies
+     * @param percentile the percentile, between 0 and 1
+     * @return the latency at the percentile
+     */
+    private static long percentile(long[] sortedLatencies, double percentile)
+    {
+        return sortedLatencies[(int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile * sortedLatencies.length) - 1)];
+    }
+
+    /**
+     * Prints the latency percentiles.
+     *
+     * @param label the label
+     * @param sortedLatencies the sorted latencies
+     */
+    private static void print(String label, long[] sortedLatencies)
+    {
+        System.out.printf("%s: p50 %7.1f us, p99 %8.1f us, p99.9 %8.1f us%n", label,
+                percentile(sortedLatencies, 0.5) / 1e3, percentile(sortedLatencies, 0.99) / 1e3, percentile(sortedLatencies, 0.999) / 1e3);
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+/**
+ * The LuceneItemSearchIndex Unit test class
+ */
+@DisplayName("LuceneItemSearchIndex Unit Tests")
+public class LuceneItemSearchIndexTest
+{
+    private LuceneItemSearchIndex itemSearchIndex;
+
+    /**
+     * Setup.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @BeforeEach
+    void setup() throws IOException
+    {
+        itemSearchIndex = new LuceneItemSearchIndex("");
+        itemSearchIndex.index(1L, "Blue sprocket", "A sprocket painted red");
+        itemSearchIndex.index(2L, "Red wigit", "5 sprocket wigit");
+        itemSearchIndex.index(3L, "Green gear", "Not painted at all");
+        itemSearchIndex.refresh();
+    }
+
+    /**
+     * Tear down.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @AfterEach
+    void tearDown() throws IOException
+    {
+        itemSearchIndex.close();
+    }
+
+    /**
+     * Given a search
+     */
+    @Nested
+    @DisplayName("Given a search")
+    class GivenSearch
+    {
+        /**
+         * Then should rank matches in the name first.
+         */
+        @Test
+        @DisplayName("Then should rank matches in the name first")
+        void thenShouldRankNameMatchesFirst()
+        {
+            Page<Long> ids = itemSearchIndex.search("sprocket", PageRequest.of(0, 10));
+            assertEquals(Arrays.asList(1L, 2L), ids.getContent());
+            assertEquals(Arrays.asList(2L, 1L), itemSearchIndex.search("RED", PageRequest.of(0, 10)).getContent());
+        }
+
+        /**
+         * Then should match all the words.
+         */
+        @Test
+        @DisplayName("Then should match all the words")
+        void thenShouldMatchAllWords()
+        {
+            assertEquals(Collections.singletonList(1L), itemSearchIndex.search("painted sprocket", PageRequest.of(0, 10)).getContent());
+            assertTrue(itemSearchIndex.search("painted wigit", PageRequest.of(0, 10)).isEmpty());
+            assertTrue(itemSearchIndex.search("  ?! ", PageRequest.of(0, 10)).isEmpty());
+        }
+
+        /**
+         * Then should page through the matches and count them all.
+         */
+        @Test
+        @DisplayName("Then should page through the matches and count them all")
+        void thenShouldPageThroughMatches()
+        {
+            Page<Long> secondPage = itemSearchIndex.search("sprocket", PageRequest.of(1, 1));
+            assertEquals(Collections.singletonList(2L), secondPage.getContent());
+            assertEquals(2, secondPage.getTotalElements());
+        }
+    }
+
+    /**
+     * Given items changed
+     */
+    @Nested
+    @DisplayName("Given items changed")
+    class GivenItemsChanged
+    {
+        /**
+         * Then should find the items as they are once refreshed.
+         */
+        @Test
+        @DisplayName("Then should find the items as they are once refreshed")
+        void thenShouldFindItemsAsTheyAreOnceRefreshed()
+        {
+            itemSearchIndex.index(3L, "Green sprocket", null);
+            itemSearchIndex.remove(Collections.singletonList(1L));
+            assertEquals(Arrays.asList(1L, 2L), itemSearchIndex.search("sprocket", PageRequest.of(0, 10)).getContent());
+
+            itemSearchIndex.refresh();
+            assertEquals(Arrays.asList(3L, 2L), itemSearchIndex.search("sprocket", PageRequest.of(0, 10)).getContent());
+            assertTrue(itemSearchIndex.search("gear", PageRequest.of(0, 10)).isEmpty());
+        }
+    }
+}
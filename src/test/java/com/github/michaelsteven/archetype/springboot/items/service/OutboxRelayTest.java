@@ -0,0 +1,161 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventType;
+import com.github.michaelsteven.archetype.springboot.items.repository.ItemShardRouter;
+import com.github.michaelsteven.archetype.springboot.items.repository.OutboxEventRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The OutboxRelay Unit test class
+ */
+@ExtendWith(MockitoExtension.class)
+@WebAppConfiguration
+@DisplayName("OutboxRelay Unit Tests")
+public class OutboxRelayTest
+{
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private ItemShardRouter itemShardRouter;
+
+    private InMemoryOutboxPublisher outboxPublisher;
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Setup.
+     */
+    @BeforeEach
+    void setup()
+    {
+        outboxPublisher = new InMemoryOutboxPublisher();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    /**
+     * Then should publish the batch locked, then delete exactly its events.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    @DisplayName("Then should publish and delete a batch of events")
+    void thenShouldPublishAndDeleteBatch()
+    {
+        List<OutboxEventEntity> batch = Arrays.asList(outboxEvent(1L), outboxEvent(2L));
+        when(outboxEventRepository.findAndLockByOrderByIdAsc(Mockito.any(Pageable.class))).thenReturn(batch);
+
+        assertEquals(2, newRelay(null).relayBatch(0));
+
+        assertEquals(batch, outboxPublisher.getPublished());
+        ArgumentCaptor<Collection<Long>> ids = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(outboxEventRepository).deleteByIds(ids.capture());
+        assertEquals(Arrays.asList(1L, 2L), ids.getValue());
+        assertEquals(2.0, meterRegistry.get(OutboxRelay.RELAYED_METRIC).counter().count());
+        assertEquals(2L, meterRegistry.get(OutboxRelay.LAG_METRIC).timer().count());
+    }
+
+    /**
+     * Then should keep the events in the outbox when publishing them failed, to publish them again.
+     */
+    @Test
+    @DisplayName("Then should not delete the events it failed to publish")
+    void thenShouldNotDeleteWhenPublishingFailed()
+    {
+        when(outboxEventRepository.findAndLockByOrderByIdAsc(Mockito.any(Pageable.class)))
+                .thenReturn(Collections.singletonList(outboxEvent(1L)));
+        OutboxRelay outboxRelay = new OutboxRelay(outboxEventRepository, routerProvider(null),
+                Mockito.mock(PlatformTransactionManager.class), outboxEvents -> { throw new IllegalStateException("down"); },
+                meterRegistry, true, 10, 10);
+
+        assertThrows(IllegalStateException.class, () -> outboxRelay.relayBatch(0));
+
+        Mockito.verify(outboxEventRepository, Mockito.never()).deleteByIds(Mockito.any());
+        assertEquals(0.0, meterRegistry.get(OutboxRelay.RELAYED_METRIC).counter().count());
+    }
+
+    /**
+     * Then should read the outbox of the shard given, when the items are sharded.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    @DisplayName("Then should relay the outbox of the shard given")
+    void thenShouldRelayOnShard()
+    {
+        when(itemShardRouter.getShardCount()).thenReturn(3);
+        when(itemShardRouter.onShard(Mockito.eq(2), Mockito.anyString(), Mockito.any()))
+                .thenAnswer(invocation -> ((Supplier<Object>) invocation.getArgument(2)).get());
+        when(outboxEventRepository.findAndLockByOrderByIdAsc(Mockito.any(Pageable.class))).thenReturn(Collections.emptyList());
+
+        assertEquals(0, newRelay(itemShardRouter).relayBatch(2));
+
+        Mockito.verify(itemShardRouter).onShard(Mockito.eq(2), Mockito.anyString(), Mockito.any());
+        Mockito.verify(outboxEventRepository, Mockito.never()).deleteByIds(Mockito.any());
+        assertTrue(outboxPublisher.getPublished().isEmpty());
+    }
+
+    /**
+     * Creates an enabled relay publishing to the in-memory publisher.
+     *
+     * @param router the shard router, null when not sharded
+     * @return the relay
+     */
+    private OutboxRelay newRelay(ItemShardRouter router)
+    {
+        return new OutboxRelay(outboxEventRepository, routerProvider(router), Mockito.mock(PlatformTransactionManager.class),
+                outboxPublisher, meterRegistry, true, 10, 10);
+    }
+
+    /**
+     * Creates a provider of the shard router.
+     *
+     * @param router the shard router, null when not sharded
+     * @return the provider
+     */
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<ItemShardRouter> routerProvider(ItemShardRouter router)
+    {
+        ObjectProvider<ItemShardRouter> routerProvider = Mockito.mock(ObjectProvider.class);
+        when(routerProvider.getIfAvailable()).thenReturn(router);
+        return routerProvider;
+    }
+
+    /**
+     * Creates an outbox event.
+     *
+     * @param id the id
+     * @return the outbox event
+     */
+    private static OutboxEventEntity outboxEvent(long id)
+    {
+        OutboxEventEntity outboxEvent = new OutboxEventEntity(OutboxEventType.change, "{}", Instant.now().minusSeconds(1));
+        outboxEvent.setId(id);
+        return outboxEvent;
+    }
+}
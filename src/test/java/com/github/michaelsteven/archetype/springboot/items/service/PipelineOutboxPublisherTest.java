@@ -0,0 +1,62 @@
+package com.github.michaelsteven.archetype.springboot.items.service;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventEntity;
+import com.github.michaelsteven.archetype.springboot.items.model.OutboxEventType;
+import com.github.michaelsteven.archetype.springboot.items.model.event.ComplianceEvent;
+
+/**
+ * The PipelineOutboxPublisher Unit test class
+ */
+@ExtendWith(MockitoExtension.class)
+@WebAppConfiguration
+@DisplayName("PipelineOutboxPublisher Unit Tests")
+public class PipelineOutboxPublisherTest
+{
+    @Mock
+    private ComplianceEventPipeline complianceEventPipeline;
+
+    /**
+     * Then should fail the batch when the pipeline discards an event, so that its row stays in the outbox.
+     */
+    @Test
+    @DisplayName("Then should fail the batch when the pipeline discards an event")
+    void thenShouldFailBatchWhenEventIsDiscarded()
+    {
+        when(complianceEventPipeline.publish(Mockito.any(ComplianceEvent.class))).thenReturn(true, false);
+        PipelineOutboxPublisher publisher = new PipelineOutboxPublisher(complianceEventPipeline, new ObjectMapper());
+
+        assertThrows(IllegalStateException.class,
+                () -> publisher.publish(Arrays.asList(outboxEvent(1L), outboxEvent(2L), outboxEvent(3L))));
+
+        Mockito.verify(complianceEventPipeline, Mockito.times(2)).publish(Mockito.any(ComplianceEvent.class));
+    }
+
+    /**
+     * Creates an outbox compliance event.
+     *
+     * @param id the id
+     * @return the outbox event
+     */
+    private static OutboxEventEntity outboxEvent(long id)
+    {
+        OutboxEventEntity outboxEvent = new OutboxEventEntity();
+        outboxEvent.setId(id);
+        outboxEvent.setType(OutboxEventType.compliance);
+        outboxEvent.setPayload("{\"action\":\"create\",\"itemId\":" + id + "}");
+        return outboxEvent;
+    }
+}